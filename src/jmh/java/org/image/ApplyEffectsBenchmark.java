@@ -0,0 +1,67 @@
+package org.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the black-and-white effects on a decoded JPEG's {@code TYPE_3BYTE_BGR}, per effect and image size, from
+ * the 512 px preview to 24 MP. {@code ALL} computes every effect in one pass with {@code applyEffects}. The baseline
+ * is the per-pixel {@code getRGB}/{@code setRGB} grayscale that every effect would cost at least if written naively.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+public class ApplyEffectsBenchmark {
+
+    /** Input size: preview, full HD, 4K UHD, 24 MP. */
+    @Param({"512x384", "1920x1080", "3840x2160", "6000x4000"})
+    public String size;
+
+    @Param({"GRAYSCALE", "THRESHOLD", "DITHER", "SEPIA", "ALL"})
+    public String effect;
+
+    private BufferedImage source;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        source = ImgProcessorTest.zonePlate(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]),
+                BufferedImage.TYPE_3BYTE_BGR);
+    }
+
+    @Benchmark
+    public Object engine() {
+        return effect.equals("ALL") ? ImgProcessor.applyEffects(source)
+                : ImgProcessor.applyEffect(source, Effect.valueOf(effect));
+    }
+
+    @Benchmark
+    public BufferedImage perPixelGrayscale() {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb = source.getRGB(x, y);
+                int luma = (77 * ((rgb >> 16) & 0xFF) + 150 * ((rgb >> 8) & 0xFF) + 29 * (rgb & 0xFF) + 128) >> 8;
+                result.setRGB(x, y, luma * 0x010101);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,48 @@
+package org.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contention on the found-links counter under the 8 pool threads of {@code parseUrl}: the increment alone, the
+ * increment followed by three reads of the count, and the LongAdder-based
+ * {@link Metrics.Counter} for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class FoundLinksCounterBenchmark {
+
+    private final Metrics.Counter adder = Metrics.counter("jmh_counter_total", "Counter contention benchmark");
+
+    @Benchmark
+    public int increment() {
+        return LinkParser.incrementNumberOfFoundLinks();
+    }
+
+    @Benchmark
+    public int incrementAndReadThreeTimes() {
+        LinkParser.incrementNumberOfFoundLinks();
+        return LinkParser.getNumberOfFoundLinks() + LinkParser.getNumberOfFoundLinks()
+                + LinkParser.getNumberOfFoundLinks();
+    }
+
+    @Benchmark
+    public void longAdderIncrement() {
+        adder.increment();
+    }
+}
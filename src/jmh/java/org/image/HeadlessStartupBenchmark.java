@@ -0,0 +1,132 @@
+package org.image;
+
+import com.sun.net.httpserver.HttpServer;
+import org.jsoup.Jsoup;
+
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to first output of a fresh JVM: from starting the process until the first magnet link of a local
+ * listing page has been written to stdout, once through {@link HeadlessApp} and once through the start-up work of
+ * the GUI path.
+ * <p>
+ * The GUI path is replayed by {@link GuiStartupProbe} in headless AWT mode, since the benchmark has no display: it
+ * does what {@link App#main(String[])} and {@link AppWindow} do before the window can be shown (pick and decode the
+ * splash image, scale the preview, set the look and feel, initialize AppWindow's Swing components) and then scans
+ * the page. Showing the frame and waiting for a click come on top of that in the real application, so the GUI
+ * numbers are a lower bound.
+ * <p>
+ * Not a unit test; run it with:
+ * {@code mvn -q -Pjmh test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.image.HeadlessStartupBenchmark -Dexec.args="10"} (runs per path).
+ */
+public class HeadlessStartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        byte[] page = MagnetStreamExtractorTest.listingPage(50).getBytes(StandardCharsets.UTF_8);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, page.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(page);
+            }
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        try {
+            List<Long> headless = new ArrayList<>();
+            List<Long> gui = new ArrayList<>();
+            for (int i = 0; i < runs; i++) {
+                headless.add(timeToFirstOutput(HeadlessApp.class.getName(), url));
+                gui.add(timeToFirstOutput(GuiStartupProbe.class.getName(), url));
+            }
+            System.out.printf("%d runs per path, time to first link on stdout%n", runs);
+            report("headless (HeadlessApp)", headless);
+            report("GUI start-up (App + AppWindow)", gui);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static long timeToFirstOutput(String mainClass, String url) throws Exception {
+        Path state = Files.createTempDirectory("startup-benchmark");
+        String classpath = String.join(File.pathSeparator, location(HeadlessApp.class),
+                location(HeadlessStartupBenchmark.class), location(Jsoup.class));
+        ProcessBuilder builder = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Dmagnetgrab.store.dir=" + state.resolve("store"), "-Dmagnetgrab.cache.dir=" + state.resolve("cache"),
+                "-Dmagnetgrab.thumbnails.dir=" + state.resolve("thumbnails"),
+                "-cp", classpath, mainClass, url);
+        builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+        long start = System.nanoTime();
+        Process process = builder.start();
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = out.readLine()) != null) {
+                if (line.contains("magnet:")) {
+                    long elapsed = System.nanoTime() - start;
+                    process.destroy();
+                    return elapsed;
+                }
+            }
+            throw new IllegalStateException(mainClass + " printed no magnet link");
+        } finally {
+            process.waitFor(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static String location(Class<?> type) throws URISyntaxException {
+        return Path.of(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    }
+
+    private static void report(String name, List<Long> nanos) {
+        List<Long> sorted = new ArrayList<>(nanos);
+        Collections.sort(sorted);
+        System.out.printf("%-32s median %6.1f ms, min %6.1f ms%n", name,
+                sorted.get(sorted.size() / 2) / 1e6, sorted.get(0) / 1e6);
+    }
+
+    /**
+     * Replays the start-up work of the GUI path without a display, then scans the page and prints the links.
+     */
+    public static class GuiStartupProbe {
+
+        public static void main(String[] args) throws Exception {
+            System.setProperty("java.awt.headless", "true");
+            String imagePath = ImgProvider.getRandomImagePath();
+            App.openMagnetStore(MagnetStore.defaultDirectory());
+            App.openPageCache(PageCache.defaultDirectory());
+            App.openThumbnailCache(ThumbnailCache.defaultDirectory());
+            BufferedImage image = ImgProvider.readResourcePreview(imagePath);
+            SwingUtilities.invokeAndWait(() -> {
+                try {
+                    UIManager.setLookAndFeel(UIManager.getCrossPlatformLookAndFeelClassName());
+                    new ImageIcon(ImgProcessor.scaleImageForPreview(image));
+                    Class.forName(AppWindow.class.getName());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            LinkParser.setMagnetLinkOpener(link -> { });
+            LinkParser.scanPage(args[0], link -> LinkParser.processMagnetLink(link, args[0]), null);
+            System.out.flush();
+            System.exit(0);
+        }
+    }
+}
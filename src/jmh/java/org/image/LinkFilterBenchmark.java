@@ -0,0 +1,106 @@
+package org.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Links checked per second on one core against a number of exclude keywords for the name and the trackers, plus a
+ * size range: {@code LinkFilter.rejection} with its keyword automata, against a loop over one precompiled
+ * case-insensitive pattern per keyword. The links pass every rule, so every keyword has to be ruled out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LinkFilterBenchmark {
+
+    private static final int LINKS = 1024;
+
+    @Param({"100", "5000"})
+    public int keywords;
+
+    private MagnetLink[] links;
+    private int next;
+    private LinkFilter filter;
+    private Pattern[] namePatterns;
+    private Pattern[] trackerPatterns;
+
+    @Setup
+    public void setUp() throws IOException {
+        links = new MagnetLink[LINKS];
+        for (int i = 0; i < LINKS; i++) {
+            links[i] = MagnetLink.parse(String.format("magnet:?xt=urn:btih:%040x&dn=Some.Show.S01E%02d.1080p.WEB"
+                    + ".h264%%5BTGx%%5D&xl=%d&tr=udp%%3A%%2F%%2Ftracker.example.org%%3A1337%%2Fannounce"
+                    + "&tr=udp%%3A%%2F%%2Fopen.example.net%%3A6969", i, i % 100, 1_000_000_000L + i));
+        }
+        List<String> rules = new ArrayList<>(List.of("include size 100MB..8GB"));
+        List<Pattern> names = new ArrayList<>();
+        List<Pattern> trackers = new ArrayList<>();
+        for (int k = 0; k < keywords; k++) {
+            String name = "group" + k + "-rip";
+            String tracker = "tracker" + k + ".invalid";
+            rules.add("exclude name " + name);
+            rules.add("exclude tracker " + tracker);
+            names.add(Pattern.compile(name, Pattern.LITERAL | Pattern.CASE_INSENSITIVE));
+            trackers.add(Pattern.compile(tracker, Pattern.LITERAL | Pattern.CASE_INSENSITIVE));
+        }
+        Path file = Files.createTempFile("filter", ".rules");
+        Files.write(file, rules, StandardCharsets.UTF_8);
+        // Kept for the run: the filter checks it for changes
+        file.toFile().deleteOnExit();
+        filter = LinkFilter.open(file);
+        namePatterns = names.toArray(Pattern[]::new);
+        trackerPatterns = trackers.toArray(Pattern[]::new);
+    }
+
+    private MagnetLink nextLink() {
+        return links[next++ & (LINKS - 1)];
+    }
+
+    /** The compiled rules. */
+    @Benchmark
+    public String automaton() {
+        return filter.rejection(nextLink());
+    }
+
+    /** One regular expression per keyword. */
+    @Benchmark
+    public boolean regexLoop() {
+        MagnetLink link = nextLink();
+        String name = link.displayName();
+        for (Pattern pattern : namePatterns) {
+            if (pattern.matcher(name).find()) {
+                return false;
+            }
+        }
+        for (String tracker : link.trackers()) {
+            for (Pattern pattern : trackerPatterns) {
+                if (pattern.matcher(tracker).find()) {
+                    return false;
+                }
+            }
+        }
+        long size = link.exactLength();
+        return size >= 100L << 20 && size <= 8L << 30;
+    }
+}
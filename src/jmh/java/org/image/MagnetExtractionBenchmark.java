@@ -0,0 +1,100 @@
+package org.image;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Compares the DOM and streaming extraction paths of LinkParser on a large synthetic listing page served by a local
+ * HTTP server. For each path it reports the time until the first magnet link reaches the sink, the total time and the
+ * peak heap usage across all heap pools.
+ * <p>
+ * Not a unit test; run it with:
+ * {@code mvn -q -Pjmh test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.image.MagnetExtractionBenchmark -Dexec.args="20000 10"} (rows per page, iterations per path).
+ */
+public class MagnetExtractionBenchmark {
+
+    /** Bytes written per chunk and pause between chunks, to make the page arrive like it does over the network. */
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final long CHUNK_PAUSE_MILLIS = 2;
+
+    private interface Extraction {
+        int run(String url, Consumer<String> sink) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        byte[] page = MagnetStreamExtractorTest.listingPage(rows).getBytes(StandardCharsets.UTF_8);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/top/", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int offset = 0; offset < page.length; offset += CHUNK_SIZE) {
+                    out.write(page, offset, Math.min(CHUNK_SIZE, page.length - offset));
+                    out.flush();
+                    pause();
+                }
+            }
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/top/";
+        System.out.printf("page: %d rows, %.1f MB%n", rows, page.length / 1e6);
+        try {
+            measure("dom", url, iterations, (u, sink) -> LinkParser.selectMagnetLinks(u, sink));
+            measure("stream", url, iterations, LinkParser::streamMagnetLinks);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void measure(String name, String url, int iterations, Extraction extraction) throws IOException {
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP).toList();
+        // Warm-up run so that class loading and JIT do not dominate the first measurement
+        extraction.run(url, link -> { });
+
+        long firstLinkNanos = 0;
+        long totalNanos = 0;
+        long peakHeap = 0;
+        for (int i = 0; i < iterations; i++) {
+            System.gc();
+            heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+            AtomicLong firstLinkAt = new AtomicLong();
+            AtomicInteger count = new AtomicInteger();
+            long start = System.nanoTime();
+            extraction.run(url, link -> {
+                if (count.getAndIncrement() == 0) {
+                    firstLinkAt.set(System.nanoTime());
+                }
+            });
+            long end = System.nanoTime();
+            firstLinkNanos += firstLinkAt.get() - start;
+            totalNanos += end - start;
+            peakHeap = Math.max(peakHeap, heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum());
+        }
+        System.out.printf("%-6s first link: %7.2f ms   total: %7.2f ms   peak heap: %6.1f MB%n", name,
+                firstLinkNanos / 1e6 / iterations, totalNanos / 1e6 / iterations, peakHeap / 1e6);
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(CHUNK_PAUSE_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Magnet links parsed per second on one core: {@code MagnetLink.parse} and the key and name a new link needs, against
+ * what the same facts cost with {@code new URI}, {@code split} and {@code URLDecoder}. The links look like those of
+ * the scraped pages: a BTIH in hex or base32, a percent-encoded name, a length and a number of trackers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MagnetLinkParseBenchmark {
+
+    private static final int LINKS = 1024;
+
+    @Param({"hex", "base32"})
+    public String encoding;
+
+    @Param({"0", "8"})
+    public int trackers;
+
+    private String[] links;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        links = new String[LINKS];
+        for (int i = 0; i < LINKS; i++) {
+            byte[] hash = new byte[InfoHashSet.HASH_LENGTH];
+            for (int b = 0; b < hash.length; b++) {
+                hash[b] = (byte) (i * 31 + b * 17);
+            }
+            StringBuilder link = new StringBuilder("magnet:?xt=urn:btih:")
+                    .append(encoding.equals("hex") ? HexFormat.of().formatHex(hash) : base32(hash))
+                    .append("&dn=Some.Show.S01E").append(i % 100).append(".1080p.WEB.h264%5BTGx%5D")
+                    .append("&xl=").append(1_000_000_000L + i);
+            for (int t = 0; t < trackers; t++) {
+                link.append("&tr=udp%3A%2F%2Ftracker").append(t).append(".example.org%3A1337%2Fannounce");
+            }
+            links[i] = link.toString();
+        }
+    }
+
+    private String nextLink() {
+        return links[next++ & (LINKS - 1)];
+    }
+
+    /** The scan alone, as for a duplicate link. */
+    @Benchmark
+    public MagnetLink parse() {
+        return MagnetLink.parse(nextLink());
+    }
+
+    /** The scan plus the key and the name, as for a new link. */
+    @Benchmark
+    public void parseNewLink(Blackhole blackhole) {
+        MagnetLink link = MagnetLink.parse(nextLink());
+        blackhole.consume(link.infoHash());
+        blackhole.consume(link.displayName());
+    }
+
+    /** The key and the name with the general-purpose JDK classes. */
+    @Benchmark
+    public void uriAndSplit(Blackhole blackhole) throws URISyntaxException {
+        String link = nextLink();
+        String query = new URI(link).getRawSchemeSpecificPart().substring(1);
+        for (String parameter : query.split("&")) {
+            String[] pair = parameter.split("=", 2);
+            if (pair[0].equalsIgnoreCase("xt") && pair[1].regionMatches(true, 0, "urn:btih:", 0, 9)) {
+                String hash = pair[1].substring(9);
+                blackhole.consume(hash.length() == 40 ? HexFormat.of().parseHex(hash) : hash.toUpperCase());
+            } else if (pair[0].equalsIgnoreCase("dn")) {
+                blackhole.consume(URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static String base32(byte[] bytes) {
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+        StringBuilder text = new StringBuilder();
+        long buffer = 0;
+        int bits = 0;
+        for (byte b : bytes) {
+            buffer = buffer << 8 | (b & 0xFF);
+            bits += 8;
+            while (bits >= 5) {
+                bits -= 5;
+                text.append(alphabet.charAt((int) (buffer >>> bits) & 31));
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,146 @@
+package org.image;
+
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares repeated New/TOP refreshes against a local HTTPS stand-in server through the previous fetch path (a fresh
+ * trust-all SSL context installed into HttpsURLConnection plus a new Jsoup connection per parse) and through the
+ * shared {@link PageFetcher}. For each path it reports the mean time per page and the number of TLS connections the
+ * server accepted, i.e. the number of full handshakes paid.
+ * <p>
+ * The JDK's HttpsServer speaks HTTP/1.1 only, so the savings shown come from keep-alive pooling; against a server
+ * that offers h2, concurrent crawl requests additionally share one connection.
+ * <p>
+ * Not a unit test; run it with:
+ * {@code mvn -q -Pjmh test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.image.PageFetchBenchmark -Dexec.args="200"} (refreshes per path). Needs {@code keytool}
+ * from the running JDK to create a throw-away certificate.
+ */
+public class PageFetchBenchmark {
+
+    private static final char[] PASSWORD = "benchmark".toCharArray();
+
+    private interface Fetch {
+        void run(String url) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int refreshes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        byte[] page = MagnetStreamExtractorTest.listingPage(50).getBytes(StandardCharsets.UTF_8);
+        // Without it, Nagle's algorithm and delayed ACKs add ~40 ms to every reused-connection round-trip
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        // The refreshes all go to one host; its politeness budget would measure the rate limit instead of the fetches
+        PageFetcher.shared().setHostScheduler(new HostScheduler(1_000_000, 1_000_000, 64));
+
+        SSLContext serverContext = serverSslContext();
+        System.out.printf("page: %d bytes, %d refreshes per path%n", page.length, refreshes);
+        // Each path gets its own server, so that connections the previous path left open do not count against the
+        // server's idle connection limit
+        measure("jsoup, SSL context per parse", serverContext, page, refreshes, url -> {
+            installTrustAllSsl();
+            Connection.Response response = Jsoup.connect(url).execute();
+            response.bodyAsBytes();
+        });
+        measure("shared PageFetcher", serverContext, page, refreshes, url -> {
+            try (InputStream body = PageFetcher.shared().fetch(url).body()) {
+                body.readAllBytes();
+            }
+        });
+    }
+
+    private static void measure(String name, SSLContext serverContext, byte[] page, int refreshes, Fetch fetch)
+            throws Exception {
+        Set<Integer> connections = ConcurrentHashMap.newKeySet();
+        HttpsServer server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(serverContext));
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            connections.add(exchange.getRemoteAddress().getPort());
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, page.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(page);
+            }
+        });
+        server.start();
+        String base = "https://127.0.0.1:" + server.getAddress().getPort();
+        try {
+            // Warm-up so that class loading and JIT do not dominate
+            for (int i = 0; i < 20; i++) {
+                fetch.run(base + "/");
+            }
+            connections.clear();
+            long start = System.nanoTime();
+            for (int i = 0; i < refreshes; i++) {
+                fetch.run(base + (i % 2 == 0 ? "/" : "/top/"));
+            }
+            double millisPerPage = (System.nanoTime() - start) / 1e6 / refreshes;
+            System.out.printf("%-30s %7.2f ms/page, %4d TLS connections%n", name, millisPerPage, connections.size());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /** The trust-all setup LinkParser used to run before every parse. */
+    private static void installTrustAllSsl() throws Exception {
+        SSLContext sc = SSLContext.getInstance("TLS");
+        sc.init(null, new TrustManager[]{new X509TrustManager() {
+            public X509Certificate[] getAcceptedIssuers() {
+                return null;
+            }
+            public void checkClientTrusted(X509Certificate[] certs, String authType) {
+            }
+            public void checkServerTrusted(X509Certificate[] certs, String authType) {
+            }
+        }}, new SecureRandom());
+        HttpsURLConnection.setDefaultSSLSocketFactory(sc.getSocketFactory());
+        HttpsURLConnection.setDefaultHostnameVerifier((hostname, session) -> true);
+    }
+
+    /** Creates a self-signed certificate with keytool and returns a server context using it. */
+    private static SSLContext serverSslContext() throws Exception {
+        Path keyStoreFile = Files.createTempFile("benchmark", ".p12");
+        Files.delete(keyStoreFile);
+        keyStoreFile.toFile().deleteOnExit();
+        Process keytool = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+                "-genkeypair", "-alias", "server", "-keyalg", "RSA", "-keysize", "2048", "-validity", "1",
+                "-dname", "CN=127.0.0.1", "-ext", "SAN=ip:127.0.0.1", "-storetype", "PKCS12",
+                "-keystore", keyStoreFile.toString(),
+                "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD))
+                .inheritIO().start();
+        if (keytool.waitFor() != 0) {
+            throw new IOException("keytool failed with exit code " + keytool.exitValue());
+        }
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(keyStoreFile)) {
+            keyStore.load(in, PASSWORD);
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, PASSWORD);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), null, null);
+        return context;
+    }
+}
@@ -0,0 +1,113 @@
+package org.image;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares the ways of getting from a Base64-encoded JPEG to the preview image, on 12 to 40 MP inputs: decode time,
+ * bytes allocated and peak heap use.
+ * <ul>
+ *     <li>string: {@code readResourceFileToString}, {@code decodeBase64ToImage}, {@code scaleImageForPreview}, the
+ *     sequence the application used;</li>
+ *     <li>stream: {@code decodeBase64StreamToImage}, {@code scaleImageForPreview};</li>
+ *     <li>preview: {@code decodeBase64StreamToPreview}, which decodes subsampled.</li>
+ * </ul>
+ * Peak heap is the sum of the peak use of all heap pools, reset after a full GC before each run, so it is an upper
+ * bound of what the run needed at once.
+ * <p>
+ * Not a unit test; run it with:
+ * {@code mvn -q -Pjmh test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.image.PreviewDecodeBenchmark -Dexec.args="5"} (runs per variant). The 40 MP input needs
+ * about 1 GB of heap.
+ */
+public class PreviewDecodeBenchmark {
+
+    /** Inputs: 12, 24 and 40 MP. */
+    private static final int[][] SIZES = {{4000, 3000}, {6000, 4000}, {7728, 5152}};
+
+    private interface Decode {
+        BufferedImage apply(Path file) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        List<MemoryPoolMXBean> heap = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heap.add(pool);
+            }
+        }
+        Decode string = file -> ImgProcessor.scaleImageForPreview(
+                ImgProcessor.decodeBase64ToImage(Files.readString(file)));
+        Decode stream = file -> {
+            try (InputStream in = Files.newInputStream(file)) {
+                return ImgProcessor.scaleImageForPreview(ImgProcessor.decodeBase64StreamToImage(in));
+            }
+        };
+        Decode preview = file -> {
+            try (InputStream in = Files.newInputStream(file)) {
+                return ImgProcessor.decodeBase64StreamToPreview(in);
+            }
+        };
+
+        System.out.printf("%d runs per variant, medians%n", runs);
+        System.out.printf("%-10s %-8s %10s %14s %14s%n", "input", "variant", "ms", "allocated MB", "peak heap MB");
+        Path directory = Files.createTempDirectory("preview-decode");
+        try {
+            for (int[] size : SIZES) {
+                Path file = directory.resolve(size[0] + "x" + size[1] + ".img");
+                try (OutputStream out = Base64.getEncoder().wrap(Files.newOutputStream(file))) {
+                    ImageIO.write(ImgProcessorTest.zonePlate(size[0], size[1], BufferedImage.TYPE_3BYTE_BGR),
+                            "jpg", out);
+                }
+                String[] names = {"string", "stream", "preview"};
+                Decode[] decodes = {string, stream, preview};
+                for (int v = 0; v < decodes.length; v++) {
+                    List<Long> nanos = new ArrayList<>();
+                    List<Long> allocated = new ArrayList<>();
+                    List<Long> peaks = new ArrayList<>();
+                    // The first run warms up
+                    for (int i = 0; i <= runs; i++) {
+                        System.gc();
+                        heap.forEach(MemoryPoolMXBean::resetPeakUsage);
+                        long bytes = threads.getCurrentThreadAllocatedBytes();
+                        long start = System.nanoTime();
+                        decodes[v].apply(file);
+                        long elapsed = System.nanoTime() - start;
+                        bytes = threads.getCurrentThreadAllocatedBytes() - bytes;
+                        long peak = heap.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+                        if (i > 0) {
+                            nanos.add(elapsed);
+                            allocated.add(bytes);
+                            peaks.add(peak);
+                        }
+                    }
+                    System.out.printf("%-10s %-8s %10.1f %14.1f %14.1f%n", size[0] + "x" + size[1], names[v],
+                            median(nanos) / 1e6, median(allocated) / 1e6, median(peaks) / 1e6);
+                }
+                Files.delete(file);
+            }
+        } finally {
+            Files.delete(directory);
+        }
+    }
+
+    private static double median(List<Long> values) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+}
@@ -0,0 +1,108 @@
+package org.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@code LinkParser.processMagnetLink} with the torrent client replaced by a no-op, so that what is
+ * measured is the work the app itself does per link: info-hash de-duplication, counting, the console line, the link
+ * event log (with {@code eventLog=true}), the magnet store (if set) and the UI append (a no-op without a window). New
+ * links go through the whole path; duplicates stop at the info-hash check. Runs on 8 threads, the number of links
+ * {@code ParseSession} processes at once before its limit adapts.
+ * <p>
+ * {@code System.out} and {@code System.err} are discarded in the forked VM, because the console handler would
+ * otherwise flood the benchmark output; the log file handler configured in logging.properties stays active.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class ProcessMagnetLinkBenchmark {
+
+    private static final String DUPLICATE = "magnet:?xt=urn:btih:c12fe1c06bba254a9dc9f519b335aa7c1367a88a&dn=Same";
+
+    /** Whether new links are also recorded in a link event log in a temporary directory. */
+    @Param({"false", "true"})
+    public boolean eventLog;
+
+    private LinkEventLog log;
+
+    /** Per-thread source of links that have not been seen before. */
+    @State(Scope.Thread)
+    public static class NewLinks {
+        private static int nextThread;
+        private long thread;
+        private long sequence;
+
+        @Setup
+        public void setUp() {
+            synchronized (NewLinks.class) {
+                thread = nextThread++;
+            }
+        }
+
+        String next() {
+            return String.format("magnet:?xt=urn:btih:%08x%032x&dn=Link", thread, sequence++);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(discard);
+        System.setErr(discard);
+        LinkParser.setMagnetLinkOpener(link -> { });
+        if (eventLog) {
+            log = LinkEventLog.open(Files.createTempDirectory("link-events"), LinkEventLog.DEFAULT_MAX_BYTES, 2);
+            LinkParser.setLinkEventLog(log);
+        }
+        LinkParser.resetNumberOfFoundLinks();
+        LinkParser.processMagnetLink(DUPLICATE, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        LinkParser.setLinkEventLog(null);
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void forgetLinks() {
+        // Keeps the info-hash set from growing across iterations; DUPLICATE is re-added for the duplicate benchmark
+        LinkParser.resetNumberOfFoundLinks();
+        LinkParser.processMagnetLink(DUPLICATE, null);
+    }
+
+    @Benchmark
+    public void newLink(NewLinks links) {
+        LinkParser.processMagnetLink(links.next(), "https://example.com/");
+    }
+
+    @Benchmark
+    public void duplicateLink() {
+        LinkParser.processMagnetLink(DUPLICATE, "https://example.com/");
+    }
+}
@@ -0,0 +1,147 @@
+package org.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of scaling a large image to the 512 px preview: the single bilinear {@code drawImage} that
+ * {@code scaleImageForPreview} used to do against the tiled {@link ImageScaler}, for a decoded JPEG's
+ * {@code TYPE_3BYTE_BGR} and for {@code TYPE_INT_RGB}.
+ * <p>
+ * The input is a zone plate ({@link ImgProcessorTest#zonePlate}). {@link #main(String[])} compares the quality of
+ * both: the PSNR of each preview against an exact area-average reference, on the same inputs. Run it with:
+ * {@code mvn -q -Pjmh test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.image.ScaleImageForPreviewBenchmark}. The largest input needs about 1 GB of heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+public class ScaleImageForPreviewBenchmark {
+
+    /** Inputs of the quality comparison: 4K UHD, 24 MP, 36 MP and 50 MP. */
+    private static final int[][] SIZES = {{3840, 2160}, {6000, 4000}, {7360, 4912}, {8688, 5792}};
+
+    /** Input size: 4K UHD, 24 MP, 50 MP. */
+    @Param({"3840x2160", "6000x4000", "8688x5792"})
+    public String size;
+
+    @Param({"3BYTE_BGR", "INT_RGB"})
+    public String type;
+
+    private BufferedImage source;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        source = ImgProcessorTest.zonePlate(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]),
+                type.equals("INT_RGB") ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_3BYTE_BGR);
+    }
+
+    @Benchmark
+    public BufferedImage drawImage() {
+        return legacyScale(source);
+    }
+
+    @Benchmark
+    public BufferedImage tiledScaler() {
+        return ImgProcessor.scaleImageForPreview(source);
+    }
+
+    /**
+     * Prints the PSNR of both previews of every input against the area-average reference.
+     */
+    public static void main(String[] args) {
+        System.out.printf("%-11s %-10s %12s %12s%n", "input", "type", "drawImage dB", "scaler dB");
+        for (int[] size : SIZES) {
+            for (int type : new int[]{BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_RGB}) {
+                BufferedImage source = ImgProcessorTest.zonePlate(size[0], size[1], type);
+                BufferedImage legacy = legacyScale(source);
+                BufferedImage scaled = ImgProcessor.scaleImageForPreview(source);
+                int[] reference = areaAverage(source, scaled.getWidth(), scaled.getHeight());
+                System.out.printf("%-11s %-10s %12.2f %12.2f%n", size[0] + "x" + size[1],
+                        type == BufferedImage.TYPE_INT_RGB ? "INT_RGB" : "3BYTE_BGR",
+                        psnr(legacy, reference), psnr(scaled, reference));
+            }
+        }
+    }
+
+    /**
+     * The preview scaling as it was: one bilinear {@code drawImage} into an image of the source's type.
+     */
+    static BufferedImage legacyScale(BufferedImage source) {
+        final int maxSize = 512;
+        double scaleFactor = Math.min((double) maxSize / source.getWidth(), (double) maxSize / source.getHeight());
+        int newWidth = (int) (source.getWidth() * scaleFactor);
+        int newHeight = (int) (source.getHeight() * scaleFactor);
+        BufferedImage scaledImage = new BufferedImage(newWidth, newHeight, source.getType());
+        Graphics2D g = scaledImage.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(source, 0, 0, newWidth, newHeight, null);
+        g.dispose();
+        return scaledImage;
+    }
+
+    /**
+     * Scales the green channel of an image by exact area averaging: every target pixel is the mean of the source
+     * area it covers, partial source pixels weighted by their coverage.
+     */
+    static int[] areaAverage(BufferedImage source, int width, int height) {
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+        double scaleX = (double) sourceWidth / width;
+        double scaleY = (double) sourceHeight / height;
+        double[] sums = new double[width * height];
+        int[] row = new int[sourceWidth];
+        for (int sy = 0; sy < sourceHeight; sy++) {
+            source.getRGB(0, sy, sourceWidth, 1, row, 0, sourceWidth);
+            for (int ty = (int) (sy / scaleY); ty < height && ty * scaleY < sy + 1; ty++) {
+                double wy = Math.min(sy + 1, (ty + 1) * scaleY) - Math.max(sy, ty * scaleY);
+                if (wy <= 0) {
+                    continue;
+                }
+                for (int sx = 0; sx < sourceWidth; sx++) {
+                    double green = (row[sx] >> 8) & 0xFF;
+                    for (int tx = (int) (sx / scaleX); tx < width && tx * scaleX < sx + 1; tx++) {
+                        double wx = Math.min(sx + 1, (tx + 1) * scaleX) - Math.max(sx, tx * scaleX);
+                        if (wx > 0) {
+                            sums[ty * width + tx] += green * wx * wy;
+                        }
+                    }
+                }
+            }
+        }
+        int[] reference = new int[sums.length];
+        for (int i = 0; i < sums.length; i++) {
+            reference[i] = (int) Math.round(sums[i] / (scaleX * scaleY));
+        }
+        return reference;
+    }
+
+    /** Peak signal-to-noise ratio of the green channel against the reference, in dB; higher is better. */
+    static double psnr(BufferedImage image, int[] reference) {
+        int width = image.getWidth();
+        int[] pixels = image.getRGB(0, 0, width, image.getHeight(), null, 0, width);
+        double squares = 0;
+        for (int i = 0; i < pixels.length; i++) {
+            double error = ((pixels[i] >> 8) & 0xFF) - reference[i];
+            squares += error * error;
+        }
+        return 10 * Math.log10(255.0 * 255.0 / (squares / pixels.length));
+    }
+}
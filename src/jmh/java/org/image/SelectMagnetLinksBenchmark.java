@@ -0,0 +1,62 @@
+package org.image;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of finding the magnet links of a listing page: {@code doc.select(CSS_SELECTOR_MAGNET)} on an already
+ * parsed Document, the full Jsoup parse plus select that the DOM path pays per page, and the streaming extractor that
+ * replaces both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SelectMagnetLinksBenchmark {
+
+    /** Rows of the synthetic listing page; each row carries one magnet link. */
+    @Param({"10", "100", "1000", "10000"})
+    public int rows;
+
+    private String html;
+    private Document document;
+
+    @Setup
+    public void setUp() {
+        html = MagnetStreamExtractorTest.listingPage(rows);
+        document = Jsoup.parse(html);
+    }
+
+    @Benchmark
+    public Elements select() {
+        return document.select(LinkParser.CSS_SELECTOR_MAGNET);
+    }
+
+    @Benchmark
+    public Elements parseAndSelect() {
+        return Jsoup.parse(html).select(LinkParser.CSS_SELECTOR_MAGNET);
+    }
+
+    @Benchmark
+    public int streamingExtract() throws IOException {
+        return MagnetStreamExtractor.extract(new StringReader(html), link -> { }, null);
+    }
+}
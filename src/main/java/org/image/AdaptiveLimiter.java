@@ -0,0 +1,236 @@
+package org.image;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Concurrency limit that follows the latency of the work it admits, for page fetches and link processing.
+ * <p>
+ * The limit is adjusted after every completed task with the gradient method: the ratio of the no-load latency to the
+ * recent latency tells whether tasks are queueing somewhere downstream. While the recent latency stays within
+ * {@value #TOLERANCE} times the no-load latency, the gradient is 1 and the limit grows by its square root per task,
+ * so parallelism rises quickly while it costs nothing. Once tasks queue, latency rises with the limit, the gradient
+ * falls below 1 and the limit shrinks towards the point where the extra tasks stop adding throughput. A task that
+ * failed from overload (a timeout, a 429 or a 5xx) cuts the limit by {@value #BACKOFF}, at most once per round of
+ * tasks, so a burst of failures from one congested moment does not collapse it.
+ * <ul>
+ *     <li>The recent latency is an exponential average over roughly the last five tasks.</li>
+ *     <li>The no-load latency is the lowest latency seen; it drifts slowly towards the recent samples so that a
+ *     lasting change of the network or the torrent client is taken over.</li>
+ *     <li>Tasks that ran while less than half the limit was in use say nothing about the limit and do not raise
+ *     it.</li>
+ * </ul>
+ * Permits are taken with {@link #acquire()}, which waits interruptibly, or {@link #tryAcquire()}, and must be ended
+ * with exactly one of {@link Permit#success()}, {@link Permit#dropped()} or {@link Permit#ignore()}.
+ */
+public class AdaptiveLimiter {
+
+    /** Recent latency that still counts as no load, as a multiple of the no-load latency. */
+    static final double TOLERANCE = 1.5;
+    /** Factor applied to the limit when a task fails from overload. */
+    static final double BACKOFF = 0.9;
+    /** Weight of a new limit estimate against the current limit. */
+    private static final double SMOOTHING = 0.2;
+    /** Weight of a sample in the recent latency. */
+    private static final double RECENT_WEIGHT = 0.2;
+    /** Weight of a higher sample in the no-load latency. */
+    private static final double NO_LOAD_DRIFT = 0.0002;
+    /** Lowest gradient applied by one sample, so that one slow task cannot halve the limit on its own. */
+    private static final double MIN_GRADIENT = 0.5;
+
+    private static final Logger logger = Logger.getLogger(AdaptiveLimiter.class.getName());
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    /** Guarded by the lock. */
+    private double limit;
+    private int inFlight;
+    private double recentNanos;
+    private double noLoadNanos;
+    private long lastBackoffNanos = System.nanoTime();
+
+    /**
+     * Creates a limiter.
+     *
+     * @param name         the name used in log messages
+     * @param initialLimit the limit before the first task has completed
+     * @param minLimit     the lowest limit
+     * @param maxLimit     the highest limit
+     * @throws IllegalArgumentException if the limits are not positive or not in order
+     */
+    public AdaptiveLimiter(String name, int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("Invalid limits for " + name + ": initial " + initialLimit + ", min "
+                    + minLimit + ", max " + maxLimit);
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Public API
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Takes a permit, waiting while the limit is in use.
+     *
+     * @return the permit
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Permit acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= (int) limit) {
+                released.await();
+            }
+            return admit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a permit if the limit is not in use.
+     *
+     * @return the permit, or {@code null} if none is available
+     */
+    public Permit tryAcquire() {
+        lock.lock();
+        try {
+            return inFlight < (int) limit ? admit() : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current limit.
+     *
+     * @return the number of tasks that may run at once
+     */
+    public int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of permits taken and not yet ended.
+     *
+     * @return the number of running tasks
+     */
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Permit admit() {
+        inFlight++;
+        return new Permit(System.nanoTime(), inFlight);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Limit
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Ends a task and adjusts the limit.
+     *
+     * @param startNanos      when the task was admitted
+     * @param latencyNanos    how long it ran, or -1 to leave the limit as it is
+     * @param inFlightAtStart the number of tasks running when it was admitted, itself included
+     * @param dropped         whether it failed from overload
+     */
+    void onSample(long startNanos, long latencyNanos, int inFlightAtStart, boolean dropped) {
+        lock.lock();
+        try {
+            inFlight--;
+            int before = (int) limit;
+            if (dropped) {
+                // Only tasks started after the last cut may cut again: one cut per round of tasks
+                if (startNanos - lastBackoffNanos > 0) {
+                    limit = Math.max(minLimit, limit * BACKOFF);
+                    lastBackoffNanos = System.nanoTime();
+                }
+            } else if (latencyNanos >= 0) {
+                adjust(Math.max(1, latencyNanos), inFlightAtStart);
+            }
+            if ((int) limit != before && logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, "Concurrency limit of " + name + ": " + before + " -> " + (int) limit);
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Applies a successful sample to the latency averages and the limit. */
+    private void adjust(long latencyNanos, int inFlightAtStart) {
+        if (noLoadNanos == 0) {
+            noLoadNanos = latencyNanos;
+            recentNanos = latencyNanos;
+        } else {
+            recentNanos += (latencyNanos - recentNanos) * RECENT_WEIGHT;
+            noLoadNanos = latencyNanos < noLoadNanos ? latencyNanos
+                    : noLoadNanos + (latencyNanos - noLoadNanos) * NO_LOAD_DRIFT;
+        }
+        if (inFlightAtStart < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1, TOLERANCE * noLoadNanos / recentNanos));
+        double estimate = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + estimate * SMOOTHING));
+    }
+
+    /**
+     * The right to run one task. Ending it more than once has no further effect.
+     */
+    public final class Permit {
+        private final long startNanos;
+        private final int inFlightAtStart;
+        private boolean ended;
+
+        private Permit(long startNanos, int inFlightAtStart) {
+            this.startNanos = startNanos;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /** Ends a task that completed, counting its latency. */
+        public void success() {
+            end(System.nanoTime() - startNanos, false);
+        }
+
+        /** Ends a task that failed from overload, e.g. timed out or was throttled, backing the limit off. */
+        public void dropped() {
+            end(System.nanoTime() - startNanos, true);
+        }
+
+        /** Ends a task whose latency says nothing about load, e.g. one that failed at once or was cancelled. */
+        public void ignore() {
+            end(-1, false);
+        }
+
+        private synchronized void end(long latencyNanos, boolean dropped) {
+            if (ended) {
+                return;
+            }
+            ended = true;
+            onSample(startNanos, latencyNanos, inFlightAtStart, dropped);
+        }
+    }
+}
@@ -3,42 +3,59 @@ package org.image;
 import java.awt.image.BufferedImage;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import static org.image.ImgProvider.getRandomImagePath;
 import static org.image.LoggerUtil.logSelectedImage;
 import static org.image.LoggerUtil.logURL;
 
 /**
- * The App class serves as the main class for the "25H1MagnetGrabber" application, which is responsible for selecting,
- * reading, decoding, and displaying random images from a specified image directory. The class consists of the following components:
- * - Constants: LOGGER for logging, IMAGE_DIRECTORY for specifying the image directory, and RANDOM for generating random numbers.
- * - main method: The entry point of the application, which handles the image processing and display.
- * - getRandomImagePath method: Selects and returns a random image path from the specified directory.
- * - logURL method: Logs the provided URL.
- * - readResourceFileToString method: Reads a resource file and returns its content as a string.
- * - logSelectedImage method: Logs the path of the selected image.
- * The application reads image paths from a properties file (img.properties) within the specified directory, decodes Base64-encoded images,
- * and displays them in a window.
+ * The App class is the entry point of the "25H1MagnetGrabber" application with a window: it opens the stores and
+ * services the LinkParser works with, then shows a random splash image in the {@link AppWindow}.
+ * <p>
+ * The splash images are served from the asset bundle {@code img/assets.bin} ({@link AssetBundle}), which the build
+ * packs from the Base64 {@code .img} resources; the jar ships the bundle instead of the {@code img/*.img} files and
+ * {@code img/img.properties}, which are only read when running from the sources without it. The chosen image is
+ * decoded straight to preview size by {@link ImgProvider#readResourcePreview(String)}.
  */
 public class App {
 
+    private static final Logger logger = Logger.getLogger(App.class.getName());
+
     /**
-     * The main method serves as the entry point for the "25H1MagnetGrabber" application. It performs the following steps:
-     * Logs that the application is running.
-     * Retrieves a random image path using getRandomImagePath() method.
-     * Reads the image file as a Base64-encoded string using readResourceFileToString() method.
-     * Decodes the Base64-encoded string back to a BufferedImage using decodeBase64ToImage() method.
-     * If the BufferedImage is successfully obtained, it logs the selected image path and displays the image in a window using AppWindow.displayImages() method.
-     * If the image decoding fails, an error message is printed to the console.
+     * The entry point of the application. Picks a random splash image from the asset bundle with
+     * {@link ImgProvider#getRandomImagePath()}, then starts up in this order:
+     * <ol>
+     *     <li>the magnet store, {@link #openMagnetStore(Path)};</li>
+     *     <li>the page cache, {@link #openPageCache(Path)};</li>
+     *     <li>the event log of found links, {@link #openLinkEventLog(Path)};</li>
+     *     <li>the thumbnail cache, {@link #openThumbnailCache(Path)};</li>
+     *     <li>the link filter, {@link #openLinkFilter(Path)};</li>
+     *     <li>the metrics endpoint, {@link #startMetricsEndpoint(Integer)}, if a port is configured;</li>
+     *     <li>the magnet dispatcher, {@link #openMagnetDispatcher(String)}.</li>
+     * </ol>
+     * A step that fails is logged and the application runs without it. Finally the image is read as a preview with
+     * {@link ImgProvider#readResourcePreview(String)} and shown with {@link AppWindow#displayImages}; if it cannot be
+     * found, read or decoded, the failure is reported.
      */
     public static void main(String[] args) {
         logURL("App \"25H1 MagnetGrabber * MaLO - Magnet Links Opener 25H1MagnetGrabber\" running");
         String randomImagePath = getRandomImagePath();
-        System.out.println("randomImagePath: " + randomImagePath);
+        logger.log(Level.FINE, "Splash image: " + randomImagePath);
+        openMagnetStore(MagnetStore.defaultDirectory());
+        openPageCache(PageCache.defaultDirectory());
+        openLinkEventLog(LinkEventLog.defaultDirectory());
+        openThumbnailCache(ThumbnailCache.defaultDirectory());
+        openLinkFilter(LinkFilter.defaultFile());
+        startMetricsEndpoint(Integer.getInteger("magnetgrab.metrics.port"));
+        openMagnetDispatcher(System.getProperty("magnetgrab.dispatch", "desktop"));
 
         try {
-            String base64ImageString = ImgProvider.readResourceFileToString(randomImagePath);
-            BufferedImage imageDecode = ImgProcessor.decodeBase64ToImage(base64ImageString);
+            BufferedImage imageDecode = ImgProvider.readResourcePreview(randomImagePath);
 
             if (imageDecode != null) {
                 logSelectedImage(randomImagePath);
@@ -54,4 +71,168 @@ public class App {
 
     }
 
+    /**
+     * Opens the persistent magnet store and hands it to the LinkParser, so that the previous session can be restored
+     * and found links survive a restart. The store is closed by a shutdown hook. If it cannot be opened, the
+     * application runs without it.
+     *
+     * @param directory the store directory
+     */
+    static void openMagnetStore(Path directory) {
+        try {
+            MagnetStore store = MagnetStore.open(directory);
+            LinkParser.setMagnetStore(store);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    store.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, "magnet-store-close"));
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to open the magnet store in " + directory
+                    + ", found links will not be kept", e);
+        }
+    }
+
+    /**
+     * Opens the page cache and hands it to the LinkParser, so that repeated New/TOP fetches of unchanged pages skip
+     * parsing. The size bound can be set with {@code -Dmagnetgrab.cache.maxBytes}. If the cache cannot be opened, the
+     * application runs without it.
+     *
+     * @param directory the cache directory
+     */
+    static void openPageCache(Path directory) {
+        try {
+            LinkParser.setPageCache(PageCache.open(directory,
+                    Long.getLong("magnetgrab.cache.maxBytes", PageCache.DEFAULT_MAX_BYTES)));
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Failed to open the page cache in " + directory
+                    + ", pages will always be parsed", e);
+        }
+    }
+
+    /**
+     * Opens the NDJSON log of found links and hands it to the LinkParser. The files rotate at
+     * {@code -Dmagnetgrab.events.maxBytes} and {@code -Dmagnetgrab.events.count} of them are kept. Queued events are
+     * written by a shutdown hook. If the log cannot be opened, found links are only shown.
+     *
+     * @param directory the log directory
+     */
+    static void openLinkEventLog(Path directory) {
+        try {
+            LinkEventLog log = LinkEventLog.open(directory,
+                    Long.getLong("magnetgrab.events.maxBytes", LinkEventLog.DEFAULT_MAX_BYTES),
+                    Integer.getInteger("magnetgrab.events.count", LinkEventLog.DEFAULT_FILE_COUNT));
+            LinkParser.setLinkEventLog(log);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    log.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, "link-event-log-close"));
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Failed to open the link event log in " + directory
+                    + ", found links will not be recorded", e);
+        }
+    }
+
+    /**
+     * Opens the cache of splash preview images and hands it to the ImgProvider, so that warm starts skip decoding
+     * and scaling the splash image. If it cannot be opened, the image is decoded every time.
+     *
+     * @param directory the cache directory
+     */
+    static void openThumbnailCache(Path directory) {
+        try {
+            ImgProvider.setThumbnailCache(ThumbnailCache.open(directory,
+                    Long.getLong("magnetgrab.thumbnails.maxBytes", ThumbnailCache.DEFAULT_MAX_BYTES)));
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Failed to open the thumbnail cache in " + directory
+                    + ", the splash image will always be decoded", e);
+        }
+    }
+
+    /**
+     * Loads the link filter rules and hands them to the LinkParser, so that unwanted links are dropped before they
+     * are stored or dispatched. Changes to the file take effect without a restart. If the rules cannot be loaded,
+     * every link is taken.
+     *
+     * @param file the rules file
+     */
+    static void openLinkFilter(Path file) {
+        try {
+            LinkFilter filter = LinkFilter.open(file);
+            LinkParser.setLinkFilter(filter);
+            if (filter.size() > 0) {
+                logger.log(Level.INFO, "Loaded " + filter.size() + " link filter rules from " + file);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Failed to load the link filter rules in " + file
+                    + ", every link will be taken", e);
+        }
+    }
+
+    /**
+     * Creates the dispatcher that hands found magnet links to the torrent client and hands it to the LinkParser. The
+     * sink is chosen with {@code -Dmagnetgrab.dispatch}:
+     * <ul>
+     *     <li>{@code desktop}: the default torrent client via {@code Desktop.browse}, at most
+     *     {@code -Dmagnetgrab.dispatch.rate} links per second,</li>
+     *     <li>{@code watch:<directory>}: {@code .magnet} files in the watch directory of a torrent client,</li>
+     *     <li>{@code aria2:<url>}: batched {@code aria2.addUri} calls to an aria2 JSON-RPC endpoint, authenticated
+     *     with {@code -Dmagnetgrab.aria2.secret} if set.</li>
+     * </ul>
+     * Queued links are handed over by a shutdown hook. If the sink cannot be created, the default Desktop dispatcher
+     * is used.
+     *
+     * @param spec the sink specification
+     */
+    static void openMagnetDispatcher(String spec) {
+        MagnetSink sink;
+        try {
+            if (spec.startsWith("watch:")) {
+                sink = new WatchDirectorySink(Path.of(spec.substring("watch:".length())));
+            } else if (spec.startsWith("aria2:")) {
+                sink = new Aria2RpcSink(URI.create(spec.substring("aria2:".length())),
+                        System.getProperty("magnetgrab.aria2.secret"));
+            } else if (spec.equals("desktop")) {
+                sink = new DesktopSink(Double.parseDouble(System.getProperty("magnetgrab.dispatch.rate",
+                        Double.toString(DesktopSink.DEFAULT_LINKS_PER_SECOND))));
+            } else {
+                throw new IllegalArgumentException("Unknown magnet link sink: " + spec);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Failed to set up the magnet link sink " + spec
+                    + ", links will be opened on the desktop", e);
+            return;
+        }
+        MagnetDispatcher dispatcher = new MagnetDispatcher(sink);
+        LinkParser.setMagnetDispatcher(dispatcher);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                dispatcher.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, "magnet-dispatcher-close"));
+    }
+
+    /**
+     * Starts the local Prometheus scrape endpoint if a port is configured with {@code -Dmagnetgrab.metrics.port}.
+     *
+     * @param port the port, or {@code null} to leave the endpoint off
+     */
+    static void startMetricsEndpoint(Integer port) {
+        if (port == null) {
+            return;
+        }
+        try {
+            Metrics.startEndpoint(port);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to start the metrics endpoint on port " + port, e);
+        }
+    }
+
 }
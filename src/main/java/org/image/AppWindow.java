@@ -1,14 +1,20 @@
 package org.image;
 
 import javax.swing.*;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 import java.util.logging.*;
 
 /**
@@ -48,13 +54,23 @@ public class AppWindow {
     private static final int URL_FIELD_COLUMNS = 5;
     private static final int URL_PANEL_WIDTH = 300;
 
+    /** Crawl limits, overridable with -Dmagnetgrab.crawl.depth and -Dmagnetgrab.crawl.pages. */
+    private static final int CRAWL_MAX_DEPTH =
+            Integer.getInteger("magnetgrab.crawl.depth", LinkCrawler.DEFAULT_MAX_DEPTH);
+    private static final int CRAWL_MAX_PAGES =
+            Integer.getInteger("magnetgrab.crawl.pages", LinkCrawler.DEFAULT_MAX_PAGES);
+
     /** Font settings for labels. */
     private static final String FONT_NAME = "Arial";
     private static final int FONT_SIZE = 53;
 
-    /** Text area rows/columns for magnet link list. */
-    private static final int TEXT_AREA_ROWS = 10;
-    private static final int TEXT_AREA_COLUMNS = 33;
+    /** Visible rows and initial width in columns of the magnet link list. */
+    private static final int LINK_LIST_ROWS = 10;
+    private static final int LINK_LIST_COLUMNS = 33;
+    /** Horizontal padding of a list cell around its text, in pixels. */
+    private static final int LINK_CELL_PADDING = 4;
+    /** Header of the previous session's links restored from the magnet store. */
+    private static final String LAST_SESSION_HEADER = "Last session: %d links, %tF %<tR";
 
     /** Timer delay in milliseconds for refreshing link count. */
     private static final int TIMER_DELAY = 150;
@@ -68,6 +84,9 @@ public class AppWindow {
     private static final String TOP_BUTTON_LABEL      = "TOP";
     private static final String OK_BUTTON_TEXT        = "OK";
     private static final String CLEAR_BUTTON_TEXT     = "Clear";
+    private static final String STOP_BUTTON_TEXT      = "Stop";
+    private static final String CRAWL_CHECKBOX_LABEL  = "Crawl";
+    private static final String WATCH_CHECKBOX_LABEL  = "Watch";
     private static final String ERROR_DIALOG_TITLE    = "Issue!";
     private static final String INVALID_URL_MESSAGE   = "Invalid URL. Please enter a valid URL.";
     private static final String ERROR_MESSAGE_URL_SYNTAX    = "URL could not be parsed. Please check the URL.";
@@ -81,8 +100,20 @@ public class AppWindow {
     /** TextField for entering URLs. */
     private static final JTextField urlField = new JTextField();
 
-    /** TextArea for listing found magnet links. */
-    private static JTextArea magnetLinksTextArea;
+    /** CheckBox switching the buttons from single-page parsing to crawling. */
+    private static final JCheckBox crawlCheckBox = new JCheckBox(CRAWL_CHECKBOX_LABEL);
+
+    /** CheckBox switching watch mode on and off. */
+    private static final JCheckBox watchCheckBox = new JCheckBox(WATCH_CHECKBOX_LABEL);
+
+    /** The running watch, or null; only accessed on the event dispatch thread. */
+    private static LinkWatcher watcher;
+
+    /** The parse or crawl started by the last click; only accessed on the event dispatch thread. */
+    private static ParseSession currentSession;
+
+    /** Model of the list of found magnet links; null until the window has been created. */
+    private static volatile MagnetLinkListModel magnetLinks;
 
     /** Label showing the running count of found links. */
     private static JLabel numberLabel =
@@ -133,7 +164,7 @@ public class AppWindow {
 
             JFrame frame = createMainFrame();
             JPanel centerPanel = createCenterPanel(colorImage);
-            JPanel textAreaPanel = createTextAreaPanel();
+            JPanel linkListPanel = createLinkListPanel();
 
             // Add "Show Log" button
             JButton showLog = new JButton("Show Log");
@@ -141,7 +172,7 @@ public class AppWindow {
             frame.add(showLog, BorderLayout.NORTH);
 
             frame.add(centerPanel, BorderLayout.CENTER);
-            frame.add(textAreaPanel, BorderLayout.SOUTH);
+            frame.add(linkListPanel, BorderLayout.SOUTH);
 
             frame.pack();
             centerOnMouseScreen(frame);
@@ -156,9 +187,7 @@ public class AppWindow {
 
             // Redirect java.util.logging to logWindow
             Logger root = Logger.getLogger("");
-            TextAreaHandler tah = new TextAreaHandler(logWindow);
-            tah.setFormatter(new SimpleFormatter());
-            root.addHandler(tah);
+            root.addHandler(new AsyncLogHandler(logWindow.getLogTextArea()));
             root.setLevel(Level.INFO);
         });
     }
@@ -208,7 +237,7 @@ public class AppWindow {
         top.add(Box.createRigidArea(RIGID_AREA_DIMENSION_HORIZONTAL));
         top.add(createOkButton());
 
-        // Bottom row: New, TOP, Clear
+        // Bottom row: New, TOP, Stop, Clear, Crawl, Watch
         JPanel bot = new JPanel();
         bot.setOpaque(false);
         bot.setLayout(new BoxLayout(bot, BoxLayout.X_AXIS));
@@ -216,7 +245,17 @@ public class AppWindow {
         bot.add(Box.createRigidArea(RIGID_AREA_DIMENSION_HORIZONTAL));
         bot.add(createSearchTopButton());
         bot.add(Box.createRigidArea(RIGID_AREA_DIMENSION_HORIZONTAL));
+        bot.add(createStopButton());
+        bot.add(Box.createRigidArea(RIGID_AREA_DIMENSION_HORIZONTAL));
         bot.add(createClearButton());
+        bot.add(Box.createRigidArea(RIGID_AREA_DIMENSION_HORIZONTAL));
+        crawlCheckBox.setOpaque(false);
+        crawlCheckBox.setForeground(TEXT_COLOR);
+        bot.add(crawlCheckBox);
+        watchCheckBox.setOpaque(false);
+        watchCheckBox.setForeground(TEXT_COLOR);
+        watchCheckBox.addActionListener(e -> toggleWatch());
+        bot.add(watchCheckBox);
 
         p.add(top);
         p.add(Box.createRigidArea(RIGID_AREA_DIMENSION_VERTICAL));
@@ -249,18 +288,76 @@ public class AppWindow {
         return panel;
     }
 
-    /** Builds the scrollable text area panel for magnet link list. */
-    private static JPanel createTextAreaPanel() {
-        magnetLinksTextArea = new JTextArea(TEXT_AREA_ROWS, TEXT_AREA_COLUMNS);
-        magnetLinksTextArea.setEditable(false);
-        magnetLinksTextArea.setForeground(TEXT_COLOR);
-        magnetLinksTextArea.setBackground(BACKGROUND_COLOR);
-        JScrollPane scroll = new JScrollPane(magnetLinksTextArea);
+    /**
+     * Builds the scrollable list of magnet links. Cells have a fixed height and a common width that only grows as
+     * longer links arrive, so the list never measures all of its rows and paints only the visible ones.
+     */
+    private static JPanel createLinkListPanel() {
+        MagnetLinkListModel model = new MagnetLinkListModel();
+        JList<String> list = new JList<>(model);
+        list.setForeground(TEXT_COLOR);
+        list.setBackground(BACKGROUND_COLOR);
+        FontMetrics metrics = list.getFontMetrics(list.getFont());
+        int initialWidth = metrics.charWidth('m') * LINK_LIST_COLUMNS;
+        list.setFixedCellHeight(metrics.getHeight());
+        list.setFixedCellWidth(initialWidth);
+        list.setVisibleRowCount(LINK_LIST_ROWS);
+        model.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                // Only the new rows are measured
+                int width = list.getFixedCellWidth();
+                for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                    width = Math.max(width, metrics.stringWidth(model.getElementAt(i)) + LINK_CELL_PADDING);
+                }
+                if (width != list.getFixedCellWidth()) {
+                    list.setFixedCellWidth(width);
+                }
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                if (model.getSize() == 0) {
+                    list.setFixedCellWidth(initialWidth);
+                }
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+            }
+        });
+        magnetLinks = model;
+        restoreLastSession(model);
+
+        JScrollPane scroll = new JScrollPane(list);
+        // Keep the viewport at its initial size while the cells widen
+        scroll.getViewport().setPreferredSize(list.getPreferredScrollableViewportSize());
         JPanel panel = new JPanel(new BorderLayout());
         panel.add(scroll, BorderLayout.NORTH);
         return panel;
     }
 
+    /** Fills the list with the links found in the previous session, read from the magnet store. */
+    private static void restoreLastSession(MagnetLinkListModel model) {
+        MagnetStore store = LinkParser.getMagnetStore();
+        if (store == null) {
+            return;
+        }
+        try {
+            List<MagnetStore.Entry> entries = store.lastSession();
+            if (entries.isEmpty()) {
+                return;
+            }
+            model.enqueue(String.format(LAST_SESSION_HEADER, entries.size(), new Date(entries.get(0).timestamp())));
+            for (MagnetStore.Entry entry : entries) {
+                model.enqueue(entry.magnetLink());
+            }
+            model.flush();
+        } catch (IOException e) {
+            Logger.getLogger(AppWindow.class.getName()).log(Level.WARNING, "Failed to restore the last session", e);
+        }
+    }
+
     /** Builds the URL entry panel with fixed width. */
     private static JPanel createUrlPanel() {
         urlField.setColumns(URL_FIELD_COLUMNS);
@@ -302,20 +399,52 @@ public class AppWindow {
         return b;
     }
 
+    /** Creates the 'Stop' button to cancel running parses and the links still waiting for the torrent client. */
+    private static JButton createStopButton() {
+        JButton b = new JButton(STOP_BUTTON_TEXT);
+        b.addActionListener(e -> LinkParser.stopSearching());
+        return b;
+    }
+
     /** Creates the 'Clear' button to reset links and clear fields. */
     private static JButton createClearButton() {
         JButton b = new JButton(CLEAR_BUTTON_TEXT);
         b.addActionListener(e -> {
             LinkParser.resetNumberOfFoundLinks();
             urlField.setText("");
-            magnetLinksTextArea.setText("");
+            magnetLinks.clear();
             urlField.requestFocusInWindow();
         });
         return b;
     }
 
     /**
-     * Reads URL from input, logs it, validates syntax, and invokes parsing.
+     * Starts or stops watch mode with the Watch box: the pages of {@code -Dmagnetgrab.watch.urls}, comma-separated, or
+     * the New and TOP pages are polled by a {@link LinkWatcher} and their new links added to the list.
+     */
+    private static void toggleWatch() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+        if (watchCheckBox.isSelected()) {
+            String configured = System.getProperty("magnetgrab.watch.urls");
+            List<String> urls = configured == null ? List.of(DEFAULT_URL, TOP_URL)
+                    : Arrays.stream(configured.split(",")).map(String::strip)
+                            .filter(url -> !url.isEmpty()).toList();
+            try {
+                watcher = LinkWatcher.configured(urls);
+                watcher.start();
+            } catch (IllegalArgumentException e) {
+                logger.log(Level.WARNING, "Cannot watch " + urls, e);
+                watchCheckBox.setSelected(false);
+            }
+        }
+    }
+
+    /**
+     * Reads URL from input, logs it, validates syntax, and invokes parsing, or a crawl when the Crawl box is checked.
+     * A session still running from the previous click is cancelled first, so repeated clicks do not pile up.
      * Shows error dialogs on invalid or malformed URLs.
      */
     private static void enterUrl() {
@@ -325,7 +454,12 @@ public class AppWindow {
             URI uri = new URI(urlString);
             if (uri.isAbsolute() && uri.getScheme() != null) {
                 URL url = uri.toURL();
-                LinkParser.parseUrl(url.toString());
+                if (currentSession != null) {
+                    currentSession.cancel();
+                }
+                currentSession = crawlCheckBox.isSelected()
+                        ? LinkParser.crawlUrl(url.toString(), CRAWL_MAX_DEPTH, CRAWL_MAX_PAGES)
+                        : LinkParser.parseUrl(url.toString());
             } else {
                 JOptionPane.showMessageDialog(null, INVALID_URL_MESSAGE,
                         ERROR_DIALOG_TITLE, JOptionPane.ERROR_MESSAGE);
@@ -339,10 +473,14 @@ public class AppWindow {
         }
     }
 
-    /** Appends a found magnet link to the text area, if non-empty. */
-    public static void addMagnetLinkToTextArea(String link) {
-        if (link != null && !link.isEmpty()) {
-            magnetLinksTextArea.append(link + "\n");
+    /**
+     * Queues a found magnet link for the list, if non-empty and the window has been created. May be called from any
+     * thread; queued links are added to the list once per frame.
+     */
+    public static void addMagnetLinkToList(String link) {
+        MagnetLinkListModel model = magnetLinks;
+        if (link != null && !link.isEmpty() && model != null) {
+            model.enqueue(link);
         }
     }
 
@@ -412,34 +550,9 @@ public class AppWindow {
             add(scrollPane, BorderLayout.CENTER);
         }
 
-        /** Thread-safe append of a formatted log message. */
-        public void appendLog(String message) {
-            SwingUtilities.invokeLater(() -> {
-                logTextArea.append(message + "\n");
-                logTextArea.setCaretPosition(logTextArea.getDocument().getLength());
-            });
+        /** Returns the text area of the log, fed by an {@link AsyncLogHandler}. */
+        public JTextArea getLogTextArea() {
+            return logTextArea;
         }
     }
-
-    /**
-     * Custom java.util.logging.Handler that pipes formatted log records into a LogWindow.
-     */
-    public static class TextAreaHandler extends Handler {
-        private final LogWindow logWindow;
-
-        public TextAreaHandler(LogWindow logWindow) {
-            this.logWindow = logWindow;
-        }
-
-        @Override
-        public void publish(LogRecord record) {
-            if (isLoggable(record)) {
-                String msg = getFormatter().format(record);
-                logWindow.appendLog(msg);
-            }
-        }
-
-        @Override public void flush() { /* no-op */ }
-        @Override public void close() throws SecurityException { /* no-op */ }
-    }
 }
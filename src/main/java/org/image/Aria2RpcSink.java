@@ -0,0 +1,91 @@
+package org.image;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Adds magnet links to an aria2 download daemon through its JSON-RPC interface.
+ * <p>
+ * A whole batch goes out as one JSON-RPC 2.0 batch request, an array of {@code aria2.addUri} calls, so a page with a
+ * thousand links costs a handful of HTTP requests instead of a thousand. aria2 answers every call separately; links
+ * it rejects are logged, while a failed request as a whole is reported to the dispatcher.
+ */
+public class Aria2RpcSink implements MagnetSink {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final Pattern ERROR = Pattern.compile("\"error\"\\s*:");
+
+    private static final Logger logger = Logger.getLogger(Aria2RpcSink.class.getName());
+
+    private final HttpClient client;
+    private final URI endpoint;
+    private final String secret;
+    private long nextId;
+
+    /**
+     * Creates a sink for the given endpoint.
+     *
+     * @param endpoint the JSON-RPC endpoint, e.g. {@code http://127.0.0.1:6800/jsonrpc}
+     * @param secret   the RPC secret set with aria2's {@code --rpc-secret}, or {@code null} if none is set
+     */
+    public Aria2RpcSink(URI endpoint, String secret) {
+        this.client = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+        this.endpoint = endpoint;
+        this.secret = secret;
+    }
+
+    @Override
+    public void send(List<MagnetLink> links) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(endpoint)
+                .timeout(TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(batchRequest(links)))
+                .build();
+        HttpResponse<String> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while sending magnet links to " + endpoint);
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("aria2 answered " + response.statusCode() + ": " + response.body());
+        }
+        int errors = 0;
+        Matcher matcher = ERROR.matcher(response.body());
+        while (matcher.find()) {
+            errors++;
+        }
+        if (errors > 0) {
+            logger.log(Level.WARNING, "aria2 rejected " + errors + " of " + links.size() + " magnet links: "
+                    + response.body());
+        }
+    }
+
+    /** Builds the JSON-RPC batch with one {@code aria2.addUri} call per link. */
+    String batchRequest(List<MagnetLink> links) {
+        StringBuilder json = new StringBuilder(links.size() * 160).append('[');
+        for (MagnetLink link : links) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"jsonrpc\":\"2.0\",\"id\":\"").append(nextId++)
+                    .append("\",\"method\":\"aria2.addUri\",\"params\":[");
+            if (secret != null) {
+                Json.appendString(json, "token:" + secret).append(',');
+            }
+            Json.appendString(json.append('['), link.uri()).append("]]}");
+        }
+        return json.append(']').toString();
+    }
+}
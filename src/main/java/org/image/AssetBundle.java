@@ -0,0 +1,272 @@
+package org.image;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Packed bundle of the splash images, built from the Base64 {@code .img} resources at build time.
+ * <p>
+ * The bundle is a single binary file: an index of resource paths with offsets and lengths, followed by the raw image
+ * bytes, a third smaller than their Base64 text. It is loaded once, memory-mapped if it lies in a directory and read
+ * with a single stream if it is packed in a jar, and every image is served as a read-only slice of that one buffer.
+ * <pre>
+ * int     magic "MGAB"
+ * int     number of entries
+ * entries path length (unsigned short), UTF-8 path, offset (int), length (int); offsets count from the end of the index
+ * bytes   the images
+ * </pre>
+ * The build creates it with {@link #main(String[])} in the {@code process-classes} phase, from the images listed in
+ * {@code img/img.properties}; the jar then ships the bundle instead of the text files.
+ */
+public final class AssetBundle {
+
+    /** Classpath location of the bundle. */
+    static final String RESOURCE = "/img/assets.bin";
+
+    private static final int MAGIC = 0x4D474142; // "MGAB"
+    private static final String LIST_FILE = "img.properties";
+
+    private static final Logger logger = Logger.getLogger(AssetBundle.class.getName());
+
+    /** Resource path to the image bytes, in the order of {@code img.properties}. */
+    private final Map<String, ByteBuffer> entries;
+    private final List<String> paths;
+
+    private AssetBundle(Map<String, ByteBuffer> entries) {
+        this.entries = entries;
+        this.paths = List.copyOf(entries.keySet());
+    }
+
+    /** Loads the classpath bundle on first use. */
+    private static final class Classpath {
+        static final AssetBundle BUNDLE = loadClasspath();
+    }
+
+    /**
+     * Returns the bundle on the classpath, loading it on the first call.
+     *
+     * @return the bundle, or {@code null} if there is none or it cannot be read
+     */
+    static AssetBundle classpath() {
+        return Classpath.BUNDLE;
+    }
+
+    private static AssetBundle loadClasspath() {
+        URL url = AssetBundle.class.getResource(RESOURCE);
+        if (url == null) {
+            return null;
+        }
+        try {
+            if (url.getProtocol().equals("file")) {
+                return open(Path.of(url.toURI()));
+            }
+            try (InputStream in = url.openStream()) {
+                return wrap(ByteBuffer.wrap(in.readAllBytes()));
+            }
+        } catch (IOException | URISyntaxException e) {
+            logger.log(Level.WARNING, "Failed to read the asset bundle " + url + ", using the image resources", e);
+            return null;
+        }
+    }
+
+    /**
+     * Opens a bundle file by memory-mapping it.
+     *
+     * @param file the bundle file
+     * @return the bundle
+     * @throws IOException if the file cannot be read or is not a bundle
+     */
+    static AssetBundle open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            // The mapping stays valid after the channel is closed
+            return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads the index of a bundle held in a buffer. The entries are slices of the buffer.
+     *
+     * @param data the bundle
+     * @return the bundle
+     * @throws IOException if the buffer does not hold a valid bundle
+     */
+    static AssetBundle wrap(ByteBuffer data) throws IOException {
+        ByteBuffer in = data.asReadOnlyBuffer();
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not an asset bundle");
+            }
+            int count = in.getInt();
+            if (count < 0) {
+                throw new IOException("Corrupt asset bundle");
+            }
+            String[] names = new String[count];
+            int[] offsets = new int[count];
+            int[] lengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                byte[] path = new byte[Short.toUnsignedInt(in.getShort())];
+                in.get(path);
+                names[i] = new String(path, StandardCharsets.UTF_8);
+                offsets[i] = in.getInt();
+                lengths[i] = in.getInt();
+            }
+            int start = in.position();
+            Map<String, ByteBuffer> entries = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                if (offsets[i] < 0 || lengths[i] < 0 || offsets[i] > in.limit() - start - lengths[i]) {
+                    throw new IOException("Corrupt asset bundle entry " + names[i]);
+                }
+                entries.put(names[i], in.slice(start + offsets[i], lengths[i]));
+            }
+            return new AssetBundle(entries);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException and friends of a truncated index
+            throw new IOException("Corrupt asset bundle", e);
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Public API
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the resource paths of the images, such as {@code /img/1.img}, in the order they were listed.
+     *
+     * @return the paths
+     */
+    List<String> paths() {
+        return paths;
+    }
+
+    /**
+     * Returns the raw bytes of an image, without copying them.
+     *
+     * @param path the resource path of the Base64 image, such as {@code /img/1.img}
+     * @return a read-only buffer of the image bytes, or {@code null} if the bundle does not contain the path
+     */
+    ByteBuffer get(String path) {
+        ByteBuffer entry = entries.get(path);
+        // Callers get their own position and limit, the bytes stay shared
+        return entry == null ? null : entry.duplicate();
+    }
+
+    /**
+     * Returns an input stream over the remaining bytes of a buffer, without copying them.
+     *
+     * @param buffer the buffer; its position is advanced as the stream is read
+     * @return the stream
+     */
+    static InputStream newInputStream(ByteBuffer buffer) {
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!buffer.hasRemaining()) {
+                    return -1;
+                }
+                int count = Math.min(len, buffer.remaining());
+                buffer.get(b, off, count);
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return buffer.remaining();
+            }
+        };
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Packing
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Packs the images of a resource directory into a bundle. Run by the build:
+     * {@code AssetBundle <src/main/resources/img> <target/classes/img/assets.bin>}.
+     *
+     * @param args the image directory and the bundle file
+     * @throws IOException if an image cannot be read or the bundle cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: AssetBundle <image directory> <bundle file>");
+        }
+        Path directory = Path.of(args[0]);
+        Path output = Path.of(args[1]);
+        pack(directory, output);
+        logger.log(Level.FINE, "Packed " + directory + " into " + output + " (" + Files.size(output) + " bytes)");
+    }
+
+    /**
+     * Packs the Base64 images listed in {@code img.properties} of a directory into a bundle file, under their
+     * resource paths {@code /img/<name>}.
+     *
+     * @param directory the image directory
+     * @param output    the bundle file, replaced atomically
+     * @throws IOException if an image cannot be read or is not valid Base64, or the bundle cannot be written
+     */
+    static void pack(Path directory, Path output) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(directory.resolve(LIST_FILE), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    names.add(line.strip());
+                }
+            }
+        }
+
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        ByteArrayOutputStream images = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(index);
+        out.writeInt(MAGIC);
+        out.writeInt(names.size());
+        for (String name : names) {
+            byte[] image;
+            try (InputStream in = Base64.getMimeDecoder().wrap(Files.newInputStream(directory.resolve(name)))) {
+                image = in.readAllBytes();
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid Base64 in " + directory.resolve(name), e);
+            }
+            byte[] path = ("/img/" + name).getBytes(StandardCharsets.UTF_8);
+            out.writeShort(path.length);
+            out.write(path);
+            out.writeInt(images.size());
+            out.writeInt(image.length);
+            images.write(image);
+        }
+
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        Path temp = output.resolveSibling(output.getFileName() + ".tmp");
+        try (var file = Files.newOutputStream(temp)) {
+            index.writeTo(file);
+            images.writeTo(file);
+        }
+        Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
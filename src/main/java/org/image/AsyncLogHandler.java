@@ -0,0 +1,193 @@
+package org.image;
+
+import javax.swing.*;
+import javax.swing.text.Element;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Logging handler that shows the records in a text area without ever blocking the threads that log.
+ * <p>
+ * {@link #publish(LogRecord)} only puts the record into a bounded ring buffer. Like {@link MagnetLinkListModel}, the
+ * buffer is drained on the event dispatch thread at most once per frame and {@value #MAX_BATCH} records at a time: the
+ * batch is formatted there and appended to the document in one edit, with one caret update. The document is capped at
+ * a number of lines; once it exceeds them, its oldest lines are removed down to half the cap.
+ * <p>
+ * When the buffer is full, because the records arrive faster than the event dispatch thread can show them, new records
+ * are dropped and counted. The next batch ends with a line giving the number of records lost, and the total is
+ * exported as {@code magnetgrab_log_records_dropped_total}. Records are formatted after they were logged, so their
+ * parameters should not be mutated afterwards, as for any deferred handler such as {@code MemoryHandler}.
+ */
+public class AsyncLogHandler extends Handler {
+
+    /**
+     * Default capacity of the ring buffer: 0.65 s of records at 100k records per second, so that the event dispatch
+     * thread can be held up by a GC pause or a busy machine for well over the few frames it needs to drain them.
+     */
+    public static final int DEFAULT_CAPACITY = 65_536;
+    /** Default number of lines the document holds at most. */
+    public static final int DEFAULT_MAX_LINES = 10_000;
+
+    /** Most records shown per frame; each takes a few microseconds to format and append. */
+    static final int MAX_BATCH = 4_096;
+    /** Line appended to a batch after records were dropped. */
+    static final String DROPPED_NOTICE = "... %d log records dropped%n";
+
+    private final JTextArea textArea;
+    private final int maxLines;
+    /** Records handed over by the logging threads, not yet shown. */
+    private final BlockingQueue<LogRecord> pending;
+    /** Whether a drain has been scheduled and has not started yet. */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Timer drainTimer;
+    /** Records dropped since the handler was created. */
+    private final AtomicLong dropped = new AtomicLong();
+    /** Dropped records already reported in the document; only accessed on the event dispatch thread. */
+    private long reported;
+    /** Records taken from the buffer; only written on the event dispatch thread. */
+    private volatile long delivered;
+    private volatile boolean closed;
+
+    /**
+     * Creates a handler with the default capacity and document size.
+     *
+     * @param textArea the text area to append to
+     */
+    public AsyncLogHandler(JTextArea textArea) {
+        this(textArea, DEFAULT_CAPACITY, DEFAULT_MAX_LINES);
+    }
+
+    /**
+     * Creates a handler. Records are formatted with a {@link SimpleFormatter} unless another formatter is set.
+     *
+     * @param textArea the text area to append to
+     * @param capacity the number of records the buffer holds before it drops new ones
+     * @param maxLines the number of lines the document holds at most
+     */
+    public AsyncLogHandler(JTextArea textArea, int capacity, int maxLines) {
+        if (maxLines <= 0) {
+            throw new IllegalArgumentException("Invalid number of lines: " + maxLines);
+        }
+        this.textArea = textArea;
+        this.maxLines = maxLines;
+        this.pending = new ArrayBlockingQueue<>(capacity);
+        drainTimer = new Timer(MagnetLinkListModel.FRAME_MILLIS, e -> drain());
+        drainTimer.setRepeats(false);
+        setFormatter(new SimpleFormatter());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Handler
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Queues a record to be shown with the next batch, or drops it if the buffer is full. Never blocks.
+     *
+     * @param record the record
+     */
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        if (!pending.offer(record)) {
+            dropped.incrementAndGet();
+            Metrics.LOG_RECORDS_DROPPED.increment();
+        }
+        // Reset by drain() before it empties the buffer, so a record queued during a drain schedules the next one
+        if (drainScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(drainTimer::start);
+        }
+    }
+
+    /**
+     * Shows the queued records on the event dispatch thread as soon as possible, without waiting for the next frame.
+     */
+    @Override
+    public void flush() {
+        SwingUtilities.invokeLater(this::drain);
+    }
+
+    /**
+     * Stops accepting records; the queued ones are still shown.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flush();
+    }
+
+    /**
+     * Returns the number of records dropped because the buffer was full.
+     *
+     * @return the number of dropped records
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of records taken from the buffer and appended to the document.
+     */
+    long getDeliveredCount() {
+        return delivered;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Event dispatch thread
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Appends up to {@value #MAX_BATCH} queued records to the document in one edit and trims it to its line limit.
+     * Must be called on the event dispatch thread; it runs by itself one frame after a record has been queued.
+     *
+     * @return the number of records taken from the buffer
+     */
+    int drain() {
+        drainScheduled.set(false);
+        List<LogRecord> batch = new ArrayList<>(Math.min(pending.size(), MAX_BATCH));
+        pending.drainTo(batch, MAX_BATCH);
+        if (!pending.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+            // The rest goes with the next frame, so the EDT gets to paint in between; the timer cannot be restarted
+            // from its own action
+            SwingUtilities.invokeLater(drainTimer::start);
+        }
+        long lost = dropped.get() - reported;
+        if (batch.isEmpty() && lost == 0) {
+            return 0;
+        }
+        reported += lost;
+        delivered += batch.size();
+
+        StringBuilder text = new StringBuilder();
+        for (LogRecord record : batch) {
+            try {
+                text.append(getFormatter().format(record));
+            } catch (RuntimeException e) {
+                reportError(null, e, ErrorManager.FORMAT_FAILURE);
+            }
+        }
+        if (lost > 0) {
+            text.append(String.format(DROPPED_NOTICE, lost));
+        }
+        textArea.append(text.toString());
+
+        Element root = textArea.getDocument().getDefaultRootElement();
+        // Formatted records end with a line separator, which leaves an empty last element
+        int lines = root.getElementCount() - 1;
+        if (lines > maxLines) {
+            // Removing lines costs time in the size of the document, so half of it goes at once
+            textArea.replaceRange(null, 0, root.getElement(lines - maxLines / 2 - 1).getEndOffset());
+        }
+        textArea.setCaretPosition(textArea.getDocument().getLength());
+        return batch.size();
+    }
+}
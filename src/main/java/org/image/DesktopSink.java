@@ -0,0 +1,101 @@
+package org.image;
+
+import java.awt.Desktop;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Opens magnet links with the desktop's default torrent client, via {@link Desktop#browse(java.net.URI)}.
+ * <p>
+ * On Linux every {@code browse} call starts an external handler process ({@code xdg-open} and the client itself), so
+ * the calls are spaced to at most a fixed number per second. Together with the dispatcher's bounded queue this keeps
+ * a page with a thousand links from forking a thousand processes at once.
+ * <p>
+ * A desktop that cannot open links fails the whole batch; links that {@code browse} rejects fail on their own and are
+ * reported to the dispatcher with a {@link PartialSendException}, after the rest of the batch has been opened.
+ */
+public class DesktopSink implements MagnetSink {
+
+    /** Default number of links opened per second, overridable with -Dmagnetgrab.dispatch.rate. */
+    public static final double DEFAULT_LINKS_PER_SECOND = 4;
+
+    private final Supplier<Desktop> desktop;
+    private final long intervalNanos;
+    private long nextSlot = System.nanoTime();
+
+    /**
+     * Creates a sink for the desktop of this session.
+     *
+     * @param linksPerSecond the maximum number of links opened per second
+     */
+    public DesktopSink(double linksPerSecond) {
+        this(Desktop::getDesktop, linksPerSecond);
+    }
+
+    /**
+     * Creates a sink for the given desktop.
+     *
+     * @param desktop        supplies the desktop; looked up on every batch, as it is unavailable in headless sessions
+     * @param linksPerSecond the maximum number of links opened per second
+     * @throws IllegalArgumentException if the rate is not positive
+     */
+    DesktopSink(Supplier<Desktop> desktop, double linksPerSecond) {
+        if (!(linksPerSecond > 0)) {
+            throw new IllegalArgumentException("Rate must be positive: " + linksPerSecond);
+        }
+        this.desktop = desktop;
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / linksPerSecond);
+    }
+
+    @Override
+    public void send(List<MagnetLink> links) throws IOException {
+        Desktop current;
+        try {
+            current = desktop.get();
+        } catch (RuntimeException e) {
+            // HeadlessException or UnsupportedOperationException
+            throw new IOException("The desktop is not available to open magnet links", e);
+        }
+        if (!current.isSupported(Desktop.Action.BROWSE)) {
+            throw new IOException("The desktop cannot open magnet links");
+        }
+        int failed = 0;
+        Exception firstFailure = null;
+        for (MagnetLink link : links) {
+            awaitSlot();
+            try {
+                current.browse(new URI(link.uri()));
+            } catch (IOException | URISyntaxException | RuntimeException e) {
+                // Usually no application is set to handle magnet links; the other links are still tried
+                failed++;
+                if (firstFailure == null) {
+                    firstFailure = e;
+                }
+            }
+        }
+        if (failed > 0) {
+            throw new PartialSendException("Failed to open " + failed + " of " + links.size()
+                    + " magnet links; check that a default application is set to handle them", failed, firstFailure);
+        }
+    }
+
+    /** Waits until the next link may be opened. */
+    private void awaitSlot() throws InterruptedIOException {
+        long now = System.nanoTime();
+        if (nextSlot - now > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(nextSlot - now);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to open a magnet link");
+            }
+            now = nextSlot;
+        }
+        nextSlot = now + intervalNanos;
+    }
+}
@@ -0,0 +1,23 @@
+package org.image;
+
+/**
+ * Black-and-white effects of {@link ImgProcessor#applyEffect}. Brightness is the Rec. 601 luma of the
+ * color, {@code 0.299 R + 0.587 G + 0.114 B}.
+ */
+public enum Effect {
+
+    /** Shades of gray, from the luma of each pixel. */
+    GRAYSCALE,
+
+    /** Pure black and white: white where the luma is at least half the range, black elsewhere. */
+    THRESHOLD,
+
+    /**
+     * Pure black and white with the shades kept as patterns, by ordered dithering with an 8 × 8 Bayer matrix. Unlike
+     * error diffusion, every pixel depends only on its own color and position, so tiles are independent.
+     */
+    DITHER,
+
+    /** Warm brown monochrome: the classic sepia tone matrix, clamped to the color range. */
+    SEPIA
+}
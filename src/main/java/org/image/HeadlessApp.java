@@ -0,0 +1,139 @@
+package org.image;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Headless batch entry point for cron jobs and containers: extracts the magnet links of the given pages and streams
+ * them to stdout as NDJSON, one JSON object per line.
+ * <p>
+ * Unlike {@link App}, it picks no splash image and never touches AWT or Swing, so it needs no display and starts
+ * extracting right away. Pages are taken from the arguments or, if there are none, one per line from stdin, and are
+ * processed in order. The magnet store, the page cache and the link event log are used like in the window; links are
+ * only handed to a torrent client if {@code -Dmagnetgrab.dispatch} names a watch directory or an aria2 endpoint. Log
+ * output goes to stderr and the log file.
+ * <p>
+ * Output records:
+ * <pre>
+ * {"type":"link","number":1,"link":"magnet:?...","infoHash":"...","name":"...","source":"https://...","seenBefore":false}
+ * {"type":"page","url":"https://...","links":25,"millis":412}
+ * {"type":"error","url":"https://...","message":"HTTP error fetching URL. Status=404, ..."}
+ * </pre>
+ * The exit status is 0 if every page could be read, 1 if some could not and 2 if no page was given.
+ * <pre>
+ * java -cp 25H1MagnetGrabber.jar org.image.HeadlessApp https://xxxtor.com/ https://xxxtor.com/top/
+ * </pre>
+ */
+public class HeadlessApp {
+
+    private static final Logger logger = Logger.getLogger(HeadlessApp.class.getName());
+
+    private HeadlessApp() {
+    }
+
+    /**
+     * Runs the headless extraction and exits with its status.
+     *
+     * @param args the page URLs; read from stdin if empty
+     * @throws IOException if stdin cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        // Keeps anything that does reach for AWT from opening a display
+        System.setProperty("java.awt.headless", "true");
+        List<String> urls = args.length > 0 ? List.of(args) : readUrls();
+        App.openMagnetStore(MagnetStore.defaultDirectory());
+        App.openPageCache(PageCache.defaultDirectory());
+        App.openLinkEventLog(LinkEventLog.defaultDirectory());
+        App.openLinkFilter(LinkFilter.defaultFile());
+        App.startMetricsEndpoint(Integer.getInteger("magnetgrab.metrics.port"));
+        String dispatch = System.getProperty("magnetgrab.dispatch");
+        if (dispatch != null && !dispatch.equals("desktop")) {
+            App.openMagnetDispatcher(dispatch);
+        } else {
+            LinkParser.setMagnetLinkOpener(link -> { });
+        }
+
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8)));
+        int status = run(urls, out);
+        out.flush();
+        System.exit(status);
+    }
+
+    /** Reads one URL per non-blank line of stdin. */
+    private static List<String> readUrls() throws IOException {
+        List<String> urls = new ArrayList<>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!line.isBlank()) {
+                urls.add(line.strip());
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Extracts the magnet links of the given pages, in order, and writes the NDJSON records. Every record is flushed
+     * as soon as it is written.
+     *
+     * @param urls the page URLs
+     * @param out  the output
+     * @return the exit status
+     */
+    static int run(List<String> urls, PrintWriter out) {
+        if (urls.isEmpty()) {
+            logger.log(Level.SEVERE, "No URLs given; pass them as arguments or one per line on stdin");
+            return 2;
+        }
+        Consumer<String> emit = record -> {
+            synchronized (out) {
+                out.println(record);
+                out.flush();
+            }
+        };
+        LinkParser.setFoundLinkListener(event -> {
+            StringBuilder json = new StringBuilder(event.link().uri().length() + 160).append('{');
+            emit.accept(event.appendJsonMembers(json).append('}').toString());
+        });
+        int status = 0;
+        try {
+            for (String url : urls) {
+                long start = System.nanoTime();
+                StringBuilder json = new StringBuilder().append('{');
+                try {
+                    int links = LinkParser.scanPage(url, link -> LinkParser.processMagnetLink(link, url), null);
+                    Json.appendMember(json, "type", "page");
+                    Json.appendMember(json, "url", url);
+                    Json.appendMember(json, "links", links);
+                    Json.appendMember(json, "millis", (System.nanoTime() - start) / 1_000_000);
+                } catch (IOException | IllegalArgumentException e) {
+                    Metrics.PAGE_FAILURES.increment();
+                    logger.log(Level.WARNING, "Failed to read " + url, e);
+                    Json.appendMember(json, "type", "error");
+                    Json.appendMember(json, "url", url);
+                    Json.appendMember(json, "message", String.valueOf(e.getMessage()));
+                    status = 1;
+                } finally {
+                    Metrics.PAGE.recordSince(start);
+                }
+                emit.accept(json.append('}').toString());
+            }
+        } finally {
+            LinkParser.setFoundLinkListener(null);
+        }
+        return status;
+    }
+}
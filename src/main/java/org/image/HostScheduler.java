@@ -0,0 +1,280 @@
+package org.image;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Per-host politeness for the page fetches of the process.
+ * <p>
+ * Every request to a host first takes a permit from the host's queue. A permit is granted when three budgets allow
+ * it:
+ * <ul>
+ *     <li>a token bucket: the host gets a number of requests per second, and may use up a burst of them at once after
+ *     it has been idle,</li>
+ *     <li>a maximum number of requests in flight, counted until the response body has been read or closed,</li>
+ *     <li>a pause set from the {@code Retry-After} header of a 429 or 503 response, during which no request is
+ *     sent.</li>
+ * </ul>
+ * Requests to one host are granted in the order they asked; a request waiting for a busy or paused host holds nothing
+ * but its own thread, so requests to other hosts go on at their own rate. Hosts are told apart by host name and the
+ * port if the URL names one; their state is kept for the lifetime of the scheduler.
+ * <p>
+ * Waiting for a permit is interruptible, so a cancelled {@link ParseSession} does not linger in a host's queue.
+ */
+public class HostScheduler {
+
+    /** Default number of requests per second to one host, overridable with -Dmagnetgrab.host.rate. */
+    public static final double DEFAULT_REQUESTS_PER_SECOND = 4;
+    /** Default number of requests sent at once to an idle host, overridable with -Dmagnetgrab.host.burst. */
+    public static final int DEFAULT_BURST = 8;
+    /** Default maximum number of requests in flight to one host, overridable with -Dmagnetgrab.host.maxInFlight. */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+    /** Longest pause a Retry-After header may impose on a host. */
+    static final Duration MAX_PAUSE = Duration.ofMinutes(5);
+
+    private static final Logger logger = Logger.getLogger(HostScheduler.class.getName());
+
+    private final double tokensPerNano;
+    private final int burst;
+    private final int maxInFlight;
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a scheduler giving every host the same budget.
+     *
+     * @param requestsPerSecond the sustained number of requests per second to one host
+     * @param burst             the number of requests that may be sent at once to an idle host
+     * @param maxInFlight       the maximum number of requests in flight to one host
+     * @throws IllegalArgumentException if a limit is not positive
+     */
+    public HostScheduler(double requestsPerSecond, int burst, int maxInFlight) {
+        if (!(requestsPerSecond > 0) || burst < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("Invalid host limits: rate " + requestsPerSecond + ", burst " + burst
+                    + ", in flight " + maxInFlight);
+        }
+        this.tokensPerNano = requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Creates a scheduler with the limits set by {@code -Dmagnetgrab.host.rate}, {@code -Dmagnetgrab.host.burst} and
+     * {@code -Dmagnetgrab.host.maxInFlight}, or the defaults if they are not set or not valid.
+     *
+     * @return the scheduler
+     */
+    static HostScheduler configured() {
+        try {
+            return new HostScheduler(
+                    Double.parseDouble(System.getProperty("magnetgrab.host.rate",
+                            Double.toString(DEFAULT_REQUESTS_PER_SECOND))),
+                    Integer.getInteger("magnetgrab.host.burst", DEFAULT_BURST),
+                    Integer.getInteger("magnetgrab.host.maxInFlight", DEFAULT_MAX_IN_FLIGHT));
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Invalid host limits, using the defaults", e);
+            return new HostScheduler(DEFAULT_REQUESTS_PER_SECOND, DEFAULT_BURST, DEFAULT_MAX_IN_FLIGHT);
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Public API
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Waits until a request to the host of the URI may be sent and takes a permit for it.
+     *
+     * @param uri the URI about to be requested
+     * @return the permit; must be closed once the response has been read, or the request failed
+     * @throws InterruptedException if interrupted while waiting; no permit is held then
+     */
+    public Permit acquire(URI uri) throws InterruptedException {
+        Host host = hosts.computeIfAbsent(key(uri), key -> new Host(burst));
+        Object turn = new Object();
+        host.lock.lockInterruptibly();
+        try {
+            host.waiting.add(turn);
+            try {
+                while (true) {
+                    long waitNanos = host.waiting.peek() == turn && host.inFlight < maxInFlight
+                            ? host.nanosUntilToken(System.nanoTime(), tokensPerNano, burst) : Long.MAX_VALUE;
+                    if (waitNanos <= 0) {
+                        host.tokens -= 1;
+                        host.inFlight++;
+                        return new Permit(host);
+                    }
+                    if (waitNanos == Long.MAX_VALUE) {
+                        host.changed.await();
+                    } else {
+                        host.changed.awaitNanos(waitNanos);
+                    }
+                }
+            } finally {
+                host.waiting.remove(turn);
+                // The next request in line may be able to go now, or may have to take over an abandoned turn
+                host.changed.signalAll();
+            }
+        } finally {
+            host.lock.unlock();
+        }
+    }
+
+    /**
+     * Stops sending requests to the host of the URI for the given time, e.g. as asked by a Retry-After header.
+     * Requests already in flight are not affected; a shorter pause does not cut a longer one short.
+     *
+     * @param uri   a URI of the host
+     * @param delay the pause, capped at {@link #MAX_PAUSE}
+     */
+    public void pause(URI uri, Duration delay) {
+        Host host = hosts.computeIfAbsent(key(uri), key -> new Host(burst));
+        long nanos = Math.min(delay.toNanos(), MAX_PAUSE.toNanos());
+        host.lock.lock();
+        try {
+            long until = System.nanoTime() + nanos;
+            if (until - host.pausedUntil > 0) {
+                host.pausedUntil = until;
+            }
+            host.changed.signalAll();
+        } finally {
+            host.lock.unlock();
+        }
+        logger.log(Level.INFO, "Pausing requests to " + key(uri) + " for " + TimeUnit.NANOSECONDS.toMillis(nanos)
+                + " ms");
+    }
+
+    /**
+     * Parses a Retry-After header value: a number of seconds or an HTTP date.
+     *
+     * @param value     the header value
+     * @param nowMillis the current time, in milliseconds since the epoch
+     * @return the delay, zero for a date in the past, or {@code null} if the value is neither
+     */
+    static Duration parseRetryAfter(String value, long nowMillis) {
+        String trimmed = value.strip();
+        if (!trimmed.isEmpty() && trimmed.chars().allMatch(c -> c >= '0' && c <= '9')) {
+            // Anything longer than 18 digits is far beyond the pause cap anyway
+            return trimmed.length() > 18 ? MAX_PAUSE : Duration.ofSeconds(Long.parseLong(trimmed));
+        }
+        try {
+            long millis = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Duration.ofMillis(Math.max(0, millis - nowMillis));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /** The key of the host of a URI: the lowercase host name, with the port if one is given. */
+    private static String key(URI uri) {
+        String host = uri.getHost() != null ? uri.getHost().toLowerCase(Locale.ROOT) : "";
+        return uri.getPort() >= 0 ? host + ":" + uri.getPort() : host;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Hosts and permits
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /** The budget of one host; all fields are guarded by the lock. */
+    private static final class Host {
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition changed = lock.newCondition();
+        /** Turns of the requests waiting for a permit, in the order they asked. */
+        final Queue<Object> waiting = new ArrayDeque<>();
+        double tokens;
+        long refilledAt = System.nanoTime();
+        long pausedUntil = refilledAt;
+        int inFlight;
+
+        Host(int burst) {
+            tokens = burst;
+        }
+
+        /** Refills the bucket and returns how long to wait for a token and the end of a pause; 0 or less if none. */
+        long nanosUntilToken(long now, double tokensPerNano, int burst) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+            long tokenWait = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+            return Math.max(tokenWait, pausedUntil - now);
+        }
+    }
+
+    /**
+     * The right to have one request in flight to a host. Closing it more than once has no further effect.
+     */
+    public static final class Permit implements AutoCloseable {
+        private final Host host;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Host host) {
+            this.host = host;
+        }
+
+        /**
+         * Wraps a response body so that the permit is closed when the body is closed or read to its end.
+         *
+         * @param body the response body
+         * @return the wrapping stream
+         */
+        public InputStream releaseOnClose(InputStream body) {
+            return new FilterInputStream(body) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b < 0) {
+                        Permit.this.close();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int count = super.read(buffer, offset, length);
+                    if (count < 0) {
+                        Permit.this.close();
+                    }
+                    return count;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        Permit.this.close();
+                    }
+                }
+            };
+        }
+
+        /** Ends the request, letting the next one to the host go. */
+        @Override
+        public void close() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            host.lock.lock();
+            try {
+                host.inFlight--;
+                host.changed.signalAll();
+            } finally {
+                host.lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Engine of the black-and-white {@link Effect}s.
+ * <p>
+ * Any number of effects are applied in one pass over the source: the image is split into tiles of rows that are
+ * processed in parallel by the common fork-join pool, and each tile reads every source row once and computes the row
+ * of every requested effect from it. The effects of a tile are computed into small {@code int} buffers and copied into
+ * the results with {@code setDataElements}, so no full-size intermediate array is ever allocated.
+ * <p>
+ * {@code TYPE_INT_RGB}, {@code TYPE_INT_ARGB} and {@code TYPE_3BYTE_BGR} sources are read straight from their data
+ * arrays; anything else row by row with {@code getRGB}. The results are {@code TYPE_INT_RGB}; alpha is dropped.
+ */
+final class ImageEffects {
+
+    /** Source pixels per fork-join task. */
+    private static final int TILE_PIXELS = 1 << 15;
+
+    /** 8 × 8 Bayer matrix, row by row: the order in which a growing share of pixels turns white. */
+    private static final int[] BAYER = {
+            0, 32, 8, 40, 2, 34, 10, 42,
+            48, 16, 56, 24, 50, 18, 58, 26,
+            12, 44, 4, 36, 14, 46, 6, 38,
+            60, 28, 52, 20, 62, 30, 54, 22,
+            3, 35, 11, 43, 1, 33, 9, 41,
+            51, 19, 59, 27, 49, 17, 57, 25,
+            15, 47, 7, 39, 13, 45, 5, 37,
+            63, 31, 55, 23, 61, 29, 53, 21
+    };
+
+    /** Luma a pixel needs to be white, scaled by 128, per Bayer matrix cell: {@code (2 t + 1) 255}. */
+    private static final int[] DITHER_THRESHOLDS = new int[BAYER.length];
+
+    static {
+        for (int i = 0; i < BAYER.length; i++) {
+            DITHER_THRESHOLDS[i] = (2 * BAYER[i] + 1) * 255;
+        }
+    }
+
+    private ImageEffects() {
+    }
+
+    /**
+     * Applies effects to an image.
+     *
+     * @param source  the image; only read, so it may be shared with other threads that read it
+     * @param effects the effects
+     * @return a new {@code TYPE_INT_RGB} image of the source size per effect, in the order of {@code effects}
+     */
+    static BufferedImage[] apply(BufferedImage source, Effect... effects) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        WritableRaster[] targets = new WritableRaster[effects.length];
+        BufferedImage[] results = new BufferedImage[effects.length];
+        for (int e = 0; e < effects.length; e++) {
+            results[e] = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            targets[e] = results[e].getRaster();
+        }
+        if (effects.length > 0) {
+            ForkJoinPool.commonPool().invoke(new EffectTask(Rows.of(source), width, effects.clone(), targets,
+                    0, height, Math.max(1, TILE_PIXELS / width)));
+        }
+        return results;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Source access
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /** Rows of an image as ARGB pixels; the alpha byte is undefined. */
+    private interface Rows {
+
+        /** Reads row {@code y} into {@code row}. Called concurrently for different rows. */
+        void read(int y, int[] row);
+
+        /** Chooses the fastest way to read the given image. */
+        static Rows of(BufferedImage source) {
+            Raster raster = source.getRaster();
+            int type = source.getType();
+            int width = source.getWidth();
+            if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                    && raster.getDataBuffer() instanceof DataBufferInt data
+                    && raster.getSampleModel() instanceof SinglePixelPackedSampleModel model) {
+                int[] pixels = data.getData();
+                int offset = data.getOffset() + model.getOffset(-raster.getSampleModelTranslateX(),
+                        -raster.getSampleModelTranslateY());
+                int stride = model.getScanlineStride();
+                return (y, row) -> System.arraycopy(pixels, offset + y * stride, row, 0, width);
+            }
+            if (type == BufferedImage.TYPE_3BYTE_BGR
+                    && raster.getDataBuffer() instanceof DataBufferByte data
+                    && raster.getSampleModel() instanceof ComponentSampleModel model) {
+                byte[] bytes = data.getData();
+                int x0 = -raster.getSampleModelTranslateX();
+                int y0 = -raster.getSampleModelTranslateY();
+                int red = data.getOffset() + model.getOffset(x0, y0, 0);
+                int green = data.getOffset() + model.getOffset(x0, y0, 1);
+                int blue = data.getOffset() + model.getOffset(x0, y0, 2);
+                int pixelStride = model.getPixelStride();
+                int stride = model.getScanlineStride();
+                return (y, row) -> {
+                    for (int x = 0, i = y * stride; x < width; x++, i += pixelStride) {
+                        row[x] = (bytes[i + red] & 0xFF) << 16 | (bytes[i + green] & 0xFF) << 8
+                                | bytes[i + blue] & 0xFF;
+                    }
+                };
+            }
+            return (y, row) -> source.getRGB(0, y, width, 1, row, 0, width);
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Effects
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /** Applies all effects to a tile of rows. */
+    private static final class EffectTask extends RecursiveAction {
+        private final Rows rows;
+        private final int width;
+        private final Effect[] effects;
+        private final WritableRaster[] targets;
+        private final int from;
+        private final int to;
+        private final int rowsPerTile;
+
+        EffectTask(Rows rows, int width, Effect[] effects, WritableRaster[] targets, int from, int to,
+                   int rowsPerTile) {
+            this.rows = rows;
+            this.width = width;
+            this.effects = effects;
+            this.targets = targets;
+            this.from = from;
+            this.to = to;
+            this.rowsPerTile = rowsPerTile;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > rowsPerTile) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new EffectTask(rows, width, effects, targets, from, middle, rowsPerTile),
+                        new EffectTask(rows, width, effects, targets, middle, to, rowsPerTile));
+                return;
+            }
+            int[] row = new int[width];
+            int[][] tiles = new int[effects.length][width * (to - from)];
+            for (int y = from; y < to; y++) {
+                rows.read(y, row);
+                int offset = (y - from) * width;
+                for (int e = 0; e < effects.length; e++) {
+                    int[] tile = tiles[e];
+                    switch (effects[e]) {
+                        case GRAYSCALE -> grayscale(row, width, tile, offset);
+                        case THRESHOLD -> threshold(row, width, tile, offset);
+                        case DITHER -> dither(row, width, y, tile, offset);
+                        case SEPIA -> sepia(row, width, tile, offset);
+                    }
+                }
+            }
+            // Disjoint tiles of the rasters, so the copies do not interfere
+            for (int e = 0; e < effects.length; e++) {
+                targets[e].setDataElements(0, from, width, to - from, tiles[e]);
+            }
+        }
+    }
+
+    /** Rec. 601 luma of an RGB pixel, 0 to 255. */
+    private static int luma(int rgb) {
+        return (77 * ((rgb >> 16) & 0xFF) + 150 * ((rgb >> 8) & 0xFF) + 29 * (rgb & 0xFF) + 128) >> 8;
+    }
+
+    private static void grayscale(int[] row, int width, int[] out, int offset) {
+        for (int x = 0; x < width; x++) {
+            out[offset + x] = luma(row[x]) * 0x010101;
+        }
+    }
+
+    private static void threshold(int[] row, int width, int[] out, int offset) {
+        for (int x = 0; x < width; x++) {
+            // -1 for white and 0 for black, without a branch
+            out[offset + x] = ((127 - luma(row[x])) >> 31) & 0xFFFFFF;
+        }
+    }
+
+    private static void dither(int[] row, int width, int y, int[] out, int offset) {
+        int cells = (y & 7) << 3;
+        for (int x = 0; x < width; x++) {
+            out[offset + x] = ((DITHER_THRESHOLDS[cells | (x & 7)] - 1 - (luma(row[x]) << 7)) >> 31) & 0xFFFFFF;
+        }
+    }
+
+    private static void sepia(int[] row, int width, int[] out, int offset) {
+        for (int x = 0; x < width; x++) {
+            int rgb = row[x];
+            int r = (rgb >> 16) & 0xFF;
+            int g = (rgb >> 8) & 0xFF;
+            int b = rgb & 0xFF;
+            // Coefficients of the sepia matrix in 10-bit fixed point
+            int sr = Math.min(255, (402 * r + 787 * g + 194 * b + 512) >> 10);
+            int sg = Math.min(255, (357 * r + 702 * g + 172 * b + 512) >> 10);
+            int sb = Math.min(255, (279 * r + 547 * g + 134 * b + 512) >> 10);
+            out[offset + x] = sr << 16 | sg << 8 | sb;
+        }
+    }
+}
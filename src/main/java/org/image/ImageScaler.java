@@ -0,0 +1,345 @@
+package org.image;
+
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Downscaling engine for preview images.
+ * <p>
+ * Scaling is progressive and runs over plain {@code int} ARGB arrays:
+ * <ol>
+ *     <li>box filter steps, each averaging blocks of up to 16 × 16 pixels into one, until the image is less than twice
+ *     the target size. A step over a 2<sup>k</sup> × 2<sup>m</sup> block gives the same result as halving the image
+ *     k and m times, but reads its input only once; in practice the first step, straight from the source raster, is
+ *     the only one;</li>
+ *     <li>a bilinear step for the remaining factor, which is below 2 and therefore does not alias.</li>
+ * </ol>
+ * Every step splits its output into tiles of rows that are processed in parallel by the common fork-join pool.
+ * {@code TYPE_INT_RGB}, {@code TYPE_INT_ARGB_PRE} and {@code TYPE_3BYTE_BGR} sources, the latter being what JPEGs
+ * decode to, are read straight from their data arrays; anything else, including {@code TYPE_CUSTOM}, row by row with
+ * {@code getRGB}. The result is always {@code TYPE_INT_RGB}, or {@code TYPE_INT_ARGB_PRE} if the source has alpha;
+ * colors are averaged premultiplied, so transparent pixels do not bleed into their neighbours.
+ */
+final class ImageScaler {
+
+    /** Output pixels per fork-join task. */
+    private static final int TILE_PIXELS = 1 << 15;
+    /**
+     * Largest reduction of one box step per direction, as a power of two. Sums of 16 × 16 8-bit samples fit the 16 bits
+     * each channel gets in the packed accumulators.
+     */
+    private static final int MAX_STEP_SHIFT = 4;
+
+    private ImageScaler() {
+    }
+
+    /**
+     * Scales an image down to the given size.
+     *
+     * @param source       the image
+     * @param targetWidth  the width of the result, at most the source width
+     * @param targetHeight the height of the result, at most the source height
+     * @return a new image in {@code TYPE_INT_RGB} or {@code TYPE_INT_ARGB_PRE}
+     * @throws IllegalArgumentException if the target size is not positive or larger than the source
+     */
+    static BufferedImage scale(BufferedImage source, int targetWidth, int targetHeight) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (targetWidth <= 0 || targetHeight <= 0 || targetWidth > width || targetHeight > height) {
+            throw new IllegalArgumentException("Cannot scale " + width + "x" + height + " to "
+                    + targetWidth + "x" + targetHeight);
+        }
+        boolean alpha = source.getColorModel().getTransparency() != Transparency.OPAQUE;
+
+        int shiftX = 0;
+        while ((width >> (shiftX + 1)) >= targetWidth) {
+            shiftX++;
+        }
+        int shiftY = 0;
+        while ((height >> (shiftY + 1)) >= targetHeight) {
+            shiftY++;
+        }
+        Rows rows = Rows.of(source, alpha);
+        int[] box = null;
+        do {
+            int stepX = Math.min(shiftX, MAX_STEP_SHIFT);
+            int stepY = Math.min(shiftY, MAX_STEP_SHIFT);
+            width >>= stepX;
+            height >>= stepY;
+            box = new int[width * height];
+            ForkJoinPool.commonPool().invoke(new BoxTask(rows, stepX, stepY, box, width,
+                    0, height, Math.max(1, TILE_PIXELS / width)));
+            rows = new IntRows(box, 0, width, false);
+            shiftX -= stepX;
+            shiftY -= stepY;
+        } while (shiftX > 0 || shiftY > 0);
+
+        int[] target;
+        if (width == targetWidth && height == targetHeight) {
+            target = box;
+        } else {
+            target = new int[targetWidth * targetHeight];
+            ForkJoinPool.commonPool().invoke(new BilinearTask(box, width, height, target, targetWidth,
+                    targetHeight, 0, targetHeight, Math.max(1, TILE_PIXELS / targetWidth)));
+        }
+
+        BufferedImage result = new BufferedImage(targetWidth, targetHeight,
+                alpha ? BufferedImage.TYPE_INT_ARGB_PRE : BufferedImage.TYPE_INT_RGB);
+        // setDataElements copies, so the result stays eligible for Java2D's accelerated caching
+        result.getRaster().setDataElements(0, 0, targetWidth, targetHeight, target);
+        return result;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Source access
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Rows of an image, added into packed per-channel sums: alpha and green in the upper and lower 16 bits of one int,
+     * red and blue in those of another. Colors are premultiplied if the image has alpha.
+     */
+    private interface Rows {
+
+        /**
+         * Adds row {@code y} into the sums of {@code blocks} blocks of 2^shiftX pixels; pixels past the last block are
+         * left out. Called concurrently for different rows.
+         *
+         * @param row scratch space of the image width, owned by the calling task
+         */
+        void accumulate(int y, int blocks, int shiftX, int[] ag, int[] rb, int[] row);
+
+        /** Chooses the fastest way to read the given image. */
+        static Rows of(BufferedImage source, boolean alpha) {
+            // Reading the data arrays directly stops Java2D from caching the source in video memory, which does not
+            // matter for an image that is only ever scaled
+            Raster raster = source.getRaster();
+            int type = source.getType();
+            if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB_PRE)
+                    && raster.getDataBuffer() instanceof DataBufferInt data
+                    && raster.getSampleModel() instanceof SinglePixelPackedSampleModel model) {
+                int offset = data.getOffset() + model.getOffset(-raster.getSampleModelTranslateX(),
+                        -raster.getSampleModelTranslateY());
+                return new IntRows(data.getData(), offset, model.getScanlineStride(),
+                        type == BufferedImage.TYPE_INT_RGB);
+            }
+            if (type == BufferedImage.TYPE_3BYTE_BGR
+                    && raster.getDataBuffer() instanceof DataBufferByte data
+                    && raster.getSampleModel() instanceof ComponentSampleModel model) {
+                int x = -raster.getSampleModelTranslateX();
+                int y = -raster.getSampleModelTranslateY();
+                return new ByteRows(data.getData(), data.getOffset() + model.getOffset(x, y, 0),
+                        data.getOffset() + model.getOffset(x, y, 1), data.getOffset() + model.getOffset(x, y, 2),
+                        model.getPixelStride(), model.getScanlineStride());
+            }
+            int width = source.getWidth();
+            return (y, blocks, shiftX, ag, rb, row) -> {
+                source.getRGB(0, y, width, 1, row, 0, width);
+                if (alpha) {
+                    premultiply(row, width);
+                } else {
+                    for (int x = 0; x < width; x++) {
+                        row[x] |= 0xFF000000;
+                    }
+                }
+                new IntRows(row, 0, 0, false).accumulate(0, blocks, shiftX, ag, rb, row);
+            };
+        }
+
+        private static void premultiply(int[] row, int width) {
+            for (int x = 0; x < width; x++) {
+                int argb = row[x];
+                int a = argb >>> 24;
+                if (a != 255) {
+                    int r = ((argb >> 16) & 0xFF) * a + 128;
+                    int g = ((argb >> 8) & 0xFF) * a + 128;
+                    int b = (argb & 0xFF) * a + 128;
+                    // Rounded x / 255, exact for x < 65536
+                    row[x] = a << 24 | ((r + (r >> 8)) >> 8) << 16 | ((g + (g >> 8)) >> 8) << 8 | ((b + (b >> 8)) >> 8);
+                }
+            }
+        }
+    }
+
+    /** Rows of packed int pixels, premultiplied or opaque. */
+    private record IntRows(int[] data, int offset, int stride, boolean opaque) implements Rows {
+
+        @Override
+        public void accumulate(int y, int blocks, int shiftX, int[] ag, int[] rb, int[] row) {
+            int i = offset + y * stride;
+            int block = 1 << shiftX;
+            // TYPE_INT_RGB leaves the alpha byte undefined
+            int alpha = opaque ? 0xFF000000 : 0;
+            for (int b = 0; b < blocks; b++) {
+                // Summing a block in locals first keeps the adds off the arrays
+                int sumAg = 0;
+                int sumRb = 0;
+                for (int end = i + block; i < end; i++) {
+                    int argb = data[i] | alpha;
+                    sumAg += (argb >>> 8) & 0x00FF00FF;
+                    sumRb += argb & 0x00FF00FF;
+                }
+                ag[b] += sumAg;
+                rb[b] += sumRb;
+            }
+        }
+    }
+
+    /** Rows of interleaved 8-bit red, green and blue samples in any order. */
+    private record ByteRows(byte[] data, int red, int green, int blue, int pixelStride, int stride) implements Rows {
+
+        @Override
+        public void accumulate(int y, int blocks, int shiftX, int[] ag, int[] rb, int[] row) {
+            int i = y * stride;
+            int block = 1 << shiftX;
+            for (int b = 0; b < blocks; b++) {
+                int sumG = 0;
+                int sumRb = 0;
+                for (int k = 0; k < block; k++, i += pixelStride) {
+                    sumG += data[i + green] & 0xFF;
+                    sumRb += (data[i + red] & 0xFF) << 16 | data[i + blue] & 0xFF;
+                }
+                ag[b] += (255 << shiftX) << 16 | sumG;
+                rb[b] += sumRb;
+            }
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Scaling steps
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /** Box-filters blocks of 2^shiftX × 2^shiftY pixels into one pixel, for a tile of output rows. */
+    private static final class BoxTask extends RecursiveAction {
+        private final Rows rows;
+        private final int shiftX;
+        private final int shiftY;
+        private final int[] box;
+        private final int boxWidth;
+        private final int from;
+        private final int to;
+        private final int rowsPerTile;
+
+        BoxTask(Rows rows, int shiftX, int shiftY, int[] box, int boxWidth, int from, int to, int rowsPerTile) {
+            this.rows = rows;
+            this.shiftX = shiftX;
+            this.shiftY = shiftY;
+            this.box = box;
+            this.boxWidth = boxWidth;
+            this.from = from;
+            this.to = to;
+            this.rowsPerTile = rowsPerTile;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > rowsPerTile) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BoxTask(rows, shiftX, shiftY, box, boxWidth, from, middle, rowsPerTile),
+                        new BoxTask(rows, shiftX, shiftY, box, boxWidth, middle, to, rowsPerTile));
+                return;
+            }
+            // At least as wide as the source, which is less than (boxWidth + 1) << shiftX
+            int[] row = new int[(boxWidth + 1) << shiftX];
+            int[] ag = new int[boxWidth];
+            int[] rb = new int[boxWidth];
+            int shift = shiftX + shiftY;
+            int half = (1 << shift) >> 1;
+            int rounding = half << 16 | half;
+            for (int y = from; y < to; y++) {
+                for (int sy = y << shiftY, end = (y + 1) << shiftY; sy < end; sy++) {
+                    rows.accumulate(sy, boxWidth, shiftX, ag, rb, row);
+                }
+                int offset = y * boxWidth;
+                for (int x = 0; x < boxWidth; x++) {
+                    int sumAg = ag[x] + rounding;
+                    int sumRb = rb[x] + rounding;
+                    box[offset + x] = ((sumAg >>> 16) >> shift) << 24 | ((sumRb >>> 16) >> shift) << 16
+                            | ((sumAg & 0xFFFF) >> shift) << 8 | (sumRb & 0xFFFF) >> shift;
+                    ag[x] = 0;
+                    rb[x] = 0;
+                }
+            }
+        }
+    }
+
+    /** Bilinearly resamples a band of output rows; the scale factor is below 2 in both directions. */
+    private static final class BilinearTask extends RecursiveAction {
+        private final int[] source;
+        private final int sourceWidth;
+        private final int sourceHeight;
+        private final int[] target;
+        private final int targetWidth;
+        private final int targetHeight;
+        private final int from;
+        private final int to;
+        private final int rowsPerTile;
+
+        BilinearTask(int[] source, int sourceWidth, int sourceHeight, int[] target, int targetWidth, int targetHeight,
+                     int from, int to, int rowsPerTile) {
+            this.source = source;
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+            this.target = target;
+            this.targetWidth = targetWidth;
+            this.targetHeight = targetHeight;
+            this.from = from;
+            this.to = to;
+            this.rowsPerTile = rowsPerTile;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > rowsPerTile) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BilinearTask(source, sourceWidth, sourceHeight, target, targetWidth, targetHeight,
+                                from, middle, rowsPerTile),
+                        new BilinearTask(source, sourceWidth, sourceHeight, target, targetWidth, targetHeight,
+                                middle, to, rowsPerTile));
+                return;
+            }
+            // Column positions in 8-bit fixed point, shared by all rows of the band
+            int[] x0 = new int[targetWidth];
+            int[] wx = new int[targetWidth];
+            for (int x = 0; x < targetWidth; x++) {
+                int fixed = position(x, sourceWidth, targetWidth);
+                x0[x] = fixed >> 8;
+                wx[x] = fixed & 0xFF;
+            }
+            for (int y = from; y < to; y++) {
+                int fixed = position(y, sourceHeight, targetHeight);
+                int top = (fixed >> 8) * sourceWidth;
+                int bottom = Math.min((fixed >> 8) + 1, sourceHeight - 1) * sourceWidth;
+                int wy = fixed & 0xFF;
+                int offset = y * targetWidth;
+                for (int x = 0; x < targetWidth; x++) {
+                    int left = x0[x];
+                    int right = Math.min(left + 1, sourceWidth - 1);
+                    int w = wx[x];
+                    target[offset + x] = mix(mix(source[top + left], source[top + right], w),
+                            mix(source[bottom + left], source[bottom + right], w), wy);
+                }
+            }
+        }
+
+        /** Source coordinate of the center of a target pixel, in 8-bit fixed point, clamped to the image. */
+        private static int position(int targetIndex, int sourceSize, int targetSize) {
+            long fixed = ((2L * targetIndex + 1) * sourceSize * 256) / (2L * targetSize) - 128;
+            return (int) Math.max(0, Math.min(fixed, (sourceSize - 1) * 256L));
+        }
+
+        /** Interpolates two ARGB pixels channel by channel; weight 0 gives {@code p}, 256 would give {@code q}. */
+        private static int mix(int p, int q, int weight) {
+            int inverse = 256 - weight;
+            int ag = (((p >>> 8) & 0x00FF00FF) * inverse + ((q >>> 8) & 0x00FF00FF) * weight) & 0xFF00FF00;
+            int rb = ((p & 0x00FF00FF) * inverse + (q & 0x00FF00FF) * weight) >>> 8 & 0x00FF00FF;
+            return ag | rb;
+        }
+    }
+}
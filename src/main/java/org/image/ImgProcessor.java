@@ -1,36 +1,89 @@
 package org.image;
 
 import javax.imageio.ImageIO;
-import java.awt.*;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Base64;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
 
 public class ImgProcessor {
 
+    /** Maximum width and height of the preview image. */
+    static final int PREVIEW_SIZE = 512;
+
     /**
      * Scales a BufferedImage to fit within a preview area of maximum size 512x512 pixels
      * while maintaining its aspect ratio. Does not upscale images smaller than 512x512.
+     * <p>
+     * Scaling is done by {@link ImageScaler}: a box filter followed by a bilinear step, in parallel over tiles of
+     * rows, so large images are neither slow to scale nor aliased. Whatever the source format, including
+     * {@code TYPE_CUSTOM}, the result is {@code TYPE_INT_RGB} or {@code TYPE_INT_ARGB_PRE}, which Swing draws
+     * without conversion.
      *
      * @param source the BufferedImage to scale
-     * @return the scaled BufferedImage or the original if no scaling is needed
+     * @return the scaled BufferedImage, or the original if it is small enough and already in an int RGB format
      */
     public static BufferedImage scaleImageForPreview(BufferedImage source) {
-        final int maxSize = 512;
+        final int maxSize = PREVIEW_SIZE;
+        int width = source.getWidth();
+        int height = source.getHeight();
         // Avoid up scaling if the image is already within maxSize bounds
-        if (source.getWidth() <= maxSize && source.getHeight() <= maxSize) {
-            return source; // Return original image unchanged
+        if (width <= maxSize && height <= maxSize) {
+            int type = source.getType();
+            if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB
+                    || type == BufferedImage.TYPE_INT_ARGB_PRE) {
+                return source; // Return original image unchanged
+            }
+            return ImageScaler.scale(source, width, height);
         }
-        double scaleFactor = Math.min((double) maxSize / source.getWidth(), (double) maxSize / source.getHeight());
-        int newWidth = (int) (source.getWidth() * scaleFactor);
-        int newHeight = (int) (source.getHeight() * scaleFactor);
-        BufferedImage scaledImage = new BufferedImage(newWidth, newHeight, source.getType());
-        Graphics2D g = scaledImage.createGraphics();
-        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g.drawImage(source, 0, 0, newWidth, newHeight, null);
-        g.dispose();
-        return scaledImage;
+        double scaleFactor = previewScale(width, height);
+        int newWidth = Math.max(1, (int) (width * scaleFactor));
+        int newHeight = Math.max(1, (int) (height * scaleFactor));
+        return ImageScaler.scale(source, newWidth, newHeight);
+    }
+
+    /**
+     * Returns the factor that fits an image of the given size into the preview area.
+     */
+    private static double previewScale(int width, int height) {
+        return Math.min((double) PREVIEW_SIZE / width, (double) PREVIEW_SIZE / height);
+    }
+
+    /**
+     * Applies a black-and-white effect to an image, in parallel over tiles of rows.
+     *
+     * @param source the image
+     * @param effect the effect
+     * @return a new {@code TYPE_INT_RGB} image of the same size
+     */
+    public static BufferedImage applyEffect(BufferedImage source, Effect effect) {
+        return ImageEffects.apply(source, effect)[0];
+    }
+
+    /**
+     * Applies every black-and-white effect to an image at once. The source is read only once: each tile of rows is
+     * read and turned into the rows of all effects, and the tiles are processed in parallel, so the effect previews
+     * come at little more than the cost of one.
+     *
+     * @param source the image, typically the preview from {@link #scaleImageForPreview(BufferedImage)}
+     * @return a new {@code TYPE_INT_RGB} image of the same size per effect, in the order of {@link Effect}
+     */
+    public static Map<Effect, BufferedImage> applyEffects(BufferedImage source) {
+        Effect[] effects = Effect.values();
+        BufferedImage[] images = ImageEffects.apply(source, effects);
+        Map<Effect, BufferedImage> results = new EnumMap<>(Effect.class);
+        for (int i = 0; i < effects.length; i++) {
+            results.put(effects[i], images[i]);
+        }
+        return results;
     }
 
     /**
@@ -49,4 +102,93 @@ public class ImgProcessor {
         }
     }
 
+    /**
+     * Decodes a Base64-encoded image while it is being read. The Base64 text is decoded as a stream straight into
+     * the image reader, which keeps only a sliding window of the image bytes, so neither the text nor the image file
+     * is ever held in memory as a whole. Line breaks in the text are ignored.
+     *
+     * @param base64 the Base64-encoded image; closed when done
+     * @return the decoded image, or {@code null} if no image reader recognizes the format
+     * @throws IOException if reading fails or the input is not valid Base64
+     */
+    public static BufferedImage decodeBase64StreamToImage(InputStream base64) throws IOException {
+        // The Base64 decoder pulls single bytes from its source, hence the buffer
+        return decodeStreamToImage(Base64.getMimeDecoder().wrap(new BufferedInputStream(base64)));
+    }
+
+    /**
+     * Decodes an image file while it is being read, keeping only a sliding window of its bytes.
+     *
+     * @param imageBytes the image file; closed when done
+     * @return the decoded image, or {@code null} if no image reader recognizes the format
+     * @throws IOException if reading fails
+     */
+    public static BufferedImage decodeStreamToImage(InputStream imageBytes) throws IOException {
+        // ImageIO.read closes the stream
+        return ImageIO.read(new StreamingImageInputStream(imageBytes));
+    }
+
+    /**
+     * Decodes a Base64-encoded image straight to preview size. The image dimensions are read from the header first,
+     * and the image is then decoded with the coarsest source subsampling that still leaves at least twice the preview
+     * size, so a large image never materializes at full resolution. The remaining factor is scaled down like in
+     * {@link #scaleImageForPreview(BufferedImage)}, whose box filter smooths the subsampled pixels.
+     *
+     * @param base64 the Base64-encoded image; closed when done
+     * @return the preview image, at most {@value #PREVIEW_SIZE} pixels wide and high, or {@code null} if no image
+     * reader recognizes the format
+     * @throws IOException if the stream cannot be read, is not valid Base64 or is not a valid image
+     */
+    public static BufferedImage decodeBase64StreamToPreview(InputStream base64) throws IOException {
+        return decodeStreamToPreview(Base64.getMimeDecoder().wrap(new BufferedInputStream(base64)));
+    }
+
+    /**
+     * Decodes an image file straight to preview size, like {@link #decodeBase64StreamToPreview(InputStream)}.
+     *
+     * @param imageBytes the image file; closed when done
+     * @return the preview image, at most {@value #PREVIEW_SIZE} pixels wide and high, or {@code null} if no image
+     * reader recognizes the format
+     * @throws IOException if the stream cannot be read or is not a valid image
+     */
+    public static BufferedImage decodeStreamToPreview(InputStream imageBytes) throws IOException {
+        try (ImageInputStream in = new StreamingImageInputStream(imageBytes)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int step = previewSubsampling(width, height);
+                if (step == 1) {
+                    return scaleImageForPreview(reader.read(0));
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                BufferedImage image = reader.read(0, param);
+                // The preview size comes from the full size; subsampling rounds up and would skew the aspect ratio
+                double scaleFactor = previewScale(width, height);
+                return ImageScaler.scale(image, Math.min(image.getWidth(), Math.max(1, (int) (width * scaleFactor))),
+                        Math.min(image.getHeight(), Math.max(1, (int) (height * scaleFactor))));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Returns the source subsampling for decoding an image of the given size for the preview: the largest step that
+     * keeps the longer side at least twice {@value #PREVIEW_SIZE} pixels. Subsampling picks single pixels, so the
+     * margin is left to the box filter of {@link #scaleImageForPreview(BufferedImage)}.
+     *
+     * @param width  the image width
+     * @param height the image height
+     * @return the subsampling step, at least 1
+     */
+    static int previewSubsampling(int width, int height) {
+        return Math.max(1, Math.max(width, height) / (2 * PREVIEW_SIZE));
+    }
 }
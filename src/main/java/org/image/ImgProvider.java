@@ -1,14 +1,21 @@
 package org.image;
 
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 public class ImgProvider {
@@ -18,8 +25,37 @@ public class ImgProvider {
 	private static final String ERROR_READING_DIRECTORY = "Failed to read image directory: %s";
 	private static final String ERROR_NO_IMAGES = "No images found in the directory: %s";
 	private static final Random RANDOM = new Random();
+	private static final Logger logger = Logger.getLogger(ImgProvider.class.getName());
 
+	private static volatile ThumbnailCache thumbnailCache;
+	/** Resource paths of the splash images, read once. */
+	private static volatile List<String> imagePaths;
+
+	/**
+	 * Returns the resource path of a random splash image. The list of images is taken from the asset bundle, or read
+	 * from {@code img/img.properties} if there is none, once.
+	 *
+	 * @return the resource path, such as {@code /img/1.img}
+	 */
 	public static String getRandomImagePath() {
+		List<String> paths = imagePaths();
+		return paths.get(RANDOM.nextInt(paths.size()));
+	}
+
+	private static List<String> imagePaths() {
+		List<String> paths = imagePaths;
+		if (paths == null) {
+			AssetBundle bundle = AssetBundle.classpath();
+			paths = bundle != null ? bundle.paths() : readImagePaths();
+			if (paths.isEmpty()) {
+				throw new RuntimeException(String.format(ERROR_NO_IMAGES, IMAGE_DIRECTORY));
+			}
+			imagePaths = paths;
+		}
+		return paths;
+	}
+
+	private static List<String> readImagePaths() {
 
 		List<String> imagePaths = new ArrayList<>();
 
@@ -36,16 +72,13 @@ public class ImgProvider {
 			throw new RuntimeException(String.format(ERROR_READING_DIRECTORY, IMAGE_DIRECTORY), e);
 		}
 
-		if (imagePaths.isEmpty()) {
-			throw new RuntimeException(String.format(ERROR_NO_IMAGES, IMAGE_DIRECTORY));
-		}
-
-		return imagePaths.get(RANDOM.nextInt(imagePaths.size()));
+		return List.copyOf(imagePaths);
 	}
 
 	/**
 	 * Reads a resource file located at the specified path and returns its content as a string.
-	 * The file is read using UTF-8 encoding.
+	 * The file is read using UTF-8 encoding. Images of the asset bundle are returned Base64-encoded, as in their
+	 * source files.
 	 *
 	 * @param imagePath The path of the resource file.
 	 * @return The content of the resource file as a string.
@@ -53,18 +86,108 @@ public class ImgProvider {
 	 * @throws RuntimeException         If there's an error reading the resource file.
 	 */
 	public static String readResourceFileToString(String imagePath) throws IOException {
+		AssetBundle bundle = AssetBundle.classpath();
+		ByteBuffer image = bundle != null ? bundle.get(imagePath) : null;
+		if (image != null) {
+			return StandardCharsets.ISO_8859_1.decode(Base64.getEncoder().encode(image)).toString();
+		}
 
-		InputStream inputStream = ImgProcessor.class.getResourceAsStream(imagePath);
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(openResource(imagePath),
+				StandardCharsets.UTF_8))) {
+			return reader.lines().collect(Collectors.joining("\n"));
+		}
+	}
 
-		// ReadingAndPrintingBytes(inputStream);
+	/**
+	 * Returns the raw bytes of an image resource: a read-only slice of the asset bundle, without copying, or the
+	 * decoded Base64 resource if the image is not in the bundle.
+	 *
+	 * @param imagePath The path of the resource file, such as {@code /img/1.img}.
+	 * @return The image bytes, from the buffer's position to its limit.
+	 * @throws IllegalArgumentException If the resource file is not found.
+	 * @throws IOException              If the resource cannot be read or is not valid Base64.
+	 */
+	public static ByteBuffer readResourceBytes(String imagePath) throws IOException {
+		AssetBundle bundle = AssetBundle.classpath();
+		ByteBuffer image = bundle != null ? bundle.get(imagePath) : null;
+		if (image != null) {
+			return image;
+		}
+		try (InputStream inputStream = Base64.getMimeDecoder().wrap(new BufferedInputStream(openResource(imagePath)))) {
+			return ByteBuffer.wrap(inputStream.readAllBytes()).asReadOnlyBuffer();
+		}
+	}
 
-		if (inputStream == null) {
-			throw new IllegalArgumentException("Resource file not found: " + imagePath);
+	/**
+	 * Reads an image resource and decodes it on the fly: from the asset bundle, or, without first reading the
+	 * resource into a string, from its Base64 source file.
+	 *
+	 * @param imagePath The path of the resource file.
+	 * @return The decoded image, or {@code null} if its format is not recognized.
+	 * @throws IllegalArgumentException If the resource file is not found.
+	 * @throws IOException              If the resource cannot be read or is not valid Base64.
+	 * @see ImgProcessor#decodeBase64StreamToImage(InputStream)
+	 */
+	public static BufferedImage readResourceImage(String imagePath) throws IOException {
+		AssetBundle bundle = AssetBundle.classpath();
+		ByteBuffer image = bundle != null ? bundle.get(imagePath) : null;
+		if (image != null) {
+			return ImgProcessor.decodeStreamToImage(AssetBundle.newInputStream(image));
 		}
+		return ImgProcessor.decodeBase64StreamToImage(openResource(imagePath));
+	}
 
-		try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
-			return reader.lines().collect(Collectors.joining("\n"));
+	/**
+	 * Installs the cache of preview images used by {@link #readResourcePreview(String)}.
+	 *
+	 * @param cache the cache, or {@code null} to decode every time
+	 */
+	public static void setThumbnailCache(ThumbnailCache cache) {
+		thumbnailCache = cache;
+	}
+
+	/**
+	 * Reads an image resource and decodes it straight to preview size. If a thumbnail cache is installed, the
+	 * preview is looked up by the SHA-256 digest of the image bytes first and stored after decoding, so that later
+	 * starts skip the decode.
+	 *
+	 * @param imagePath The path of the resource file.
+	 * @return The preview image, or {@code null} if its format is not recognized.
+	 * @throws IllegalArgumentException If the resource file is not found.
+	 * @throws IOException              If the resource cannot be read or is not a valid Base64 image.
+	 * @see ImgProcessor#decodeStreamToPreview(InputStream)
+	 */
+	public static BufferedImage readResourcePreview(String imagePath) throws IOException {
+		ByteBuffer image = readResourceBytes(imagePath);
+		ThumbnailCache cache = thumbnailCache;
+		if (cache == null) {
+			return ImgProcessor.decodeStreamToPreview(AssetBundle.newInputStream(image));
+		}
+
+		MessageDigest sha256 = PageCache.newDigest();
+		sha256.update(image.duplicate());
+		byte[] digest = sha256.digest();
+		BufferedImage preview = cache.get(digest, ImgProcessor.PREVIEW_SIZE);
+		if (preview != null) {
+			return preview;
+		}
+		preview = ImgProcessor.decodeStreamToPreview(AssetBundle.newInputStream(image));
+		if (preview != null) {
+			try {
+				cache.put(digest, ImgProcessor.PREVIEW_SIZE, preview);
+			} catch (IOException | IllegalArgumentException e) {
+				logger.log(Level.WARNING, "Failed to cache the preview of " + imagePath, e);
+			}
+		}
+		return preview;
+	}
+
+	private static InputStream openResource(String path) {
+		InputStream inputStream = ImgProvider.class.getResourceAsStream(path);
+		if (inputStream == null) {
+			throw new IllegalArgumentException("Resource file not found: " + path);
 		}
+		return inputStream;
 	}
 
 }
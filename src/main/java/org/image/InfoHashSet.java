@@ -0,0 +1,267 @@
+package org.image;
+
+import java.util.Locale;
+
+/**
+ * Compact set of 20-byte BitTorrent info-hashes (BTIH), used to recognise magnet links that have already been seen.
+ * <p>
+ * Each hash is stored as two {@code long}s and one {@code int} in primitive arrays with open addressing and linear
+ * probing, i.e. 20 bytes per slot and no object per entry. Tables double when they are 75% full, so one million
+ * hashes take between 27 and 53 MB depending on how close the tables are to their next growth step. The set is
+ * split into independently locked segments, so that pool threads adding hashes concurrently rarely wait for each
+ * other.
+ */
+public class InfoHashSet {
+
+    /** Length of a BTIH in bytes. */
+    public static final int HASH_LENGTH = 20;
+
+    private static final int SEGMENT_COUNT = 16;
+    private static final int INITIAL_SEGMENT_CAPACITY = 256;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    /**
+     * Creates an empty set.
+     */
+    public InfoHashSet() {
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Adds the info-hash of the given magnet link.
+     *
+     * @param magnetLink the magnet link
+     * @return {@code true} if the hash was not in the set before
+     * @see #infoHashOf(String)
+     */
+    public boolean addMagnetLink(String magnetLink) {
+        return add(MagnetLink.parse(magnetLink));
+    }
+
+    /**
+     * Adds the key of a parsed magnet link, straight from its words.
+     *
+     * @param link the magnet link
+     * @return {@code true} if the key was not in the set before
+     */
+    public boolean add(MagnetLink link) {
+        return add(link.hash0(), link.hash1(), link.hash2());
+    }
+
+    /**
+     * Adds a 20-byte hash.
+     *
+     * @param hash the hash; exactly {@link #HASH_LENGTH} bytes
+     * @return {@code true} if the hash was not in the set before
+     */
+    public boolean add(byte[] hash) {
+        checkLength(hash);
+        return add(readLong(hash, 0), readLong(hash, 8), readInt(hash, 16));
+    }
+
+    private boolean add(long h0, long h1, int h2) {
+        int spread = spread(h0, h1, h2);
+        return segments[spread >>> 28].add(h0, h1, h2, spread);
+    }
+
+    /**
+     * Tells whether a 20-byte hash is in the set.
+     *
+     * @param hash the hash; exactly {@link #HASH_LENGTH} bytes
+     * @return {@code true} if the hash has been added before
+     */
+    public boolean contains(byte[] hash) {
+        checkLength(hash);
+        long h0 = readLong(hash, 0);
+        long h1 = readLong(hash, 8);
+        int h2 = readInt(hash, 16);
+        int spread = spread(h0, h1, h2);
+        return segments[spread >>> 28].contains(h0, h1, h2, spread);
+    }
+
+    /**
+     * Returns the number of hashes in the set.
+     *
+     * @return the number of hashes
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes all hashes and releases the grown tables.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.allocate(INITIAL_SEGMENT_CAPACITY);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes held by the hash tables.
+     *
+     * @return the approximate memory footprint in bytes
+     */
+    public long memoryFootprint() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                bytes += (long) segment.high.length * Long.BYTES + (long) segment.tail.length * Integer.BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Info-hash extraction
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the 20-byte key of a magnet link: the BTIH of its {@code xt=urn:btih:} parameter, given either as
+     * 40 hex digits or as 32 base32 characters, so that both spellings of the same torrent map to the same key.
+     * Links without a valid BTIH (e.g. BitTorrent v2-only links) are keyed by the SHA-1 of the trimmed link instead.
+     *
+     * @param magnetLink the magnet link
+     * @return the 20-byte key
+     * @see MagnetLink#infoHash()
+     */
+    public static byte[] infoHashOf(String magnetLink) {
+        return MagnetLink.parse(magnetLink).infoHash();
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Hash table
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * One independently locked open-addressing table. A slot whose three words are all zero is empty; the all-zero
+     * hash itself is tracked by a flag.
+     */
+    private static final class Segment {
+        private long[] high;
+        private int[] tail;
+        private int size;
+        private boolean containsZero;
+
+        Segment() {
+            allocate(INITIAL_SEGMENT_CAPACITY);
+        }
+
+        void allocate(int capacity) {
+            high = new long[capacity * 2];
+            tail = new int[capacity];
+            size = 0;
+            containsZero = false;
+        }
+
+        synchronized boolean add(long h0, long h1, int h2, int spread) {
+            if (h0 == 0 && h1 == 0 && h2 == 0) {
+                if (containsZero) {
+                    return false;
+                }
+                containsZero = true;
+                size++;
+                return true;
+            }
+            int slot = find(h0, h1, h2, spread);
+            if (slot >= 0) {
+                return false;
+            }
+            if ((size + 1) * 4L > tail.length * 3L) {
+                grow();
+            }
+            insert(h0, h1, h2, spread);
+            size++;
+            return true;
+        }
+
+        synchronized boolean contains(long h0, long h1, int h2, int spread) {
+            if (h0 == 0 && h1 == 0 && h2 == 0) {
+                return containsZero;
+            }
+            return find(h0, h1, h2, spread) >= 0;
+        }
+
+        /** Returns the slot holding the hash, or -1. */
+        private int find(long h0, long h1, int h2, int spread) {
+            int mask = tail.length - 1;
+            for (int slot = spread & mask; ; slot = (slot + 1) & mask) {
+                long s0 = high[slot * 2];
+                long s1 = high[slot * 2 + 1];
+                int s2 = tail[slot];
+                if (s0 == h0 && s1 == h1 && s2 == h2) {
+                    return slot;
+                }
+                if (s0 == 0 && s1 == 0 && s2 == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        private void insert(long h0, long h1, int h2, int spread) {
+            int mask = tail.length - 1;
+            int slot = spread & mask;
+            while (high[slot * 2] != 0 || high[slot * 2 + 1] != 0 || tail[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            high[slot * 2] = h0;
+            high[slot * 2 + 1] = h1;
+            tail[slot] = h2;
+        }
+
+        private void grow() {
+            long[] oldHigh = high;
+            int[] oldTail = tail;
+            high = new long[oldHigh.length * 2];
+            tail = new int[oldTail.length * 2];
+            for (int slot = 0; slot < oldTail.length; slot++) {
+                long h0 = oldHigh[slot * 2];
+                long h1 = oldHigh[slot * 2 + 1];
+                int h2 = oldTail[slot];
+                if (h0 != 0 || h1 != 0 || h2 != 0) {
+                    insert(h0, h1, h2, spread(h0, h1, h2));
+                }
+            }
+        }
+    }
+
+    /** Mixes the words of a hash; the top four bits select the segment, the low bits the slot. */
+    private static int spread(long h0, long h1, int h2) {
+        long mixed = (h0 ^ Long.rotateLeft(h1, 21) ^ h2) * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value = value << 8 | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        int value = 0;
+        for (int i = 0; i < Integer.BYTES; i++) {
+            value = value << 8 | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void checkLength(byte[] hash) {
+        if (hash.length != HASH_LENGTH) {
+            throw new IllegalArgumentException(String.format(Locale.ROOT, "Expected a %d-byte hash, got %d bytes",
+                    HASH_LENGTH, hash.length));
+        }
+    }
+}
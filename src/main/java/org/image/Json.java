@@ -0,0 +1,82 @@
+package org.image;
+
+/**
+ * Minimal JSON writing helpers for the few places that produce JSON: the aria2 RPC requests and the NDJSON output of
+ * the headless mode.
+ */
+final class Json {
+
+    private Json() {
+    }
+
+    /**
+     * Appends a value as a quoted JSON string, escaping quotes, backslashes and control characters.
+     *
+     * @param json  the builder to append to
+     * @param value the string value
+     * @return the builder
+     */
+    static StringBuilder appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        return json.append('"');
+    }
+
+    /**
+     * Appends a {@code "name":"value"} member, preceded by a comma unless it follows the opening brace.
+     *
+     * @param json  the builder to append to
+     * @param name  the member name
+     * @param value the string value, or {@code null} for JSON null
+     * @return the builder
+     */
+    static StringBuilder appendMember(StringBuilder json, String name, String value) {
+        appendName(json, name);
+        return value == null ? json.append("null") : appendString(json, value);
+    }
+
+    /**
+     * Appends a {@code "name":value} member with a number value.
+     *
+     * @param json  the builder to append to
+     * @param name  the member name
+     * @param value the value
+     * @return the builder
+     */
+    static StringBuilder appendMember(StringBuilder json, String name, long value) {
+        return appendName(json, name).append(value);
+    }
+
+    /**
+     * Appends a {@code "name":value} member with a boolean value.
+     *
+     * @param json  the builder to append to
+     * @param name  the member name
+     * @param value the value
+     * @return the builder
+     */
+    static StringBuilder appendMember(StringBuilder json, String name, boolean value) {
+        return appendName(json, name).append(value);
+    }
+
+    private static StringBuilder appendName(StringBuilder json, String name) {
+        if (json.length() > 0 && json.charAt(json.length() - 1) != '{') {
+            json.append(',');
+        }
+        return appendString(json, name).append(':');
+    }
+}
@@ -0,0 +1,291 @@
+package org.image;
+
+import org.jsoup.HttpStatusException;
+
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpTimeoutException;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Multi-page crawl engine for listing sites.
+ * <p>
+ * Starting from a seed URL, the crawler fetches the page, passes every magnet link to the sink and follows the
+ * pagination and listing links it finds on the same host, up to a maximum depth (link hops from the seed) and a
+ * maximum number of pages. Pages are fetched concurrently, one thread per in-flight request: virtual threads when the
+ * runtime provides them (Java 21+), a cached pool of daemon threads otherwise. Since a fetch spends nearly all of its
+ * time waiting for the network, a crawl of hundreds of pages takes about as long as a few round-trips.
+ * <p>
+ * The number of pages in flight starts at {@value #INITIAL_IN_FLIGHT} and is set by an {@link AdaptiveLimiter}: it
+ * grows while page latency stays flat and backs off when responses slow down or the site answers with timeouts,
+ * 429 or 5xx, never exceeding the crawl's maximum.
+ * <p>
+ * A crawler instance performs a single crawl.
+ */
+public class LinkCrawler {
+
+    /** Default number of link hops followed from the seed page. */
+    public static final int DEFAULT_MAX_DEPTH = 2;
+    /** Default maximum number of pages fetched per crawl. */
+    public static final int DEFAULT_MAX_PAGES = 100;
+    /** Default maximum number of concurrent page requests. */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 32;
+    /** Number of concurrent page requests a crawl starts with, unless its maximum is lower. */
+    static final int INITIAL_IN_FLIGHT = 8;
+
+    /**
+     * Paths and query strings that identify pagination and listing pages, e.g. {@code /page/3}, {@code ?page=3},
+     * {@code /top/}, {@code /new/2} or {@code /browse?cat=4}.
+     */
+    static final Pattern LISTING_LINK = Pattern.compile(
+            "(?i)[/?&](page|p|pg|top|new|latest|browse|cat|category|sort)(?:[/=_-]?\\d*)(?:[/?&#.]|$)");
+
+    private static final Logger logger = Logger.getLogger(LinkCrawler.class.getName());
+
+    /**
+     * Outcome of a crawl.
+     *
+     * @param pages       the number of pages fetched successfully
+     * @param failedPages the number of pages that could not be fetched
+     * @param magnetLinks the number of magnet links passed to the sink
+     */
+    public record Summary(int pages, int failedPages, int magnetLinks) {
+    }
+
+    private record Page(URI uri, int depth) {
+    }
+
+    private final int maxDepth;
+    private final int maxPages;
+    private final AdaptiveLimiter inFlight;
+    private final BiConsumer<String, String> magnetSink;
+    private final Queue<Page> queue = new ConcurrentLinkedQueue<>();
+    private final Set<String> visited = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger admittedPages = new AtomicInteger();
+    private final AtomicInteger outstandingPages = new AtomicInteger();
+    private final AtomicInteger fetchedPages = new AtomicInteger();
+    private final AtomicInteger failedPages = new AtomicInteger();
+    private final AtomicInteger magnetLinks = new AtomicInteger();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final CompletableFuture<Summary> result = new CompletableFuture<>();
+    /** Runs the fetches; created per crawl and shut down at its end unless one was given. */
+    private Executor executor;
+    private ExecutorService ownExecutor;
+    private String seedHost;
+
+    /**
+     * Creates a crawler.
+     *
+     * @param maxDepth    how many link hops to follow from the seed page; 0 fetches only the seed
+     * @param maxPages    the maximum number of pages to fetch, including the seed
+     * @param maxInFlight the maximum number of concurrent page requests, the upper bound of the adaptive limit
+     * @param magnetSink  receives every magnet link found and the URL of the page it was found on; called
+     *                    concurrently from fetch threads
+     */
+    public LinkCrawler(int maxDepth, int maxPages, int maxInFlight, BiConsumer<String, String> magnetSink) {
+        this(maxDepth, maxPages, maxInFlight, magnetSink, null);
+    }
+
+    /**
+     * Creates a crawler whose fetches run on the given executor, e.g. the tasks of a {@link ParseSession}.
+     *
+     * @param maxDepth    how many link hops to follow from the seed page; 0 fetches only the seed
+     * @param maxPages    the maximum number of pages to fetch, including the seed
+     * @param maxInFlight the maximum number of concurrent page requests, the upper bound of the adaptive limit
+     * @param magnetSink  receives every magnet link found and the URL of the page it was found on; called
+     *                    concurrently from fetch threads
+     * @param executor    runs the fetches, or {@code null} for an executor of the crawl's own
+     */
+    LinkCrawler(int maxDepth, int maxPages, int maxInFlight, BiConsumer<String, String> magnetSink,
+                Executor executor) {
+        if (maxDepth < 0 || maxPages < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("Invalid crawl limits: depth " + maxDepth + ", pages " + maxPages
+                    + ", in flight " + maxInFlight);
+        }
+        this.maxDepth = maxDepth;
+        this.maxPages = maxPages;
+        this.inFlight = new AdaptiveLimiter("crawl fetches", Math.min(INITIAL_IN_FLIGHT, maxInFlight), 1,
+                maxInFlight);
+        this.magnetSink = magnetSink;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts the crawl at the given URL and returns immediately.
+     *
+     * @param seedUrl the absolute http(s) URL of the first page
+     * @return a future completed with the summary once every admitted page has been fetched
+     * @throws IllegalArgumentException if the URL is not an absolute http(s) URL
+     * @throws IllegalStateException    if this crawler has already been started
+     */
+    public CompletableFuture<Summary> crawl(String seedUrl) {
+        URI seed = URI.create(seedUrl);
+        if (seed.getScheme() == null || seed.getHost() == null) {
+            throw new IllegalArgumentException("Not an absolute URL: " + seedUrl);
+        }
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("A LinkCrawler performs a single crawl");
+        }
+        seedHost = seed.getHost();
+        if (executor == null) {
+            ownExecutor = newFetchExecutor();
+            executor = ownExecutor;
+        }
+        admit(seed, 0);
+        return result;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Scheduling
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private void admit(URI uri, int depth) {
+        if (!visited.add(normalize(uri)) || admittedPages.incrementAndGet() > maxPages) {
+            return;
+        }
+        outstandingPages.incrementAndGet();
+        queue.add(new Page(uri, depth));
+        pump();
+    }
+
+    /** Starts queued pages while in-flight permits are available. */
+    private void pump() {
+        AdaptiveLimiter.Permit permit;
+        while ((permit = inFlight.tryAcquire()) != null) {
+            Page page = queue.poll();
+            if (page == null) {
+                permit.ignore();
+                // A page may have been queued after the poll while this thread still held the permit
+                if (queue.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            AdaptiveLimiter.Permit fetchPermit = permit;
+            executor.execute(() -> {
+                try {
+                    fetch(page, fetchPermit);
+                } finally {
+                    // Already ended unless the fetch threw past its own handler
+                    fetchPermit.ignore();
+                    if (outstandingPages.decrementAndGet() == 0) {
+                        finish();
+                    } else {
+                        pump();
+                    }
+                }
+            });
+        }
+    }
+
+    private void fetch(Page page, AdaptiveLimiter.Permit permit) {
+        String url = page.uri().toString();
+        try {
+            int found = LinkParser.scanPage(url, link -> magnetSink.accept(link, url),
+                    page.depth() < maxDepth ? anchor -> follow(anchor, page.depth() + 1) : null);
+            permit.success();
+            magnetLinks.addAndGet(found);
+            fetchedPages.incrementAndGet();
+        } catch (Exception e) {
+            if (e instanceof InterruptedIOException) {
+                permit.ignore();
+            } else if (isOverload(e)) {
+                permit.dropped();
+            } else {
+                // A missing page still took a full round-trip
+                permit.success();
+            }
+            failedPages.incrementAndGet();
+            Metrics.PAGE_FAILURES.increment();
+            logger.log(Level.WARNING, "Failed to crawl " + url, e);
+        }
+    }
+
+    /** Tells whether a fetch failed because the site or the network is overloaded: a timeout, a 429 or a 5xx. */
+    static boolean isOverload(Exception e) {
+        if (e instanceof HttpStatusException status) {
+            return status.getStatusCode() == 429 || status.getStatusCode() >= 500;
+        }
+        return e instanceof HttpTimeoutException || e instanceof SocketTimeoutException;
+    }
+
+    private void follow(String anchorUrl, int depth) {
+        URI uri;
+        try {
+            uri = URI.create(anchorUrl);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        if (isListingLink(uri)) {
+            admit(uri, depth);
+        }
+    }
+
+    private void finish() {
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+        result.complete(new Summary(fetchedPages.get(), failedPages.get(), magnetLinks.get()));
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Link selection
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Decides whether a link is worth fetching: an http(s) link on the seed host whose path or query looks like a
+     * pagination or listing page.
+     */
+    private boolean isListingLink(URI uri) {
+        String scheme = uri.getScheme();
+        if (scheme == null || !(scheme.equalsIgnoreCase("http") || scheme.equalsIgnoreCase("https"))
+                || uri.getHost() == null || !uri.getHost().equalsIgnoreCase(seedHost)) {
+            return false;
+        }
+        String pathAndQuery = (uri.getRawPath() == null ? "" : uri.getRawPath())
+                + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+        return LISTING_LINK.matcher(pathAndQuery).find();
+    }
+
+    /** Visit key of a page: scheme and host lower-cased, fragment dropped, empty path equal to "/". */
+    static String normalize(URI uri) {
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        return uri.getScheme().toLowerCase(Locale.ROOT) + "://" + uri.getRawAuthority().toLowerCase(Locale.ROOT)
+                + path + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+    }
+
+    /**
+     * Creates the executor that runs page fetches: a virtual thread per task if the runtime supports it, otherwise a
+     * cached pool of daemon platform threads. The number of concurrent fetches is bounded by the crawler itself.
+     *
+     * @return a new executor service
+     */
+    static ExecutorService newFetchExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "crawler-fetch");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
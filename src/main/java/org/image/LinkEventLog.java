@@ -0,0 +1,218 @@
+package org.image;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rotating NDJSON file of the {@link LinkFoundEvent}s, written from one background thread.
+ * <p>
+ * Like {@link MagnetDispatcher}, the parser threads only put events into a bounded queue and block while it is full;
+ * a writer thread takes whatever has queued up, formats the batch and writes it with one flush. Each line is the
+ * headless output's link record with the time it was found in front:
+ * <pre>
+ * {"time":1700000000000,"type":"link","number":1,"link":"magnet:?...","infoHash":"...","name":"...",...}
+ * </pre>
+ * The current file is {@value #FILE_NAME}. Once it exceeds the size limit, it is renamed to {@code links.1.ndjson},
+ * the older files move up by one and the oldest one beyond the file count is deleted.
+ */
+public class LinkEventLog implements Closeable {
+
+    /** Name of the file being written. */
+    static final String FILE_NAME = "links.ndjson";
+    /** Default size of a file before it is rotated. */
+    public static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024;
+    /** Default number of files kept, the current one included. */
+    public static final int DEFAULT_FILE_COUNT = 5;
+    /** Number of events that may wait for the writer. */
+    private static final int CAPACITY = 4096;
+    /** How long {@link #close()} waits for the queued events to be written. */
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+
+    /** Queued after the last event by {@link #close()}; compared by identity. */
+    private static final LinkFoundEvent END = new LinkFoundEvent(0, 0, null, null, false);
+
+    private static final Logger logger = Logger.getLogger(LinkEventLog.class.getName());
+
+    private final Path directory;
+    private final long maxBytes;
+    private final int fileCount;
+    private final BlockingQueue<LinkFoundEvent> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /** Only accessed by the writer thread. */
+    private Writer out;
+    private long size;
+
+    private LinkEventLog(Path directory, long maxBytes, int fileCount) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.fileCount = fileCount;
+        Files.createDirectories(directory);
+        Path file = directory.resolve(FILE_NAME);
+        size = Files.exists(file) ? Files.size(file) : 0;
+        out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        writer = new Thread(this::run, "link-event-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Opens the log in the given directory, creating it if needed, appending to the current file, and starts the
+     * writer thread.
+     *
+     * @param directory the log directory
+     * @param maxBytes  the size of a file before it is rotated
+     * @param fileCount the number of files kept, the current one included
+     * @return the opened log
+     * @throws IOException if the directory or the current file cannot be created
+     */
+    public static LinkEventLog open(Path directory, long maxBytes, int fileCount) throws IOException {
+        if (maxBytes <= 0 || fileCount <= 0) {
+            throw new IllegalArgumentException("File size and count must be positive");
+        }
+        return new LinkEventLog(directory, maxBytes, fileCount);
+    }
+
+    /**
+     * Returns the default log directory: {@code -Dmagnetgrab.events.dir} if set, otherwise
+     * {@code ~/.magnetgrab/events}.
+     *
+     * @return the default log directory
+     */
+    public static Path defaultDirectory() {
+        String configured = System.getProperty("magnetgrab.events.dir");
+        return configured != null ? Path.of(configured)
+                : Path.of(System.getProperty("user.home"), ".magnetgrab", "events");
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Public API
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Queues an event for the file, waiting while the queue is full.
+     *
+     * @param event the event
+     * @throws InterruptedException  if interrupted while waiting
+     * @throws IllegalStateException if the log has been closed
+     */
+    public void append(LinkFoundEvent event) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("The link event log is closed");
+        }
+        queue.put(event);
+    }
+
+    /**
+     * Stops accepting events, waits up to 10 seconds for the queued ones to be written and closes the file.
+     *
+     * @throws IOException if closing the file fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MILLIS;
+            if (queue.offer(END, CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                writer.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            writer.interrupt();
+            logger.log(Level.WARNING, "Dropped " + queue.size() + " link events that were not written in time");
+        } else {
+            out.close();
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Writer thread
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private void run() {
+        List<LinkFoundEvent> batch = new ArrayList<>(CAPACITY);
+        StringBuilder json = new StringBuilder(512);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            boolean end = false;
+            try {
+                for (LinkFoundEvent event : batch) {
+                    if (event == END) {
+                        // Events that raced past close() after the end marker are dropped with it
+                        end = true;
+                        break;
+                    }
+                    json.setLength(0);
+                    json.append('{');
+                    Json.appendMember(json, "time", event.timestamp());
+                    event.appendJsonMembers(json).append("}\n");
+                    write(json);
+                }
+                out.flush();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to write " + batch.size() + " link events to " + directory, e);
+            }
+            batch.clear();
+            if (end) {
+                return;
+            }
+        }
+    }
+
+    /** Writes one line, rotating the files first if it would not fit into the current one. */
+    private void write(StringBuilder line) throws IOException {
+        // Lines are ASCII but for the names and URLs, so the length in chars is close enough to the size in bytes
+        if (size > 0 && size + line.length() > maxBytes) {
+            rotate();
+        }
+        out.append(line);
+        size += line.length();
+    }
+
+    private void rotate() throws IOException {
+        out.close();
+        Files.deleteIfExists(rotated(fileCount - 1));
+        for (int i = fileCount - 2; i >= 1; i--) {
+            if (Files.exists(rotated(i))) {
+                Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Path file = directory.resolve(FILE_NAME);
+        if (fileCount > 1) {
+            Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        size = 0;
+    }
+
+    /** The file that was rotated {@code index} times. */
+    private Path rotated(int index) {
+        return directory.resolve("links." + index + ".ndjson");
+    }
+}
@@ -0,0 +1,520 @@
+package org.image;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Include and exclude rules that decide, before a magnet link is stored, shown or dispatched, whether it is wanted.
+ * <p>
+ * The rules are read from a text file with one rule per line; blank lines and lines starting with {@code #} are
+ * ignored:
+ * <pre>
+ * exclude name cam
+ * include name 1080p
+ * include size 200MB..8GB
+ * exclude tracker tracker.example.org
+ * </pre>
+ * A rule is an action ({@code include} or {@code exclude}), a field and a value:
+ * <ul>
+ *     <li>{@code name}: a keyword found anywhere in the display name ({@code dn}), regardless of case,</li>
+ *     <li>{@code tracker}: a keyword found anywhere in one of the trackers ({@code tr}), regardless of case,</li>
+ *     <li>{@code size}: a range {@code min..max} of the exact length ({@code xl}), either end optional, with an
+ *     optional unit {@code B}, {@code KB}, {@code MB}, {@code GB} or {@code TB} (powers of 1024).</li>
+ * </ul>
+ * A link is rejected if any exclude rule matches it, and if a field has include rules, none of which matches it; a
+ * link without the field matches no rule of it. So include rules of one field are alternatives, and include rules
+ * of different fields must all be met.
+ * <p>
+ * The keywords of a field, include and exclude alike, are compiled into one Aho-Corasick automaton, so a field is
+ * checked against thousands of keywords in a single pass over its characters. The file is checked for changes every
+ * {@value #RELOAD_CHECK_MILLIS} ms on a daemon thread shared by all filters, so that reading and compiling a changed
+ * file never holds up a link being checked, which only reads the current rules; a changed file is loaded without a
+ * restart, and a file with errors leaves the previous rules in place. All methods are thread-safe.
+ */
+public class LinkFilter implements Closeable {
+
+    /** Shortest time between two checks of the rules file for changes. */
+    static final long RELOAD_CHECK_MILLIS = 2_000;
+
+    private static final Logger logger = Logger.getLogger(LinkFilter.class.getName());
+
+    private final Path file;
+    /** The periodic check of the file, or {@code null} if the filter does not watch it. */
+    private volatile ScheduledFuture<?> reloadCheck;
+    /** The loaded rules; replaced as a whole on reload. */
+    private volatile Rules rules;
+    /** Modification time and size of the loaded file, or -1 if there was none; only accessed while reloading. */
+    private long loadedModified;
+    private long loadedSize;
+
+    private LinkFilter(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the rules from the given file and checks it for changes until the filter is closed. A missing file means
+     * no rules; rules written to it later take effect.
+     *
+     * @param file the rules file
+     * @return the filter
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if a rule is not valid
+     */
+    public static LinkFilter open(Path file) throws IOException {
+        LinkFilter filter = load(file);
+        filter.reloadCheck = Shared.RELOADER.scheduleWithFixedDelay(filter::reloadIfChanged, RELOAD_CHECK_MILLIS,
+                RELOAD_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        return filter;
+    }
+
+    /**
+     * Loads the rules from the given file without checking it for changes; {@link #reloadIfChanged()} loads them
+     * again.
+     *
+     * @param file the rules file
+     * @return the filter
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if a rule is not valid
+     */
+    static LinkFilter load(Path file) throws IOException {
+        LinkFilter filter = new LinkFilter(file);
+        filter.load();
+        return filter;
+    }
+
+    /**
+     * Returns the default rules file: {@code -Dmagnetgrab.filter.file} if set, otherwise
+     * {@code ~/.magnetgrab/filter.rules}.
+     *
+     * @return the default rules file
+     */
+    public static Path defaultFile() {
+        String configured = System.getProperty("magnetgrab.filter.file");
+        return configured != null ? Path.of(configured)
+                : Path.of(System.getProperty("user.home"), ".magnetgrab", "filter.rules");
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Public API
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Checks a link against the current rules.
+     *
+     * @param link the parsed magnet link
+     * @return why the link is rejected, e.g. {@code exclude name "cam" (line 3)}, or {@code null} if it passes
+     */
+    public String rejection(MagnetLink link) {
+        return rules.rejection(link);
+    }
+
+    /**
+     * Returns the number of rules loaded.
+     *
+     * @return the number of rules
+     */
+    public int size() {
+        return rules.count;
+    }
+
+    /**
+     * Stops checking the file for changes; the current rules stay in effect.
+     */
+    @Override
+    public void close() {
+        ScheduledFuture<?> check = reloadCheck;
+        if (check != null) {
+            check.cancel(false);
+        }
+    }
+
+    /**
+     * Loads the rules again if the file's modification time or size has changed. Rules with errors are logged and the
+     * previous ones kept.
+     *
+     * @return {@code true} if new rules were loaded
+     */
+    synchronized boolean reloadIfChanged() {
+        long modified;
+        long size;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            modified = attributes.lastModifiedTime().toMillis();
+            size = attributes.size();
+        } catch (NoSuchFileException e) {
+            modified = -1;
+            size = -1;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Cannot check the link filter rules in " + file, e);
+            return false;
+        }
+        if (modified == loadedModified && size == loadedSize) {
+            return false;
+        }
+        try {
+            load();
+            logger.log(Level.INFO, "Reloaded " + rules.count + " link filter rules from " + file);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            // Not tried again until the file changes once more
+            loadedModified = modified;
+            loadedSize = size;
+            logger.log(Level.WARNING, "Keeping the previous link filter rules, " + file + " is not valid", e);
+            return false;
+        }
+    }
+
+    /** Reads and compiles the file; the fields are only changed if it is valid. */
+    private synchronized void load() throws IOException {
+        long modified;
+        long size;
+        List<String> lines;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            modified = attributes.lastModifiedTime().toMillis();
+            size = attributes.size();
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            modified = -1;
+            size = -1;
+            lines = List.of();
+        }
+        rules = Rules.parse(file.getFileName() + ":", lines);
+        loadedModified = modified;
+        loadedSize = size;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Rules
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * One rule of the file.
+     *
+     * @param include whether it is an include rule
+     * @param field   the field it applies to: {@code name}, {@code tracker} or {@code size}
+     * @param value   the keyword or size range as written
+     * @param line    the line of the file it was read from
+     */
+    private record Rule(boolean include, String field, String value, int line) {
+        @Override
+        public String toString() {
+            return (include ? "include " : "exclude ") + field + " \"" + value + "\" (line " + line + ")";
+        }
+    }
+
+    /** The compiled rules of one version of the file. */
+    private static final class Rules {
+        final int count;
+        final KeywordAutomaton names;
+        final KeywordAutomaton trackers;
+        final List<Rule> sizeRules;
+        final long[] sizeRanges;
+        final boolean includeSize;
+
+        private Rules(int count, KeywordAutomaton names, KeywordAutomaton trackers, List<Rule> sizeRules,
+                      long[] sizeRanges) {
+            this.count = count;
+            this.names = names;
+            this.trackers = trackers;
+            this.sizeRules = sizeRules;
+            this.sizeRanges = sizeRanges;
+            this.includeSize = sizeRules.stream().anyMatch(Rule::include);
+        }
+
+        static Rules parse(String source, List<String> lines) {
+            List<Rule> nameRules = new ArrayList<>();
+            List<Rule> trackerRules = new ArrayList<>();
+            List<Rule> sizeRules = new ArrayList<>();
+            List<long[]> ranges = new ArrayList<>();
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i).strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+", 3);
+                if (parts.length < 3 || !(parts[0].equals("include") || parts[0].equals("exclude"))) {
+                    throw new IllegalArgumentException(source + (i + 1) + ": expected \"include|exclude <field> "
+                            + "<value>\", found \"" + line + "\"");
+                }
+                Rule rule = new Rule(parts[0].equals("include"), parts[1], parts[2], i + 1);
+                switch (rule.field()) {
+                    case "name" -> nameRules.add(rule);
+                    case "tracker" -> trackerRules.add(rule);
+                    case "size" -> {
+                        sizeRules.add(rule);
+                        ranges.add(parseRange(source + (i + 1), rule.value()));
+                    }
+                    default -> throw new IllegalArgumentException(source + (i + 1) + ": unknown field \""
+                            + rule.field() + "\", expected name, tracker or size");
+                }
+            }
+            long[] sizeRanges = new long[ranges.size() * 2];
+            for (int i = 0; i < ranges.size(); i++) {
+                sizeRanges[2 * i] = ranges.get(i)[0];
+                sizeRanges[2 * i + 1] = ranges.get(i)[1];
+            }
+            return new Rules(nameRules.size() + trackerRules.size() + sizeRules.size(),
+                    new KeywordAutomaton(nameRules), new KeywordAutomaton(trackerRules), List.copyOf(sizeRules),
+                    sizeRanges);
+        }
+
+        /** Parses {@code min..max}, either end optional, into inclusive bounds. */
+        private static long[] parseRange(String where, String value) {
+            int dots = value.indexOf("..");
+            if (dots < 0) {
+                throw new IllegalArgumentException(where + ": expected a size range min..max, found \"" + value
+                        + "\"");
+            }
+            String min = value.substring(0, dots).strip();
+            String max = value.substring(dots + 2).strip();
+            long[] range = {min.isEmpty() ? 0 : parseSize(where, min), max.isEmpty() ? Long.MAX_VALUE
+                    : parseSize(where, max)};
+            if (range[0] > range[1]) {
+                throw new IllegalArgumentException(where + ": empty size range \"" + value + "\"");
+            }
+            return range;
+        }
+
+        /** Parses a size with an optional binary unit. */
+        private static long parseSize(String where, String size) {
+            String upper = size.toUpperCase(Locale.ROOT);
+            int digits = 0;
+            while (digits < upper.length()
+                    && (Character.isDigit(upper.charAt(digits)) || upper.charAt(digits) == '.')) {
+                digits++;
+            }
+            int shift = switch (upper.substring(digits).strip()) {
+                case "", "B" -> 0;
+                case "KB", "K" -> 10;
+                case "MB", "M" -> 20;
+                case "GB", "G" -> 30;
+                case "TB", "T" -> 40;
+                default -> throw new IllegalArgumentException(where + ": unknown size unit in \"" + size + "\"");
+            };
+            try {
+                return (long) (Double.parseDouble(upper.substring(0, digits)) * (1L << shift));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(where + ": invalid size \"" + size + "\"", e);
+            }
+        }
+
+        String rejection(MagnetLink link) {
+            if (names.isEmpty() && trackers.isEmpty() && sizeRules.isEmpty()) {
+                return null;
+            }
+            String reason = names.isEmpty() ? null : names.rejection(link.displayName(), "name");
+            if (reason == null && !trackers.isEmpty()) {
+                boolean included = !trackers.hasIncludes();
+                for (String tracker : link.trackers()) {
+                    int match = trackers.scan(tracker);
+                    if (match >= 0) {
+                        return trackers.rule(match).toString();
+                    }
+                    included |= match == KeywordAutomaton.INCLUDED;
+                }
+                if (!included) {
+                    return "no include tracker rule matched";
+                }
+            }
+            return reason != null ? reason : sizeRejection(link.exactLength());
+        }
+
+        private String sizeRejection(long size) {
+            boolean included = !includeSize;
+            for (int i = 0; i < sizeRules.size(); i++) {
+                boolean inRange = size >= 0 && size >= sizeRanges[2 * i] && size <= sizeRanges[2 * i + 1];
+                if (inRange && !sizeRules.get(i).include()) {
+                    return sizeRules.get(i).toString();
+                }
+                included |= inRange;
+            }
+            return included ? null : "no include size rule matched";
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Keyword automaton
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Aho-Corasick automaton over the lowercase keywords of one field. The transitions of each state are kept sorted
+     * in flat arrays and found by binary search; every state knows the exclude rule and whether an include rule ends
+     * there or at one of its suffixes, so a scan stops at the first exclude match.
+     */
+    private static final class KeywordAutomaton {
+        /** Result of {@link #scan} when no exclude but an include keyword was found. */
+        static final int INCLUDED = -1;
+        /** Result of {@link #scan} when no keyword was found. */
+        static final int NONE = -2;
+
+        private final List<Rule> rules;
+        private final boolean hasIncludes;
+        /** Transitions of state s are labels and targets from first[s] to first[s + 1]. */
+        private final int[] first;
+        private final char[] labels;
+        private final int[] targets;
+        private final int[] fail;
+        /** Index of an exclude rule matching at the state, or -1. */
+        private final int[] exclude;
+        private final boolean[] include;
+
+        KeywordAutomaton(List<Rule> rules) {
+            this.rules = List.copyOf(rules);
+            this.hasIncludes = rules.stream().anyMatch(Rule::include);
+
+            // Trie with sorted children
+            List<TreeMap<Character, Integer>> children = new ArrayList<>();
+            List<Integer> excludeAt = new ArrayList<>();
+            List<Boolean> includeAt = new ArrayList<>();
+            children.add(new TreeMap<>());
+            excludeAt.add(-1);
+            includeAt.add(false);
+            for (int r = 0; r < rules.size(); r++) {
+                String keyword = rules.get(r).value();
+                int state = 0;
+                for (int i = 0; i < keyword.length(); i++) {
+                    char c = Character.toLowerCase(keyword.charAt(i));
+                    Integer next = children.get(state).get(c);
+                    if (next == null) {
+                        next = children.size();
+                        children.get(state).put(c, next);
+                        children.add(new TreeMap<>());
+                        excludeAt.add(-1);
+                        includeAt.add(false);
+                    }
+                    state = next;
+                }
+                if (rules.get(r).include()) {
+                    includeAt.set(state, true);
+                } else if (excludeAt.get(state) < 0) {
+                    excludeAt.set(state, r);
+                }
+            }
+
+            int states = children.size();
+            first = new int[states + 1];
+            labels = new char[states - 1];
+            targets = new int[states - 1];
+            int edge = 0;
+            for (int s = 0; s < states; s++) {
+                first[s] = edge;
+                for (var child : children.get(s).entrySet()) {
+                    labels[edge] = child.getKey();
+                    targets[edge++] = child.getValue();
+                }
+            }
+            first[states] = edge;
+
+            // Failure links in breadth-first order, merging the matches of the longest proper suffix
+            fail = new int[states];
+            exclude = excludeAt.stream().mapToInt(Integer::intValue).toArray();
+            include = new boolean[states];
+            for (int s = 0; s < states; s++) {
+                include[s] = includeAt.get(s);
+            }
+            Queue<Integer> queue = new ArrayDeque<>();
+            for (int e = first[0]; e < first[1]; e++) {
+                queue.add(targets[e]);
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.remove();
+                for (int e = first[state]; e < first[state + 1]; e++) {
+                    int child = targets[e];
+                    int f = fail[state];
+                    int next;
+                    while ((next = step(f, labels[e])) < 0 && f != 0) {
+                        f = fail[f];
+                    }
+                    fail[child] = next >= 0 ? next : 0;
+                    if (exclude[child] < 0) {
+                        exclude[child] = exclude[fail[child]];
+                    }
+                    include[child] |= include[fail[child]];
+                    queue.add(child);
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return rules.isEmpty();
+        }
+
+        boolean hasIncludes() {
+            return hasIncludes;
+        }
+
+        Rule rule(int index) {
+            return rules.get(index);
+        }
+
+        /** Returns the target of the transition of the state on the character, or -1. */
+        private int step(int state, char c) {
+            int e = Arrays.binarySearch(labels, first[state], first[state + 1], c);
+            return e >= 0 ? targets[e] : -1;
+        }
+
+        /**
+         * Scans the text for keywords.
+         *
+         * @param text the field value
+         * @return the index of the first exclude rule found, or {@link #INCLUDED} or {@link #NONE}
+         */
+        int scan(String text) {
+            int state = 0;
+            boolean included = false;
+            for (int i = 0; i < text.length(); i++) {
+                char c = Character.toLowerCase(text.charAt(i));
+                int next;
+                while ((next = step(state, c)) < 0 && state != 0) {
+                    state = fail[state];
+                }
+                state = next >= 0 ? next : 0;
+                if (exclude[state] >= 0) {
+                    return exclude[state];
+                }
+                included |= include[state];
+            }
+            return included ? INCLUDED : NONE;
+        }
+
+        /** Returns why the field value is rejected, or {@code null} if it passes. */
+        String rejection(String text, String field) {
+            int match = scan(text);
+            if (match >= 0) {
+                return rules.get(match).toString();
+            }
+            return match == INCLUDED || !hasIncludes ? null : "no include " + field + " rule matched";
+        }
+    }
+
+    /** Holder of the thread that checks the rules files of all filters, created on first use. */
+    private static final class Shared {
+        static final ScheduledExecutorService RELOADER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "link-filter-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private Shared() {
+        }
+    }
+}
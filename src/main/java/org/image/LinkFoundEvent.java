@@ -0,0 +1,65 @@
+package org.image;
+
+import java.io.PrintStream;
+
+/**
+ * A magnet link found for the first time in this session, as handed to the console, the window list, the event log
+ * and the headless output.
+ * <p>
+ * The event is created once per link and only holds its fields; each sink renders it when and where it needs to, so
+ * nothing is formatted for sinks that are not there, and the file formats happen on the writer's thread.
+ *
+ * @param timestamp  the time the link was processed, in milliseconds since the epoch
+ * @param number     the number of links found so far, this one included
+ * @param link       the magnet link
+ * @param sourceUrl  the URL of the page the link was found on, or {@code null}
+ * @param seenBefore whether the magnet store already knew the link from an earlier session
+ */
+public record LinkFoundEvent(long timestamp, int number, MagnetLink link, String sourceUrl, boolean seenBefore) {
+
+    private static final String SEEN_BEFORE = " (seen before)";
+
+    /**
+     * Returns the line of the window list: {@code <number>: <link>}, marked if seen before.
+     *
+     * @return the list line
+     */
+    @Override
+    public String toString() {
+        return number + ": " + link.uri() + (seenBefore ? SEEN_BEFORE : "");
+    }
+
+    /**
+     * Prints the console line {@code <number>: Link found: <link>}, marked if seen before, piece by piece.
+     *
+     * @param out the stream
+     */
+    void printTo(PrintStream out) {
+        // Held by println as well, so the line is not interleaved with other threads' output
+        synchronized (out) {
+            out.print(number);
+            out.print(": Link found: ");
+            out.print(link.uri());
+            out.println(seenBefore ? SEEN_BEFORE : "");
+        }
+    }
+
+    /**
+     * Appends the members of the event's JSON object, the record of the headless output:
+     * <pre>
+     * "type":"link","number":1,"link":"magnet:?...","infoHash":"...","name":"...","source":"https://...","seenBefore":false
+     * </pre>
+     *
+     * @param json the builder to append to, after the opening brace or another member
+     * @return the builder
+     */
+    StringBuilder appendJsonMembers(StringBuilder json) {
+        Json.appendMember(json, "type", "link");
+        Json.appendMember(json, "number", number);
+        Json.appendMember(json, "link", link.uri());
+        Json.appendMember(json, "infoHash", link.infoHashHex());
+        Json.appendMember(json, "name", link.displayName());
+        Json.appendMember(json, "source", sourceUrl);
+        return Json.appendMember(json, "seenBefore", seenBefore);
+    }
+}
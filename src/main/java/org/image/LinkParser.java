@@ -13,26 +13,42 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
-import javax.net.ssl.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.awt.Desktop;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
 import java.net.URI;
-import java.security.SecureRandom;
-import java.security.cert.X509Certificate;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class LinkParser {
-    private static final int NUMBER_OF_THREADS = 8;
-    private static Integer numberOfFoundLinks = 0;
+    private static final AtomicInteger numberOfFoundLinks = new AtomicInteger();
+    private static final InfoHashSet seenInfoHashes = new InfoHashSet();
     private static final Logger logger = Logger.getLogger(LinkParser.class.getName());
-    private static final String CSS_SELECTOR_MAGNET = "a[href^=magnet]";
+    static final String CSS_SELECTOR_MAGNET = "a[href^=magnet]";
+    private static final String CSS_SELECTOR_ANCHOR = "a[href]";
+    /** Most bytes of a page kept for the DOM parser in case the streaming tokenizer gives up on it. */
+    static final int DOM_FALLBACK_MAX_BYTES = 8 * 1024 * 1024;
 
     /*
       Initializes the logger configuration for the program by reading the "logging.properties" file
@@ -51,25 +67,149 @@ public class LinkParser {
     }
 
     /**
-     * Increments the counter for the number of found magnet links.
+     * Increments the counter for the number of found magnet links. The counter is a lock-free atomic, so the pool
+     * threads never block on it.
+     *
+     * @return the new number of found magnet links
      */
-    synchronized static void incrementNumberOfFoundLinks() {
-        numberOfFoundLinks++;
+    static int incrementNumberOfFoundLinks() {
+        return numberOfFoundLinks.incrementAndGet();
     }
 
     /**
-     * Returns the number of magnet links that have been found so far.
+     * Returns the number of unique magnet links that have been found so far.
      *
      * @return the number of found magnet links
      */
     public static Integer getNumberOfFoundLinks() {
-        return numberOfFoundLinks;
+        return numberOfFoundLinks.get();
+    }
+
+    /** Hands a new magnet link to the torrent client. */
+    private static volatile Consumer<MagnetLink> magnetLinkOpener = LinkParser::dispatchMagnetLink;
+
+    /**
+     * Sets what every newly found magnet link is handed to instead of the dispatcher, such as a no-op in headless
+     * runs without a torrent client, or a list in tests.
+     *
+     * @param opener the receiver of new links, or {@code null} to queue them for the dispatcher
+     */
+    public static void setMagnetLinkOpener(Consumer<MagnetLink> opener) {
+        magnetLinkOpener = opener != null ? opener : LinkParser::dispatchMagnetLink;
+    }
+
+    /**
+     * Receives every magnet link that is new in this session.
+     */
+    @FunctionalInterface
+    public interface FoundLinkListener {
+
+        /**
+         * Called once per new link, on the thread that processed it.
+         *
+         * @param event the link, its number and where it was found
+         */
+        void found(LinkFoundEvent event);
+    }
+
+    /** Prints new links and lists them in the window; replaced by the headless mode with its NDJSON output. */
+    private static volatile FoundLinkListener foundLinkListener = LinkParser::showFoundLink;
+
+    /**
+     * Sets the listener that shows every new magnet link.
+     *
+     * @param listener the listener, or {@code null} to print the links and list them in the window
+     */
+    public static void setFoundLinkListener(FoundLinkListener listener) {
+        foundLinkListener = listener != null ? listener : LinkParser::showFoundLink;
+    }
+
+    /** File that every new link is recorded in, or {@code null} when running without one. */
+    private static volatile LinkEventLog linkEventLog;
+
+    /**
+     * Sets the log that every new magnet link is recorded in, besides being shown by the listener.
+     *
+     * @param log the log, or {@code null} to not record links in a file
+     */
+    public static void setLinkEventLog(LinkEventLog log) {
+        linkEventLog = log;
+    }
+
+    /** Queue in front of the torrent client; a rate-limited Desktop dispatcher is created if none is set. */
+    private static volatile MagnetDispatcher magnetDispatcher;
+
+    /**
+     * Sets the dispatcher that hands newly found magnet links to the torrent client.
+     *
+     * @param dispatcher the dispatcher, or {@code null} to use a rate-limited Desktop dispatcher
+     */
+    public static void setMagnetDispatcher(MagnetDispatcher dispatcher) {
+        magnetDispatcher = dispatcher;
+    }
+
+    /** Rules that decide which links are wanted, or {@code null} to take every link. */
+    private static volatile LinkFilter linkFilter;
+
+    /**
+     * Sets the rules that every magnet link is checked against before it is counted, stored, shown and dispatched.
+     *
+     * @param filter the filter, or {@code null} to take every link
+     */
+    public static void setLinkFilter(LinkFilter filter) {
+        linkFilter = filter;
     }
 
-    private static volatile boolean isSearching = true;
+    /** Persistent record of every link found, or {@code null} when running without one. */
+    private static volatile MagnetStore magnetStore;
 
     /**
-     * Processes a magnet link by incrementing the counter for the number of found magnet links,
+     * Sets the store that every newly found magnet link is appended to.
+     *
+     * @param store the store, or {@code null} to keep found links in memory only
+     */
+    public static void setMagnetStore(MagnetStore store) {
+        magnetStore = store;
+    }
+
+    /** Cache of fetched pages and their links, or {@code null} when every page is downloaded and parsed. */
+    private static volatile PageCache pageCache;
+
+    /**
+     * Sets the cache that {@link #scanPage(String, Consumer, Consumer)} consults before parsing a page.
+     *
+     * @param cache the cache, or {@code null} to always download and parse pages
+     */
+    public static void setPageCache(PageCache cache) {
+        pageCache = cache;
+    }
+
+    /**
+     * Returns the store that found magnet links are appended to.
+     *
+     * @return the store, or {@code null} if none is set
+     */
+    public static MagnetStore getMagnetStore() {
+        return magnetStore;
+    }
+
+    /** Whether pages are scanned with the streaming tokenizer instead of a full Jsoup Document. */
+    private static volatile boolean streamingExtraction = true;
+
+    /**
+     * Selects how {@link #parseUrl(String)} extracts magnet links. The streaming mode hands each link to the workers
+     * as soon as its tag has arrived and falls back to the DOM mode for pages it cannot handle; the DOM mode parses
+     * the complete page into a Jsoup Document and runs {@link #CSS_SELECTOR_MAGNET} over it.
+     *
+     * @param enabled {@code true} for streaming extraction, {@code false} for the DOM path
+     */
+    public static void setStreamingExtraction(boolean enabled) {
+        streamingExtraction = enabled;
+    }
+
+    /**
+     * Processes a magnet link by checking its info-hash against the links seen so far (duplicates are dropped),
+     * incrementing the counter for the number of found magnet links,
      * extracting the "href" attribute from the link element, printing the link and number of found
      * links to the console, logging the link, adding the magnet link to a text area, and opening
      * the magnet link in the default torrent client.
@@ -77,83 +217,484 @@ public class LinkParser {
      * @param magnetLink the element representing the magnet link to be processed
      */
     static void processMagnetLink(Element magnetLink) {
-        // Increment the counter for the number of found magnet links
-        incrementNumberOfFoundLinks();
-
         // Extracting the "href" attribute from the link element
-        String link = magnetLink.attr("href");
-        System.out.println(getNumberOfFoundLinks() + ": " + "Link found: " + link);
+        processMagnetLink(magnetLink.attr("href"));
+    }
 
-        // For the logfile
-        logger.log(Level.INFO, getNumberOfFoundLinks() + ": " + "Link found: " + link);
+    /**
+     * Processes a magnet link given by its "href" value, as produced by the streaming extractor.
+     *
+     * @param link the magnet link to be processed
+     * @see #processMagnetLink(Element)
+     */
+    static void processMagnetLink(String link) {
+        processMagnetLink(link, null);
+    }
 
-        // Add magnet link to text area
-        AppWindow.addMagnetLinkToTextArea(getNumberOfFoundLinks() + ": " + link);
+    /**
+     * Processes a magnet link found on the given page. Links that are new in this session are appended to the
+     * {@link MagnetStore}, if one is set, together with the page URL; links the store already knows from an earlier
+     * session are marked as such.
+     *
+     * @param href      the magnet link to be processed
+     * @param sourceUrl the URL of the page the link was found on, or {@code null}
+     * @return {@code true} if the link was new in this session, {@code false} if it was a duplicate or was rejected
+     * by the {@link LinkFilter}
+     */
+    static boolean processMagnetLink(String href, String sourceUrl) {
+        // Parsed once here; every later stage works on the parsed link
+        return processMagnetLink(MagnetLink.parse(href), sourceUrl);
+    }
+
+    /**
+     * Processes a magnet link that has already been parsed, e.g. by the {@link LinkWatcher}.
+     *
+     * @param link      the magnet link to be processed
+     * @param sourceUrl the URL of the page the link was found on, or {@code null}
+     * @return {@code true} if the link was new in this session, {@code false} if it was a duplicate or was rejected
+     * by the {@link LinkFilter}
+     * @see #processMagnetLink(String, String)
+     */
+    static boolean processMagnetLink(MagnetLink link, String sourceUrl) {
+        // Checked before the info-hash is marked as seen, so that a rule removed later lets the link through
+        LinkFilter filter = linkFilter;
+        if (filter != null) {
+            String rejection = filter.rejection(link);
+            if (rejection != null) {
+                Metrics.LINKS_FILTERED.increment();
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.log(Level.FINE, "Link filtered by " + rejection + ": " + link);
+                }
+                return false;
+            }
+        }
+
+        // The same torrent appears several times per page and again across New/TOP
+        if (!seenInfoHashes.add(link)) {
+            return false;
+        }
+
+        // The number is the one this thread's increment produced, not whatever the counter holds by now
+        int number = incrementNumberOfFoundLinks();
+        Metrics.LINKS_UNIQUE.increment();
+
+        boolean seenBefore = storeMagnetLink(link, sourceUrl);
+        LinkFoundEvent event = new LinkFoundEvent(System.currentTimeMillis(), number, link, sourceUrl, seenBefore);
+
+        // The event log records every link; the text log only on request
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Link found: " + event);
+        }
+        recordLinkEvent(event);
 
-        // Opening the magnet link in the default torrent client
-        openMagnetLinkInTorrentClient(link, Desktop.getDesktop());
+        // Console and window list, or the headless output
+        foundLinkListener.found(event);
+
+        // Handing the magnet link to the torrent client
+        long dispatchStart = System.nanoTime();
+        magnetLinkOpener.accept(link);
+        Metrics.DISPATCH.recordSince(dispatchStart);
+        return true;
+    }
+
+    /**
+     * Prints a new link to the console and adds it to the window's list.
+     */
+    private static void showFoundLink(LinkFoundEvent event) {
+        event.printTo(System.out);
+        AppWindow.addMagnetLinkToList(event.toString());
+    }
+
+    /**
+     * Queues the event for the event log, if one is set, waiting while its queue is full.
+     */
+    private static void recordLinkEvent(LinkFoundEvent event) {
+        LinkEventLog log = linkEventLog;
+        if (log == null) {
+            return;
+        }
+        try {
+            log.append(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.log(Level.INFO, "Search stopped before the link was recorded: " + event.link());
+        } catch (IllegalStateException e) {
+            logger.log(Level.WARNING, "Failed to record the magnet link " + event.link(), e);
+        }
+    }
+
+    /**
+     * Queues the link for the torrent client, waiting while the dispatcher's queue is full.
+     */
+    private static void dispatchMagnetLink(MagnetLink link) {
+        MagnetDispatcher dispatcher = magnetDispatcher;
+        if (dispatcher == null) {
+            synchronized (LinkParser.class) {
+                dispatcher = magnetDispatcher;
+                if (dispatcher == null) {
+                    dispatcher = new MagnetDispatcher(new DesktopSink(DesktopSink.DEFAULT_LINKS_PER_SECOND));
+                    magnetDispatcher = dispatcher;
+                }
+            }
+        }
+        try {
+            dispatcher.dispatch(link);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.log(Level.INFO, "Search stopped before the magnet link was handed over: " + link);
+        } catch (IllegalStateException e) {
+            logger.log(Level.WARNING, "Failed to hand over the magnet link " + link, e);
+        }
+    }
+
+    /**
+     * Appends the link to the magnet store, if one is set.
+     *
+     * @return {@code true} if the store already knew the link from an earlier record
+     */
+    private static boolean storeMagnetLink(MagnetLink link, String sourceUrl) {
+        MagnetStore store = magnetStore;
+        if (store == null) {
+            return false;
+        }
+        try {
+            boolean known = store.contains(link.infoHash());
+            store.append(link, sourceUrl);
+            return known;
+        } catch (IOException | IllegalStateException e) {
+            logger.log(Level.WARNING, "Failed to store the magnet link " + link, e);
+            return false;
+        }
     }
 
+    /**
+     * Resets the counter and forgets the info-hashes seen so far, so that previously found links count again.
+     */
     public static void resetNumberOfFoundLinks() {
-        numberOfFoundLinks = 0;
+        seenInfoHashes.clear();
+        numberOfFoundLinks.set(0);
     }
 
     /**
      * Parses the given URL for magnet links and opens them in the default torrent client installed on the user's system.
-     * This method connects to the specified URL and retrieves the page content using Jsoup. It then selects all magnet
+     * This method retrieves the page content through the shared PageFetcher and parses it with Jsoup. It then selects all magnet
      * links on the page using a CSS selector. For each found magnet link, the method extracts the "href" attribute
      * and opens the link in the default torrent client using the openMagnetLinkInTorrentClient() method.
      * It is important to note that using this program to download illegal content may violate the laws
      * of your country. Ensure that you use this program in compliance with the law.
+     * <p>
+     * The page is parsed by a {@link ParseSession} on the shared executor; this method returns immediately and never
+     * blocks the calling (Swing) thread.
      *
      * @param url The URL to be parsed for magnet links
+     * @return the running session
+     */
+    public static ParseSession parseUrl(String url) {
+        return ParseSession.parse(url, sessionTimeout());
+    }
+
+    /**
+     * Crawls the given URL and the pagination and listing pages reachable from it, processing every magnet link
+     * found on the way exactly like {@link #parseUrl(String)} does. Pages are fetched concurrently by a
+     * {@link LinkCrawler} whose fetches are tasks of a {@link ParseSession}; this method returns immediately and never
+     * blocks the calling (Swing) thread.
+     *
+     * @param url      the URL to start from
+     * @param maxDepth how many link hops to follow from the start page
+     * @param maxPages the maximum number of pages to fetch
+     * @return the running session
+     */
+    public static ParseSession crawlUrl(String url, int maxDepth, int maxPages) {
+        return ParseSession.crawl(url, maxDepth, maxPages, sessionTimeout());
+    }
+
+    /**
+     * Stops every running parse and crawl and drops the links still waiting for the torrent client.
+     *
+     * @return the number of sessions stopped
+     */
+    public static int stopSearching() {
+        int sessions = ParseSession.cancelAll();
+        MagnetDispatcher dispatcher = magnetDispatcher;
+        int dropped = dispatcher != null ? dispatcher.cancelPending() : 0;
+        logger.log(Level.INFO, "Stopped " + sessions + " parse sessions and dropped " + dropped
+                + " magnet links waiting for the torrent client");
+        return sessions;
+    }
+
+    /** The deadline of a session: {@code -Dmagnetgrab.session.timeoutSeconds}, 5 minutes by default. */
+    private static Duration sessionTimeout() {
+        Long seconds = Long.getLong("magnetgrab.session.timeoutSeconds");
+        return seconds != null && seconds > 0 ? Duration.ofSeconds(seconds) : ParseSession.DEFAULT_TIMEOUT;
+    }
+
+    /**
+     * Passes the magnet links of a page to the sink, with streaming or DOM extraction as selected by
+     * {@link #setStreamingExtraction(boolean)}.
+     *
+     * @param url  the URL of the page
+     * @param sink receives the "href" value of every magnet link, in document order
+     * @return the number of magnet links passed to the sink
+     * @throws IOException if the page cannot be fetched
+     */
+    static int extractMagnetLinks(String url, Consumer<String> sink) throws IOException {
+        return streamingExtraction ? streamMagnetLinks(url, sink) : selectMagnetLinks(url, sink);
+    }
+
+    /**
+     * Fetches the page and passes each magnet link to the sink while the response body is still being read.
+     * If the page contains markup the streaming tokenizer cannot handle, the bytes read so far and the rest of the
+     * body are handed to the DOM parser, which skips the links that were already emitted. Pages larger than
+     * {@value #DOM_FALLBACK_MAX_BYTES} bytes keep the links streamed before the unsupported markup.
+     *
+     * @param url  the URL of the page
+     * @param sink receives the "href" value of every magnet link, in document order
+     * @return the number of magnet links passed to the sink
+     * @throws IOException if the page cannot be fetched
      */
-    public static void parseUrl(String url) {
-        isSearching = true;
+    static int streamMagnetLinks(String url, Consumer<String> sink) throws IOException {
+        return scanPage(url, sink, null);
+    }
+
+    /**
+     * Streams the page like {@link #streamMagnetLinks(String, Consumer)} and additionally reports the absolute URL
+     * of every other anchor on the page. After a DOM fallback, anchors may be reported a second time.
+     * <p>
+     * If a {@link PageCache} is set, the request carries the validators of the cached copy of the page; when the
+     * server answers 304 Not Modified, or sends a body identical to the cached one, the cached links are passed to the
+     * sinks without parsing the page.
+     *
+     * @param url        the URL of the page
+     * @param magnetSink receives the "href" value of every magnet link, in document order
+     * @param anchorSink receives the absolute URL of every non-magnet anchor, or {@code null} if not needed
+     * @return the number of magnet links passed to the sink
+     * @throws IOException if the page cannot be fetched
+     */
+    static int scanPage(String url, Consumer<String> magnetSink, Consumer<String> anchorSink) throws IOException {
+        PageCache cache = pageCache;
+        if (cache == null) {
+            // Соединение берётся из общего пула PageFetcher, тело ответа читается потоком
+            PageFetcher.Page page = PageFetcher.shared().fetch(url);
+            return extractLinks(url, page, page.body(), magnetSink, anchorSink).links();
+        }
+
+        PageCache.Entry cached = cache.get(url);
+        PageRefresh refresh = refreshPage(url, cached, magnetSink, anchorSink);
+        if (!refresh.changed()) {
+            return replayCachedLinks(cached, magnetSink, anchorSink);
+        }
+        Metrics.CACHE_MISSES.increment();
         try {
-            // Настройка SSL для обхода проверки сертификатов
-            SSLContext sc = SSLContext.getInstance("TLS");
-            sc.init(null, new TrustManager[]{new X509TrustManager() {
-                public X509Certificate[] getAcceptedIssuers() {
-                    return null;
-                }
-                public void checkClientTrusted(X509Certificate[] certs, String authType) {
-                }
-                public void checkServerTrusted(X509Certificate[] certs, String authType) {
-                }
-            }}, new SecureRandom());
-            HttpsURLConnection.setDefaultSSLSocketFactory(sc.getSocketFactory());
+            cache.put(refresh.entry());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to cache " + url, e);
+        }
+        return refresh.entry().magnetLinks().size();
+    }
 
-            // Настройка HostnameVerifier для принятия всех имен хостов
-            HttpsURLConnection.setDefaultHostnameVerifier((hostname, session) -> true);
+    /**
+     * A page fetched against a previous state of it.
+     *
+     * @param entry   the state of the page: the previous one if the page is unchanged, otherwise the one just parsed
+     * @param status  the HTTP status code; 304 if the server found the page unchanged
+     * @param changed {@code true} if the page was parsed, {@code false} if the previous state still holds
+     */
+    record PageRefresh(PageCache.Entry entry, int status, boolean changed) {
+    }
 
-            // Устанавливаем соединение с помощью Jsoup
-            Document doc = Jsoup.connect(url).get();
-            Elements magnetLinks = doc.select(CSS_SELECTOR_MAGNET);
+    /**
+     * Fetches a page and tells whether it changed since the given state of it, parsing it only if it did. The request
+     * carries the validators of the previous state; if the server answers 304 Not Modified, or sends no validators and
+     * a body with the previous digest, the previous state is kept and nothing is passed to the sinks.
+     *
+     * @param url        the URL of the page
+     * @param previous   the previous state of the page, or {@code null} to fetch and parse it unconditionally
+     * @param magnetSink receives the "href" value of every magnet link of a changed page, in document order
+     * @param anchorSink receives the absolute URL of every non-magnet anchor of a changed page, or {@code null}
+     * @return the page's state and whether it changed
+     * @throws IOException if the page cannot be fetched
+     */
+    static PageRefresh refreshPage(String url, PageCache.Entry previous, Consumer<String> magnetSink,
+                                   Consumer<String> anchorSink) throws IOException {
+        PageFetcher.Page page = previous == null ? PageFetcher.shared().fetch(url)
+                : PageFetcher.shared().fetch(url, previous.etag(), previous.lastModified());
+        if (previous != null && page.status() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            return new PageRefresh(previous, page.status(), false);
+        }
 
-            ExecutorService executorService = Executors.newFixedThreadPool(NUMBER_OF_THREADS);
+        InputStream body = page.body();
+        MessageDigest digest = PageCache.newDigest();
+        byte[] bodyDigest = null;
+        if (previous != null && previous.bodyDigest() != null && page.etag() == null && page.lastModified() == null) {
+            // Without validators only the body tells whether the page has changed, so it is read before parsing
+            byte[] bytes;
+            try (InputStream raw = page.body()) {
+                bytes = raw.readAllBytes();
+            }
+            bodyDigest = digest.digest(bytes);
+            if (Arrays.equals(bodyDigest, previous.bodyDigest())) {
+                return new PageRefresh(previous, page.status(), false);
+            }
+            body = new ByteArrayInputStream(bytes);
+        } else {
+            body = new DigestInputStream(body, digest);
+        }
 
-            for (Element magnetLink : magnetLinks) {
-                if (!isSearching) {
-                    executorService.shutdownNow();
-                    break;
-                }
-                executorService.submit(() -> processMagnetLink(magnetLink));
+        List<String> magnetLinks = new ArrayList<>();
+        List<String> anchors = new ArrayList<>();
+        PageScan scan = extractLinks(url, page, body, link -> {
+            magnetLinks.add(link);
+            magnetSink.accept(link);
+        }, anchor -> {
+            anchors.add(anchor);
+            if (anchorSink != null) {
+                anchorSink.accept(anchor);
             }
+        });
+        if (bodyDigest == null && scan.readToEnd()) {
+            bodyDigest = digest.digest();
+        }
+        return new PageRefresh(new PageCache.Entry(url, page.etag(), page.lastModified(), bodyDigest, magnetLinks,
+                anchors), page.status(), true);
+    }
 
-            if (isSearching) {
-                executorService.shutdown();
+    /**
+     * Result of extracting the links of a page.
+     *
+     * @param links     the number of magnet links passed to the sink
+     * @param readToEnd {@code true} if the body was read to its end, {@code false} if a page too large for the DOM
+     *                  parser was abandoned
+     */
+    private record PageScan(int links, boolean readToEnd) {
+    }
+
+    private static PageScan extractLinks(String url, PageFetcher.Page page, InputStream body,
+                                         Consumer<String> magnetSink, Consumer<String> anchorSink) throws IOException {
+        String charsetName = page.charset();
+        Charset charset = charsetName != null && Charset.isSupported(charsetName)
+                ? Charset.forName(charsetName) : StandardCharsets.UTF_8;
+        Consumer<String> resolvingSink = anchorSink == null ? null : resolvingAgainst(page.uri(), anchorSink);
+        // The DOM fallback parses the same bytes rather than a second fetch, which may differ from the first
+        BufferingInputStream buffered = new BufferingInputStream(body, DOM_FALLBACK_MAX_BYTES);
+        List<String> emitted = new ArrayList<>();
+        PageScan scan;
+        long start = System.nanoTime();
+        try (Reader reader = new InputStreamReader(buffered, charset)) {
+            try {
+                scan = new PageScan(MagnetStreamExtractor.extract(reader, href -> {
+                    emitted.add(href);
+                    magnetSink.accept(href);
+                }, resolvingSink, charsetName != null ? charset.name() : null), true);
+                Metrics.PARSE.recordSince(start);
+            } catch (MagnetStreamExtractor.UnsupportedMarkupException e) {
+                Metrics.PARSE.recordSince(start);
+                byte[] bytes = buffered.readAll();
+                if (bytes == null) {
+                    logger.log(Level.WARNING, "Streaming extraction not possible for " + url + " (" + e.getMessage()
+                            + ") and the page is too large for the DOM parser, keeping " + emitted.size() + " links");
+                    scan = new PageScan(emitted.size(), false);
+                } else {
+                    logger.log(Level.INFO, "Streaming extraction not possible for " + url + " (" + e.getMessage()
+                            + "), falling back to the DOM parser");
+                    scan = new PageScan(emitted.size() + selectLinks(page, new ByteArrayInputStream(bytes),
+                            magnetSink, emitted, anchorSink), true);
+                }
             }
+        }
+        Metrics.LINKS_EXTRACTED.add(scan.links());
+        return scan;
+    }
 
-/*        } catch (Exception e) {
-            logger.log(Level.SEVERE, "An error occurred while connecting to the URL", e);
-            e.printStackTrace();*/
-        } catch (Exception e) {
-        logger.log(Level.SEVERE, "An error occurred while connecting to the URL", e);
-        // Removed printStackTrace(); relying on logger instead.
+    /** Passes the links of an unchanged page from the cache to the sinks. */
+    private static int replayCachedLinks(PageCache.Entry cached, Consumer<String> magnetSink,
+                                         Consumer<String> anchorSink) {
+        logger.log(Level.FINE, "Page unchanged, " + cached.magnetLinks().size() + " magnet links from the cache: "
+                + cached.url());
+        Metrics.CACHE_HITS.increment();
+        Metrics.LINKS_EXTRACTED.add(cached.magnetLinks().size());
+        cached.magnetLinks().forEach(magnetSink);
+        if (anchorSink != null) {
+            cached.anchors().forEach(anchorSink);
+        }
+        return cached.magnetLinks().size();
     }
 
-}
+    /**
+     * Fetches the page into a complete Jsoup Document and passes the "href" value of every element matched by
+     * {@link #CSS_SELECTOR_MAGNET} to the sink.
+     *
+     * @param url  the URL of the page
+     * @param sink receives the "href" value of every magnet link, in document order
+     * @return the number of magnet links passed to the sink
+     * @throws IOException if the page cannot be fetched
+     */
+    static int selectMagnetLinks(String url, Consumer<String> sink) throws IOException {
+        PageFetcher.Page page = PageFetcher.shared().fetch(url);
+        int links = selectLinks(page, page.body(), sink, List.of(), null);
+        Metrics.LINKS_EXTRACTED.add(links);
+        return links;
+    }
+
+    /**
+     * Parses a body into a Jsoup Document and passes its magnet links to the sink, except those already emitted.
+     *
+     * @param page       the fetched page, for its charset and URL
+     * @param body       the body to parse; closed when done
+     * @param magnetSink receives the "href" value of every magnet link, in document order
+     * @param emitted    the "href" values already passed to the sink; each skips one link with the same value
+     * @param anchorSink receives the absolute URL of every non-magnet anchor, or {@code null} if not needed
+     * @return the number of magnet links passed to the sink
+     * @throws IOException if the body cannot be read
+     */
+    private static int selectLinks(PageFetcher.Page page, InputStream body, Consumer<String> magnetSink,
+                                   List<String> emitted, Consumer<String> anchorSink) throws IOException {
+        long start = System.nanoTime();
+        Document doc;
+        try (body) {
+            doc = Jsoup.parse(body, page.charset(), page.uri().toString());
+        }
+        Elements magnetLinks = doc.select(CSS_SELECTOR_MAGNET);
+        Metrics.SELECT.recordSince(start);
+        Map<String, Integer> skip = new HashMap<>();
+        for (String href : emitted) {
+            skip.merge(href, 1, Integer::sum);
+        }
+        int links = 0;
+        for (Element magnetLink : magnetLinks) {
+            String href = magnetLink.attr("href");
+            Integer already = skip.get(href);
+            if (already != null) {
+                if (already == 1) {
+                    skip.remove(href);
+                } else {
+                    skip.put(href, already - 1);
+                }
+                continue;
+            }
+            magnetSink.accept(href);
+            links++;
+        }
+        if (anchorSink != null) {
+            for (Element anchor : doc.select(CSS_SELECTOR_ANCHOR)) {
+                String absoluteUrl = anchor.absUrl("href");
+                if (!absoluteUrl.isEmpty() && !anchor.is(CSS_SELECTOR_MAGNET)) {
+                    anchorSink.accept(absoluteUrl);
+                }
+            }
+        }
+        return links;
+    }
+
+    /** Wraps an anchor sink so that raw "href" values are resolved against the page URL; unparsable ones are dropped. */
+    private static Consumer<String> resolvingAgainst(URI pageUri, Consumer<String> anchorSink) {
+        return href -> {
+            try {
+                anchorSink.accept(pageUri.resolve(href.strip()).toString());
+            } catch (IllegalArgumentException e) {
+                // Not a valid link, nothing to follow
+            }
+        };
+    }
 
     /**
      * Opens the given magnet link in the default torrent client installed on the user's system.
@@ -181,4 +722,68 @@ public class LinkParser {
         }
     }
 
+    /**
+     * Input stream that keeps a copy of the bytes read through it, up to a limit, so that a page can be parsed again
+     * without fetching it again.
+     */
+    private static final class BufferingInputStream extends FilterInputStream {
+        private final int maxBytes;
+        /** The bytes read so far, or {@code null} once there were more than the limit. */
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        BufferingInputStream(InputStream in, int maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0 && keep(1)) {
+                copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0 && keep(count)) {
+                copy.write(buffer, offset, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes must be copied too
+            return read(new byte[(int) Math.min(n, 8192)]);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private boolean keep(int count) {
+            if (copy != null && copy.size() + count > maxBytes) {
+                copy = null;
+            }
+            return copy != null;
+        }
+
+        /**
+         * Reads the rest of the stream and returns every byte of it, including those read before.
+         *
+         * @return the whole stream, or {@code null} if it is longer than the limit
+         * @throws IOException if the stream cannot be read
+         */
+        byte[] readAll() throws IOException {
+            byte[] buffer = new byte[8192];
+            while (copy != null && read(buffer, 0, buffer.length) >= 0) {
+                // Copied by read
+            }
+            return copy != null ? copy.toByteArray() : null;
+        }
+    }
 }
@@ -0,0 +1,262 @@
+package org.image;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watch mode: polls listing pages on an adaptive interval and emits only the magnet links that were not on the page
+ * at the previous poll.
+ * <p>
+ * Each poll first rules out an unchanged page the way {@link LinkParser#scanPage} does against its {@link PageCache}:
+ * through {@link LinkParser#refreshPage}, the request carries the {@code ETag} and {@code Last-Modified} validators
+ * of the page's {@link PageCache.Entry} from the previous poll, so a server that supports them answers 304 without a
+ * body, and a body without validators whose SHA-256 digest matches the previous one is not parsed. Otherwise the
+ * page is parsed and its set of info-hashes compared with the previous one, since listing pages often differ in ads
+ * or timestamps only.
+ * <p>
+ * The watcher keeps that entry per page in memory rather than in the page cache: it compares each poll with its own
+ * previous poll, which a manual parse of the same page in between must not move.
+ * Info-hashes that were not in the previous set go through {@link LinkParser#processMagnetLink(MagnetLink, String)},
+ * which drops those already found in this session and hands the rest to the list, the store and the dispatcher.
+ * <p>
+ * The interval of each page halves, down to the minimum, after a poll that found its magnet set changed, and grows by
+ * half, up to the maximum, after one that did not or that failed; the first poll of a page keeps the initial one.
+ * Pages that change often are polled often; static ones cost a conditional request every so often. Polls run one at a
+ * time on a daemon thread of the watcher.
+ */
+public class LinkWatcher implements Closeable {
+
+    /** Default shortest interval, overridable with -Dmagnetgrab.watch.minSeconds. */
+    public static final Duration DEFAULT_MIN_INTERVAL = Duration.ofSeconds(30);
+    /** Default interval until a page has shown how often it changes. */
+    public static final Duration DEFAULT_INITIAL_INTERVAL = Duration.ofMinutes(2);
+    /** Default longest interval, overridable with -Dmagnetgrab.watch.maxSeconds. */
+    public static final Duration DEFAULT_MAX_INTERVAL = Duration.ofMinutes(30);
+    /** Factor applied to the interval after a poll that found the page changed. */
+    static final double SHRINK = 0.5;
+    /** Factor applied to the interval after a poll that found it unchanged. */
+    static final double GROW = 1.5;
+
+    private static final Logger logger = Logger.getLogger(LinkWatcher.class.getName());
+
+    /** What a poll found. */
+    public enum Outcome {
+        /** The server answered 304 Not Modified. */
+        NOT_MODIFIED,
+        /** The body or its magnet set was the same as at the previous poll. */
+        UNCHANGED,
+        /** The magnet set differed from the previous poll's, or it was the first poll. */
+        CHANGED,
+        /** The page could not be fetched or read. */
+        FAILED
+    }
+
+    /**
+     * Result of one poll.
+     *
+     * @param url          the page URL
+     * @param outcome      what the poll found
+     * @param links        the number of distinct info-hashes on the page, or -1 if it was not parsed
+     * @param emitted      the number of info-hashes that were not on the page at the previous poll
+     * @param nextInterval the time until the next poll of the page
+     */
+    public record Poll(String url, Outcome outcome, int links, int emitted, Duration nextInterval) {
+    }
+
+    /** State of one watched page; only accessed by the polling thread. */
+    private static final class Target {
+        final String url;
+        Duration interval;
+        /** The page at the previous poll, or {@code null} before the first one. */
+        PageCache.Entry state;
+
+        Target(String url, Duration interval) {
+            this.url = url;
+            this.interval = interval;
+        }
+    }
+
+    private final Map<String, Target> targets = new LinkedHashMap<>();
+    private final Duration minInterval;
+    private final Duration maxInterval;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "link-watcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates a watcher; polling starts with {@link #start()}.
+     *
+     * @param urls            the pages to watch
+     * @param minInterval     the shortest interval between two polls of a page
+     * @param initialInterval the interval after the first poll of a page
+     * @param maxInterval     the longest interval between two polls of a page
+     * @throws IllegalArgumentException if there are no pages or the intervals are not positive and in order
+     */
+    public LinkWatcher(List<String> urls, Duration minInterval, Duration initialInterval, Duration maxInterval) {
+        if (urls.isEmpty() || minInterval.isNegative() || minInterval.isZero()
+                || initialInterval.compareTo(minInterval) < 0 || maxInterval.compareTo(initialInterval) < 0) {
+            throw new IllegalArgumentException("Invalid watch: " + urls + ", intervals " + minInterval + ", "
+                    + initialInterval + ", " + maxInterval);
+        }
+        for (String url : urls) {
+            targets.put(url, new Target(url, initialInterval));
+        }
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+    }
+
+    /**
+     * Creates a watcher of the given pages with the intervals set by {@code -Dmagnetgrab.watch.minSeconds} and
+     * {@code -Dmagnetgrab.watch.maxSeconds}, or the defaults.
+     *
+     * @param urls the pages to watch
+     * @return the watcher, not started yet
+     */
+    public static LinkWatcher configured(List<String> urls) {
+        Duration min = Duration.ofSeconds(Long.getLong("magnetgrab.watch.minSeconds",
+                DEFAULT_MIN_INTERVAL.toSeconds()));
+        Duration max = Duration.ofSeconds(Long.getLong("magnetgrab.watch.maxSeconds",
+                DEFAULT_MAX_INTERVAL.toSeconds()));
+        Duration initial = DEFAULT_INITIAL_INTERVAL.compareTo(min) < 0 ? min
+                : DEFAULT_INITIAL_INTERVAL.compareTo(max) > 0 ? max : DEFAULT_INITIAL_INTERVAL;
+        return new LinkWatcher(urls, min, initial, max);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Public API
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Polls every page now and then each on its own interval, until the watcher is closed.
+     */
+    public void start() {
+        logger.log(Level.INFO, "Watching " + targets.keySet());
+        for (Target target : targets.values()) {
+            scheduler.execute(() -> pollAndReschedule(target));
+        }
+    }
+
+    /**
+     * Stops polling; a poll in progress is interrupted.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        logger.log(Level.INFO, "Stopped watching " + targets.keySet());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Polling
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private void pollAndReschedule(Target target) {
+        Poll poll = poll(target);
+        if (poll.outcome() == Outcome.CHANGED && poll.emitted() > 0) {
+            logger.log(Level.INFO, "Watch: " + poll.emitted() + " new links on " + target.url + ", next poll in "
+                    + poll.nextInterval().toSeconds() + " s");
+        } else if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Watch: " + poll);
+        }
+        if (!scheduler.isShutdown()) {
+            scheduler.schedule(() -> pollAndReschedule(target), poll.nextInterval().toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Polls one watched page right away and adapts its interval.
+     *
+     * @param url a watched page
+     * @return the result of the poll
+     * @throws IllegalArgumentException if the page is not watched
+     */
+    Poll poll(String url) {
+        Target target = targets.get(url);
+        if (target == null) {
+            throw new IllegalArgumentException("Not watched: " + url);
+        }
+        return poll(target);
+    }
+
+    private Poll poll(Target target) {
+        Metrics.WATCH_POLLS.increment();
+        long start = System.nanoTime();
+        Outcome outcome;
+        int links = -1;
+        int emitted = 0;
+        boolean first = target.state == null;
+        try {
+            LinkParser.PageRefresh refresh = LinkParser.refreshPage(target.url, target.state, href -> { }, null);
+            if (refresh.status() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                outcome = Outcome.NOT_MODIFIED;
+            } else if (!refresh.changed()) {
+                outcome = Outcome.UNCHANGED;
+            } else {
+                List<MagnetLink> found = magnetLinks(refresh.entry());
+                Set<MagnetLink> current = new HashSet<>(found);
+                Set<MagnetLink> previous = first ? Set.of() : new HashSet<>(magnetLinks(target.state));
+                links = current.size();
+                if (!first && current.equals(previous)) {
+                    outcome = Outcome.UNCHANGED;
+                } else {
+                    outcome = Outcome.CHANGED;
+                    Set<MagnetLink> emittedLinks = new HashSet<>();
+                    // In page order, like a manual parse
+                    for (MagnetLink link : found) {
+                        if (!previous.contains(link) && emittedLinks.add(link)) {
+                            LinkParser.processMagnetLink(link, target.url);
+                        }
+                    }
+                    emitted = emittedLinks.size();
+                }
+            }
+            target.state = refresh.entry();
+        } catch (IOException | RuntimeException e) {
+            outcome = Outcome.FAILED;
+            if (!scheduler.isShutdown()) {
+                Metrics.PAGE_FAILURES.increment();
+                logger.log(Level.WARNING, "Watch: failed to poll " + target.url, e);
+            }
+        } finally {
+            Metrics.PAGE.recordSince(start);
+        }
+        if (outcome == Outcome.NOT_MODIFIED || outcome == Outcome.UNCHANGED) {
+            Metrics.WATCH_POLLS_UNCHANGED.increment();
+        }
+        // The first poll only tells what is on the page, not how often it changes
+        if (!(first && outcome == Outcome.CHANGED)) {
+            target.interval = nextInterval(target.interval, outcome == Outcome.CHANGED);
+        }
+        return new Poll(target.url, outcome, links, emitted, target.interval);
+    }
+
+    /** Parses the magnet links of a page state, in page order. */
+    private static List<MagnetLink> magnetLinks(PageCache.Entry entry) {
+        List<MagnetLink> links = new ArrayList<>(entry.magnetLinks().size());
+        for (String href : entry.magnetLinks()) {
+            links.add(MagnetLink.parse(href));
+        }
+        return links;
+    }
+
+    /** Halves the interval after a change and grows it by half otherwise, within the bounds. */
+    private Duration nextInterval(Duration interval, boolean changed) {
+        long millis = (long) (interval.toMillis() * (changed ? SHRINK : GROW));
+        return Duration.ofMillis(Math.max(minInterval.toMillis(), Math.min(maxInterval.toMillis(), millis)));
+    }
+}
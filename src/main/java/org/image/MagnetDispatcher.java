@@ -0,0 +1,181 @@
+package org.image;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands found magnet links to a {@link MagnetSink} from one background thread, in batches.
+ * <p>
+ * The parser threads only put links into a bounded queue. A worker thread takes whatever has queued up, up to the
+ * batch size, and hands it to the sink in one call. When the sink falls behind and the queue is full,
+ * {@link #dispatch(MagnetLink)} blocks, so a page with thousands of links is throttled to the speed of the torrent client
+ * instead of piling up handler processes or requests.
+ */
+public class MagnetDispatcher implements Closeable {
+
+    /** Default number of links that may wait for the sink. */
+    public static final int DEFAULT_CAPACITY = 1024;
+    /** Default maximum number of links per {@link MagnetSink#send(List)} call. */
+    public static final int DEFAULT_MAX_BATCH = 100;
+    /** How long {@link #close()} waits for the queued links to be handed over. */
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+
+    /** Queued after the last link by {@link #close()}; compared by identity. */
+    private static final MagnetLink END = MagnetLink.parse("");
+
+    private static final Logger logger = Logger.getLogger(MagnetDispatcher.class.getName());
+
+    private final MagnetSink sink;
+    private final BlockingQueue<MagnetLink> queue;
+    private final int maxBatch;
+    private final Thread worker;
+    private volatile boolean closed;
+
+    /**
+     * Creates a dispatcher with the default capacity and batch size and starts its worker thread.
+     *
+     * @param sink the sink to hand links to
+     */
+    public MagnetDispatcher(MagnetSink sink) {
+        this(sink, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * Creates a dispatcher and starts its worker thread.
+     *
+     * @param sink     the sink to hand links to
+     * @param capacity the number of links that may wait for the sink before {@link #dispatch(MagnetLink)} blocks
+     * @param maxBatch the maximum number of links per call of the sink
+     * @throws IllegalArgumentException if the capacity or the batch size is not positive
+     */
+    public MagnetDispatcher(MagnetSink sink, int capacity, int maxBatch) {
+        if (capacity <= 0 || maxBatch <= 0) {
+            throw new IllegalArgumentException("Capacity and batch size must be positive");
+        }
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.worker = new Thread(this::run, "magnet-dispatcher");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Queues a magnet link for the sink, waiting while the queue is full.
+     *
+     * @param link the magnet link
+     * @throws InterruptedException  if interrupted while waiting
+     * @throws IllegalStateException if the dispatcher has been closed
+     */
+    public void dispatch(MagnetLink link) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("The magnet dispatcher is closed");
+        }
+        queue.put(link);
+    }
+
+    /**
+     * Drops the links waiting for the sink, e.g. when the user stops the search. The batch being handed over is not
+     * taken back.
+     *
+     * @return the number of links dropped
+     */
+    public int cancelPending() {
+        List<MagnetLink> dropped = new ArrayList<>();
+        queue.drainTo(dropped);
+        if (dropped.removeIf(link -> link == END)) {
+            // A concurrent close() must still find its end marker
+            queue.offer(END);
+        }
+        return dropped.size();
+    }
+
+    /**
+     * Returns the number of links waiting for the sink.
+     *
+     * @return the queue length
+     */
+    public int pending() {
+        return queue.size();
+    }
+
+    private void run() {
+        List<MagnetLink> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, maxBatch - 1);
+            boolean end = false;
+            for (int i = 0; i < batch.size() && !end; i++) {
+                if (batch.get(i) == END) {
+                    // Links that raced past close() after the end marker are dropped with it
+                    batch.subList(i, batch.size()).clear();
+                    end = true;
+                }
+            }
+            if (!batch.isEmpty()) {
+                send(batch);
+                batch.clear();
+            }
+            if (end || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    private void send(List<MagnetLink> batch) {
+        long start = System.nanoTime();
+        try {
+            sink.send(batch);
+            Metrics.LINKS_DISPATCHED.add(batch.size());
+        } catch (MagnetSink.PartialSendException e) {
+            Metrics.LINKS_DISPATCHED.add(batch.size() - e.failed());
+            Metrics.DISPATCH_FAILURES.add(e.failed());
+            logger.log(Level.WARNING, "Failed to hand " + e.failed() + " of " + batch.size() + " magnet links to the "
+                    + sink.getClass().getSimpleName(), e);
+        } catch (IOException | RuntimeException e) {
+            Metrics.DISPATCH_FAILURES.add(batch.size());
+            logger.log(Level.WARNING, "Failed to hand " + batch.size() + " magnet links to the "
+                    + sink.getClass().getSimpleName(), e);
+        } finally {
+            Metrics.SINK.recordSince(start);
+        }
+    }
+
+    /**
+     * Stops accepting links, waits up to 10 seconds for the queued ones to be handed over and closes the sink. Links
+     * still queued after that are dropped and logged.
+     *
+     * @throws IOException if closing the sink fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MILLIS;
+            if (queue.offer(END, CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive()) {
+            worker.interrupt();
+            logger.log(Level.WARNING, "Dropped " + queue.size() + " magnet links that were not handed over in time");
+        }
+        sink.close();
+    }
+}
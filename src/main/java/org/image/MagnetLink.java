@@ -0,0 +1,372 @@
+package org.image;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * A magnet link, parsed once when it is found and handed as is to de-duplication, the store, the dispatcher and the
+ * window.
+ * <p>
+ * {@link #parse(String)} scans the link in a single pass, without regular expressions, splitting or substrings, and
+ * reads the parameters the app uses:
+ * <ul>
+ *     <li>{@code xt=urn:btih:}: the BitTorrent info-hash, as 40 hex digits or 32 base32 characters in either case,
+ *     kept as 20 bytes in three primitive words, so that both spellings of the same torrent are the same key. Links
+ *     without a valid BTIH (e.g. BitTorrent v2-only links) are keyed by the SHA-1 of the trimmed link instead.</li>
+ *     <li>{@code dn}: the display name,</li>
+ *     <li>{@code xl}: the exact length in bytes,</li>
+ *     <li>{@code tr}: the trackers.</li>
+ * </ul>
+ * Only the positions of the name and the trackers are kept; they are decoded when asked for, so links that turn out
+ * to be duplicates cost the scan and one object. Parsing never fails: missing or malformed parameters are simply
+ * absent. Two links are equal if they have the same key.
+ */
+public final class MagnetLink {
+
+    private static final String BTIH_PREFIX = "urn:btih:";
+    /** Values of the hex digits and base32 characters by character code; -1 for other characters. */
+    private static final byte[] HEX_VALUES = values("0123456789abcdef");
+    private static final byte[] BASE32_VALUES = values("abcdefghijklmnopqrstuvwxyz234567");
+
+    private final String uri;
+    /** The 20-byte key, big-endian: bytes 0-7, 8-15 and 16-19. */
+    private final long hash0;
+    private final long hash1;
+    private final int hash2;
+    private final boolean btih;
+    private final long exactLength;
+    /** Range of the raw {@code dn} value, or -1. */
+    private final int nameStart;
+    private final int nameEnd;
+    /** Start and end of each raw {@code tr} value, or {@code null} if there are none. */
+    private final int[] trackerRanges;
+    /** The decoded display name; computed on first use, a benign race like {@code String.hashCode}. */
+    private String name;
+
+    private MagnetLink(String uri, long hash0, long hash1, int hash2, boolean btih, long exactLength, int nameStart,
+                       int nameEnd, int[] trackerRanges) {
+        this.uri = uri;
+        this.hash0 = hash0;
+        this.hash1 = hash1;
+        this.hash2 = hash2;
+        this.btih = btih;
+        this.exactLength = exactLength;
+        this.nameStart = nameStart;
+        this.nameEnd = nameEnd;
+        this.trackerRanges = trackerRanges;
+    }
+
+    /**
+     * Parses a magnet link. Parameter names are matched regardless of case; of repeated {@code xt}, {@code dn} and
+     * {@code xl} parameters the first valid one counts.
+     *
+     * @param uri the magnet link
+     * @return the parsed link
+     */
+    public static MagnetLink parse(String uri) {
+        long hash0 = 0;
+        long hash1 = 0;
+        int hash2 = 0;
+        boolean btih = false;
+        long exactLength = -1;
+        int nameStart = -1;
+        int nameEnd = -1;
+        int[] trackers = null;
+        int trackerCount = 0;
+
+        int length = uri.length();
+        int query = uri.indexOf('?');
+        for (int start = query + 1; query >= 0 && start < length; start++) {
+            int end = uri.indexOf('&', start);
+            if (end < 0) {
+                end = length;
+            }
+            // Every parameter the app reads has a two-letter name
+            if (end - start >= 3 && uri.charAt(start + 2) == '=') {
+                int valueStart = start + 3;
+                switch (uri.charAt(start) | 0x20) {
+                    case 'x' -> {
+                        int second = uri.charAt(start + 1) | 0x20;
+                        if (second == 't' && !btih
+                                && uri.regionMatches(true, valueStart, BTIH_PREFIX, 0, BTIH_PREFIX.length())) {
+                            int hashStart = valueStart + BTIH_PREFIX.length();
+                            int digits = end - hashStart;
+                            if (digits == 40 && isValid(uri, hashStart, 40, HEX_VALUES)) {
+                                hash0 = hexBits(uri, hashStart, 16);
+                                hash1 = hexBits(uri, hashStart + 16, 16);
+                                hash2 = (int) hexBits(uri, hashStart + 32, 8);
+                                btih = true;
+                            } else if (digits == 32 && isValid(uri, hashStart, 32, BASE32_VALUES)) {
+                                hash0 = base32Bits(uri, hashStart, 0, 64);
+                                hash1 = base32Bits(uri, hashStart, 64, 64);
+                                hash2 = (int) base32Bits(uri, hashStart, 128, 32);
+                                btih = true;
+                            }
+                        } else if (second == 'l' && exactLength < 0) {
+                            exactLength = parseLength(uri, valueStart, end);
+                        }
+                    }
+                    case 'd' -> {
+                        if ((uri.charAt(start + 1) | 0x20) == 'n' && nameStart < 0) {
+                            nameStart = valueStart;
+                            nameEnd = end;
+                        }
+                    }
+                    case 't' -> {
+                        if ((uri.charAt(start + 1) | 0x20) == 'r') {
+                            if (trackers == null) {
+                                trackers = new int[8];
+                            } else if (trackerCount * 2 == trackers.length) {
+                                trackers = Arrays.copyOf(trackers, trackers.length * 2);
+                            }
+                            trackers[trackerCount * 2] = valueStart;
+                            trackers[trackerCount * 2 + 1] = end;
+                            trackerCount++;
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+            start = end;
+        }
+
+        if (!btih) {
+            byte[] digest = sha1(uri.strip());
+            hash0 = readBits(digest, 0, Long.BYTES);
+            hash1 = readBits(digest, 8, Long.BYTES);
+            hash2 = (int) readBits(digest, 16, Integer.BYTES);
+        }
+        if (trackers != null && trackers.length != trackerCount * 2) {
+            trackers = Arrays.copyOf(trackers, trackerCount * 2);
+        }
+        return new MagnetLink(uri, hash0, hash1, hash2, btih, exactLength, nameStart, nameEnd, trackers);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Accessors
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the link as it was found.
+     *
+     * @return the magnet link
+     */
+    public String uri() {
+        return uri;
+    }
+
+    /**
+     * Tells whether the key is the link's BTIH rather than a digest of the link.
+     *
+     * @return {@code true} if the link has a valid {@code xt=urn:btih:} parameter
+     */
+    public boolean hasBtih() {
+        return btih;
+    }
+
+    /**
+     * Returns the 20-byte key: the BTIH, or the SHA-1 of the trimmed link if it has none.
+     *
+     * @return a new array of {@link InfoHashSet#HASH_LENGTH} bytes
+     */
+    public byte[] infoHash() {
+        byte[] hash = new byte[InfoHashSet.HASH_LENGTH];
+        writeBits(hash, 0, Long.BYTES, hash0);
+        writeBits(hash, 8, Long.BYTES, hash1);
+        writeBits(hash, 16, Integer.BYTES, hash2);
+        return hash;
+    }
+
+    /**
+     * Returns the key as 40 lowercase hex digits.
+     *
+     * @return the hex key
+     */
+    public String infoHashHex() {
+        return HexFormat.of().formatHex(infoHash());
+    }
+
+    /**
+     * Returns the URL-decoded display name; if it is not validly encoded, it is returned as found.
+     *
+     * @return the display name, or an empty string if the link has none
+     */
+    public String displayName() {
+        String decoded = name;
+        if (decoded == null) {
+            decoded = nameStart < 0 ? "" : decode(nameStart, nameEnd);
+            name = decoded;
+        }
+        return decoded;
+    }
+
+    /**
+     * Returns the exact length of the content.
+     *
+     * @return the length in bytes, or -1 if the link does not give a valid one
+     */
+    public long exactLength() {
+        return exactLength;
+    }
+
+    /**
+     * Returns the URL-decoded trackers, in the order of the link.
+     *
+     * @return the trackers; empty if the link has none
+     */
+    public List<String> trackers() {
+        if (trackerRanges == null) {
+            return List.of();
+        }
+        List<String> trackers = new ArrayList<>(trackerRanges.length / 2);
+        for (int i = 0; i < trackerRanges.length; i += 2) {
+            trackers.add(decode(trackerRanges[i], trackerRanges[i + 1]));
+        }
+        return List.copyOf(trackers);
+    }
+
+    long hash0() {
+        return hash0;
+    }
+
+    long hash1() {
+        return hash1;
+    }
+
+    int hash2() {
+        return hash2;
+    }
+
+    /**
+     * Tells whether the other object is a magnet link with the same key.
+     *
+     * @param other the other object
+     * @return {@code true} if both links have the same key
+     */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof MagnetLink link && hash0 == link.hash0 && hash1 == link.hash1 && hash2 == link.hash2;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hash0 ^ Long.rotateLeft(hash1, 21) ^ hash2);
+    }
+
+    /**
+     * Returns the link as it was found.
+     *
+     * @return the magnet link
+     */
+    @Override
+    public String toString() {
+        return uri;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Decoding
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /** URL-decodes a range of the link; plain values are returned without going through the decoder. */
+    private String decode(int start, int end) {
+        String raw = uri.substring(start, end);
+        if (raw.indexOf('%') < 0 && raw.indexOf('+') < 0) {
+            return raw;
+        }
+        try {
+            return URLDecoder.decode(raw, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return raw;
+        }
+    }
+
+    private static boolean isValid(String s, int offset, int count, byte[] values) {
+        for (int i = offset; i < offset + count; i++) {
+            char c = s.charAt(i);
+            if (c >= values.length || values[c] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Reads {@code digits} hex digits, at most 16, as a big-endian number. */
+    private static long hexBits(String s, int offset, int digits) {
+        long value = 0;
+        for (int i = offset; i < offset + digits; i++) {
+            value = value << 4 | HEX_VALUES[s.charAt(i)];
+        }
+        return value;
+    }
+
+    /** Reads {@code count} bits, at most 64, starting at bit {@code firstBit} of a base32 string. */
+    private static long base32Bits(String s, int offset, int firstBit, int count) {
+        long value = 0;
+        int bit = firstBit;
+        int endBit = firstBit + count;
+        while (bit < endBit) {
+            int used = bit % 5;
+            int take = Math.min(5 - used, endBit - bit);
+            int digit = BASE32_VALUES[s.charAt(offset + bit / 5)];
+            value = value << take | (digit >>> (5 - used - take)) & ((1 << take) - 1);
+            bit += take;
+        }
+        return value;
+    }
+
+    /** Parses a non-negative decimal number, or returns -1 if the range is not one. */
+    private static long parseLength(String s, int start, int end) {
+        if (start == end) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static long readBits(byte[] bytes, int offset, int count) {
+        long value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            value = value << 8 | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void writeBits(byte[] bytes, int offset, int count, long value) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static byte[] values(String alphabet) {
+        byte[] values = new byte[128];
+        Arrays.fill(values, (byte) -1);
+        for (int i = 0; i < alphabet.length(); i++) {
+            values[alphabet.charAt(i)] = (byte) i;
+            values[Character.toUpperCase(alphabet.charAt(i))] = (byte) i;
+        }
+        return values;
+    }
+
+    private static byte[] sha1(String s) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+}
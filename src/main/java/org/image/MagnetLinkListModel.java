@@ -0,0 +1,108 @@
+package org.image;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * List model of the magnet links shown in the main window, fed from the parser's pool threads.
+ * <p>
+ * Producers only {@link #enqueue(String)} a line into a lock-free queue; the lines are moved into the model on the
+ * event dispatch thread in batches, at most once per frame, with a single {@code intervalAdded} event per batch. A
+ * {@link JList} with fixed cell sizes paints only the visible rows, so neither appending nor painting depends on the
+ * number of links already listed.
+ */
+public class MagnetLinkListModel extends AbstractListModel<String> {
+
+    /** Minimum delay between two flushes, in milliseconds: one frame at 60 Hz. */
+    static final int FRAME_MILLIS = 16;
+
+    /** Lines handed over by the producers, not yet in the model. */
+    private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+    /** Whether a flush has been scheduled and has not started draining yet. */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Timer flushTimer;
+
+    /** Lines in the model; only accessed on the event dispatch thread. */
+    private final List<String> lines = new ArrayList<>();
+
+    /**
+     * Creates an empty model.
+     */
+    public MagnetLinkListModel() {
+        flushTimer = new Timer(FRAME_MILLIS, e -> flush());
+        flushTimer.setRepeats(false);
+    }
+
+    /**
+     * Queues a line to be appended to the list. May be called from any thread; the line shows up with the next flush.
+     *
+     * @param line the line to append
+     */
+    public void enqueue(String line) {
+        pending.add(line);
+        // Reset by flush() before it drains the queue, so a line queued during a flush schedules the next one
+        if (flushScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(flushTimer::start);
+        }
+    }
+
+    /**
+     * Queues several lines, in order. May be called from any thread.
+     *
+     * @param lines the lines to append
+     */
+    public void enqueueAll(Collection<String> lines) {
+        for (String line : lines) {
+            enqueue(line);
+        }
+    }
+
+    /**
+     * Moves all queued lines into the model and notifies the listeners with one event. Must be called on the event
+     * dispatch thread; it runs by itself one frame after a line has been queued.
+     *
+     * @return the number of lines appended
+     */
+    int flush() {
+        flushScheduled.set(false);
+        int first = lines.size();
+        String line;
+        while ((line = pending.poll()) != null) {
+            lines.add(line);
+        }
+        int added = lines.size() - first;
+        if (added > 0) {
+            long start = System.nanoTime();
+            fireIntervalAdded(this, first, lines.size() - 1);
+            Metrics.UI_APPEND.recordSince(start);
+        }
+        return added;
+    }
+
+    /**
+     * Removes all lines, including the queued ones. Must be called on the event dispatch thread.
+     */
+    public void clear() {
+        pending.clear();
+        int size = lines.size();
+        if (size > 0) {
+            lines.clear();
+            fireIntervalRemoved(this, 0, size - 1);
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return lines.size();
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        return lines.get(index);
+    }
+}
@@ -0,0 +1,61 @@
+package org.image;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination that {@link MagnetDispatcher} hands found magnet links to: the desktop's torrent client, a client's
+ * watch directory or a download daemon's RPC interface.
+ * <p>
+ * Sinks are called from the dispatcher's single worker thread only, so they need not be thread-safe. A sink that is
+ * slower than the parser simply blocks; the dispatcher's bounded queue then holds back the parser threads.
+ */
+public interface MagnetSink extends Closeable {
+
+    /**
+     * Hands a batch of magnet links over.
+     *
+     * @param links the links, in the order they were found; never empty
+     * @throws IOException if the links could not be handed over
+     */
+    void send(List<MagnetLink> links) throws IOException;
+
+    /**
+     * Releases the resources of the sink. Called once by {@link MagnetDispatcher#close()} after the last batch.
+     *
+     * @throws IOException if releasing fails
+     */
+    @Override
+    default void close() throws IOException {
+    }
+
+    /**
+     * Thrown by {@link #send(List)} when some links of a batch could not be handed over while the others were, so
+     * that the dispatcher counts only the failed ones.
+     */
+    class PartialSendException extends IOException {
+        private final int failed;
+
+        /**
+         * Creates the exception.
+         *
+         * @param message the detail message
+         * @param failed  the number of links of the batch that were not handed over
+         * @param cause   the failure of the first of them
+         */
+        public PartialSendException(String message, int failed, Throwable cause) {
+            super(message, cause);
+            this.failed = failed;
+        }
+
+        /**
+         * Returns the number of links of the batch that were not handed over.
+         *
+         * @return the number of failed links
+         */
+        public int failed() {
+            return failed;
+        }
+    }
+}
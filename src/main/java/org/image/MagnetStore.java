@@ -0,0 +1,568 @@
+package org.image;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent, append-only store of every discovered magnet link.
+ * <p>
+ * The store lives in a directory with two files:
+ * <ul>
+ *     <li>{@value #LOG_FILE}: the append-only log. Each record carries its payload length and a CRC32 of the payload,
+ *     followed by the discovery timestamp, the session id, the 20-byte info-hash, the display name, the source URL and
+ *     the magnet link itself.</li>
+ *     <li>{@value #INDEX_FILE}: a memory-mapped open-addressing hash table from info-hash to the log offset of its
+ *     latest record, so that "seen before?" is a handful of memory reads. The header also records where the most
+ *     recent session starts in the log, which lets {@link #lastSession()} restore the previous list with a single
+ *     sequential read and no HTML parsing.</li>
+ * </ul>
+ * Crash safety: the log is the only source of truth. On open, records are validated by length and CRC and a torn
+ * tail left by a crash is truncated. The index header has a "clean" flag that is only set by {@link #close()}; an
+ * index that was not closed cleanly, or that does not match the log, is rebuilt from the log. Records appended after
+ * the last {@link #sync()} may be lost on power failure, but the store is never left unreadable.
+ * <p>
+ * Compaction rewrites the log keeping only the latest record of each info-hash, then swaps it in atomically. It runs
+ * on open once the log holds more than {@value #COMPACTION_RATIO} times as many records as distinct hashes, and can
+ * be triggered with {@link #compact()}.
+ * <p>
+ * All public methods are thread-safe.
+ */
+public class MagnetStore implements Closeable {
+
+    static final String LOG_FILE = "magnets.log";
+    static final String INDEX_FILE = "magnets.idx";
+    private static final String COMPACT_SUFFIX = ".compact";
+
+    private static final int COMPACTION_RATIO = 4;
+    private static final int INDEX_MAGIC = 0x4D474958; // "MGIX"
+    private static final int INDEX_VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 32;
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+
+    // Header field offsets
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_CAPACITY = 8;
+    private static final int H_SIZE = 12;
+    private static final int H_LOG_LENGTH = 16;
+    private static final int H_SESSION_ID = 24;
+    private static final int H_SESSION_START = 32;
+    private static final int H_CLEAN = 40;
+
+    private static final Logger logger = Logger.getLogger(MagnetStore.class.getName());
+
+    /**
+     * One stored magnet link.
+     *
+     * @param timestamp  discovery time in milliseconds since the epoch
+     * @param sessionId  the session in which the link was discovered
+     * @param infoHash   the 20-byte info-hash key, see {@link InfoHashSet#infoHashOf(String)}
+     * @param name       the display name ({@code dn}) of the link, or an empty string
+     * @param sourceUrl  the page the link was found on, or an empty string
+     * @param magnetLink the magnet link
+     */
+    public record Entry(long timestamp, long sessionId, byte[] infoHash, String name, String sourceUrl,
+                        String magnetLink) {
+    }
+
+    private final Path directory;
+    private final Path logPath;
+    private final Path indexPath;
+    private final long sessionId;
+    private long previousSessionId;
+    private long previousSessionStart;
+    private FileChannel log;
+    private long logLength;
+    private long recordCount;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private boolean sessionStarted;
+    private boolean closed;
+
+    private MagnetStore(Path directory) throws IOException {
+        this.directory = directory;
+        this.logPath = directory.resolve(LOG_FILE);
+        this.indexPath = directory.resolve(INDEX_FILE);
+        Files.createDirectories(directory);
+
+        log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        logLength = recoverLog();
+        if (!openIndex()) {
+            rebuildIndex();
+        }
+        index.putInt(H_CLEAN, 0);
+        index.force();
+        if (recordCount > (long) COMPACTION_RATIO * Math.max(1, size())) {
+            compact();
+        }
+        previousSessionId = index.getLong(H_SESSION_ID);
+        previousSessionStart = index.getLong(H_SESSION_START);
+        sessionId = Math.max(System.currentTimeMillis(), previousSessionId + 1);
+    }
+
+    /**
+     * Opens the store in the given directory, creating it if needed, and starts a new session.
+     *
+     * @param directory the store directory
+     * @return the opened store
+     * @throws IOException if the files cannot be read or created
+     */
+    public static MagnetStore open(Path directory) throws IOException {
+        return new MagnetStore(directory);
+    }
+
+    /**
+     * Returns the default store directory: {@code -Dmagnetgrab.store.dir} if set, otherwise
+     * {@code ~/.magnetgrab/store}.
+     *
+     * @return the default store directory
+     */
+    public static Path defaultDirectory() {
+        String configured = System.getProperty("magnetgrab.store.dir");
+        return configured != null ? Path.of(configured)
+                : Path.of(System.getProperty("user.home"), ".magnetgrab", "store");
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Public API
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Appends a discovered magnet link to the log and indexes its info-hash.
+     *
+     * @param magnetLink the magnet link
+     * @param sourceUrl  the page the link was found on, or {@code null}
+     * @throws IOException if the record cannot be written
+     */
+    public void append(String magnetLink, String sourceUrl) throws IOException {
+        append(MagnetLink.parse(magnetLink), sourceUrl);
+    }
+
+    /**
+     * Appends a parsed magnet link to the log and indexes its info-hash.
+     *
+     * @param magnetLink the magnet link
+     * @param sourceUrl  the page the link was found on, or {@code null}
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized void append(MagnetLink magnetLink, String sourceUrl) throws IOException {
+        ensureOpen();
+        byte[] hash = magnetLink.infoHash();
+        ByteBuffer record = encode(new Entry(System.currentTimeMillis(), sessionId, hash, magnetLink.displayName(),
+                sourceUrl == null ? "" : sourceUrl, magnetLink.uri()));
+        long offset = logLength;
+        while (record.hasRemaining()) {
+            log.write(record, logLength + record.position());
+        }
+        logLength += record.limit();
+        recordCount++;
+
+        if (!sessionStarted) {
+            sessionStarted = true;
+            index.putLong(H_SESSION_ID, sessionId);
+            index.putLong(H_SESSION_START, offset);
+        }
+        put(hash, offset);
+        index.putLong(H_LOG_LENGTH, logLength);
+    }
+
+    /**
+     * Tells whether a link with the given info-hash has been stored in this or any earlier session.
+     *
+     * @param infoHash the 20-byte info-hash key
+     * @return {@code true} if the hash has been seen before
+     */
+    public synchronized boolean contains(byte[] infoHash) {
+        ensureOpen();
+        return find(infoHash) >= 0;
+    }
+
+    /**
+     * Returns the latest stored record for the given info-hash.
+     *
+     * @param infoHash the 20-byte info-hash key
+     * @return the entry, or {@code null} if the hash has not been seen
+     * @throws IOException if the log cannot be read
+     */
+    public synchronized Entry get(byte[] infoHash) throws IOException {
+        ensureOpen();
+        int slot = find(infoHash);
+        return slot < 0 ? null : readRecord(index.getLong(slotPosition(slot) + 24) - 1);
+    }
+
+    /**
+     * Returns the links of the most recent earlier session that found anything, in discovery order.
+     *
+     * @return the entries of the previous session; empty if there is none
+     * @throws IOException if the log cannot be read
+     */
+    public synchronized List<Entry> lastSession() throws IOException {
+        ensureOpen();
+        List<Entry> entries = new ArrayList<>();
+        if (previousSessionId == 0) {
+            return entries;
+        }
+        long offset = previousSessionStart;
+        long end = sessionStarted ? index.getLong(H_SESSION_START) : logLength;
+        while (offset < end) {
+            Entry entry = readRecord(offset);
+            if (entry.sessionId() == previousSessionId) {
+                entries.add(entry);
+            }
+            offset += RECORD_HEADER_SIZE + readLength(offset);
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the number of distinct info-hashes in the store.
+     *
+     * @return the number of distinct hashes
+     */
+    public synchronized int size() {
+        return index.getInt(H_SIZE);
+    }
+
+    /**
+     * Returns the number of records in the log, including superseded ones.
+     *
+     * @return the number of log records
+     */
+    public synchronized long recordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Forces the log and the index to disk.
+     *
+     * @throws IOException if syncing fails
+     */
+    public synchronized void sync() throws IOException {
+        ensureOpen();
+        log.force(false);
+        index.force();
+    }
+
+    /**
+     * Rewrites the log so that it holds only the latest record of each info-hash, preserving their order, and
+     * rebuilds the index. The new log is written next to the old one and moved over it atomically, so a crash
+     * during compaction leaves either the old or the new log in place.
+     *
+     * @throws IOException if the log cannot be rewritten
+     */
+    public synchronized void compact() throws IOException {
+        ensureOpen();
+        Path compactPath = directory.resolve(LOG_FILE + COMPACT_SUFFIX);
+        long previousStart = -1;
+        try (FileChannel out = FileChannel.open(compactPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long offset = 0;
+            long written = 0;
+            while (offset < logLength) {
+                int length = readLength(offset);
+                Entry entry = readRecord(offset);
+                int slot = find(entry.infoHash());
+                if (slot >= 0 && index.getLong(slotPosition(slot) + 24) - 1 == offset) {
+                    if (previousStart < 0 && entry.sessionId() == previousSessionId) {
+                        previousStart = written;
+                    }
+                    ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+                    readFully(record, offset);
+                    record.flip();
+                    while (record.hasRemaining()) {
+                        written += out.write(record);
+                    }
+                }
+                offset += RECORD_HEADER_SIZE + length;
+            }
+            out.force(true);
+        }
+        log.close();
+        Files.move(compactPath, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        logLength = log.size();
+        rebuildIndex();
+        index.putInt(H_CLEAN, 0);
+        if (previousSessionId != 0) {
+            // Session offsets have moved; the previous session keeps its records unless all were found again since
+            previousSessionStart = previousStart < 0 ? logLength : previousStart;
+        }
+        logger.log(Level.INFO, "Compacted magnet store to " + recordCount + " records");
+    }
+
+    /**
+     * Syncs and closes the store, marking the index as cleanly closed.
+     *
+     * @throws IOException if syncing or closing fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        log.force(false);
+        index.putInt(H_CLEAN, 1);
+        index.force();
+        closed = true;
+        log.close();
+        indexChannel.close();
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Log
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Validates the log record by record and truncates a torn or corrupt tail.
+     *
+     * @return the length of the valid log
+     */
+    private long recoverLog() throws IOException {
+        long size = log.size();
+        long offset = 0;
+        recordCount = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while (offset + RECORD_HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, offset);
+            int length = header.getInt(0);
+            if (length <= 0 || length > MAX_RECORD_SIZE || offset + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, offset + RECORD_HEADER_SIZE);
+            if (crc(payload.array()) != header.getInt(4)) {
+                break;
+            }
+            offset += RECORD_HEADER_SIZE + length;
+            recordCount++;
+        }
+        if (offset < size) {
+            logger.log(Level.WARNING, "Truncating " + (size - offset) + " bytes of incomplete records from " + logPath);
+            log.truncate(offset);
+            log.force(true);
+        }
+        return offset;
+    }
+
+    private static ByteBuffer encode(Entry entry) {
+        byte[] name = entry.name().getBytes(StandardCharsets.UTF_8);
+        byte[] source = entry.sourceUrl().getBytes(StandardCharsets.UTF_8);
+        byte[] link = entry.magnetLink().getBytes(StandardCharsets.UTF_8);
+        int length = 8 + 8 + InfoHashSet.HASH_LENGTH + 12 + name.length + source.length + link.length;
+        if (length > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Magnet link record too large: " + length + " bytes");
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        record.putInt(length).putInt(0)
+                .putLong(entry.timestamp()).putLong(entry.sessionId()).put(entry.infoHash())
+                .putInt(name.length).put(name).putInt(source.length).put(source).putInt(link.length).put(link);
+        record.putInt(4, crc(Arrays.copyOfRange(record.array(), RECORD_HEADER_SIZE, record.limit())));
+        return record.flip();
+    }
+
+    private Entry readRecord(long offset) throws IOException {
+        int length = readLength(offset);
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(payload, offset + RECORD_HEADER_SIZE);
+        payload.flip();
+        long timestamp = payload.getLong();
+        long session = payload.getLong();
+        byte[] hash = new byte[InfoHashSet.HASH_LENGTH];
+        payload.get(hash);
+        return new Entry(timestamp, session, hash, readString(payload), readString(payload), readString(payload));
+    }
+
+    private int readLength(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(length, offset);
+        return length.getInt(0);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (log.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + logPath);
+            }
+        }
+    }
+
+    private static int crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Memory-mapped index
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Maps an existing index file if it was closed cleanly and covers exactly the recovered log.
+     *
+     * @return {@code true} if the index can be used as is
+     */
+    private boolean openIndex() throws IOException {
+        indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long fileSize = indexChannel.size();
+        if (fileSize < HEADER_SIZE) {
+            return false;
+        }
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        int capacity = index.getInt(H_CAPACITY);
+        return index.getInt(H_MAGIC) == INDEX_MAGIC && index.getInt(H_VERSION) == INDEX_VERSION
+                && index.getInt(H_CLEAN) == 1 && capacity > 0 && Integer.bitCount(capacity) == 1
+                && fileSize >= HEADER_SIZE + (long) capacity * SLOT_SIZE && index.getLong(H_LOG_LENGTH) == logLength;
+    }
+
+    /** Recreates the index from the log, recovering the session bookkeeping from the records. */
+    private void rebuildIndex() throws IOException {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity * 7L / 10 < recordCount) {
+            capacity <<= 1;
+        }
+        mapFreshIndex(capacity);
+        long offset = 0;
+        long lastSession = 0;
+        long lastSessionStart = 0;
+        recordCount = 0;
+        while (offset < logLength) {
+            Entry entry = readRecord(offset);
+            if (entry.sessionId() != lastSession) {
+                lastSession = entry.sessionId();
+                lastSessionStart = offset;
+            }
+            put(entry.infoHash(), offset);
+            offset += RECORD_HEADER_SIZE + readLength(offset);
+            recordCount++;
+        }
+        index.putLong(H_SESSION_ID, lastSession);
+        index.putLong(H_SESSION_START, lastSessionStart);
+        index.putLong(H_LOG_LENGTH, logLength);
+    }
+
+    /**
+     * Maps an empty table of the given capacity over the start of the index file, growing the file if needed.
+     * <p>
+     * The file is reused in place: the previous mapping cannot be released explicitly and lives until it is garbage
+     * collected, and Windows refuses to replace or shrink a file that is still mapped. A file larger than the table,
+     * e.g. after a compaction, keeps its tail, which is never read.
+     */
+    private void mapFreshIndex(int capacity) throws IOException {
+        long tableSize = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+        if (indexChannel.size() < tableSize) {
+            indexChannel.write(ByteBuffer.allocate(1), tableSize - 1);
+        }
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, tableSize);
+        for (int position = 0; position < tableSize; position += Long.BYTES) {
+            index.putLong(position, 0);
+        }
+        index.putInt(H_MAGIC, INDEX_MAGIC);
+        index.putInt(H_VERSION, INDEX_VERSION);
+        index.putInt(H_CAPACITY, capacity);
+        index.putInt(H_SIZE, 0);
+    }
+
+    /** Points the hash at the given log offset, inserting it if new; grows the table at 70% load. */
+    private void put(byte[] hash, long offset) throws IOException {
+        int slot = find(hash);
+        if (slot >= 0) {
+            index.putLong(slotPosition(slot) + 24, offset + 1);
+            return;
+        }
+        int capacity = index.getInt(H_CAPACITY);
+        int size = index.getInt(H_SIZE);
+        if ((size + 1) * 10L > capacity * 7L) {
+            grow(capacity << 1);
+            capacity <<= 1;
+        }
+        int mask = capacity - 1;
+        for (slot = slotOf(hash) & mask; index.getLong(slotPosition(slot) + 24) != 0; slot = (slot + 1) & mask) {
+            // linear probing
+        }
+        int position = slotPosition(slot);
+        index.put(position, hash);
+        index.putLong(position + 24, offset + 1);
+        index.putInt(H_SIZE, size + 1);
+    }
+
+    /** Returns the slot holding the hash, or -1. Empty slots have a zero offset field. */
+    private int find(byte[] hash) {
+        int mask = index.getInt(H_CAPACITY) - 1;
+        byte[] candidate = new byte[InfoHashSet.HASH_LENGTH];
+        for (int slot = slotOf(hash) & mask; ; slot = (slot + 1) & mask) {
+            int position = slotPosition(slot);
+            if (index.getLong(position + 24) == 0) {
+                return -1;
+            }
+            index.get(position, candidate);
+            if (Arrays.equals(candidate, hash)) {
+                return slot;
+            }
+        }
+    }
+
+    private void grow(int capacity) throws IOException {
+        int oldCapacity = index.getInt(H_CAPACITY);
+        byte[][] hashes = new byte[index.getInt(H_SIZE)][];
+        long[] offsets = new long[hashes.length];
+        int n = 0;
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int position = slotPosition(slot);
+            long offset = index.getLong(position + 24);
+            if (offset != 0) {
+                hashes[n] = new byte[InfoHashSet.HASH_LENGTH];
+                index.get(position, hashes[n]);
+                offsets[n++] = offset - 1;
+            }
+        }
+        long session = index.getLong(H_SESSION_ID);
+        long sessionStart = index.getLong(H_SESSION_START);
+        mapFreshIndex(capacity);
+        index.putLong(H_SESSION_ID, session);
+        index.putLong(H_SESSION_START, sessionStart);
+        index.putLong(H_LOG_LENGTH, logLength);
+        for (int i = 0; i < n; i++) {
+            put(hashes[i], offsets[i]);
+        }
+    }
+
+    private static int slotOf(byte[] hash) {
+        // Info-hashes are uniformly distributed already
+        return (hash[0] & 0xFF) << 24 | (hash[1] & 0xFF) << 16 | (hash[2] & 0xFF) << 8 | (hash[3] & 0xFF);
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Magnet store is closed");
+        }
+    }
+}
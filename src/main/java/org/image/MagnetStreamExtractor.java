@@ -0,0 +1,560 @@
+package org.image;
+
+import org.jsoup.nodes.Entities;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Streaming extractor for magnet links.
+ * <p>
+ * Instead of building a complete Jsoup {@code Document} and running {@code a[href^=magnet]} over it, this class
+ * tokenizes the HTML character stream as it arrives and hands every matching {@code href} to a sink as soon as
+ * the closing {@code >} of its {@code <a>} tag has been read. Only a small read buffer and the attribute value that
+ * is currently being collected live on the heap, no matter how large the page is.
+ * <p>
+ * The tokenizer follows the HTML tokenization rules that Jsoup applies: comments, bogus comments, CDATA sections,
+ * raw-text elements ({@code script}, {@code style}, {@code textarea}, ...), case-insensitive tag and attribute names,
+ * first-attribute-wins for duplicates, and Jsoup's own character reference rules for attribute values. Markup it
+ * cannot reproduce faithfully (e.g. {@code <plaintext>}, a {@code <meta>} charset that contradicts the charset the
+ * stream was decoded with, or C1 numeric references) raises {@link UnsupportedMarkupException} so that the caller
+ * can fall back to the DOM path, as does a raw-text element left open at the end of the stream.
+ * <p>
+ * Tree construction is not simulated: an anchor that the HTML tree builder would clone (misnested formatting) or
+ * drop (inside {@code <select>} or a {@code <noscript>} in the head) is reported exactly once, as written in the
+ * source, and {@code <svg>}/{@code <math>} content is tokenized like HTML. Listing pages do not rely on either.
+ */
+public class MagnetStreamExtractor {
+
+    /** Attribute value prefix matched by {@code a[href^=magnet]}, compared case-insensitively. */
+    private static final String MAGNET_PREFIX = "magnet";
+    private static final int BUFFER_SIZE = 8192;
+    private static final int EOF = -1;
+    private static final int MAX_TAG_NAME = 16;
+    private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+
+    /**
+     * Thrown when the stream contains markup that the streaming tokenizer does not handle the same way as the Jsoup
+     * DOM parser. {@link #getEmitted()} tells how many links had already been handed to the sink, so that the DOM
+     * fallback can skip them and the caller sees every link exactly once.
+     */
+    public static class UnsupportedMarkupException extends IOException {
+        private final int emitted;
+
+        UnsupportedMarkupException(String message, int emitted) {
+            super(message);
+            this.emitted = emitted;
+        }
+
+        /**
+         * Returns the number of magnet links emitted before the unsupported markup was encountered.
+         *
+         * @return the number of already emitted links
+         */
+        public int getEmitted() {
+            return emitted;
+        }
+    }
+
+    private final Reader reader;
+    private final Consumer<String> magnetSink;
+    private final Consumer<String> anchorSink;
+    private final String declaredCharset;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder tagName = new StringBuilder(MAX_TAG_NAME);
+    private final StringBuilder attributeName = new StringBuilder();
+    private final StringBuilder attributeValue = new StringBuilder();
+    private int position;
+    private int limit;
+    private int emitted;
+
+    /** Attribute values collected for the tag that is currently being tokenized; {@code null} when absent. */
+    private String href;
+    private String charsetAttribute;
+    private String contentAttribute;
+    private String httpEquivAttribute;
+
+    private MagnetStreamExtractor(Reader reader, Consumer<String> magnetSink, Consumer<String> anchorSink,
+                                  String declaredCharset) {
+        this.reader = reader;
+        this.magnetSink = magnetSink;
+        this.anchorSink = anchorSink;
+        this.declaredCharset = declaredCharset;
+    }
+
+    /**
+     * Reads the HTML stream to its end and passes the {@code href} of every {@code <a>} element whose {@code href}
+     * starts with "magnet" to the sink, in document order.
+     *
+     * @param reader          the character stream of the page; not closed by this method
+     * @param magnetSink      receives each magnet link as soon as its tag is complete
+     * @param declaredCharset the charset the stream is decoded with, or {@code null} if it was only assumed, in which
+     *                        case any {@code <meta>} charset other than UTF-8 triggers the fallback
+     * @return the number of magnet links emitted
+     * @throws UnsupportedMarkupException if the page needs the DOM parser
+     * @throws IOException                if reading the stream fails
+     */
+    public static int extract(Reader reader, Consumer<String> magnetSink, String declaredCharset) throws IOException {
+        return extract(reader, magnetSink, null, declaredCharset);
+    }
+
+    /**
+     * Same as {@link #extract(Reader, Consumer, String)}, but additionally passes the raw {@code href} of every other
+     * {@code <a>} element to the anchor sink, which is what the crawler needs to discover further listing pages.
+     *
+     * @param reader          the character stream of the page; not closed by this method
+     * @param magnetSink      receives each magnet link as soon as its tag is complete
+     * @param anchorSink      receives the unresolved {@code href} of each non-magnet anchor, or {@code null}
+     * @param declaredCharset the charset the stream is decoded with, or {@code null} if it was only assumed
+     * @return the number of magnet links emitted
+     * @throws UnsupportedMarkupException if the page needs the DOM parser
+     * @throws IOException                if reading the stream fails
+     */
+    public static int extract(Reader reader, Consumer<String> magnetSink, Consumer<String> anchorSink,
+                              String declaredCharset) throws IOException {
+        MagnetStreamExtractor extractor = new MagnetStreamExtractor(reader, magnetSink, anchorSink, declaredCharset);
+        extractor.run();
+        return extractor.emitted;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Tokenizer states
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private void run() throws IOException {
+        int c;
+        while ((c = next()) != EOF) {
+            if (c == '<') {
+                markup();
+            }
+        }
+    }
+
+    /** Called after a '<' in the data state. */
+    private void markup() throws IOException {
+        int c = peek();
+        if (c == '!') {
+            next();
+            markupDeclaration();
+        } else if (c == '/') {
+            next();
+            endTag();
+        } else if (c == '?') {
+            next();
+            skipBogusComment();
+        } else if (isAsciiLetter(c)) {
+            startTag();
+        }
+        // Anything else: the '<' was plain text.
+    }
+
+    private void markupDeclaration() throws IOException {
+        if (peek() == '-') {
+            next();
+            if (peek() == '-') {
+                next();
+                skipComment();
+                return;
+            }
+        } else if (peek() == '[') {
+            if (consumeIgnoreCase("[CDATA[")) {
+                skipCdata();
+                return;
+            }
+        }
+        skipBogusComment();
+    }
+
+    private void skipComment() throws IOException {
+        int dashes = 0;
+        int c = peek();
+        if (c == '>') {
+            next();
+            return;
+        }
+        if (c == '-') {
+            next();
+            if (peek() == '>') {
+                next();
+                return;
+            }
+            dashes = 1;
+        }
+        while ((c = next()) != EOF) {
+            if (c == '-') {
+                dashes++;
+            } else if (c == '>' && dashes >= 2) {
+                return;
+            } else if (c == '!' && dashes >= 2 && peek() == '>') {
+                next();
+                return;
+            } else {
+                dashes = 0;
+            }
+        }
+    }
+
+    private void skipCdata() throws IOException {
+        int brackets = 0;
+        int c;
+        while ((c = next()) != EOF) {
+            if (c == ']') {
+                brackets++;
+            } else if (c == '>' && brackets >= 2) {
+                return;
+            } else {
+                brackets = 0;
+            }
+        }
+    }
+
+    private void skipBogusComment() throws IOException {
+        int c;
+        do {
+            c = next();
+        } while (c != EOF && c != '>');
+    }
+
+    private void endTag() throws IOException {
+        int c = peek();
+        if (isAsciiLetter(c)) {
+            readTagName();
+            attributes(false);
+        } else if (c == '>') {
+            next();
+        } else if (c != EOF) {
+            skipBogusComment();
+        }
+    }
+
+    private void startTag() throws IOException {
+        readTagName();
+        String name = tagName.toString();
+        boolean collect = name.equals("a") || name.equals("meta");
+        if (!attributes(collect)) {
+            return; // tag truncated by EOF, Jsoup drops it as well
+        }
+        switch (name) {
+            case "a" -> {
+                if (href != null && href.regionMatches(true, 0, MAGNET_PREFIX, 0, MAGNET_PREFIX.length())) {
+                    magnetSink.accept(href);
+                    emitted++;
+                } else if (href != null && anchorSink != null) {
+                    anchorSink.accept(href);
+                }
+            }
+            case "meta" -> checkMetaCharset();
+            case "script", "style", "xmp", "iframe", "noembed", "noframes", "title", "textarea" -> skipRawText(name);
+            case "plaintext" -> throw new UnsupportedMarkupException("<plaintext> element", emitted);
+            default -> {
+                // No special handling.
+            }
+        }
+    }
+
+    private void readTagName() throws IOException {
+        tagName.setLength(0);
+        int c;
+        while ((c = peek()) != EOF && !isWhitespace(c) && c != '/' && c != '>') {
+            next();
+            if (tagName.length() < MAX_TAG_NAME) {
+                tagName.append(Character.toLowerCase((char) c));
+            }
+        }
+    }
+
+    /**
+     * Tokenizes the attributes of the current tag up to and including its closing '>'.
+     *
+     * @param collect whether values of the attributes relevant for {@code a} and {@code meta} should be collected
+     * @return {@code false} if the stream ended before the tag was closed
+     */
+    private boolean attributes(boolean collect) throws IOException {
+        href = null;
+        charsetAttribute = null;
+        contentAttribute = null;
+        httpEquivAttribute = null;
+        int c;
+        while (true) {
+            c = next();
+            if (c == EOF) {
+                return false;
+            }
+            if (c == '>') {
+                return true;
+            }
+            if (isWhitespace(c) || c == '/') {
+                continue;
+            }
+            attributeName.setLength(0);
+            attributeName.append(Character.toLowerCase((char) c));
+            while ((c = peek()) != EOF && !isWhitespace(c) && c != '/' && c != '>' && c != '=') {
+                next();
+                attributeName.append(Character.toLowerCase((char) c));
+            }
+            skipWhitespace();
+            boolean keep = collect && isCollected();
+            attributeValue.setLength(0);
+            if (peek() == '=') {
+                next();
+                skipWhitespace();
+                if (!attributeValue(keep)) {
+                    return false;
+                }
+            }
+            if (keep) {
+                storeAttribute(attributeValue.toString());
+            }
+        }
+    }
+
+    private boolean isCollected() {
+        String name = attributeName.toString();
+        return switch (tagName.toString()) {
+            case "a" -> href == null && name.equals("href");
+            case "meta" -> (charsetAttribute == null && name.equals("charset"))
+                    || (contentAttribute == null && name.equals("content"))
+                    || (httpEquivAttribute == null && name.equals("http-equiv"));
+            default -> false;
+        };
+    }
+
+    private void storeAttribute(String value) {
+        switch (attributeName.toString()) {
+            case "href" -> href = value;
+            case "charset" -> charsetAttribute = value;
+            case "content" -> contentAttribute = value;
+            case "http-equiv" -> httpEquivAttribute = value;
+            default -> {
+                // Not collected.
+            }
+        }
+    }
+
+    /**
+     * Reads a quoted or unquoted attribute value, decoding character references if the value is kept.
+     *
+     * @return {@code false} if the stream ended inside the value
+     */
+    private boolean attributeValue(boolean keep) throws IOException {
+        int quote = peek();
+        if (quote == '>') {
+            return true; // missing value, the '>' closes the tag
+        }
+        int c;
+        if (quote == '"' || quote == '\'') {
+            next();
+            while ((c = next()) != quote) {
+                if (c == EOF) {
+                    return false;
+                }
+                appendValueChar(c, keep);
+            }
+            return true;
+        }
+        while ((c = peek()) != EOF && !isWhitespace(c) && c != '>') {
+            next();
+            appendValueChar(c, keep);
+        }
+        return c != EOF;
+    }
+
+    private void appendValueChar(int c, boolean keep) throws IOException {
+        if (!keep) {
+            return;
+        }
+        if (c == '&') {
+            characterReference();
+        } else if (c == 0) {
+            attributeValue.append(REPLACEMENT_CHARACTER);
+        } else {
+            attributeValue.append((char) c);
+        }
+    }
+
+    /**
+     * Decodes a character reference inside an attribute value; the '&amp;' has already been consumed. Mirrors the
+     * rules of Jsoup's tokenizer: named references without ';' are only decoded for the base entity set, and never
+     * when followed by a letter, digit, '=', '-' or '_'.
+     */
+    private void characterReference() throws IOException {
+        if (peek() == '#') {
+            next();
+            numericReference();
+            return;
+        }
+        StringBuilder name = new StringBuilder();
+        int c;
+        while (isAsciiLetter(c = peek())) {
+            next();
+            name.append((char) c);
+        }
+        while ((c = peek()) >= '0' && c <= '9') {
+            next();
+            name.append((char) c);
+        }
+        String nameRef = name.toString();
+        boolean terminated = peek() == ';';
+        boolean found = Entities.isBaseNamedEntity(nameRef) || (Entities.isNamedEntity(nameRef) && terminated);
+        c = peek();
+        if (!found || (c != EOF && (Character.isLetterOrDigit(c) || c == '=' || c == '-' || c == '_'))) {
+            attributeValue.append('&').append(nameRef);
+            return;
+        }
+        if (terminated) {
+            next();
+        }
+        attributeValue.append(Entities.getByName(nameRef));
+    }
+
+    private void numericReference() throws IOException {
+        boolean hex = false;
+        int c = peek();
+        if (c == 'x' || c == 'X') {
+            next();
+            hex = true;
+        }
+        int value = 0;
+        int digits = 0;
+        while ((c = peek()) != EOF && Character.digit(c, hex ? 16 : 10) >= 0 && isAsciiLetterOrDigit(c)) {
+            next();
+            value = Math.min(value * (hex ? 16 : 10) + Character.digit(c, hex ? 16 : 10), Character.MAX_CODE_POINT + 1);
+            digits++;
+        }
+        if (digits == 0) {
+            attributeValue.append("&#");
+            if (hex) {
+                attributeValue.append('x');
+            }
+            return;
+        }
+        if (peek() == ';') {
+            next();
+        }
+        if (value == 0 || (value >= 0x80 && value <= 0x9F)) {
+            throw new UnsupportedMarkupException("numeric character reference " + value, emitted);
+        }
+        if (value > Character.MAX_CODE_POINT) {
+            attributeValue.append(REPLACEMENT_CHARACTER);
+        } else {
+            attributeValue.appendCodePoint(value);
+        }
+    }
+
+    /**
+     * Skips the content of a raw-text or RCDATA element up to and including its matching end tag. An element left open
+     * at the end of the stream is re-parsed as markup by Jsoup, so that case is handed to the DOM fallback.
+     */
+    private void skipRawText(String name) throws IOException {
+        int c;
+        while ((c = next()) != EOF) {
+            if (c != '<' || peek() != '/') {
+                continue;
+            }
+            next();
+            int matched = 0;
+            while (matched < name.length() && Character.toLowerCase(peek()) == name.charAt(matched)) {
+                next();
+                matched++;
+            }
+            if (matched == name.length()) {
+                int d = peek();
+                if (isWhitespace(d) || d == '/' || d == '>') {
+                    attributes(false);
+                    return;
+                }
+            }
+        }
+        throw new UnsupportedMarkupException("unclosed <" + name + "> element", emitted);
+    }
+
+    /**
+     * Falls back to the DOM parser when a {@code <meta>} declares a charset that differs from the one the stream is
+     * decoded with, because Jsoup would then re-decode the whole page.
+     */
+    private void checkMetaCharset() throws UnsupportedMarkupException {
+        String charset = charsetAttribute;
+        if (charset == null && contentAttribute != null && httpEquivAttribute != null) {
+            String content = contentAttribute.toLowerCase(Locale.ROOT);
+            int index = content.indexOf("charset=");
+            if (index >= 0) {
+                charset = content.substring(index + "charset=".length()).replaceAll("[\"';\\s].*$", "");
+            }
+        }
+        if (charset == null || charset.isBlank()) {
+            return;
+        }
+        String expected = declaredCharset != null ? declaredCharset : "UTF-8";
+        String normalized = charset.trim();
+        if (!normalized.equalsIgnoreCase(expected) && !(isUtf8(normalized) && isUtf8(expected))) {
+            throw new UnsupportedMarkupException("<meta> charset " + normalized, emitted);
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Character input
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private int next() throws IOException {
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        if (read < 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    /** Consumes the given ASCII sequence if the input matches it; consumes only the matching prefix otherwise. */
+    private boolean consumeIgnoreCase(String sequence) throws IOException {
+        for (int i = 0; i < sequence.length(); i++) {
+            int c = peek();
+            if (c == EOF || Character.toUpperCase((char) c) != sequence.charAt(i)) {
+                return false;
+            }
+            next();
+        }
+        return true;
+    }
+
+    private void skipWhitespace() throws IOException {
+        while (isWhitespace(peek())) {
+            next();
+        }
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    private static boolean isAsciiLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isAsciiLetterOrDigit(int c) {
+        return isAsciiLetter(c) || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isUtf8(String charset) {
+        return charset.equalsIgnoreCase("UTF-8") || charset.equalsIgnoreCase("UTF8");
+    }
+}
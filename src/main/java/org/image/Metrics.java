@@ -0,0 +1,329 @@
+package org.image;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide registry of pipeline metrics, exposed in the Prometheus text format.
+ * <p>
+ * Counters and histogram buckets are {@link LongAdder}s, so the pool threads that record them never contend on a
+ * shared word; recording a latency is one bucket search over a dozen bounds and three adder increments. Metrics are
+ * registered on first use and live for the whole process.
+ * <p>
+ * The pipeline records one {@value #STAGE_SECONDS} histogram per stage of a parse:
+ * <ul>
+ *     <li>{@code host_wait}: waiting for the host's politeness budget before a request is sent,</li>
+ *     <li>{@code fetch}: from sending the request until the response headers have arrived,</li>
+ *     <li>{@code parse}: reading and tokenizing the body with the streaming extractor,</li>
+ *     <li>{@code select}: building a Jsoup Document and running the CSS selector (DOM path and fallback),</li>
+ *     <li>{@code dispatch}: queueing a magnet link for the torrent client, including waiting while the queue is
+ *     full,</li>
+ *     <li>{@code sink}: handing a batch of queued links to the torrent client,</li>
+ *     <li>{@code ui_append}: adding a batch of links to the window's list,</li>
+ *     <li>{@code page}: a whole {@code parseUrl} call,</li>
+ * </ul>
+ * plus counters for pages, links and cache outcomes. {@link #startEndpoint(int)} serves the registry on
+ * {@code http://127.0.0.1:<port>/metrics}.
+ */
+public class Metrics {
+
+    /** Name of the per-stage latency histogram. */
+    public static final String STAGE_SECONDS = "magnetgrab_stage_duration_seconds";
+
+    /** Upper bounds of the latency buckets, in seconds. */
+    private static final double[] LATENCY_BUCKETS =
+            {0.0001, 0.0005, 0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+
+    private static final Logger logger = Logger.getLogger(Metrics.class.getName());
+
+    /** Families by name, sorted so that the exposition is stable. */
+    private static final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    private static HttpServer endpoint;
+
+    /** Stage histograms of the parse pipeline. */
+    public static final Histogram HOST_WAIT = stage("host_wait");
+    public static final Histogram FETCH = stage("fetch");
+    public static final Histogram PARSE = stage("parse");
+    public static final Histogram SELECT = stage("select");
+    public static final Histogram DISPATCH = stage("dispatch");
+    public static final Histogram SINK = stage("sink");
+    public static final Histogram UI_APPEND = stage("ui_append");
+    public static final Histogram PAGE = stage("page");
+
+    /** Pipeline counters. */
+    public static final Counter PAGES_FETCHED = counter("magnetgrab_pages_fetched_total",
+            "Pages fetched, including 304 responses");
+    public static final Counter HOST_THROTTLED = counter("magnetgrab_host_throttled_total",
+            "Responses with status 429 or 503 that paused requests to their host");
+    public static final Counter PAGE_FAILURES = counter("magnetgrab_page_failures_total",
+            "Pages that could not be fetched or parsed");
+    public static final Counter LINKS_EXTRACTED = counter("magnetgrab_links_extracted_total",
+            "Magnet links extracted from pages, including duplicates");
+    public static final Counter LINKS_UNIQUE = counter("magnetgrab_links_unique_total",
+            "Magnet links with an info-hash not seen before in this session");
+    public static final Counter LINKS_FILTERED = counter("magnetgrab_links_filtered_total",
+            "Magnet links rejected by the link filter rules");
+    public static final Counter LINKS_DISPATCHED = counter("magnetgrab_links_dispatched_total",
+            "Magnet links handed to the torrent client");
+    public static final Counter DISPATCH_FAILURES = counter("magnetgrab_dispatch_failures_total",
+            "Magnet links that could not be handed to the torrent client");
+    public static final Counter CACHE_HITS = counter("magnetgrab_page_cache_hits_total",
+            "Pages answered from the page cache");
+    public static final Counter CACHE_MISSES = counter("magnetgrab_page_cache_misses_total",
+            "Pages parsed although a page cache is set");
+    public static final Counter WATCH_POLLS = counter("magnetgrab_watch_polls_total",
+            "Polls of watched pages");
+    public static final Counter WATCH_POLLS_UNCHANGED = counter("magnetgrab_watch_polls_unchanged_total",
+            "Polls of watched pages that found the page or its magnet links unchanged");
+    public static final Counter LOG_RECORDS_DROPPED = counter("magnetgrab_log_records_dropped_total",
+            "Log records the log window dropped because they arrived faster than it could show them");
+
+    private Metrics() {
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Metric types
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /** A monotonically increasing count. */
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        /** Adds one. */
+        public void increment() {
+            value.increment();
+        }
+
+        /**
+         * Adds the given amount.
+         *
+         * @param amount a non-negative amount
+         */
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        /**
+         * Returns the current count.
+         *
+         * @return the count
+         */
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /** A latency distribution with fixed buckets. */
+    public static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[LATENCY_BUCKETS.length + 1];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Records a duration.
+         *
+         * @param nanos the duration in nanoseconds
+         */
+        public void record(long nanos) {
+            double seconds = nanos / 1e9;
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS.length && seconds > LATENCY_BUCKETS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            count.increment();
+            sumNanos.add(nanos);
+        }
+
+        /**
+         * Records the time elapsed since the given {@link System#nanoTime()} value.
+         *
+         * @param startNanos the start time
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        /**
+         * Returns the number of recorded durations.
+         *
+         * @return the count
+         */
+        public long count() {
+            return count.sum();
+        }
+    }
+
+    /** All series of one metric name. */
+    private record Family(String name, String help, String type, Map<String, Object> series) {
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Registry
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the counter with the given name, registering it on first use.
+     *
+     * @param name the metric name
+     * @param help the description shown in the exposition
+     * @return the counter
+     */
+    public static Counter counter(String name, String help) {
+        return (Counter) family(name, help, "counter").series().computeIfAbsent("", labels -> new Counter());
+    }
+
+    /**
+     * Returns the stage latency histogram for the given stage, registering it on first use.
+     *
+     * @param stage the stage name, used as the {@code stage} label
+     * @return the histogram
+     */
+    public static Histogram stage(String stage) {
+        return histogram(STAGE_SECONDS, "Duration of the stages of the magnet link pipeline", "stage", stage);
+    }
+
+    /**
+     * Returns the histogram series with the given name and label, registering it on first use.
+     *
+     * @param name       the metric name
+     * @param help       the description shown in the exposition
+     * @param labelName  the label name
+     * @param labelValue the label value
+     * @return the histogram
+     */
+    public static Histogram histogram(String name, String help, String labelName, String labelValue) {
+        String labels = labelName + "=\"" + escape(labelValue) + "\"";
+        return (Histogram) family(name, help, "histogram").series().computeIfAbsent(labels, l -> new Histogram());
+    }
+
+    private static Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name,
+                n -> new Family(n, help, type, new ConcurrentSkipListMap<>()));
+        if (!family.type().equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type());
+        }
+        return family;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Exposition
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Renders every registered metric in the Prometheus text exposition format, version 0.0.4.
+     *
+     * @return the exposition
+     */
+    public static String scrape() {
+        StringBuilder out = new StringBuilder();
+        for (Family family : families.values()) {
+            out.append("# HELP ").append(family.name()).append(' ').append(family.help()).append('\n');
+            out.append("# TYPE ").append(family.name()).append(' ').append(family.type()).append('\n');
+            for (Map.Entry<String, Object> series : family.series().entrySet()) {
+                String labels = series.getKey();
+                if (series.getValue() instanceof Counter counter) {
+                    sample(out, family.name(), labels, null, counter.get());
+                } else {
+                    Histogram histogram = (Histogram) series.getValue();
+                    // The count is derived from the same bucket reads, so that a scrape is self-consistent
+                    long cumulative = 0;
+                    for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                        cumulative += histogram.buckets[i].sum();
+                        sample(out, family.name() + "_bucket", labels, "le=\"" + format(LATENCY_BUCKETS[i]) + "\"",
+                                cumulative);
+                    }
+                    cumulative += histogram.buckets[LATENCY_BUCKETS.length].sum();
+                    sample(out, family.name() + "_bucket", labels, "le=\"+Inf\"", cumulative);
+                    out.append(family.name()).append("_sum").append(braces(labels, null)).append(' ')
+                            .append(format(histogram.sumNanos.sum() / 1e9)).append('\n');
+                    sample(out, family.name() + "_count", labels, null, cumulative);
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String extraLabel, long value) {
+        out.append(name).append(braces(labels, extraLabel)).append(' ').append(value).append('\n');
+    }
+
+    private static String braces(String labels, String extraLabel) {
+        if (labels.isEmpty() && extraLabel == null) {
+            return "";
+        }
+        if (extraLabel == null) {
+            return "{" + labels + "}";
+        }
+        return labels.isEmpty() ? "{" + extraLabel + "}" : "{" + labels + "," + extraLabel + "}";
+    }
+
+    private static String format(double value) {
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Starts serving {@link #scrape()} on {@code http://127.0.0.1:<port>/metrics}. Only the loopback interface is
+     * bound. Calling it again while the endpoint is running has no effect.
+     *
+     * @param port the TCP port, or 0 for any free port
+     * @return the port the endpoint listens on
+     * @throws IOException if the port cannot be bound
+     */
+    public static synchronized int startEndpoint(int port) throws IOException {
+        if (endpoint == null) {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-endpoint");
+                thread.setDaemon(true);
+                return thread;
+            }));
+            server.createContext("/metrics", exchange -> {
+                byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+            endpoint = server;
+            logger.log(Level.INFO, "Metrics endpoint listening on http://127.0.0.1:"
+                    + server.getAddress().getPort() + "/metrics");
+        }
+        return endpoint.getAddress().getPort();
+    }
+
+    /**
+     * Stops the endpoint started by {@link #startEndpoint(int)}, if any.
+     */
+    public static synchronized void stopEndpoint() {
+        if (endpoint != null) {
+            endpoint.stop(0);
+            endpoint = null;
+        }
+    }
+}
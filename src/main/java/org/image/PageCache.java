@@ -0,0 +1,328 @@
+package org.image;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * On-disk cache of fetched listing pages, keyed by URL.
+ * <p>
+ * For every page it keeps the HTTP validators ({@code ETag}, {@code Last-Modified}), a digest of the body and the
+ * links extracted from it: the magnet links and the absolute URLs of the other anchors. The validators turn the next
+ * fetch of the page into a conditional GET; when the server answers 304 Not Modified, or sends a body with the same
+ * digest, the cached links are replayed without downloading or parsing the page again.
+ * <p>
+ * Each page is one small file in the cache directory, written to a temporary file and moved into place, so a crash
+ * never leaves a half-written entry behind; unreadable entries are treated as misses and deleted. The total size of
+ * the entries is bounded: once it exceeds the limit, the least recently used entries are evicted. The access order
+ * survives restarts through the files' modification times.
+ * <p>
+ * All public methods are thread-safe.
+ */
+public class PageCache {
+
+    /** Default bound of the total size of the cache entries. */
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    private static final String ENTRY_SUFFIX = ".page";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int ENTRY_MAGIC = 0x4D475043; // "MGPC"
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final int MAX_STRING_BYTES = 1 << 20;
+    private static final int DIGEST_BYTES = 32;
+
+    private static final Logger logger = Logger.getLogger(PageCache.class.getName());
+
+    /**
+     * Cached state of one page.
+     *
+     * @param url          the page URL
+     * @param etag         the ETag validator, or {@code null}
+     * @param lastModified the Last-Modified validator, or {@code null}
+     * @param bodyDigest   the SHA-256 digest of the body, or {@code null} if it is not known
+     * @param magnetLinks  the magnet links of the page, in document order
+     * @param anchors      the absolute URLs of the other anchors of the page
+     */
+    public record Entry(String url, String etag, String lastModified, byte[] bodyDigest, List<String> magnetLinks,
+                        List<String> anchors) {
+    }
+
+    private final Path directory;
+    private final long maxBytes;
+    /** Entry file name to entry size, least recently used first. */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private PageCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(ENTRY_SUFFIX)) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(Comparator.comparing(PageCache::lastModified));
+        for (Path file : files) {
+            long size = Files.size(file);
+            entries.put(file.getFileName().toString(), size);
+            totalBytes += size;
+        }
+        evict();
+    }
+
+    /**
+     * Opens the cache in the given directory, creating it if needed.
+     *
+     * @param directory the cache directory
+     * @param maxBytes  the bound of the total size of the entries
+     * @return the opened cache
+     * @throws IOException if the directory cannot be read or created
+     */
+    public static PageCache open(Path directory, long maxBytes) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxBytes);
+        }
+        return new PageCache(directory, maxBytes);
+    }
+
+    /**
+     * Returns the default cache directory: {@code -Dmagnetgrab.cache.dir} if set, otherwise
+     * {@code ~/.magnetgrab/cache}.
+     *
+     * @return the default cache directory
+     */
+    public static Path defaultDirectory() {
+        String configured = System.getProperty("magnetgrab.cache.dir");
+        return configured != null ? Path.of(configured)
+                : Path.of(System.getProperty("user.home"), ".magnetgrab", "cache");
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Public API
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the cached state of a page and marks it as recently used.
+     *
+     * @param url the page URL
+     * @return the entry, or {@code null} if the page is not cached
+     */
+    public synchronized Entry get(String url) {
+        String name = fileName(url);
+        if (!entries.containsKey(name)) {
+            return null;
+        }
+        Path file = directory.resolve(name);
+        try {
+            Entry entry = read(file);
+            if (!entry.url().equals(url)) {
+                return null;
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return entry;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Dropping unreadable page cache entry " + file, e);
+            remove(name);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the state of a page, replacing any previous entry, and evicts least recently used entries while the
+     * cache is over its size bound.
+     *
+     * @param entry the entry
+     * @throws IOException if the entry cannot be written
+     */
+    public synchronized void put(Entry entry) throws IOException {
+        String name = fileName(entry.url());
+        Path file = directory.resolve(name);
+        Path temp = directory.resolve(name + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            write(entry, out);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Long previous = entries.remove(name);
+        if (previous != null) {
+            totalBytes -= previous;
+        }
+        long size = Files.size(file);
+        entries.put(name, size);
+        totalBytes += size;
+        evict();
+    }
+
+    /**
+     * Returns the number of cached pages.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total size of the cached entries on disk.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long sizeInBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Creates a digest for page bodies, as stored in {@link Entry#bodyDigest()}.
+     *
+     * @return a new SHA-256 digest
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is not available", e);
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            eldest.remove();
+            totalBytes -= entry.getValue();
+            try {
+                Files.deleteIfExists(directory.resolve(entry.getKey()));
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to evict page cache entry " + entry.getKey(), e);
+            }
+        }
+    }
+
+    private void remove(String name) {
+        Long size = entries.remove(name);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        try {
+            Files.deleteIfExists(directory.resolve(name));
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to delete page cache entry " + name, e);
+        }
+    }
+
+    /** Entry file name of a URL: the hex SHA-256 of the URL, so that any URL maps to a valid file name. */
+    private static String fileName(String url) {
+        return HexFormat.of().formatHex(newDigest().digest(url.getBytes(StandardCharsets.UTF_8))) + ENTRY_SUFFIX;
+    }
+
+    private static void write(Entry entry, DataOutputStream out) throws IOException {
+        out.writeInt(ENTRY_MAGIC);
+        writeString(out, entry.url());
+        writeString(out, entry.etag());
+        writeString(out, entry.lastModified());
+        byte[] digest = entry.bodyDigest() == null ? new byte[0] : entry.bodyDigest();
+        out.writeInt(digest.length);
+        out.write(digest);
+        writeList(out, entry.magnetLinks());
+        writeList(out, entry.anchors());
+    }
+
+    private static Entry read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != ENTRY_MAGIC) {
+                throw new IOException("Not a page cache entry");
+            }
+            String url = readString(in);
+            String etag = readString(in);
+            String lastModified = readString(in);
+            int digestLength = in.readInt();
+            if (digestLength != 0 && digestLength != DIGEST_BYTES) {
+                throw new IOException("Corrupt page cache entry");
+            }
+            byte[] digest = new byte[digestLength];
+            in.readFully(digest);
+            return new Entry(url, etag, lastModified, digest.length == 0 ? null : digest, readList(in), readList(in));
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > MAX_STRING_BYTES) {
+            throw new IOException("Corrupt page cache entry");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeList(DataOutputStream out, List<String> list) throws IOException {
+        out.writeInt(list.size());
+        for (String s : list) {
+            writeString(out, s);
+        }
+    }
+
+    private static List<String> readList(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Corrupt page cache entry");
+        }
+        List<String> list = new ArrayList<>(Math.min(size, 1 << 16));
+        for (int i = 0; i < size; i++) {
+            list.add(readString(in));
+        }
+        return List.copyOf(list);
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
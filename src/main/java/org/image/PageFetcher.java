@@ -0,0 +1,347 @@
+package org.image;
+
+import org.jsoup.HttpStatusException;
+import org.jsoup.UnsupportedMimeTypeException;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.CookieManager;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Long-lived fetch layer for listing pages, shared by all parses and crawls of the process.
+ * <p>
+ * Pages are fetched with a single {@link HttpClient}, so connections are kept alive and reused across clicks instead
+ * of paying a TCP and TLS handshake per page: HTTP/2 is negotiated via ALPN where the server supports it, which
+ * multiplexes concurrent crawl requests over one connection, and HTTP/1.1 connections are pooled otherwise. Responses
+ * are requested with gzip/deflate encoding and decompressed while streaming.
+ * <p>
+ * Like the Jsoup connections it replaces, the client accepts every certificate, follows redirects and keeps cookies;
+ * it is configured once instead of reinstalling a trust-all SSL context into {@code HttpsURLConnection} on every
+ * parse. Host names are still checked against the certificate. {@code -Dmagnetgrab.tls.skipHostnameVerification=true}
+ * turns that check off as well, through the JDK's {@code jdk.internal.httpclient.disableHostnameVerification} switch,
+ * which applies to every {@link HttpClient} of the process, including the one of {@link Aria2RpcSink}.
+ * <p>
+ * Every request waits for a permit of the {@link HostScheduler}, which holds each host to a request rate and a number
+ * of requests in flight; the permit is returned when the body has been read or closed. A 429 or 503 response with a
+ * Retry-After header pauses the host, and the request is sent again once the pause is over if it is short enough. A
+ * redirect to another host is counted against the host of the requested URL.
+ */
+public class PageFetcher {
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final String USER_AGENT =
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0 Safari/537.36";
+    private static final String ACCEPT = "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8";
+    private static final Pattern CHARSET = Pattern.compile("(?i)\\bcharset=\\s*\"?([^\\s;\"]+)");
+    private static final Pattern SUPPORTED_CONTENT_TYPE =
+            Pattern.compile("(?i)^(text/\\S+|application/(\\S+\\+)?xml|application/xhtml\\+xml)");
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    /** Pause of a host that answers 429 without a Retry-After header. */
+    private static final Duration DEFAULT_THROTTLE_PAUSE = Duration.ofSeconds(2);
+    /** Longest Retry-After delay a fetch waits out itself before retrying; longer ones fail the fetch. */
+    private static final Duration MAX_RETRY_WAIT = Duration.ofSeconds(30);
+    /** Number of times a throttled request is sent again. */
+    private static final int MAX_RETRIES = 2;
+
+    /**
+     * A fetched page whose body is still being received.
+     *
+     * @param uri          the final URI of the page, after redirects
+     * @param status       the HTTP status code; 304 if a conditional request found the page unchanged
+     * @param charset      the charset named in the Content-Type header, or {@code null}
+     * @param etag         the ETag header, or {@code null}
+     * @param lastModified the Last-Modified header, or {@code null}
+     * @param body         the decompressed response body, empty for 304; must be closed to return the connection to
+     *                     the pool
+     */
+    public record Page(URI uri, int status, String charset, String etag, String lastModified, InputStream body) {
+    }
+
+    private static volatile PageFetcher shared;
+
+    private final HttpClient client;
+    private volatile HostScheduler hostScheduler = HostScheduler.configured();
+
+    /**
+     * Creates a fetcher with its own connection pool.
+     *
+     * @param sslContext the SSL context used for https pages
+     */
+    PageFetcher(SSLContext sslContext) {
+        ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "page-fetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.ALWAYS)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .cookieHandler(new CookieManager())
+                .sslContext(sslContext)
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * Returns the process-wide fetcher, creating it on first use.
+     *
+     * @return the shared fetcher
+     * @throws IllegalStateException if the SSL context cannot be created
+     */
+    public static PageFetcher shared() {
+        PageFetcher fetcher = shared;
+        if (fetcher == null) {
+            synchronized (PageFetcher.class) {
+                fetcher = shared;
+                if (fetcher == null) {
+                    try {
+                        fetcher = new PageFetcher(trustAllSslContext());
+                    } catch (GeneralSecurityException e) {
+                        throw new IllegalStateException("Failed to configure SSL", e);
+                    }
+                    shared = fetcher;
+                }
+            }
+        }
+        return fetcher;
+    }
+
+    /**
+     * Sends a GET request and returns as soon as the response headers have arrived; the body is read from the
+     * returned page.
+     *
+     * @param url the absolute http(s) URL of the page
+     * @return the page
+     * @throws HttpStatusException          if the server answers with a status other than 2xx, or is still throttling
+     *                                      the request after the retries
+     * @throws UnsupportedMimeTypeException if the response is not an HTML, XML or text document
+     * @throws IOException                  if the URL is not an http(s) URL or the request fails
+     */
+    public Page fetch(String url) throws IOException {
+        return fetch(url, null, null);
+    }
+
+    /**
+     * Sends a conditional GET request carrying the validators of a previously fetched copy of the page. If the server
+     * finds the page unchanged, the returned page has status 304 and an empty body.
+     *
+     * @param url          the absolute http(s) URL of the page
+     * @param etag         the ETag of the cached copy, sent as If-None-Match, or {@code null}
+     * @param lastModified the Last-Modified date of the cached copy, sent as If-Modified-Since, or {@code null}
+     * @return the page
+     * @throws HttpStatusException          if the server answers with a status other than 2xx or 304, or is still
+     *                                      throttling the request after the retries
+     * @throws UnsupportedMimeTypeException if the response is not an HTML, XML or text document
+     * @throws IOException                  if the URL is not an http(s) URL or the request fails
+     */
+    public Page fetch(String url, String etag, String lastModified) throws IOException {
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid URL: " + url, e);
+        }
+        String scheme = uri.getScheme();
+        if (scheme == null || !(scheme.equalsIgnoreCase("http") || scheme.equalsIgnoreCase("https"))) {
+            throw new IOException("Only http & https URLs are supported: " + url);
+        }
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .timeout(REQUEST_TIMEOUT)
+                .header("User-Agent", USER_AGENT)
+                .header("Accept", ACCEPT)
+                .header("Accept-Encoding", "gzip, deflate")
+                .GET();
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            request.header("If-Modified-Since", lastModified);
+        }
+        HostScheduler hosts = hostScheduler;
+        HttpResponse<InputStream> response;
+        HostScheduler.Permit permit;
+        for (int attempt = 0; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                permit = hosts.acquire(uri);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to fetch " + url);
+            } finally {
+                Metrics.HOST_WAIT.recordSince(start);
+            }
+            start = System.nanoTime();
+            try {
+                response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            } catch (InterruptedException e) {
+                permit.close();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while fetching " + url);
+            } catch (IOException | RuntimeException e) {
+                permit.close();
+                throw e;
+            } finally {
+                Metrics.FETCH.recordSince(start);
+            }
+            Duration retryAfter = throttledFor(response);
+            if (retryAfter == null) {
+                break;
+            }
+            hosts.pause(uri, retryAfter);
+            if (attempt == MAX_RETRIES || retryAfter.compareTo(MAX_RETRY_WAIT) > 0) {
+                break;
+            }
+            response.body().close();
+            permit.close();
+        }
+
+        boolean bodyHandedOver = false;
+        try {
+            int status = response.statusCode();
+            String contentType = response.headers().firstValue("Content-Type").orElse(null);
+            String responseEtag = response.headers().firstValue("ETag").orElse(null);
+            String responseLastModified = response.headers().firstValue("Last-Modified").orElse(null);
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && (etag != null || lastModified != null)) {
+                Metrics.PAGES_FETCHED.increment();
+                response.body().close();
+                return new Page(response.uri(), status, charsetOf(contentType),
+                        responseEtag != null ? responseEtag : etag,
+                        responseLastModified != null ? responseLastModified : lastModified,
+                        InputStream.nullInputStream());
+            }
+            if (status < 200 || status >= 300) {
+                response.body().close();
+                throw new HttpStatusException("HTTP error fetching URL", status, response.uri().toString());
+            }
+            if (contentType != null && !SUPPORTED_CONTENT_TYPE.matcher(contentType).find()) {
+                response.body().close();
+                throw new UnsupportedMimeTypeException("Unhandled content type", contentType,
+                        response.uri().toString());
+            }
+            Metrics.PAGES_FETCHED.increment();
+            InputStream body = decode(permit.releaseOnClose(response.body()),
+                    response.headers().firstValue("Content-Encoding").orElse(""));
+            bodyHandedOver = true;
+            return new Page(response.uri(), status, charsetOf(contentType), responseEtag, responseLastModified, body);
+        } finally {
+            if (!bodyHandedOver) {
+                permit.close();
+            }
+        }
+    }
+
+    /**
+     * Sets the scheduler that keeps the requests of this fetcher within the per-host budgets.
+     *
+     * @param scheduler the scheduler
+     */
+    void setHostScheduler(HostScheduler scheduler) {
+        hostScheduler = scheduler;
+    }
+
+    /**
+     * Returns the scheduler that keeps the requests of this fetcher within the per-host budgets.
+     *
+     * @return the scheduler
+     */
+    HostScheduler hostScheduler() {
+        return hostScheduler;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Tells how long the host asked to be left alone: the Retry-After delay of a 429 or 503 response,
+     * {@link #DEFAULT_THROTTLE_PAUSE} for a 429 without a valid one, or {@code null} if the response is not throttled.
+     */
+    private static Duration throttledFor(HttpResponse<?> response) {
+        int status = response.statusCode();
+        if (status != HTTP_TOO_MANY_REQUESTS && status != HttpURLConnection.HTTP_UNAVAILABLE) {
+            return null;
+        }
+        Duration retryAfter = response.headers().firstValue("Retry-After")
+                .map(value -> HostScheduler.parseRetryAfter(value, System.currentTimeMillis()))
+                .orElse(null);
+        if (retryAfter == null && status == HTTP_TOO_MANY_REQUESTS) {
+            retryAfter = DEFAULT_THROTTLE_PAUSE;
+        }
+        if (retryAfter != null) {
+            Metrics.HOST_THROTTLED.increment();
+        }
+        return retryAfter;
+    }
+
+    /** Wraps the raw body into a streaming decompressor matching the Content-Encoding. */
+    static InputStream decode(InputStream body, String contentEncoding) throws IOException {
+        String encoding = contentEncoding.strip().toLowerCase(Locale.ROOT);
+        switch (encoding) {
+            case "gzip", "x-gzip":
+                return new GZIPInputStream(body, 8192);
+            case "deflate":
+                // "deflate" should be zlib-wrapped, but some servers send a raw deflate stream
+                BufferedInputStream buffered = new BufferedInputStream(body);
+                buffered.mark(2);
+                int first = buffered.read();
+                int second = buffered.read();
+                buffered.reset();
+                boolean zlib = first >= 0 && second >= 0 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+                return new InflaterInputStream(buffered, new Inflater(!zlib), 8192);
+            default:
+                return body;
+        }
+    }
+
+    /** Extracts the charset parameter of a Content-Type header. */
+    static String charsetOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        Matcher matcher = CHARSET.matcher(contentType);
+        return matcher.find() ? matcher.group(1).replace("'", "") : null;
+    }
+
+    private static SSLContext trustAllSslContext() throws GeneralSecurityException {
+        // The JDK client verifies host names separately; it reads this process-wide switch once when it is first used
+        if (Boolean.getBoolean("magnetgrab.tls.skipHostnameVerification")
+                && System.getProperty("jdk.internal.httpclient.disableHostnameVerification") == null) {
+            System.setProperty("jdk.internal.httpclient.disableHostnameVerification", "true");
+        }
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, new TrustManager[]{new X509TrustManager() {
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+            public void checkClientTrusted(X509Certificate[] certs, String authType) {
+            }
+            public void checkServerTrusted(X509Certificate[] certs, String authType) {
+            }
+        }}, new SecureRandom());
+        return context;
+    }
+}
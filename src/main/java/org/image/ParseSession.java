@@ -0,0 +1,368 @@
+package org.image;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One parse of a page, or one crawl from it, started by a click or a command.
+ * <p>
+ * Every session runs on the same application-wide executor, created once: virtual threads where the runtime provides
+ * them, a cached pool of daemon threads otherwise. The session keeps the futures of all its running and queued tasks,
+ * the page fetch or crawl as well as the processing of each found link, so that {@link #cancel()} interrupts them at
+ * once: a fetch waiting for the network, a body being read or a link waiting for the dispatcher's queue all stop within
+ * milliseconds. A session that outlives its deadline is cancelled the same way; the deadline is scheduled on one
+ * daemon thread and cancelled when the session ends first.
+ * <p>
+ * Found links are processed under one {@link AdaptiveLimiter} shared by all sessions, since they all end in the same
+ * de-duplication, store and dispatcher queue: it starts at {@value #INITIAL_WORKERS} links at once, grows while
+ * processing a link stays fast and shrinks when links start waiting, e.g. for a full dispatcher queue. The page scan
+ * waits for a free worker.
+ * <p>
+ * Each session counts its own pages, magnet links and new links, independently of the process-wide {@link Metrics},
+ * and completes {@link #result()} with a {@link Summary} when its work is done or it was stopped.
+ */
+public class ParseSession {
+
+    /** Links processed at the same time before the limit has adapted, as with the former per-parse pool. */
+    static final int INITIAL_WORKERS = 8;
+    /** Most links processed at the same time. */
+    static final int MAX_WORKERS = 64;
+    /** Default time a session may take, overridable with -Dmagnetgrab.session.timeoutSeconds. */
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(300);
+
+    private static final Logger logger = Logger.getLogger(ParseSession.class.getName());
+    private static final AtomicLong nextId = new AtomicLong();
+    /** Sessions that have not completed yet. */
+    private static final Set<ParseSession> active = ConcurrentHashMap.newKeySet();
+    /** Limits the links processed at once, across all sessions. */
+    private static final AdaptiveLimiter workers = new AdaptiveLimiter("link processing", INITIAL_WORKERS, 1,
+            MAX_WORKERS);
+
+    /** How a session ended. */
+    public enum State {
+        /** Still fetching pages or processing links. */
+        RUNNING,
+        /** All pages were fetched, or failed, and all links processed. */
+        COMPLETED,
+        /** Stopped by {@link #cancel()}. */
+        CANCELLED,
+        /** Stopped because its deadline passed. */
+        EXPIRED
+    }
+
+    /**
+     * Counters of a session.
+     *
+     * @param id          the session id
+     * @param url         the URL the session started from
+     * @param state       the state of the session when the counters were read
+     * @param pages       the number of pages fetched successfully
+     * @param failedPages the number of pages that could not be fetched
+     * @param magnetLinks the number of magnet links found on the pages
+     * @param newLinks    the number of those that were new in this process
+     * @param millis      the time since the session started, or its duration once it has ended
+     */
+    public record Summary(long id, String url, State state, int pages, int failedPages, int magnetLinks, int newLinks,
+                          long millis) {
+    }
+
+    private final long id = nextId.incrementAndGet();
+    private final String url;
+    private final long startNanos = System.nanoTime();
+    private final Set<Future<?>> tasks = ConcurrentHashMap.newKeySet();
+    /** Tasks not finished yet, plus one for the page source until it has delivered its last link. */
+    private final AtomicInteger outstanding = new AtomicInteger(1);
+    private final AtomicReference<State> state = new AtomicReference<>(State.RUNNING);
+    private final AtomicInteger pages = new AtomicInteger();
+    private final AtomicInteger failedPages = new AtomicInteger();
+    private final AtomicInteger magnetLinks = new AtomicInteger();
+    private final AtomicInteger newLinks = new AtomicInteger();
+    private final CompletableFuture<Summary> result = new CompletableFuture<>();
+    private volatile long endNanos;
+    /** Expires the session; cancelled when it ends earlier, so that the scheduler lets go of it. */
+    private volatile ScheduledFuture<?> deadline;
+
+    private ParseSession(String url) {
+        this.url = url;
+    }
+
+    /**
+     * Starts parsing a single page and returns immediately.
+     *
+     * @param url     the URL of the page
+     * @param timeout the time after which the session is cancelled
+     * @return the running session
+     */
+    static ParseSession parse(String url, Duration timeout) {
+        ParseSession session = start(url, timeout);
+        session.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                int links = LinkParser.extractMagnetLinks(url, session::processLink);
+                session.magnetLinks.addAndGet(links);
+                session.pages.incrementAndGet();
+            } catch (Exception e) {
+                if (session.isRunning()) {
+                    session.failedPages.incrementAndGet();
+                    Metrics.PAGE_FAILURES.increment();
+                    logger.log(Level.SEVERE, "An error occurred while connecting to the URL", e);
+                }
+            } finally {
+                Metrics.PAGE.recordSince(start);
+                session.sourceDone();
+            }
+        });
+        return session;
+    }
+
+    /**
+     * Starts crawling from a page and returns immediately. The crawler's fetches run as tasks of the session.
+     *
+     * @param url      the URL to start from
+     * @param maxDepth how many link hops to follow from the start page
+     * @param maxPages the maximum number of pages to fetch
+     * @param timeout  the time after which the session is cancelled
+     * @return the running session
+     */
+    static ParseSession crawl(String url, int maxDepth, int maxPages, Duration timeout) {
+        ParseSession session = start(url, timeout);
+        LinkCrawler crawler = new LinkCrawler(maxDepth, maxPages, LinkCrawler.DEFAULT_MAX_IN_FLIGHT,
+                session::processLink, session::submit);
+        try {
+            crawler.crawl(url).whenComplete((summary, e) -> {
+                if (summary != null) {
+                    session.pages.addAndGet(summary.pages());
+                    session.failedPages.addAndGet(summary.failedPages());
+                    session.magnetLinks.addAndGet(summary.magnetLinks());
+                }
+                session.sourceDone();
+            });
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "An error occurred while connecting to the URL", e);
+            session.failedPages.incrementAndGet();
+            session.sourceDone();
+        }
+        return session;
+    }
+
+    private static ParseSession start(String url, Duration timeout) {
+        ParseSession session = new ParseSession(url);
+        active.add(session);
+        session.deadline = Shared.DEADLINES.schedule(() -> session.stop(State.EXPIRED), timeout.toMillis(),
+                TimeUnit.MILLISECONDS);
+        if (!session.isRunning()) {
+            // Stopped before its deadline was set
+            session.deadline.cancel(false);
+        }
+        return session;
+    }
+
+    /**
+     * Cancels all sessions that are still running.
+     *
+     * @return the number of sessions cancelled
+     */
+    static int cancelAll() {
+        int cancelled = 0;
+        for (ParseSession session : List.copyOf(active)) {
+            if (session.cancel()) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Public API
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Stops the session: queued tasks are dropped, running ones interrupted, and {@link #result()} completes with
+     * state {@link State#CANCELLED}. Links already handed to the dispatcher are not taken back.
+     *
+     * @return {@code true} if the session was running
+     */
+    public boolean cancel() {
+        return stop(State.CANCELLED);
+    }
+
+    /**
+     * Returns the id of the session, unique in this process.
+     *
+     * @return the session id
+     */
+    public long id() {
+        return id;
+    }
+
+    /**
+     * Returns the current counters of the session.
+     *
+     * @return the counters
+     */
+    public Summary summary() {
+        long end = state.get() == State.RUNNING ? System.nanoTime() : endNanos;
+        return new Summary(id, url, state.get(), pages.get(), failedPages.get(), magnetLinks.get(), newLinks.get(),
+                TimeUnit.NANOSECONDS.toMillis(end - startNanos));
+    }
+
+    /**
+     * Returns the future that completes with the final counters once the session has ended, however it ended.
+     *
+     * @return the result future
+     */
+    public CompletableFuture<Summary> result() {
+        return result;
+    }
+
+    /**
+     * Tells whether the session is still running.
+     *
+     * @return {@code true} until the session has completed, been cancelled or expired
+     */
+    public boolean isRunning() {
+        return state.get() == State.RUNNING;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Tasks
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Queues a found link for processing, waiting for a free worker. Called by the page scan.
+     */
+    private void processLink(String link, String sourceUrl) {
+        if (!isRunning()) {
+            return;
+        }
+        AdaptiveLimiter.Permit permit;
+        try {
+            permit = workers.acquire();
+        } catch (InterruptedException e) {
+            // Cancelled while the workers were busy
+            Thread.currentThread().interrupt();
+            return;
+        }
+        submit(() -> {
+            if (isRunning() && LinkParser.processMagnetLink(link, sourceUrl)) {
+                newLinks.incrementAndGet();
+            }
+            permit.success();
+        }, permit::ignore);
+    }
+
+    private void processLink(String link) {
+        processLink(link, url);
+    }
+
+    /**
+     * Runs a task of this session on the shared executor, keeping its future until it is done.
+     */
+    private void submit(Runnable task) {
+        submit(task, () -> { });
+    }
+
+    /**
+     * Runs a task of this session on the shared executor, keeping its future until it is done.
+     *
+     * @param whenDone runs once the task has completed, failed or been cancelled, or at once if it is not started
+     */
+    private void submit(Runnable task, Runnable whenDone) {
+        if (!isRunning()) {
+            whenDone.run();
+            return;
+        }
+        outstanding.incrementAndGet();
+        FutureTask<Void> future = new FutureTask<>(task, null) {
+            @Override
+            protected void done() {
+                whenDone.run();
+                tasks.remove(this);
+                sourceDone();
+            }
+        };
+        tasks.add(future);
+        // A cancel() between the check above and the add may have missed this task
+        if (!isRunning()) {
+            future.cancel(false);
+            return;
+        }
+        try {
+            Shared.EXECUTOR.execute(future);
+        } catch (RuntimeException e) {
+            future.cancel(false);
+            throw e;
+        }
+    }
+
+    /** Called when a task is done, and once by the page source after its last link. */
+    private void sourceDone() {
+        if (outstanding.decrementAndGet() == 0) {
+            stop(State.COMPLETED);
+        }
+    }
+
+    /** Ends the session in the given state unless it has ended already. */
+    private boolean stop(State finalState) {
+        if (!state.compareAndSet(State.RUNNING, finalState)) {
+            return false;
+        }
+        endNanos = System.nanoTime();
+        ScheduledFuture<?> expiry = deadline;
+        if (expiry != null) {
+            expiry.cancel(false);
+        }
+        for (Future<?> task : tasks) {
+            task.cancel(true);
+        }
+        active.remove(this);
+        Summary summary = summary();
+        logger.log(finalState == State.EXPIRED ? Level.WARNING : Level.INFO, "Parse session " + summary);
+        result.complete(summary);
+        return true;
+    }
+
+    /**
+     * Number of session deadlines waiting in the scheduler.
+     *
+     * @return the deadlines not yet run or cancelled
+     */
+    static int pendingDeadlines() {
+        return Shared.DEADLINES.getQueue().size();
+    }
+
+    /** Holder of the application-wide executor and deadline scheduler, created on first use. */
+    private static final class Shared {
+        static final ExecutorService EXECUTOR = LinkCrawler.newFetchExecutor();
+        static final ScheduledThreadPoolExecutor DEADLINES = newDeadlineScheduler();
+
+        private static ScheduledThreadPoolExecutor newDeadlineScheduler() {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "parse-session-deadline");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // A cancelled deadline leaves the queue at once instead of holding its session until it is due
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+
+        private Shared() {
+        }
+    }
+
+}
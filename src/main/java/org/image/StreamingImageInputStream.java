@@ -0,0 +1,141 @@
+package org.image;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Image input stream over a plain InputStream that keeps only a sliding window of the bytes read, instead of caching
+ * the whole stream in memory or in a temporary file like the streams {@code ImageIO} creates.
+ * <p>
+ * Image readers decode front to back and only step back a little (to re-read a chunk header, to push back part of a
+ * native read buffer) or to a position they have marked. The window therefore keeps the last {@value #LOOK_BEHIND}
+ * bytes before the current position and everything from the earliest open mark on; seeking further back fails with
+ * an IOException. The buffer is reused as the window slides, so decoding a multi-megabyte image allocates only the
+ * window.
+ */
+final class StreamingImageInputStream extends ImageInputStreamImpl {
+
+    /** Bytes kept before the current position, for readers that step back. */
+    static final int LOOK_BEHIND = 256 * 1024;
+    private static final int INITIAL_WINDOW = 64 * 1024;
+
+    private final InputStream in;
+    /** Bytes from {@link #windowStart} on; {@link #windowLength} of them are valid. */
+    private byte[] window = new byte[INITIAL_WINDOW];
+    private long windowStart;
+    private int windowLength;
+    private boolean eof;
+    /** Positions of the open marks, the latest first. */
+    private final Deque<Long> marks = new ArrayDeque<>();
+
+    /**
+     * Creates a stream reading from the given input.
+     *
+     * @param in the input, closed with this stream
+     */
+    StreamingImageInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (available(1) == 0) {
+            return -1;
+        }
+        return window[(int) (streamPos++ - windowStart)] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        if (off < 0 || len < 0 || off + len > b.length || off + len < 0) {
+            throw new IndexOutOfBoundsException("off < 0 || len < 0 || off + len > b.length");
+        }
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        int count = available(len);
+        if (count == 0) {
+            return -1;
+        }
+        System.arraycopy(window, (int) (streamPos - windowStart), b, off, count);
+        streamPos += count;
+        return count;
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+        if (pos < windowStart) {
+            throw new IOException("Cannot seek back to " + pos + ", the stream only keeps bytes from " + windowStart);
+        }
+        super.seek(pos);
+    }
+
+    @Override
+    public void mark() {
+        super.mark();
+        marks.push(streamPos);
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        marks.poll();
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        in.close();
+    }
+
+    /**
+     * Reads ahead until at least one byte at the current position is in the window.
+     *
+     * @return the number of bytes, at most {@code wanted}, available from the current position; 0 at end of stream
+     */
+    private int available(int wanted) throws IOException {
+        if (streamPos < windowStart) {
+            throw new IOException("Cannot read at " + streamPos + ", the stream only keeps bytes from " + windowStart);
+        }
+        while (windowStart + windowLength <= streamPos) {
+            if (eof) {
+                return 0;
+            }
+            fill();
+        }
+        return (int) Math.min(wanted, windowStart + windowLength - streamPos);
+    }
+
+    /** Reads more input into the window, sliding or growing it when it is full. */
+    private void fill() throws IOException {
+        if (windowLength == window.length) {
+            long floor = streamPos - LOOK_BEHIND;
+            if (!marks.isEmpty()) {
+                floor = Math.min(floor, marks.peekLast());
+            }
+            if (floor > windowStart) {
+                int discard = (int) Math.min(floor - windowStart, windowLength);
+                System.arraycopy(window, discard, window, 0, windowLength - discard);
+                windowStart += discard;
+                windowLength -= discard;
+            }
+            if (windowLength == window.length) {
+                window = Arrays.copyOf(window, window.length * 2);
+            }
+        }
+        int n = in.read(window, windowLength, window.length - windowLength);
+        if (n < 0) {
+            eof = true;
+        } else {
+            windowLength += n;
+        }
+    }
+}
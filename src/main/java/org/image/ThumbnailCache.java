@@ -0,0 +1,280 @@
+package org.image;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * On-disk cache of preview images, keyed by a digest of the source image resource and the preview size.
+ * <p>
+ * Entries hold the raw pixels of a {@code TYPE_INT_RGB} or {@code TYPE_INT_ARGB_PRE} image, so a hit is one file read
+ * into an image that Swing draws as is, without ImageIO or {@link ImgProcessor}. Since the key contains the digest of
+ * the resource content, a changed resource simply misses; its old entry is never used again and ages out.
+ * <p>
+ * Like {@link PageCache}, each entry is one file, written to a temporary file and moved into place; unreadable entries
+ * are treated as misses and deleted. Once the total size exceeds the limit, the least recently used entries are
+ * evicted, and the access order survives restarts through the files' modification times.
+ * <p>
+ * All public methods are thread-safe.
+ */
+public class ThumbnailCache {
+
+    /** Default bound of the total size of the cache entries, room for a dozen 512x512 previews. */
+    public static final long DEFAULT_MAX_BYTES = 12L * 1024 * 1024;
+
+    private static final String ENTRY_SUFFIX = ".thumb";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int ENTRY_MAGIC = 0x4D475448; // "MGTH"
+    private static final int DIGEST_BYTES = 32;
+    /** Magic, digest, size, type, width and height. */
+    private static final int HEADER_BYTES = 4 + DIGEST_BYTES + 4 + 4 + 4 + 4;
+
+    private static final Logger logger = Logger.getLogger(ThumbnailCache.class.getName());
+
+    private final Path directory;
+    private final long maxBytes;
+    /** Entry file name to entry size, least recently used first. */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private ThumbnailCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(ENTRY_SUFFIX)) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(Comparator.comparing(ThumbnailCache::lastModified));
+        for (Path file : files) {
+            long size = Files.size(file);
+            entries.put(file.getFileName().toString(), size);
+            totalBytes += size;
+        }
+        evict();
+    }
+
+    /**
+     * Opens the cache in the given directory, creating it if needed.
+     *
+     * @param directory the cache directory
+     * @param maxBytes  the bound of the total size of the entries
+     * @return the opened cache
+     * @throws IOException if the directory cannot be read or created
+     */
+    public static ThumbnailCache open(Path directory, long maxBytes) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxBytes);
+        }
+        return new ThumbnailCache(directory, maxBytes);
+    }
+
+    /**
+     * Returns the default cache directory: {@code -Dmagnetgrab.thumbnails.dir} if set, otherwise
+     * {@code ~/.magnetgrab/thumbnails}.
+     *
+     * @return the default cache directory
+     */
+    public static Path defaultDirectory() {
+        String configured = System.getProperty("magnetgrab.thumbnails.dir");
+        return configured != null ? Path.of(configured)
+                : Path.of(System.getProperty("user.home"), ".magnetgrab", "thumbnails");
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Public API
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the cached preview of an image and marks it as recently used.
+     *
+     * @param contentDigest the SHA-256 digest of the image resource
+     * @param size          the maximum width and height of the preview
+     * @return the preview, or {@code null} if it is not cached
+     */
+    public synchronized BufferedImage get(byte[] contentDigest, int size) {
+        String name = fileName(contentDigest, size);
+        if (!entries.containsKey(name)) {
+            return null;
+        }
+        Path file = directory.resolve(name);
+        try {
+            BufferedImage image = read(file, contentDigest, size);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return image;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Dropping unreadable thumbnail cache entry " + file, e);
+            remove(name);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the preview of an image, replacing any previous entry, and evicts least recently used entries while the
+     * cache is over its size bound.
+     *
+     * @param contentDigest the SHA-256 digest of the image resource
+     * @param size          the maximum width and height of the preview
+     * @param image         the preview, in {@code TYPE_INT_RGB} or {@code TYPE_INT_ARGB_PRE}
+     * @throws IOException if the entry cannot be written
+     */
+    public synchronized void put(byte[] contentDigest, int size, BufferedImage image) throws IOException {
+        if (contentDigest.length != DIGEST_BYTES) {
+            throw new IllegalArgumentException("Expected a SHA-256 digest, got " + contentDigest.length + " bytes");
+        }
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB_PRE) {
+            throw new IllegalArgumentException("Unsupported image type " + type);
+        }
+        String name = fileName(contentDigest, size);
+        Path file = directory.resolve(name);
+        Path temp = directory.resolve(name + TEMP_SUFFIX);
+        write(temp, contentDigest, size, image);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Long previous = entries.remove(name);
+        if (previous != null) {
+            totalBytes -= previous;
+        }
+        long fileSize = Files.size(file);
+        entries.put(name, fileSize);
+        totalBytes += fileSize;
+        evict();
+    }
+
+    /**
+     * Returns the number of cached previews.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total size of the cached entries on disk.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long sizeInBytes() {
+        return totalBytes;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            eldest.remove();
+            totalBytes -= entry.getValue();
+            try {
+                Files.deleteIfExists(directory.resolve(entry.getKey()));
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to evict thumbnail cache entry " + entry.getKey(), e);
+            }
+        }
+    }
+
+    private void remove(String name) {
+        Long size = entries.remove(name);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        try {
+            Files.deleteIfExists(directory.resolve(name));
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to delete thumbnail cache entry " + name, e);
+        }
+    }
+
+    /** Entry file name: the hex content digest and the preview size. */
+    private static String fileName(byte[] contentDigest, int size) {
+        return HexFormat.of().formatHex(contentDigest) + "-" + size + ENTRY_SUFFIX;
+    }
+
+    private static void write(Path file, byte[] contentDigest, int size, BufferedImage image) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = (int[]) image.getRaster().getDataElements(0, 0, width, height, null);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + pixels.length * 4);
+        buffer.putInt(ENTRY_MAGIC).put(contentDigest).putInt(size).putInt(image.getType())
+                .putInt(width).putInt(height);
+        buffer.asIntBuffer().put(pixels);
+        buffer.clear();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private static BufferedImage read(Path file, byte[] contentDigest, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_BYTES || length > Integer.MAX_VALUE) {
+                throw new IOException("Not a thumbnail cache entry");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) length);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read the whole entry
+            }
+            buffer.flip();
+            int magic = buffer.getInt();
+            byte[] digest = new byte[DIGEST_BYTES];
+            buffer.get(digest);
+            if (magic != ENTRY_MAGIC || !Arrays.equals(digest, contentDigest) || buffer.getInt() != size) {
+                throw new IOException("Not a thumbnail cache entry for this image");
+            }
+            int type = buffer.getInt();
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            if ((type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB_PRE) || width <= 0
+                    || height <= 0 || (long) width * height * 4 != buffer.remaining()) {
+                throw new IOException("Corrupt thumbnail cache entry");
+            }
+            BufferedImage image = new BufferedImage(width, height, type);
+            // setDataElements copies, so the image stays eligible for Java2D's accelerated caching
+            int[] pixels = new int[width * height];
+            buffer.asIntBuffer().get(pixels);
+            image.getRaster().setDataElements(0, 0, width, height, pixels);
+            return image;
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
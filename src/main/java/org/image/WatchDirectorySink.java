@@ -0,0 +1,56 @@
+package org.image;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes magnet links as {@code .magnet} files into the watch directory of a torrent client (qBittorrent,
+ * Transmission, rTorrent and others pick such files up and add the torrent).
+ * <p>
+ * A file is named after the info-hash of its link, so a link handed over twice does not create a second torrent. Each
+ * batch is first written to temporary files, which are then renamed into place, so the client never reads a partly
+ * written file and the whole batch appears at once.
+ */
+public class WatchDirectorySink implements MagnetSink {
+
+    static final String EXTENSION = ".magnet";
+    private static final String TEMP_EXTENSION = ".magnet.part";
+
+    private final Path directory;
+
+    /**
+     * Creates a sink for the given directory, creating it if needed.
+     *
+     * @param directory the watch directory
+     * @throws IOException if the directory cannot be created
+     */
+    public WatchDirectorySink(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    @Override
+    public void send(List<MagnetLink> links) throws IOException {
+        List<Path> written = new ArrayList<>(links.size());
+        try {
+            for (MagnetLink link : links) {
+                Path temp = directory.resolve(link.infoHashHex() + TEMP_EXTENSION);
+                Files.write(temp, link.uri().getBytes(StandardCharsets.UTF_8));
+                written.add(temp);
+            }
+            for (Path temp : written) {
+                String name = temp.getFileName().toString();
+                Path target = directory.resolve(name.substring(0, name.length() - TEMP_EXTENSION.length()) + EXTENSION);
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } finally {
+            for (Path temp : written) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package org.image;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the AdaptiveLimiter class, with synthetic latencies and against a local server that serves at most
+ * {@value #SERVER_CAPACITY} requests at once in {@value #SERVICE_MILLIS} ms each and queues the rest, like a site or
+ * torrent client whose throughput stops growing beyond a certain concurrency while its latency keeps growing.
+ */
+public class AdaptiveLimiterTest {
+
+    private static final int SERVER_CAPACITY = 4;
+    private static final long SERVICE_MILLIS = 40;
+    private static final int CLIENTS = 32;
+
+    private HttpServer server;
+    private String url;
+    private PageFetcher fetcher;
+
+    @BeforeEach
+    public void setUp() throws IOException, NoSuchAlgorithmException {
+        Semaphore capacity = new Semaphore(SERVER_CAPACITY, true);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            try {
+                capacity.acquire();
+                try {
+                    Thread.sleep(SERVICE_MILLIS);
+                } finally {
+                    capacity.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "<html></html>".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        fetcher = new PageFetcher(SSLContext.getDefault());
+        // Only the limiter under test may hold the requests back
+        fetcher.setHostScheduler(new HostScheduler(1_000_000, 1_000_000, 1_000));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Result of a load run.
+     *
+     * @param requestsPerSecond completed requests per second in the second half of the run
+     * @param meanLatencyMillis mean latency of those requests, waiting for a permit excluded
+     * @param limit             the limit at the end of the run
+     */
+    private record Run(double requestsPerSecond, double meanLatencyMillis, int limit) {
+    }
+
+    /** Lets {@value #CLIENTS} clients fetch the page through the limiter for the given time. */
+    private Run load(AdaptiveLimiter limiter, long millis) throws InterruptedException {
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(millis);
+        long measuredFrom = start + (end - start) / 2;
+        LongAdder completed = new LongAdder();
+        AtomicLong latencyNanos = new AtomicLong();
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            clients.execute(() -> {
+                while (System.nanoTime() < end) {
+                    AdaptiveLimiter.Permit permit;
+                    try {
+                        permit = limiter.acquire();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long sent = System.nanoTime();
+                    try (InputStream body = fetcher.fetch(url).body()) {
+                        body.readAllBytes();
+                        permit.success();
+                    } catch (IOException e) {
+                        permit.dropped();
+                    }
+                    long done = System.nanoTime();
+                    if (sent >= measuredFrom && done <= end) {
+                        completed.increment();
+                        latencyNanos.addAndGet(done - sent);
+                    }
+                }
+            });
+        }
+        clients.shutdown();
+        assertTrue(clients.awaitTermination(millis + 10_000, TimeUnit.MILLISECONDS), "Clients should stop");
+        long requests = Math.max(1, completed.sum());
+        return new Run(requests / ((end - measuredFrom) / 1e9), latencyNanos.get() / 1e6 / requests,
+                limiter.limit());
+    }
+
+    /**
+     * Simulates a crawl against a server with a fixed capacity: starting from one request at a time, the limiter
+     * should reach nearly the throughput of the best fixed limit, while keeping latency well below that of a fixed
+     * limit that only fills the server's queue. The optimum is measured rather than computed, as the local round-trip
+     * and the test machine's CPU add to the server's own service time.
+     */
+    @Test
+    public void testLoad_convergesToNearOptimalThroughput() throws Exception {
+        // The connection set-up of a cold client would count as the latency of the first request
+        try (InputStream body = fetcher.fetch(url).body()) {
+            body.readAllBytes();
+        }
+        Run adaptive = load(new AdaptiveLimiter("simulation", 1, 1, CLIENTS), 3_000);
+        Run knee = load(new AdaptiveLimiter("fixed", 2 * SERVER_CAPACITY, 2 * SERVER_CAPACITY,
+                2 * SERVER_CAPACITY), 1_500);
+        Run saturating = load(new AdaptiveLimiter("fixed", CLIENTS, CLIENTS, CLIENTS), 1_500);
+        double optimum = Math.max(knee.requestsPerSecond(), saturating.requestsPerSecond());
+
+        String report = String.format("adaptive: %.0f req/s, %.0f ms, limit %d; fixed %d: %.0f req/s, %.0f ms;"
+                        + " fixed %d: %.0f req/s, %.0f ms", adaptive.requestsPerSecond(),
+                adaptive.meanLatencyMillis(), adaptive.limit(), knee.limit(), knee.requestsPerSecond(),
+                knee.meanLatencyMillis(), saturating.limit(), saturating.requestsPerSecond(),
+                saturating.meanLatencyMillis());
+        assertTrue(adaptive.requestsPerSecond() >= 0.85 * optimum, "Throughput should near the optimum, " + report);
+        assertTrue(adaptive.limit() >= SERVER_CAPACITY && adaptive.limit() < CLIENTS,
+                "The limit should settle between the server's capacity and saturation, " + report);
+        assertTrue(adaptive.meanLatencyMillis() < 0.75 * saturating.meanLatencyMillis(),
+                "Latency should stay well below that of a saturating fixed limit, " + report);
+    }
+
+    /**
+     * Tests that the limit grows while latency is flat, shrinks back when latency grows with it, and ignores tasks
+     * that ran while most of the limit was unused.
+     */
+    @Test
+    public void testLimit_followsLatencyGradient() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("synthetic", 8, 1, 64);
+        long baseNanos = TimeUnit.MILLISECONDS.toNanos(10);
+
+        for (int i = 0; i < 20; i++) {
+            sample(limiter, baseNanos, 1);
+        }
+        assertEquals(8, limiter.limit(), "Tasks that ran alone say nothing about the limit");
+
+        for (int i = 0; i < 200 && limiter.limit() < 64; i++) {
+            sample(limiter, baseNanos, limiter.limit());
+        }
+        assertEquals(64, limiter.limit(), "A flat latency should let the limit grow to its maximum");
+
+        // Beyond 8 tasks at once the latency grows with the number of tasks, as when they queue
+        for (int i = 0; i < 500; i++) {
+            int limit = limiter.limit();
+            sample(limiter, baseNanos * Math.max(8, limit) / 8, limit);
+        }
+        int settled = limiter.limit();
+        assertTrue(settled >= 8 && settled <= 24, "The limit should settle near the knee of the latency, was "
+                + settled);
+    }
+
+    /**
+     * Tests that failures from overload cut the limit once per round of tasks.
+     */
+    @Test
+    public void testDropped_backsOffOncePerRound() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("drops", 20, 1, 64);
+        Thread.sleep(1);
+        List<AdaptiveLimiter.Permit> round = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            round.add(limiter.tryAcquire());
+        }
+        round.forEach(AdaptiveLimiter.Permit::dropped);
+        assertEquals((int) (20 * AdaptiveLimiter.BACKOFF), limiter.limit(),
+                "Ten failures of one round should cut the limit once");
+
+        Thread.sleep(1);
+        AdaptiveLimiter.Permit later = limiter.tryAcquire();
+        later.dropped();
+        later.dropped();
+        assertEquals((int) (20 * AdaptiveLimiter.BACKOFF * AdaptiveLimiter.BACKOFF), limiter.limit(),
+                "A failure of a later round should cut it again, once");
+        assertEquals(0, limiter.inFlight(), "Every permit should have been returned once");
+
+        AdaptiveLimiter single = new AdaptiveLimiter("single", 1, 1, 1);
+        AdaptiveLimiter.Permit only = single.tryAcquire();
+        assertNull(single.tryAcquire(), "No permit should be available beyond the limit");
+        only.ignore();
+        assertNotNull(single.tryAcquire(), "An ignored permit should be returned");
+    }
+
+    private static void sample(AdaptiveLimiter limiter, long latencyNanos, int inFlight) {
+        assertNotNull(limiter.tryAcquire(), "A permit should be available");
+        limiter.onSample(System.nanoTime(), latencyNanos, inFlight, false);
+    }
+}
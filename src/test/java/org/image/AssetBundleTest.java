@@ -0,0 +1,96 @@
+package org.image;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the AssetBundle class.
+ */
+public class AssetBundleTest {
+
+    @TempDir
+    Path directory;
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Tests that packed images are served in list order with their decoded bytes, as read-only buffers.
+     */
+    @Test
+    public void testPackOpen_roundTrip() throws IOException {
+        byte[] first = "first image".getBytes(StandardCharsets.UTF_8);
+        byte[] second = new byte[70_000];
+        Arrays.fill(second, (byte) 0xD8);
+        Files.writeString(directory.resolve("img.properties"), "b.img\na.img\n");
+        Files.writeString(directory.resolve("b.img"), Base64.getEncoder().encodeToString(first));
+        Files.writeString(directory.resolve("a.img"), Base64.getMimeEncoder().encodeToString(second));
+        Path file = directory.resolve("out").resolve("assets.bin");
+
+        AssetBundle.pack(directory, file);
+        AssetBundle bundle = AssetBundle.open(file);
+
+        assertEquals(List.of("/img/b.img", "/img/a.img"), bundle.paths(), "Paths should keep the list order");
+        assertArrayEquals(first, bytes(bundle.get("/img/b.img")), "Bytes should be decoded from Base64");
+        assertArrayEquals(second, bytes(bundle.get("/img/a.img")), "Line-wrapped Base64 should be decoded");
+        assertTrue(bundle.get("/img/a.img").isReadOnly(), "Buffers should be read-only");
+        assertNull(bundle.get("/img/c.img"), "Unknown path should be missing");
+        try (InputStream in = AssetBundle.newInputStream(bundle.get("/img/a.img"))) {
+            assertArrayEquals(second, in.readAllBytes(), "The stream should return all bytes");
+        }
+        assertEquals(first.length + second.length + 4 + 4 + 2 * (2 + 10 + 4 + 4), Files.size(file),
+                "The bundle should hold the index and the raw bytes only");
+    }
+
+    /**
+     * Tests that a truncated bundle is rejected.
+     */
+    @Test
+    public void testWrap_truncatedBundle() throws IOException {
+        Files.writeString(directory.resolve("img.properties"), "a.img\n");
+        Files.writeString(directory.resolve("a.img"), Base64.getEncoder().encodeToString(new byte[100]));
+        Path file = directory.resolve("assets.bin");
+        AssetBundle.pack(directory, file);
+        byte[] bundle = Files.readAllBytes(file);
+
+        assertThrows(IOException.class, () -> AssetBundle.wrap(ByteBuffer.wrap(bundle, 0, 12)),
+                "Truncated index should be rejected");
+        assertThrows(IOException.class, () -> AssetBundle.wrap(ByteBuffer.wrap(bundle, 0, bundle.length - 1)),
+                "Truncated image should be rejected");
+        assertThrows(IOException.class, () -> AssetBundle.wrap(ByteBuffer.wrap(new byte[8])),
+                "Missing magic should be rejected");
+    }
+
+    /**
+     * Tests that the build packed every image of img.properties, with the bytes of its Base64 source.
+     */
+    @Test
+    public void testClasspathBundle_matchesSources() throws IOException {
+        AssetBundle bundle = AssetBundle.classpath();
+        assertNotNull(bundle, "The build should have packed " + AssetBundle.RESOURCE);
+        assertEquals(List.of("/img/1.img", "/img/2.img", "/img/3.img", "/img/4.img"), bundle.paths(),
+                "All images of img.properties should be packed");
+        for (String path : bundle.paths()) {
+            byte[] source;
+            try (InputStream in = Base64.getMimeDecoder().wrap(AssetBundle.class.getResourceAsStream(path))) {
+                source = in.readAllBytes();
+            }
+            assertArrayEquals(source, bytes(bundle.get(path)), path + " should match its source");
+        }
+    }
+}
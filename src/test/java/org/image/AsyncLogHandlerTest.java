@@ -0,0 +1,212 @@
+package org.image;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the AsyncLogHandler class.
+ */
+public class AsyncLogHandlerTest {
+
+    private static final int THREADS = 4;
+    private static final int RECORDS_PER_SECOND = 100_000;
+    private static final int SECONDS = 2;
+    /** Records each thread publishes at once, every {@link #SLICE_MILLIS}. */
+    private static final int SLICE_MILLIS = 10;
+    /** Time the default buffer covers at {@link #RECORDS_PER_SECOND}. */
+    private static final int BUFFERED_MILLIS = AsyncLogHandler.DEFAULT_CAPACITY * 1000 / RECORDS_PER_SECOND;
+
+    /** Formats a record as its message on one line. */
+    private static final Formatter MESSAGE = new Formatter() {
+        @Override
+        public String format(LogRecord record) {
+            return record.getMessage() + "\n";
+        }
+    };
+
+    /**
+     * Tests that 100k records per second from several threads, through a handler with the default capacity, are shown
+     * in far fewer document edits than records, all on the EDT, and that the document stays within its line limit.
+     * The formatter is a trivial one: the default {@link SimpleFormatter} alone takes several microseconds per record,
+     * more than a single core has at this rate.
+     * <p>
+     * Every record is either shown or counted as dropped. The buffer covers {@value #BUFFERED_MILLIS} ms of records at
+     * this rate, so the measured run may drop at most a tenth of its records: only a stall of the EDT of most of a
+     * second can lose that many.
+     */
+    @Test
+    public void testPublish_100kRecordsPerSecond() throws Exception {
+        int total = RECORDS_PER_SECOND * SECONDS;
+        JTextArea area = new JTextArea();
+        AsyncLogHandler handler = new AsyncLogHandler(area);
+        handler.setFormatter(MESSAGE);
+        AtomicInteger edits = new AtomicInteger();
+        AtomicInteger offEdtEdits = new AtomicInteger();
+        area.getDocument().addDocumentListener(new CountingListener(edits, offEdtEdits));
+
+        // The first run warms up the JIT and Swing
+        publishPaced(handler, 0);
+        awaitAccounted(handler, total);
+        edits.set(0);
+        long droppedBefore = handler.getDroppedCount();
+        publishPaced(handler, 1);
+        awaitAccounted(handler, 2L * total);
+        long dropped = handler.getDroppedCount() - droppedBefore;
+
+        assertEquals(2L * total, handler.getDeliveredCount() + handler.getDroppedCount(),
+                "Every record should be shown or counted as dropped within 10 seconds");
+        assertTrue(dropped <= total / 10, "The default buffer should hold the run but for long stalls, dropped "
+                + dropped + " of " + total);
+        assertEquals(0, offEdtEdits.get(), "The document should only be edited on the EDT");
+        assertTrue(edits.get() < total / 100, "Records should be appended in batches, got " + edits.get() + " edits");
+        SwingUtilities.invokeAndWait(() -> {
+            int lines = area.getDocument().getDefaultRootElement().getElementCount() - 1;
+            assertTrue(lines <= AsyncLogHandler.DEFAULT_MAX_LINES, "The document should be capped, has " + lines);
+        });
+    }
+
+    /**
+     * Tests that records are dropped and counted without blocking while the EDT is busy, and that the loss is reported
+     * in the document once the EDT catches up.
+     */
+    @Test
+    public void testPublish_overloadDropsAndCounts() throws Exception {
+        JTextArea area = new JTextArea();
+        AsyncLogHandler handler = new AsyncLogHandler(area, 100, 1_000);
+        handler.setFormatter(MESSAGE);
+        long droppedBefore = Metrics.LOG_RECORDS_DROPPED.get();
+        CountDownLatch release = new CountDownLatch(1);
+        SwingUtilities.invokeLater(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            for (int i = 0; i < 1_000; i++) {
+                handler.publish(new LogRecord(Level.INFO, "record " + i));
+            }
+            assertEquals(900, handler.getDroppedCount(), "Records beyond the capacity should be dropped");
+            assertEquals(900, Metrics.LOG_RECORDS_DROPPED.get() - droppedBefore, "Drops should be exported");
+        } finally {
+            release.countDown();
+        }
+        handler.flush();
+        SwingUtilities.invokeAndWait(() -> {
+            String text = area.getText();
+            assertTrue(text.startsWith("record 0\n"), "The first records should be shown");
+            assertTrue(text.endsWith("record 99\n" + String.format(AsyncLogHandler.DROPPED_NOTICE, 900)),
+                    "The loss should be reported after the last shown record: " + text.substring(text.length() - 60));
+            assertEquals(100, handler.getDeliveredCount(), "The buffered records should be delivered");
+        });
+    }
+
+    /**
+     * Tests that the document is cut to half its line limit once it exceeds it, also across batches, and that records
+     * published after closing are ignored.
+     */
+    @Test
+    public void testDrain_trimsOldestLines() throws Exception {
+        JTextArea area = new JTextArea();
+        AsyncLogHandler handler = new AsyncLogHandler(area, 100, 5);
+        handler.setFormatter(MESSAGE);
+        SwingUtilities.invokeAndWait(() -> {
+            for (int i = 0; i < 3; i++) {
+                handler.publish(new LogRecord(Level.INFO, "a" + i));
+            }
+            assertEquals(3, handler.drain(), "All queued records should be drained");
+            for (int i = 0; i < 12; i++) {
+                handler.publish(new LogRecord(Level.INFO, "b" + i));
+            }
+            assertEquals(12, handler.drain(), "All queued records should be drained");
+            assertEquals("b10\nb11\n", area.getText(), "Past 5 lines, the document should be cut to the last 2");
+            assertEquals(area.getDocument().getLength(), area.getCaretPosition(), "The caret should be at the end");
+
+            handler.close();
+            handler.publish(new LogRecord(Level.INFO, "c"));
+            assertEquals(0, handler.drain(), "Records after close should be ignored");
+        });
+    }
+
+    /**
+     * Publishes {@link #RECORDS_PER_SECOND} records per second for {@link #SECONDS} seconds from {@link #THREADS}
+     * threads.
+     */
+    private static void publishPaced(AsyncLogHandler handler, int run) throws Exception {
+        int perThread = RECORDS_PER_SECOND / THREADS * SECONDS;
+        int perSlice = RECORDS_PER_SECOND / THREADS * SLICE_MILLIS / 1000;
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < perThread; i += perSlice) {
+                        for (int k = i; k < i + perSlice; k++) {
+                            handler.publish(new LogRecord(Level.INFO, "record " + run + ":" + thread + ":" + k));
+                        }
+                        // Paced to the target rate
+                        long due = start + TimeUnit.MILLISECONDS.toNanos((long) (i / perSlice + 1) * SLICE_MILLIS);
+                        long wait = due - System.nanoTime();
+                        if (wait > 0) {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Waits until the given number of records has been shown or dropped, or 10 seconds have passed. */
+    private static void awaitAccounted(AsyncLogHandler handler, long total) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (handler.getDeliveredCount() + handler.getDroppedCount() < total
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(MagnetLinkListModel.FRAME_MILLIS);
+        }
+        SwingUtilities.invokeAndWait(() -> { });
+    }
+
+    private record CountingListener(AtomicInteger edits, AtomicInteger offEdtEdits) implements DocumentListener {
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            edits.incrementAndGet();
+            if (!SwingUtilities.isEventDispatchThread()) {
+                offEdtEdits.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.image;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the HeadlessApp class.
+ */
+public class HeadlessAppTest {
+
+    private HttpServer server;
+
+    @BeforeEach
+    public void setUp() {
+        LinkParser.setMagnetLinkOpener(link -> { });
+        LinkParser.resetNumberOfFoundLinks();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        LinkParser.setMagnetLinkOpener(null);
+        LinkParser.resetNumberOfFoundLinks();
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Tests that every new link becomes one NDJSON record, followed by a page record, that duplicates are skipped,
+     * and that a page that cannot be read gives an error record and exit status 1.
+     */
+    @Test
+    public void testRun_writesNdjsonRecords() throws IOException {
+        byte[] body = ("<html><body><a href=\"magnet:?xt=urn:btih:c12fe1c06bba254a9dc9f519b335aa7c1367a88a&dn=A%20%22b\">"
+                + "A</a><a href=\"magnet:?xt=urn:btih:C12FE1C06BBA254A9DC9F519B335AA7C1367A88A\">dup</a></body></html>")
+                .getBytes(StandardCharsets.UTF_8);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            int status = exchange.getRequestURI().getPath().equals("/") ? 200 : 404;
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+
+        StringWriter output = new StringWriter();
+        int status = HeadlessApp.run(List.of(url, url + "missing"), new PrintWriter(output));
+
+        String[] lines = output.toString().split("\\R");
+        assertEquals(3, lines.length, "One link, one page and one error record expected: " + output);
+        assertEquals("{\"type\":\"link\",\"number\":1,\"link\":\"magnet:?xt=urn:btih:c12fe1c06bba254a9dc9f519b335aa7c1367a88a"
+                + "&dn=A%20%22b\",\"infoHash\":\"c12fe1c06bba254a9dc9f519b335aa7c1367a88a\",\"name\":\"A \\\"b\","
+                + "\"source\":\"" + url + "\",\"seenBefore\":false}", lines[0], "Link record expected");
+        assertTrue(lines[1].startsWith("{\"type\":\"page\",\"url\":\"" + url + "\",\"links\":2,\"millis\":"),
+                "Page record should count both links on the page: " + lines[1]);
+        assertTrue(lines[2].startsWith("{\"type\":\"error\",\"url\":\"" + url + "missing\",\"message\":\"HTTP error"),
+                "Error record expected: " + lines[2]);
+        assertEquals(1, status, "A failed page should give exit status 1");
+    }
+
+    /**
+     * Tests that running without URLs fails with exit status 2.
+     */
+    @Test
+    public void testRun_withoutUrls() {
+        StringWriter output = new StringWriter();
+        assertEquals(2, HeadlessApp.run(List.of(), new PrintWriter(output)), "Exit status 2 expected");
+        assertEquals("", output.toString(), "Nothing should be written");
+    }
+
+    /**
+     * Tests that a headless run, in a JVM of its own, extracts the links without loading a single AWT or Swing class.
+     * The child's state directories and home point at a temporary directory so the user's own files are not touched.
+     */
+    @Test
+    public void testMain_loadsNoAwtOrSwingClasses(@TempDir Path state) throws Exception {
+        byte[] body = ("<html><body><a href=\"magnet:?xt=urn:btih:c12fe1c06bba254a9dc9f519b335aa7c1367a88a\">A</a>"
+                + "</body></html>").getBytes(StandardCharsets.UTF_8);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        Path classLog = state.resolve("classes.log");
+        Path output = state.resolve("output.ndjson");
+
+        ProcessBuilder builder = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Xlog:class+load=info:file=" + classLog, "-Duser.home=" + state,
+                "-Dmagnetgrab.store.dir=" + state.resolve("store"), "-Dmagnetgrab.cache.dir=" + state.resolve("cache"),
+                "-Dmagnetgrab.events.dir=" + state.resolve("events"),
+                "-Dmagnetgrab.thumbnails.dir=" + state.resolve("thumbnails"),
+                "-Dmagnetgrab.filter.file=" + state.resolve("filter.rules"),
+                "-cp", System.getProperty("java.class.path"), HeadlessApp.class.getName(), url);
+        builder.redirectOutput(output.toFile());
+        builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+        Process process = builder.start();
+        if (!process.waitFor(60, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            fail("HeadlessApp did not exit within 60 seconds");
+        }
+
+        assertEquals(0, process.exitValue(), "Exit status 0 expected");
+        assertTrue(Files.readString(output).contains("\"infoHash\":\"c12fe1c06bba254a9dc9f519b335aa7c1367a88a\""),
+                "The link should have been extracted: " + Files.readString(output));
+        List<String> loaded = Files.readAllLines(classLog);
+        assertTrue(loaded.stream().anyMatch(line -> line.contains(" org.image.HeadlessApp ")),
+                "The class log should list the loaded classes");
+        List<String> desktop = loaded.stream()
+                .filter(line -> line.contains(" java.awt.") || line.contains(" javax.swing."))
+                .toList();
+        assertEquals(List.of(), desktop, "No AWT or Swing class should be loaded");
+    }
+}
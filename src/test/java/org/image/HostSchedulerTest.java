@@ -0,0 +1,271 @@
+package org.image;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the HostScheduler class, through a PageFetcher, against a local server that records when each request
+ * arrives and how many requests of its host are in flight. The server is reached as {@code 127.0.0.1} and as
+ * {@code localhost}, which the scheduler treats as two hosts.
+ */
+public class HostSchedulerTest {
+
+    private static final String BODY = "<html><body>page</body></html>";
+    private static final long RESPONSE_DELAY_MILLIS = 50;
+
+    private HttpServer server;
+    private int port;
+    private PageFetcher fetcher;
+    private final Map<String, List<Long>> arrivals = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> maxInFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger throttledResponses = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws IOException, NoSuchAlgorithmException {
+        server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            String host = exchange.getRequestHeaders().getFirst("Host").replaceFirst(":\\d+$", "");
+            arrivals.computeIfAbsent(host, key -> new CopyOnWriteArrayList<>()).add(System.nanoTime());
+            AtomicInteger current = inFlight.computeIfAbsent(host, key -> new AtomicInteger());
+            maxInFlight.computeIfAbsent(host, key -> new AtomicInteger())
+                    .accumulateAndGet(current.incrementAndGet(), Math::max);
+            try {
+                if (exchange.getRequestURI().getPath().equals("/limited") && throttledResponses.getAndIncrement() == 0) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    current.decrementAndGet();
+                    exchange.sendResponseHeaders(429, -1);
+                    exchange.close();
+                    return;
+                }
+                Thread.sleep(RESPONSE_DELAY_MILLIS);
+                // Counted out before the response, which the client must read before its permit is freed
+                current.decrementAndGet();
+                byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException e) {
+                current.decrementAndGet();
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+        port = server.getAddress().getPort();
+        fetcher = new PageFetcher(SSLContext.getDefault());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private String read(PageFetcher.Page page) throws IOException {
+        try (InputStream body = page.body()) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Scheduler that records when it grants each permit, per host. The grant times come from the scheduler itself,
+     * so connection set-up and response times do not shift them.
+     */
+    private static final class RecordingScheduler extends HostScheduler {
+        final Map<String, List<Long>> grants = new ConcurrentHashMap<>();
+
+        RecordingScheduler(double requestsPerSecond, int burst, int maxInFlight) {
+            super(requestsPerSecond, burst, maxInFlight);
+        }
+
+        @Override
+        public Permit acquire(URI uri) throws InterruptedException {
+            Permit permit = super.acquire(uri);
+            grants.computeIfAbsent(uri.getHost(), key -> new CopyOnWriteArrayList<>()).add(System.nanoTime());
+            return permit;
+        }
+    }
+
+    /**
+     * Tests that concurrent fetches to two hosts keep each host within its rate, burst and in-flight budget, while
+     * the two hosts are served side by side rather than one after the other.
+     */
+    @Test
+    public void testFetch_keepsEachHostWithinItsBudget() throws Exception {
+        int requestsPerHost = 12;
+        double rate = 20;
+        int burst = 2;
+        // Connections and classes are set up before the measured run
+        for (String host : new String[]{"127.0.0.1", "localhost"}) {
+            read(fetcher.fetch("http://" + host + ":" + port + "/warm-up"));
+        }
+        arrivals.clear();
+        // Every bucket is created full after this point, so grant k comes (k - burst + 1) token periods after it, and
+        // the server, which sees each request only after its grant, can see at most burst + rate * t requests of a
+        // host within t of it
+        long created = System.nanoTime();
+        RecordingScheduler scheduler = new RecordingScheduler(rate, burst, 2);
+        fetcher.setHostScheduler(scheduler);
+
+        ExecutorService clients = Executors.newCachedThreadPool();
+        List<Future<String>> pages = new ArrayList<>();
+        try {
+            for (int i = 0; i < requestsPerHost; i++) {
+                for (String host : new String[]{"127.0.0.1", "localhost"}) {
+                    String url = "http://" + host + ":" + port + "/page/" + i;
+                    pages.add(clients.submit(() -> read(fetcher.fetch(url))));
+                }
+            }
+            for (Future<String> page : pages) {
+                assertEquals(BODY, page.get(30, TimeUnit.SECONDS), "Every page should be fetched");
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+        long minimumNanos = (long) ((requestsPerHost - burst) * 1e9 / rate);
+        long lastGrant = created;
+        for (String host : new String[]{"127.0.0.1", "localhost"}) {
+            List<Long> times = scheduler.grants.get(host).stream().sorted().toList();
+            List<Long> arrived = arrivals.get(host).stream().sorted().toList();
+            assertEquals(requestsPerHost, times.size(), "Every request to " + host + " should be granted");
+            assertEquals(requestsPerHost, arrived.size(), "Every request to " + host + " should reach the server");
+            assertTrue(maxInFlight.get(host).get() <= 2, "No more than 2 requests should be in flight to " + host);
+            for (int k = burst; k < requestsPerHost; k++) {
+                // Less than a microsecond of slack for the floating-point token arithmetic; the network only adds
+                // delay, so the server's clock needs none on top of it
+                long earliest = (long) ((k - burst + 1) * 1e9 / rate) - 1_000;
+                long granted = times.get(k) - created;
+                long seen = arrived.get(k) - created;
+                assertTrue(granted >= earliest, "Permit " + k + " for " + host + " was granted "
+                        + granted / 1_000_000 + " ms after the start, the rate allows it after "
+                        + earliest / 1_000_000 + " ms");
+                assertTrue(seen >= earliest, "The server saw request " + k + " for " + host + " "
+                        + seen / 1_000_000 + " ms after the start, more than " + burst + " + " + rate
+                        + "/s allow before " + earliest / 1_000_000 + " ms");
+            }
+            lastGrant = Math.max(lastGrant, times.get(times.size() - 1));
+        }
+        long spanNanos = lastGrant - created;
+        assertTrue(spanNanos < 2 * minimumNanos, "Both hosts should be served side by side: "
+                + spanNanos / 1_000_000 + " ms for two hosts that need " + minimumNanos / 1_000_000 + " ms each");
+    }
+
+    /**
+     * Tests that a 429 response with Retry-After pauses the host and that the request is sent again after the pause.
+     */
+    @Test
+    public void testFetch_waitsOutRetryAfter() throws Exception {
+        fetcher.setHostScheduler(new HostScheduler(100, 10, 4));
+        long throttledBefore = Metrics.HOST_THROTTLED.get();
+
+        PageFetcher.Page page = fetcher.fetch("http://127.0.0.1:" + port + "/limited");
+
+        assertEquals(200, page.status(), "The retried request should succeed");
+        assertEquals(BODY, read(page), "The retried request should return the page");
+        List<Long> times = arrivals.get("127.0.0.1");
+        assertEquals(2, times.size(), "The request should be sent twice");
+        long gapMillis = TimeUnit.NANOSECONDS.toMillis(times.get(1) - times.get(0));
+        assertTrue(gapMillis >= 950, "The retry should wait for the Retry-After second, waited " + gapMillis + " ms");
+        assertEquals(throttledBefore + 1, Metrics.HOST_THROTTLED.get(), "The throttled response should be counted");
+    }
+
+    /**
+     * Tests that a request waiting for a paused host can be interrupted, and that the in-flight budget is returned
+     * when a body is read to its end or closed.
+     */
+    @Test
+    public void testAcquire_interruptibleAndReleasedByBody() throws Exception {
+        HostScheduler scheduler = new HostScheduler(1000, 10, 1);
+        URI paused = URI.create("http://paused.example/");
+        scheduler.pause(paused, Duration.ofSeconds(10));
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread waiter = new Thread(() -> {
+            started.countDown();
+            try {
+                scheduler.acquire(paused).close();
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+        waiter.start();
+        started.await();
+        Thread.sleep(50);
+        waiter.interrupt();
+        waiter.join(1000);
+        assertTrue(interrupted.get(), "Waiting for a paused host should end with an interrupt");
+
+        URI host = URI.create("http://busy.example/");
+        HostScheduler.Permit permit = scheduler.acquire(host);
+        InputStream body = permit.releaseOnClose(new ByteArrayInputStream(new byte[]{1}));
+        ExecutorService second = Executors.newSingleThreadExecutor();
+        try {
+            Future<HostScheduler.Permit> next = second.submit(() -> scheduler.acquire(host));
+            Thread.sleep(50);
+            assertFalse(next.isDone(), "A second request should wait while the only slot is in flight");
+            body.readAllBytes();
+            next.get(1, TimeUnit.SECONDS).close();
+
+            body.close();
+            HostScheduler.Permit again = scheduler.acquire(host);
+            Future<HostScheduler.Permit> blocked = second.submit(() -> scheduler.acquire(host));
+            Thread.sleep(50);
+            assertFalse(blocked.isDone(), "Closing a body read to its end should not free another slot");
+            again.close();
+            blocked.get(1, TimeUnit.SECONDS).close();
+        } finally {
+            second.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests parsing of Retry-After values in seconds and as HTTP dates.
+     */
+    @Test
+    public void testParseRetryAfter() {
+        long now = ZonedDateTime.of(2024, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC).toInstant().toEpochMilli();
+        String inTwoMinutes = DateTimeFormatter.RFC_1123_DATE_TIME
+                .format(ZonedDateTime.of(2024, 1, 1, 12, 2, 0, 0, ZoneOffset.UTC));
+
+        assertEquals(Duration.ofSeconds(120), HostScheduler.parseRetryAfter(" 120 ", now), "Seconds");
+        assertEquals(Duration.ofMinutes(2), HostScheduler.parseRetryAfter(inTwoMinutes, now), "HTTP date");
+        assertEquals(Duration.ZERO, HostScheduler.parseRetryAfter("Mon, 1 Jan 2024 11:00:00 GMT", now),
+                "A date in the past means no wait");
+        assertEquals(HostScheduler.MAX_PAUSE, HostScheduler.parseRetryAfter("99999999999999999999", now),
+                "Huge values should be capped");
+        assertNull(HostScheduler.parseRetryAfter("soon", now), "Invalid values should be rejected");
+        assertNull(HostScheduler.parseRetryAfter("-5", now), "Negative values should be rejected");
+    }
+}
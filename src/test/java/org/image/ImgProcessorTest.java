@@ -1,8 +1,30 @@
 package org.image;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 public class ImgProcessorTest {
 
@@ -45,4 +67,297 @@ public class ImgProcessorTest {
         assertEquals(512, scaled.getWidth(), "Ширина должна быть 512");
         assertEquals(384, scaled.getHeight(), "Высота должна быть 384");
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that a TYPE_CUSTOM source, which cannot be used as the type of a new image, is scaled into an int RGB
+     * image with its colors intact.
+     */
+    @Test
+    public void testScaleImageForPreview_customType() {
+        ColorModel model = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false,
+                Transparency.OPAQUE, DataBuffer.TYPE_USHORT);
+        BufferedImage custom = new BufferedImage(model, model.createCompatibleWritableRaster(2000, 1000), false, null);
+        assertEquals(BufferedImage.TYPE_CUSTOM, custom.getType(), "Тип исходного изображения должен быть TYPE_CUSTOM");
+        for (int y = 0; y < custom.getHeight(); y++) {
+            for (int x = 0; x < custom.getWidth(); x++) {
+                custom.setRGB(x, y, 0x3366CC);
+            }
+        }
+        BufferedImage scaled = ImgProcessor.scaleImageForPreview(custom);
+        assertEquals(512, scaled.getWidth(), "Ширина должна быть 512");
+        assertEquals(256, scaled.getHeight(), "Высота должна быть 256");
+        assertEquals(BufferedImage.TYPE_INT_RGB, scaled.getType(), "Результат должен быть TYPE_INT_RGB");
+        assertEquals(0xFF3366CC, scaled.getRGB(100, 100), "Цвет должен сохраниться");
+    }
+
+    /**
+     * Tests that a one-pixel checkerboard scales to an even gray instead of aliasing into stripes or moiré.
+     */
+    @Test
+    public void testScaleImageForPreview_doesNotAlias() {
+        BufferedImage checkerboard = new BufferedImage(3000, 2000, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < checkerboard.getHeight(); y++) {
+            for (int x = 0; x < checkerboard.getWidth(); x++) {
+                checkerboard.setRGB(x, y, ((x + y) & 1) == 0 ? 0xFFFFFF : 0);
+            }
+        }
+        BufferedImage scaled = ImgProcessor.scaleImageForPreview(checkerboard);
+        assertEquals(512, scaled.getWidth(), "Ширина должна быть 512");
+        assertEquals(341, scaled.getHeight(), "Высота должна быть 341");
+        for (int y = 0; y < scaled.getHeight(); y++) {
+            for (int x = 0; x < scaled.getWidth(); x++) {
+                int gray = scaled.getRGB(x, y) & 0xFF;
+                assertTrue(Math.abs(gray - 128) <= 2, "Пиксель (" + x + ", " + y + ") должен быть серым: " + gray);
+            }
+        }
+    }
+
+    /**
+     * Tests that the color of transparent pixels does not bleed into the opaque pixels they are averaged with.
+     */
+    @Test
+    public void testScaleImageForPreview_transparentPixelsDoNotBleed() {
+        BufferedImage image = new BufferedImage(1024, 1024, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, (x & 1) == 0 ? 0xFFFF0000 : 0x0000FF00);
+            }
+        }
+        BufferedImage scaled = ImgProcessor.scaleImageForPreview(image);
+        assertEquals(BufferedImage.TYPE_INT_ARGB_PRE, scaled.getType(), "Результат должен быть TYPE_INT_ARGB_PRE");
+        int argb = scaled.getRGB(200, 300);
+        assertEquals(128, argb >>> 24, 1, "Пиксель должен быть наполовину прозрачным");
+        assertEquals(0xFF0000, argb & 0xFFFFFF, "Зелёный цвет прозрачных пикселей не должен проступать");
+    }
+
+    /**
+     * Tests that small images in byte formats are converted, but not resized.
+     */
+    @Test
+    public void testScaleImageForPreview_smallImageIsConverted() {
+        for (int type : new int[]{BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR}) {
+            BufferedImage image = new BufferedImage(300, 200, type);
+            image.setRGB(17, 23, 0xFF123456);
+            BufferedImage scaled = ImgProcessor.scaleImageForPreview(image);
+            assertNotEquals(type, scaled.getType(), "Результат должен быть в формате int RGB");
+            assertEquals(300, scaled.getWidth(), "Ширина должна остаться 300");
+            assertEquals(200, scaled.getHeight(), "Высота должна остаться 200");
+            assertEquals(0xFF123456, scaled.getRGB(17, 23), "Пиксели должны совпадать");
+            assertSame(scaled, ImgProcessor.scaleImageForPreview(scaled), "Изображение в формате int RGB не меняется");
+        }
+    }
+
+    @Test
+    public void testDecodeBase64StreamToImage_matchesString() throws IOException {
+        for (int i = 1; i <= 4; i++) {
+            String path = "/img/" + i + ".img";
+            BufferedImage expected = ImgProcessor.decodeBase64ToImage(ImgProvider.readResourceFileToString(path));
+            BufferedImage actual = ImgProvider.readResourceImage(path);
+            assertNotNull(actual, "Изображение " + path + " должно быть декодировано");
+            assertEquals(expected.getWidth(), actual.getWidth(), "Ширина " + path + " должна совпадать");
+            assertEquals(expected.getHeight(), actual.getHeight(), "Высота " + path + " должна совпадать");
+            assertArrayEquals(pixels(expected), pixels(actual), "Пиксели " + path + " должны совпадать");
+        }
+        String lineWrapped = Base64.getMimeEncoder().encodeToString(Base64.getDecoder().decode(
+                "iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mNk+P+/HgAFhAJ/wlseKgAAAABJRU5ErkJggg=="));
+        BufferedImage pixel = ImgProcessor.decodeBase64StreamToImage(
+                new ByteArrayInputStream(lineWrapped.getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(1, pixel.getWidth(), "Переносы строк должны игнорироваться");
+    }
+
+    /**
+     * Decodes a multi-megabyte image from a file and checks that the thread allocates little more than the decoded
+     * raster itself: no String of the Base64 text, no byte array of the image file and no full cache of the stream.
+     * The image is an uncompressed BMP, whose reader allocates nothing but the raster, so that everything above it is
+     * due to the decode pipeline; PNG and JPEG readers add working buffers of their own.
+     */
+    @Test
+    public void testDecodeBase64StreamToImage_allocatesLittleMoreThanTheRaster(@TempDir Path directory)
+            throws IOException {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+                "Измерение аллокаций не поддерживается");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled(),
+                "Измерение аллокаций не поддерживается");
+
+        // 1600x1200 at 24 bits per pixel: 5.8 MB, 7.7 MB as Base64
+        BufferedImage noise = new BufferedImage(1600, 1200, BufferedImage.TYPE_3BYTE_BGR);
+        Random random = new Random(42);
+        for (int y = 0; y < noise.getHeight(); y++) {
+            for (int x = 0; x < noise.getWidth(); x++) {
+                noise.setRGB(x, y, random.nextInt());
+            }
+        }
+        Path file = directory.resolve("noise.img");
+        try (OutputStream out = Base64.getEncoder().wrap(Files.newOutputStream(file))) {
+            ImageIO.write(noise, "bmp", out);
+        }
+        long base64Size = Files.size(file);
+        assertTrue(base64Size > 7_000_000, "Тестовое изображение должно быть больше 7 МБ");
+        // Warm up the image readers, so that only the decode itself is measured
+        ImgProcessor.decodeBase64StreamToImage(Files.newInputStream(file));
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        BufferedImage decoded;
+        try (InputStream in = Files.newInputStream(file)) {
+            decoded = ImgProcessor.decodeBase64StreamToImage(in);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        long raster = 1600L * 1200 * 3;
+        assertTrue(allocated < raster + 1_500_000, "Декодирование выделило " + allocated
+                + " байт; ожидалось не больше растра (" + raster + ") плюс 1,5 МБ, Base64: " + base64Size);
+        assertEquals(noise.getRGB(1234, 567), decoded.getRGB(1234, 567), "Пиксели должны совпадать");
+    }
+
+    /**
+     * Decodes a 12 MP JPEG for the preview and checks that it comes out at preview size and that the thread allocates
+     * far less than the full-resolution raster, which is never created.
+     */
+    @Test
+    public void testDecodeBase64StreamToPreview_doesNotDecodeFullResolution(@TempDir Path directory)
+            throws IOException {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+                "Измерение аллокаций не поддерживается");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled(),
+                "Измерение аллокаций не поддерживается");
+
+        Path file = directory.resolve("large.img");
+        try (OutputStream out = Base64.getEncoder().wrap(Files.newOutputStream(file))) {
+            ImageIO.write(zonePlate(4000, 3000, BufferedImage.TYPE_3BYTE_BGR), "jpg", out);
+        }
+        // Warm up the image readers, so that only the decode itself is measured
+        ImgProcessor.decodeBase64StreamToPreview(Files.newInputStream(file));
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        BufferedImage preview;
+        try (InputStream in = Files.newInputStream(file)) {
+            preview = ImgProcessor.decodeBase64StreamToPreview(in);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(512, preview.getWidth(), "Ширина должна быть 512");
+        assertEquals(384, preview.getHeight(), "Высота должна быть 384");
+        long raster = 4000L * 3000 * 3;
+        assertTrue(allocated < raster / 2, "Декодирование выделило " + allocated
+                + " байт; полный растр занял бы " + raster);
+    }
+
+    @Test
+    public void testPreviewSubsampling() {
+        assertEquals(1, ImgProcessor.previewSubsampling(1024, 1024), "Изображение 1024x1024 не прореживается");
+        assertEquals(1, ImgProcessor.previewSubsampling(2047, 100), "Шаг 2 оставил бы меньше 1024 пикселей");
+        assertEquals(2, ImgProcessor.previewSubsampling(100, 2048), "Шаг считается по длинной стороне");
+        assertEquals(7, ImgProcessor.previewSubsampling(7728, 5152), "Шаг для 40 МП должен быть 7");
+    }
+
+    /**
+     * Tests the colors each effect gives for a few known pixels.
+     */
+    @Test
+    public void testApplyEffect_knownColors() {
+        BufferedImage image = new BufferedImage(4, 1, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, 0xFF0000);
+        image.setRGB(1, 0, 0x808080);
+        image.setRGB(2, 0, 0x7F7F7F);
+        image.setRGB(3, 0, 0xFFFFFF);
+        int[] gray = pixels(ImgProcessor.applyEffect(image, Effect.GRAYSCALE));
+        assertArrayEquals(new int[]{0xFF4D4D4D, 0xFF808080, 0xFF7F7F7F, 0xFFFFFFFF}, gray,
+                "Яркость должна считаться по Rec. 601");
+        int[] threshold = pixels(ImgProcessor.applyEffect(image, Effect.THRESHOLD));
+        assertArrayEquals(new int[]{0xFF000000, 0xFFFFFFFF, 0xFF000000, 0xFFFFFFFF}, threshold,
+                "Порог должен проходить посередине");
+        int[] sepia = pixels(ImgProcessor.applyEffect(image, Effect.SEPIA));
+        assertEquals(0xFFFFFFEF, sepia[3], "Белый в сепии должен стать тёплым");
+        assertEquals(0xFF645945, sepia[0], "Красный в сепии должен стать коричневым");
+    }
+
+    /**
+     * Tests that dithering keeps the shade of a flat area as the share of white pixels.
+     */
+    @Test
+    public void testApplyEffect_ditherKeepsShade() {
+        for (int shade : new int[]{0, 64, 128, 192, 255}) {
+            BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            g.setColor(new Color(shade, shade, shade));
+            g.fillRect(0, 0, 64, 64);
+            g.dispose();
+            int white = 0;
+            for (int pixel : pixels(ImgProcessor.applyEffect(image, Effect.DITHER))) {
+                assertTrue(pixel == 0xFF000000 || pixel == 0xFFFFFFFF, "Пиксели должны быть чёрными или белыми");
+                white += pixel & 1;
+            }
+            assertEquals(shade / 255.0, white / 4096.0, 1 / 64.0, "Доля белых пикселей должна отражать оттенок " + shade);
+        }
+    }
+
+    /**
+     * Tests that all effects at once give the same images as one at a time, whatever the source format, on an image
+     * large enough to be split into several tiles.
+     */
+    @Test
+    public void testApplyEffects_matchesSingleEffects() {
+        Random random = new Random(17);
+        BufferedImage rgb = new BufferedImage(1500, 700, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < rgb.getHeight(); y++) {
+            for (int x = 0; x < rgb.getWidth(); x++) {
+                rgb.setRGB(x, y, random.nextInt());
+            }
+        }
+        Map<Effect, BufferedImage> expected = new EnumMap<>(Effect.class);
+        for (Effect effect : Effect.values()) {
+            expected.put(effect, ImgProcessor.applyEffect(rgb, effect));
+        }
+        for (int type : new int[]{BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_4BYTE_ABGR}) {
+            BufferedImage source = new BufferedImage(rgb.getWidth(), rgb.getHeight(), type);
+            source.getGraphics().drawImage(rgb, 0, 0, null);
+            Map<Effect, BufferedImage> effects = ImgProcessor.applyEffects(source);
+            assertEquals(expected.keySet(), effects.keySet(), "Должны быть все эффекты");
+            for (Effect effect : Effect.values()) {
+                BufferedImage image = effects.get(effect);
+                assertEquals(BufferedImage.TYPE_INT_RGB, image.getType(), "Результат должен быть TYPE_INT_RGB");
+                assertArrayEquals(pixels(expected.get(effect)), pixels(image),
+                        "Эффект " + effect + " для типа " + type + " должен совпадать");
+            }
+        }
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    /**
+     * Creates a gray zone plate over a horizontal ramp, with a frequency of one cycle per two pixels at the corners:
+     * concentric rings, the standard pattern for aliasing. A correct downscale turns the fine rings into flat gray, a
+     * point-sampling one into false rings.
+     *
+     * @param width  the width in pixels
+     * @param height the height in pixels
+     * @param type   the BufferedImage type
+     * @return the image
+     */
+    static BufferedImage zonePlate(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        double cx = width / 2.0;
+        double cy = height / 2.0;
+        // The local frequency of cos(k r²) is k r / π cycles per pixel, 0.5 at the corner radius
+        double k = Math.PI / 2 / Math.hypot(cx, cy);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            double dy = y + 0.5 - cy;
+            for (int x = 0; x < width; x++) {
+                double dx = x + 0.5 - cx;
+                double ramp = 64 + 127.0 * x / width;
+                int gray = (int) Math.round(ramp + 63 * Math.cos(k * (dx * dx + dy * dy)));
+                row[x] = gray << 16 | gray << 8 | gray;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+}
@@ -2,7 +2,10 @@ package org.image;
 
 import org.junit.jupiter.api.Test;
 
+import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -43,4 +46,43 @@ public class ImgProviderTest {
     public void testReadResourceFileToString_invalidFile() {
         assertThrows(IllegalArgumentException.class, () -> ImgProvider.readResourceFileToString("/img/nonexistent.txt"), "Expected IllegalArgumentException for non-existent resource file");
     }
+
+    /**
+     * Tests that readResourceImage(String) decodes an image resource and throws an IllegalArgumentException when the
+     * resource file is not found.
+     */
+    @Test
+    public void testReadResourceImage() throws IOException {
+        assertNotNull(ImgProvider.readResourceImage(ImgProvider.getRandomImagePath()), "Image should be decoded");
+        assertThrows(IllegalArgumentException.class, () -> ImgProvider.readResourceImage("/img/nonexistent.img"),
+                "Expected IllegalArgumentException for non-existent resource file");
+    }
+
+    /**
+     * Tests that readResourceBytes serves the raw image bytes and readResourceFileToString the Base64 text.
+     */
+    @Test
+    public void testReadResourceBytes() throws IOException {
+        ByteBuffer bytes = ImgProvider.readResourceBytes("/img/1.img");
+        assertTrue(bytes.isReadOnly(), "Image bytes should be read-only");
+        assertEquals((byte) 0xFF, bytes.get(bytes.position()), "Image should start with the JPEG marker");
+        assertEquals((byte) 0xD8, bytes.get(bytes.position() + 1), "Image should start with the JPEG marker");
+        assertEquals(ByteBuffer.wrap(Base64.getDecoder().decode(ImgProvider.readResourceFileToString("/img/1.img"))),
+                bytes, "Base64 text and bytes should match");
+        assertThrows(IllegalArgumentException.class, () -> ImgProvider.readResourceBytes("/img/nonexistent.img"),
+                "Expected IllegalArgumentException for non-existent resource file");
+    }
+
+    /**
+     * Tests that an image resource is decoded to at most preview size.
+     */
+    @Test
+    public void testReadResourcePreview() throws IOException {
+        BufferedImage preview = ImgProvider.readResourcePreview("/img/4.img");
+        assertNotNull(preview, "Image should be decoded");
+        assertTrue(preview.getWidth() <= 512 && preview.getHeight() <= 512,
+                "Preview should fit 512x512: " + preview.getWidth() + "x" + preview.getHeight());
+        assertThrows(IllegalArgumentException.class, () -> ImgProvider.readResourcePreview("/img/nonexistent.img"),
+                "Expected IllegalArgumentException for non-existent resource file");
+    }
 }
@@ -0,0 +1,135 @@
+package org.image;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the InfoHashSet class.
+ */
+public class InfoHashSetTest {
+
+    private static final String HEX_HASH = "c12fe1c06bba254a9dc9f519b335aa7c1367a88a";
+    private static final String BASE32_HASH = "YEX6DQDLXISUVHOJ6UM3GNNKPQJWPKEK";
+
+    /**
+     * Tests that hex and base32 spellings of the same BTIH produce the same key, regardless of case and of the
+     * position of the xt parameter.
+     */
+    @Test
+    public void testInfoHashOf_hexAndBase32AreEquivalent() {
+        byte[] hex = InfoHashSet.infoHashOf("magnet:?xt=urn:btih:" + HEX_HASH + "&dn=Name");
+        byte[] upperHex = InfoHashSet.infoHashOf("magnet:?dn=Other&XT=URN:BTIH:" + HEX_HASH.toUpperCase());
+        byte[] base32 = InfoHashSet.infoHashOf("magnet:?tr=udp://t&xt=urn:btih:" + BASE32_HASH);
+        byte[] lowerBase32 = InfoHashSet.infoHashOf("magnet:?xt=urn:btih:" + BASE32_HASH.toLowerCase());
+
+        assertEquals(InfoHashSet.HASH_LENGTH, hex.length, "A BTIH should be 20 bytes");
+        assertArrayEquals(hex, upperHex, "Hex BTIH should be case-insensitive");
+        assertArrayEquals(hex, base32, "Base32 BTIH should decode to the same bytes as hex");
+        assertArrayEquals(hex, lowerBase32, "Base32 BTIH should be case-insensitive");
+        assertEquals((byte) 0xc1, hex[0], "First byte should be decoded from the first two hex digits");
+    }
+
+    /**
+     * Tests that links without a valid BTIH are still keyed consistently by their text.
+     */
+    @Test
+    public void testInfoHashOf_fallsBackToLinkDigest() {
+        assertFalse(MagnetLink.parse("magnet:?xt=urn:btih:abcdef").hasBtih(), "A short BTIH is not valid");
+        assertFalse(MagnetLink.parse("magnet:?xt=urn:btmh:1220" + HEX_HASH).hasBtih(), "A v2 hash is not a BTIH");
+        assertArrayEquals(InfoHashSet.infoHashOf("magnet:?xt=urn:btih:abcdef"),
+                InfoHashSet.infoHashOf(" magnet:?xt=urn:btih:abcdef "), "Fallback key should ignore surrounding blanks");
+        assertFalse(java.util.Arrays.equals(InfoHashSet.infoHashOf("magnet:?xt=urn:btih:abcdef"),
+                InfoHashSet.infoHashOf("magnet:?xt=urn:btih:abcdeg")), "Different links should get different keys");
+    }
+
+    /**
+     * Tests add, contains, size and clear, including the all-zero hash that doubles as the empty-slot marker.
+     */
+    @Test
+    public void testAddContainsClear() {
+        InfoHashSet set = new InfoHashSet();
+        byte[] zero = new byte[InfoHashSet.HASH_LENGTH];
+        byte[] hash = InfoHashSet.infoHashOf("magnet:?xt=urn:btih:" + HEX_HASH);
+
+        assertFalse(set.contains(zero), "Empty set should not contain the zero hash");
+        assertTrue(set.add(zero), "Zero hash should be added");
+        assertFalse(set.add(zero), "Zero hash should be added only once");
+        assertTrue(set.addMagnetLink("magnet:?xt=urn:btih:" + HEX_HASH), "Hash should be added");
+        assertFalse(set.addMagnetLink("magnet:?xt=urn:btih:" + BASE32_HASH), "Same BTIH should be a duplicate");
+        assertTrue(set.contains(hash), "Set should contain the added hash");
+        assertEquals(2, set.size(), "Set should contain two hashes");
+
+        set.clear();
+        assertEquals(0, set.size(), "Cleared set should be empty");
+        assertFalse(set.contains(hash), "Cleared set should not contain the hash");
+        assertThrows(IllegalArgumentException.class, () -> set.add(new byte[16]), "Only 20-byte hashes are valid");
+    }
+
+    /**
+     * Tests that a million random hashes are all retained exactly and fit in a few tens of MB.
+     */
+    @Test
+    public void testMillionHashes_exactAndCompact() {
+        int count = 1_000_000;
+        InfoHashSet set = new InfoHashSet();
+        Random random = new Random(42);
+        byte[] hash = new byte[InfoHashSet.HASH_LENGTH];
+        for (int i = 0; i < count; i++) {
+            random.nextBytes(hash);
+            assertTrue(set.add(hash), "Random hash should be new");
+        }
+        assertEquals(count, set.size(), "Every hash should be stored");
+
+        random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            random.nextBytes(hash);
+            assertTrue(set.contains(hash), "Every added hash should be found");
+        }
+        hash[0] ^= 1;
+        assertFalse(set.contains(hash), "A hash differing in one bit should not be found");
+        assertTrue(set.memoryFootprint() < 48L * 1024 * 1024,
+                "One million hashes should take less than 48 MB, took " + set.memoryFootprint());
+    }
+
+    /**
+     * Tests that concurrent adders agree on exactly one winner per hash.
+     */
+    @Test
+    public void testConcurrentAdd_countsEachHashOnce() throws Exception {
+        InfoHashSet set = new InfoHashSet();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(pool.submit(() -> {
+                    int added = 0;
+                    Random random = new Random(7);
+                    byte[] hash = new byte[InfoHashSet.HASH_LENGTH];
+                    for (int i = 0; i < 50_000; i++) {
+                        random.nextBytes(hash);
+                        if (set.add(hash)) {
+                            added++;
+                        }
+                    }
+                    return added;
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> result : results) {
+                total += result.get();
+            }
+            assertEquals(50_000, total, "Each hash should be reported as new exactly once");
+            assertEquals(50_000, set.size(), "Set should contain each hash once");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.image;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the LinkCrawler class against a local stand-in for a paginated listing site.
+ * <p>
+ * The index page links to {@value #PAGES} pagination pages; each page carries two magnet links, a link to the next
+ * page, a detail link that must not be followed and a link to another host.
+ */
+public class LinkCrawlerTest {
+
+    private static final int PAGES = 40;
+    private static final long PAGE_DELAY_MILLIS = 100;
+
+    private HttpServer server;
+    private String baseUrl;
+    private HostScheduler hostScheduler;
+    private final Set<String> requestedPaths = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger concurrentRequests = new AtomicInteger();
+    private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+
+    /**
+     * Starts the stand-in server; every response is delayed to make sequential fetching measurably slow.
+     */
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().toString();
+            requestedPaths.add(path);
+            maxConcurrentRequests.accumulateAndGet(concurrentRequests.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(PAGE_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = page(path).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            concurrentRequests.decrementAndGet();
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        // The per-host politeness budget would spread the crawl out; these tests are about the crawler's own limits
+        hostScheduler = PageFetcher.shared().hostScheduler();
+        PageFetcher.shared().setHostScheduler(new HostScheduler(1_000, 1_000, 64));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+        PageFetcher.shared().setHostScheduler(hostScheduler);
+    }
+
+    private static String page(String path) {
+        StringBuilder html = new StringBuilder("<html><body>");
+        if (path.equals("/")) {
+            for (int i = 1; i <= PAGES; i++) {
+                html.append("<a href=\"/page/").append(i).append("\">").append(i).append("</a>");
+            }
+        } else if (path.startsWith("/page/")) {
+            int n = Integer.parseInt(path.substring("/page/".length()));
+            html.append("<a href=\"magnet:?xt=urn:btih:").append(n).append("a\">a</a>")
+                    .append("<a href='magnet:?xt=urn:btih:").append(n).append("b'>b</a>")
+                    .append("<a href=\"../page/").append(n + PAGES).append("#top\">next</a>")
+                    .append("<a href=\"/torrent/").append(n).append("\">details</a>")
+                    .append("<a href=\"http://example.invalid/page/1\">elsewhere</a>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    /**
+     * Tests that the crawl follows pagination links up to the configured depth and streams every magnet link found
+     * into the sink, while pages are fetched concurrently.
+     */
+    @Test
+    public void testCrawl_followsPaginationUpToDepth() throws Exception {
+        List<String> links = new CopyOnWriteArrayList<>();
+        Set<String> sourcePages = ConcurrentHashMap.newKeySet();
+        long start = System.nanoTime();
+        LinkCrawler.Summary summary = new LinkCrawler(1, 1_000, 64, (link, pageUrl) -> {
+            links.add(link);
+            sourcePages.add(pageUrl);
+        }).crawl(baseUrl + "/").get(30, TimeUnit.SECONDS);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(PAGES + 1, summary.pages(), "The index and every page linked from it should be fetched");
+        assertEquals(0, summary.failedPages(), "No page should fail");
+        assertEquals(2 * PAGES, summary.magnetLinks(), "Each pagination page carries two magnet links");
+        assertEquals(2 * PAGES, links.size(), "Every magnet link should reach the sink");
+        assertEquals(PAGES, sourcePages.size(), "Each link should be reported with the page it was found on");
+        assertTrue(sourcePages.contains(baseUrl + "/page/1"), "Source pages should be absolute URLs");
+        assertFalse(requestedPaths.contains("/page/" + (PAGES + 1)), "Depth 1 must not follow 'next' links");
+        assertTrue(requestedPaths.stream().noneMatch(path -> path.startsWith("/torrent/")),
+                "Detail pages are not listing pages and must not be fetched");
+        assertTrue(maxConcurrentRequests.get() > 1, "Pages should be fetched concurrently");
+        assertTrue(elapsedMillis < PAGES * PAGE_DELAY_MILLIS / 2,
+                "Concurrent crawl should take far less than sequential fetching, took " + elapsedMillis + " ms");
+    }
+
+    /**
+     * Tests that the page budget and the in-flight limit are respected.
+     */
+    @Test
+    public void testCrawl_respectsPageBudgetAndInFlightLimit() throws Exception {
+        LinkCrawler.Summary summary = new LinkCrawler(3, 10, 4, (link, pageUrl) -> { })
+                .crawl(baseUrl + "/").get(30, TimeUnit.SECONDS);
+
+        assertEquals(10, summary.pages(), "No more pages than the budget should be fetched");
+        assertEquals(10, requestedPaths.size(), "No more requests than the budget should be sent");
+        assertTrue(maxConcurrentRequests.get() <= 4, "No more than 4 requests should be in flight");
+    }
+
+    /**
+     * Tests that depth 0 fetches only the seed page, and that a failing seed completes the crawl with a failure count.
+     */
+    @Test
+    public void testCrawl_depthZeroAndFailingSeed() throws Exception {
+        LinkCrawler.Summary seedOnly = new LinkCrawler(0, 100, 8, (link, pageUrl) -> { })
+                .crawl(baseUrl + "/page/1").get(30, TimeUnit.SECONDS);
+        assertEquals(new LinkCrawler.Summary(1, 0, 2), seedOnly, "Only the seed page should be processed");
+
+        server.stop(0);
+        LinkCrawler.Summary failed = new LinkCrawler(2, 100, 8, (link, pageUrl) -> { })
+                .crawl(baseUrl + "/").get(30, TimeUnit.SECONDS);
+        assertEquals(new LinkCrawler.Summary(0, 1, 0), failed, "An unreachable seed should count as a failed page");
+    }
+
+    /**
+     * Tests that the listing link pattern accepts pagination and listing URLs and rejects detail pages.
+     */
+    @Test
+    public void testListingLinkPattern() {
+        for (String listing : new String[]{"/page/3", "/?page=3", "/top/", "/new/2", "/browse?cat=4", "/top"}) {
+            assertTrue(LinkCrawler.LISTING_LINK.matcher(listing).find(), listing + " should be followed");
+        }
+        for (String other : new String[]{"/torrent/12", "/about", "/topic-name/", "/news"}) {
+            assertFalse(LinkCrawler.LISTING_LINK.matcher(other).find(), other + " should not be followed");
+        }
+    }
+}
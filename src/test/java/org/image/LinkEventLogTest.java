@@ -0,0 +1,78 @@
+package org.image;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the LinkEventLog class.
+ */
+public class LinkEventLogTest {
+
+    private static final MagnetLink LINK =
+            MagnetLink.parse("magnet:?xt=urn:btih:c12fe1c06bba254a9dc9f519b335aa7c1367a88a&dn=A%20%22B%22");
+
+    /**
+     * Tests that every queued event is written as one NDJSON line by the time the log is closed, after the lines
+     * already in the file.
+     */
+    @Test
+    public void testAppend_writesNdjsonLines(@TempDir Path dir) throws Exception {
+        Files.writeString(dir.resolve(LinkEventLog.FILE_NAME), "{\"earlier\":true}\n");
+        LinkEventLog log = LinkEventLog.open(dir, LinkEventLog.DEFAULT_MAX_BYTES, LinkEventLog.DEFAULT_FILE_COUNT);
+        for (int i = 1; i <= 1_000; i++) {
+            log.append(new LinkFoundEvent(1_700_000_000_000L + i, i, LINK, "https://example.com/new", i % 2 == 0));
+        }
+        log.close();
+
+        List<String> lines = Files.readAllLines(dir.resolve(LinkEventLog.FILE_NAME), StandardCharsets.UTF_8);
+        assertEquals(1_001, lines.size(), "Every event should be written on close");
+        assertEquals("{\"earlier\":true}", lines.get(0), "The existing file should be appended to");
+        assertEquals("{\"time\":1700000000002,\"type\":\"link\",\"number\":2,\"link\":\""
+                        + "magnet:?xt=urn:btih:c12fe1c06bba254a9dc9f519b335aa7c1367a88a&dn=A%20%22B%22\","
+                        + "\"infoHash\":\"c12fe1c06bba254a9dc9f519b335aa7c1367a88a\",\"name\":\"A \\\"B\\\"\","
+                        + "\"source\":\"https://example.com/new\",\"seenBefore\":true}", lines.get(2),
+                "An event should be written as the headless link record with its time");
+        assertTrue(lines.get(1_000).contains("\"number\":1000,"), "Events should be written in order");
+        assertThrows(IllegalStateException.class, () -> log.append(new LinkFoundEvent(0, 1, LINK, null, false)),
+                "A closed log should not accept events");
+    }
+
+    /**
+     * Tests that the file is rotated once it reaches its size limit and that only the configured number of files is
+     * kept, the newest events in the current file.
+     */
+    @Test
+    public void testAppend_rotatesFiles(@TempDir Path dir) throws Exception {
+        int lineLength = line(10).length() + 1;
+        try (LinkEventLog log = LinkEventLog.open(dir, 10L * lineLength, 3)) {
+            for (int i = 1; i <= 45; i++) {
+                log.append(new LinkFoundEvent(1_700_000_000_000L, i, LINK, null, false));
+            }
+        }
+
+        List<String> current = Files.readAllLines(dir.resolve(LinkEventLog.FILE_NAME));
+        List<String> previous = Files.readAllLines(dir.resolve("links.1.ndjson"));
+        List<String> oldest = Files.readAllLines(dir.resolve("links.2.ndjson"));
+        assertEquals(List.of(line(41), line(42), line(43), line(44), line(45)), current,
+                "The current file should hold the newest events");
+        assertEquals(10, previous.size(), "A rotated file should hold as many events as fit");
+        assertEquals(line(31), previous.get(0), "The files should move up by one on every rotation");
+        assertEquals(line(21), oldest.get(0), "The oldest kept file should follow");
+        assertFalse(Files.exists(dir.resolve("links.3.ndjson")), "Files beyond the count should be deleted");
+    }
+
+    /** The line written for the given event number in the rotation test. */
+    private static String line(int number) {
+        StringBuilder json = new StringBuilder("{");
+        Json.appendMember(json, "time", 1_700_000_000_000L);
+        return new LinkFoundEvent(1_700_000_000_000L, number, LINK, null, false).appendJsonMembers(json)
+                .append('}').toString();
+    }
+}
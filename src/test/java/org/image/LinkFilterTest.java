@@ -0,0 +1,200 @@
+package org.image;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the LinkFilter class with rules files in a temporary directory.
+ */
+public class LinkFilterTest {
+
+    @TempDir
+    Path directory;
+
+    private Path rulesFile;
+    private final List<MagnetLink> opened = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        rulesFile = directory.resolve("filter.rules");
+        LinkParser.setMagnetLinkOpener(opened::add);
+        LinkParser.setFoundLinkListener(event -> { });
+        LinkParser.resetNumberOfFoundLinks();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        LinkParser.setLinkFilter(null);
+        LinkParser.setMagnetLinkOpener(null);
+        LinkParser.setFoundLinkListener(null);
+        LinkParser.resetNumberOfFoundLinks();
+    }
+
+    private void writeRules(String... lines) throws IOException {
+        Files.write(rulesFile, List.of(lines), StandardCharsets.UTF_8);
+    }
+
+    private static MagnetLink link(int n, String name, long size, String... trackers) {
+        StringBuilder uri = new StringBuilder("magnet:?xt=urn:btih:").append(String.format("%040x", n));
+        if (name != null) {
+            uri.append("&dn=").append(name);
+        }
+        if (size >= 0) {
+            uri.append("&xl=").append(size);
+        }
+        for (String tracker : trackers) {
+            uri.append("&tr=").append(tracker);
+        }
+        return MagnetLink.parse(uri.toString());
+    }
+
+    /**
+     * Tests that exclude rules of any field reject a link, that include rules of one field are alternatives and that
+     * include rules of several fields must all be met.
+     */
+    @Test
+    public void testRejection_includeAndExcludeRules() throws IOException {
+        writeRules("# wanted",
+                "include name 1080p",
+                "include name 2160P",
+                "exclude name CAM",
+                "",
+                "include size 100MB..8GB",
+                "exclude size 4GB..5GB",
+                "exclude tracker bad.example");
+        LinkFilter filter = LinkFilter.load(rulesFile);
+        long gb = 1L << 30;
+
+        assertEquals(6, filter.size(), "Comments and blank lines are not rules");
+        assertNull(filter.rejection(link(1, "Show.S01E01.1080p.WEB", gb, "udp%3A%2F%2Fgood.example%3A80")),
+                "A link meeting every include rule and no exclude rule should pass");
+        assertNull(filter.rejection(link(2, "Film.2160p", 2 * gb)), "Include rules of one field are alternatives");
+        assertEquals("exclude name \"CAM\" (line 4)", filter.rejection(link(3, "Film.1080p.HDCam", gb)),
+                "Keywords should match regardless of case");
+        assertEquals("no include name rule matched", filter.rejection(link(4, "Film.720p", gb)),
+                "A link meeting no include rule of a field should be rejected");
+        assertEquals("no include name rule matched", filter.rejection(link(5, null, gb)),
+                "A link without the field should meet none of its include rules");
+        assertEquals("exclude size \"4GB..5GB\" (line 7)", filter.rejection(link(6, "Film.1080p", 4 * gb + 1)),
+                "An exclude range should reject sizes within it");
+        assertEquals("no include size rule matched", filter.rejection(link(7, "Film.1080p", 9 * gb)),
+                "A size outside every include range should be rejected");
+        assertEquals("exclude tracker \"bad.example\" (line 8)", filter.rejection(link(8, "Film.1080p", gb,
+                "udp%3A%2F%2Fgood.example", "http%3A%2F%2FBAD.example%2Fannounce")),
+                "Any tracker of the link should be checked");
+    }
+
+    /**
+     * Tests the keyword automaton with keywords that overlap and are suffixes of each other, and with thousands of
+     * keywords in one field.
+     */
+    @Test
+    public void testRejection_overlappingAndManyKeywords() throws IOException {
+        List<String> rules = new ArrayList<>(List.of("exclude name he", "exclude name aab", "include name hers",
+                "include name ushe"));
+        for (int i = 0; i < 5_000; i++) {
+            rules.add("exclude name group" + i + "x");
+        }
+        Files.write(rulesFile, rules, StandardCharsets.UTF_8);
+        LinkFilter filter = LinkFilter.load(rulesFile);
+
+        assertEquals("exclude name \"he\" (line 1)", filter.rejection(link(1, "ushers", -1)),
+                "A keyword ending inside a longer one should be found through the failure links");
+        assertEquals("exclude name \"aab\" (line 2)", filter.rejection(link(2, "xaaab", -1)),
+                "A keyword should be found after a partial match of itself");
+        assertEquals("exclude name \"group4999x\" (line 5004)", filter.rejection(link(3, "Film-Group4999X", -1)),
+                "The last of thousands of keywords should be found");
+        assertEquals("no include name rule matched", filter.rejection(link(4, "Film-Group4999", -1)),
+                "A prefix of a keyword should not match");
+    }
+
+    /**
+     * Tests that a changed rules file is loaded without a restart, that a file with errors keeps the previous rules
+     * and that a removed file takes every link.
+     */
+    @Test
+    public void testReloadIfChanged() throws IOException {
+        MagnetLink cam = link(1, "Film.CAM", -1);
+        LinkFilter filter = LinkFilter.load(rulesFile);
+        assertNull(filter.rejection(cam), "A missing file means no rules");
+
+        writeRules("exclude name cam");
+        assertTrue(filter.reloadIfChanged(), "A new file should be loaded");
+        assertNotNull(filter.rejection(cam), "The new rule should apply");
+        assertFalse(filter.reloadIfChanged(), "An unchanged file should not be loaded again");
+
+        writeRules("exclude title cam");
+        Files.setLastModifiedTime(rulesFile, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        assertFalse(filter.reloadIfChanged(), "A file with errors should not be loaded");
+        assertNotNull(filter.rejection(cam), "The previous rules should be kept");
+
+        Files.delete(rulesFile);
+        assertTrue(filter.reloadIfChanged(), "A removed file should be noticed");
+        assertNull(filter.rejection(cam), "A removed file means no rules");
+
+        writeRules("include size 1KB..", "exclude size 5GB..1GB");
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> LinkFilter.load(rulesFile), "A file with errors should not be opened");
+        assertTrue(error.getMessage().startsWith("filter.rules:2:"), "The error should name the line, was "
+                + error.getMessage());
+    }
+
+    /**
+     * Tests that an opened filter picks up a changed rules file on its own, off the threads that check links, and that
+     * a closed one no longer does.
+     */
+    @Test
+    public void testOpen_reloadsInTheBackground() throws Exception {
+        MagnetLink cam = link(1, "Film.CAM", -1);
+        try (LinkFilter filter = LinkFilter.open(rulesFile)) {
+            writeRules("exclude name cam");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (filter.rejection(cam) == null && System.nanoTime() - deadline < 0) {
+                Thread.sleep(50);
+            }
+            assertNotNull(filter.rejection(cam), "The changed file should be loaded without a call to reload");
+
+            filter.close();
+            Files.delete(rulesFile);
+            Thread.sleep(2 * LinkFilter.RELOAD_CHECK_MILLIS + 500);
+            assertNotNull(filter.rejection(cam), "A closed filter should keep its rules");
+        }
+    }
+
+    /**
+     * Tests that the LinkParser drops rejected links before they are counted or dispatched, and that a link rejected
+     * once is taken after its rule has been removed.
+     */
+    @Test
+    public void testProcessMagnetLink_dropsRejectedLinks() throws IOException {
+        writeRules("exclude name cam");
+        LinkFilter filter = LinkFilter.load(rulesFile);
+        LinkParser.setLinkFilter(filter);
+        long filteredBefore = Metrics.LINKS_FILTERED.get();
+        String cam = "magnet:?xt=urn:btih:" + "c".repeat(40) + "&dn=Film.CAM";
+
+        assertFalse(LinkParser.processMagnetLink(cam, null), "A rejected link should not be processed");
+        assertTrue(LinkParser.processMagnetLink("magnet:?xt=urn:btih:" + "d".repeat(40) + "&dn=Film.1080p", null),
+                "A wanted link should be processed");
+        assertEquals(1, LinkParser.getNumberOfFoundLinks(), "Only the wanted link should be counted");
+        assertEquals(1, opened.size(), "Only the wanted link should be dispatched");
+        assertEquals(filteredBefore + 1, Metrics.LINKS_FILTERED.get(), "The rejected link should be counted");
+
+        writeRules("# nothing is excluded");
+        filter.reloadIfChanged();
+        assertTrue(LinkParser.processMagnetLink(cam, null), "A link rejected by a removed rule should be taken");
+    }
+}
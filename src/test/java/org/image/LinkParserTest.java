@@ -6,10 +6,12 @@ import org.jsoup.nodes.Element;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.awt.Desktop;
 
 import java.net.URL;
+import java.nio.file.Path;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -74,6 +76,53 @@ public class LinkParserTest {
                 "Counter should be reset to 0");
     }
 
+    /**
+     * Tests that the same torrent is counted once, even when its BTIH is spelled differently.
+     */
+    @Test
+    public void testProcessMagnetLink_countsDuplicatesOnce() {
+        String[] links = {
+                "magnet:?xt=urn:btih:c12fe1c06bba254a9dc9f519b335aa7c1367a88a&dn=One",
+                "magnet:?xt=urn:btih:C12FE1C06BBA254A9DC9F519B335AA7C1367A88A&dn=Same",
+                "magnet:?xt=urn:btih:YEX6DQDLXISUVHOJ6UM3GNNKPQJWPKEK",
+                "magnet:?xt=urn:btih:abcdef",
+                "magnet:?xt=urn:btih:abcdef",
+        };
+        for (String link : links) {
+            try {
+                LinkParser.processMagnetLink(link);
+            } catch (Exception e) {
+                // Exceptions from UI and Desktop actions are ignored
+            }
+        }
+        assertEquals(2, LinkParser.getNumberOfFoundLinks().intValue(),
+                "Counter should only count unique info-hashes");
+    }
+
+    /**
+     * Tests that new links are appended to the magnet store with their source page, and that links found again in a
+     * later session are still processed.
+     */
+    @Test
+    public void testProcessMagnetLink_appendsToStore(@TempDir Path directory) throws Exception {
+        String link = "magnet:?xt=urn:btih:c12fe1c06bba254a9dc9f519b335aa7c1367a88a&dn=One";
+        try (MagnetStore store = MagnetStore.open(directory)) {
+            LinkParser.setMagnetStore(store);
+            for (int i = 0; i < 2; i++) {
+                try {
+                    LinkParser.processMagnetLink(link, "https://example.com/new");
+                } catch (Exception e) {
+                    // Exceptions from UI and Desktop actions are ignored
+                }
+            }
+            assertEquals(1, store.recordCount(), "A duplicate in the same session should not be stored again");
+            assertEquals("https://example.com/new", store.get(InfoHashSet.infoHashOf(link)).sourceUrl(),
+                    "The source page should be stored");
+        } finally {
+            LinkParser.setMagnetStore(null);
+        }
+    }
+
     /**
      * Tests that parseUrl processes magnet links from a local HTML file.
      * If the test resource is not found, the test is skipped.
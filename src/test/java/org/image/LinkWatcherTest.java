@@ -0,0 +1,164 @@
+package org.image;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the LinkWatcher class against a local listing page whose magnet links and markup can be changed between
+ * polls. The {@code /etag} page answers 304 to a request carrying its ETag.
+ */
+public class LinkWatcherTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final String FIRST = "a".repeat(40);
+    private static final String SECOND = "b".repeat(40);
+    private static final String THIRD = "c".repeat(40);
+
+    private HttpServer server;
+    private String baseUrl;
+    private final List<MagnetLink> opened = new CopyOnWriteArrayList<>();
+    private volatile List<String> hashes = List.of(FIRST, SECOND);
+    private volatile String footer = "generated at 12:00";
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            boolean withEtag = exchange.getRequestURI().getPath().equals("/etag");
+            if (withEtag && ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            StringBuilder html = new StringBuilder("<html><body>");
+            for (String hash : hashes) {
+                html.append("<a href=\"magnet:?xt=urn:btih:").append(hash).append("\">").append(hash).append("</a>");
+            }
+            html.append("<p>").append(footer).append("</p></body></html>");
+            byte[] body = html.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            if (withEtag) {
+                exchange.getResponseHeaders().set("ETag", ETAG);
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        LinkParser.setMagnetLinkOpener(opened::add);
+        LinkParser.setFoundLinkListener(event -> { });
+        LinkParser.resetNumberOfFoundLinks();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+        LinkParser.setMagnetLinkOpener(null);
+        LinkParser.setFoundLinkListener(null);
+        LinkParser.resetNumberOfFoundLinks();
+    }
+
+    private List<String> openedHashes() {
+        return opened.stream().map(MagnetLink::infoHashHex).toList();
+    }
+
+    /**
+     * Tests that the first poll emits every link, that polls of an unchanged page emit nothing and lengthen the
+     * interval, and that a changed page emits only its new links and shortens it.
+     */
+    @Test
+    public void testPoll_emitsOnlyNewLinks() {
+        String url = baseUrl + "/";
+        LinkWatcher watcher = new LinkWatcher(List.of(url), Duration.ofSeconds(10), Duration.ofSeconds(40),
+                Duration.ofSeconds(100));
+
+        LinkWatcher.Poll first = watcher.poll(url);
+        assertEquals(LinkWatcher.Outcome.CHANGED, first.outcome(), "The first poll should find the page's links");
+        assertEquals(2, first.emitted(), "The first poll should emit every link");
+        assertEquals(List.of(FIRST, SECOND), openedHashes(), "The links should be emitted in page order");
+        assertEquals(Duration.ofSeconds(40), first.nextInterval(), "The first poll should keep the initial interval");
+
+        LinkWatcher.Poll same = watcher.poll(url);
+        assertEquals(LinkWatcher.Outcome.UNCHANGED, same.outcome(), "An identical body should be unchanged");
+        assertEquals(-1, same.links(), "An identical body should not be parsed");
+        assertEquals(Duration.ofSeconds(60), same.nextInterval(), "An unchanged page should be polled less often");
+
+        footer = "generated at 12:01";
+        LinkWatcher.Poll restyled = watcher.poll(url);
+        assertEquals(LinkWatcher.Outcome.UNCHANGED, restyled.outcome(), "The same links in new markup are unchanged");
+        assertEquals(2, restyled.links(), "A different body should be parsed");
+        assertEquals(Duration.ofSeconds(90), restyled.nextInterval(), "The interval should grow again");
+
+        hashes = List.of(THIRD, FIRST, SECOND);
+        LinkWatcher.Poll changed = watcher.poll(url);
+        assertEquals(LinkWatcher.Outcome.CHANGED, changed.outcome(), "A new link should change the page");
+        assertEquals(1, changed.emitted(), "Only the new link should be emitted");
+        assertEquals(List.of(FIRST, SECOND, THIRD), openedHashes(), "Only the new link should be dispatched");
+        assertEquals(Duration.ofSeconds(45), changed.nextInterval(), "A changed page should be polled more often");
+
+        for (int i = 0; i < 5; i++) {
+            watcher.poll(url);
+        }
+        assertEquals(Duration.ofSeconds(100), watcher.poll(url).nextInterval(), "The interval should be capped");
+    }
+
+    /**
+     * Tests that a page with an ETag is requested conditionally and that its 304 answer counts as unchanged.
+     */
+    @Test
+    public void testPoll_sendsValidators() {
+        String url = baseUrl + "/etag";
+        LinkWatcher watcher = new LinkWatcher(List.of(url), Duration.ofSeconds(1), Duration.ofSeconds(1),
+                Duration.ofSeconds(1));
+        long unchangedBefore = Metrics.WATCH_POLLS_UNCHANGED.get();
+
+        assertEquals(LinkWatcher.Outcome.CHANGED, watcher.poll(url).outcome(), "The first poll should get the page");
+        LinkWatcher.Poll second = watcher.poll(url);
+
+        assertEquals(LinkWatcher.Outcome.NOT_MODIFIED, second.outcome(), "The server should answer 304");
+        assertEquals(1, notModified.get(), "The second request should carry the ETag");
+        assertEquals(2, opened.size(), "A 304 answer should emit nothing");
+        assertEquals(unchangedBefore + 1, Metrics.WATCH_POLLS_UNCHANGED.get(), "The 304 should be counted");
+    }
+
+    /**
+     * Tests that an unreachable page fails its poll without emitting anything, and that watched URLs and intervals
+     * are checked.
+     */
+    @Test
+    public void testPoll_failuresAndValidation() {
+        String url = "http://127.0.0.1:1/";
+        LinkWatcher watcher = new LinkWatcher(List.of(url), Duration.ofSeconds(10), Duration.ofSeconds(20),
+                Duration.ofSeconds(100));
+
+        LinkWatcher.Poll failed = watcher.poll(url);
+
+        assertEquals(LinkWatcher.Outcome.FAILED, failed.outcome(), "An unreachable page should fail");
+        assertEquals(Duration.ofSeconds(30), failed.nextInterval(), "A failing page should be polled less often");
+        assertTrue(opened.isEmpty(), "A failed poll should emit nothing");
+        assertThrows(IllegalArgumentException.class, () -> watcher.poll(baseUrl + "/"), "Only watched pages");
+        assertThrows(IllegalArgumentException.class, () -> new LinkWatcher(List.of(url), Duration.ofSeconds(10),
+                Duration.ofSeconds(5), Duration.ofSeconds(100)), "The initial interval may not be below the minimum");
+        assertThrows(IllegalArgumentException.class, () -> new LinkWatcher(List.of(), Duration.ofSeconds(1),
+                Duration.ofSeconds(1), Duration.ofSeconds(1)), "A watch needs pages");
+    }
+}
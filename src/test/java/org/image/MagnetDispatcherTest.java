@@ -0,0 +1,244 @@
+package org.image;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.Desktop;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the MagnetDispatcher class and its sinks.
+ */
+public class MagnetDispatcherTest {
+
+    private static final String LINK_A = "magnet:?xt=urn:btih:c12fe1c06bba254a9dc9f519b335aa7c1367a88a&dn=A";
+    private static final String LINK_B = "magnet:?xt=urn:btih:0123456789abcdef0123456789abcdef01234567&dn=B\"q";
+    private static final MagnetLink MAGNET_A = MagnetLink.parse(LINK_A);
+    private static final MagnetLink MAGNET_B = MagnetLink.parse(LINK_B);
+
+    private HttpServer server;
+
+    @AfterEach
+    public void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Tests that a full queue blocks the producer until the sink catches up, and that links then arrive in order and
+     * in batches no larger than the batch size.
+     */
+    @Test
+    public void testDispatch_blocksWhenQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<List<MagnetLink>> batches = Collections.synchronizedList(new ArrayList<>());
+        MagnetDispatcher dispatcher = new MagnetDispatcher(links -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            batches.add(List.copyOf(links));
+        }, 4, 3);
+
+        CompletableFuture<Void> producer = CompletableFuture.runAsync(() -> {
+            try {
+                for (int i = 0; i < 20; i++) {
+                    dispatcher.dispatch(MagnetLink.parse("magnet:?xt=urn:btih:" + i));
+                }
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(producer.isDone(), "The producer should wait while the sink is blocked and the queue is full");
+        assertEquals(4, dispatcher.pending(), "The queue should be filled to its capacity");
+
+        release.countDown();
+        producer.get(5, TimeUnit.SECONDS);
+        dispatcher.close();
+
+        List<MagnetLink> delivered = new ArrayList<>();
+        for (List<MagnetLink> batch : batches) {
+            assertTrue(batch.size() <= 3, "Batches should not exceed the batch size");
+            delivered.addAll(batch);
+        }
+        assertEquals(20, delivered.size(), "Every link should be delivered before close returns");
+        for (int i = 0; i < 20; i++) {
+            assertEquals("magnet:?xt=urn:btih:" + i, delivered.get(i).uri(), "Links should keep their order");
+        }
+        assertTrue(batches.size() < 20, "Queued links should be handed over in batches");
+        assertThrows(IllegalStateException.class, () -> dispatcher.dispatch(MAGNET_A), "Closed dispatcher");
+    }
+
+    /**
+     * Tests that a failing sink does not stop the dispatcher.
+     */
+    @Test
+    public void testDispatch_survivesSinkFailure() throws Exception {
+        List<MagnetLink> delivered = Collections.synchronizedList(new ArrayList<>());
+        MagnetDispatcher dispatcher = new MagnetDispatcher(links -> {
+            if (links.contains(MAGNET_A)) {
+                throw new IOException("client down");
+            }
+            delivered.addAll(links);
+        }, 1, 1);
+        long failures = Metrics.DISPATCH_FAILURES.get();
+        dispatcher.dispatch(MAGNET_A);
+        dispatcher.dispatch(MAGNET_B);
+        dispatcher.close();
+        assertEquals(List.of(MAGNET_B), delivered, "The link after the failed one should be delivered");
+        assertEquals(failures + 1, Metrics.DISPATCH_FAILURES.get(), "The failed link should be counted");
+    }
+
+    /**
+     * Tests that the links waiting for a blocked sink can be dropped, and that the dispatcher still closes afterwards.
+     */
+    @Test
+    public void testCancelPending_dropsQueuedLinks() throws Exception {
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<MagnetLink> delivered = Collections.synchronizedList(new ArrayList<>());
+        MagnetDispatcher dispatcher = new MagnetDispatcher(links -> {
+            sending.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.addAll(links);
+        }, 10, 1);
+        dispatcher.dispatch(MAGNET_A);
+        assertTrue(sending.await(5, TimeUnit.SECONDS), "The first link should be handed to the sink");
+        for (int i = 0; i < 5; i++) {
+            dispatcher.dispatch(MAGNET_B);
+        }
+
+        assertEquals(5, dispatcher.cancelPending(), "The queued links should be dropped");
+        assertEquals(0, dispatcher.pending(), "The queue should be empty");
+        release.countDown();
+        dispatcher.close();
+        assertEquals(List.of(MAGNET_A), delivered, "Only the link already handed over should arrive");
+    }
+
+    /**
+     * Tests that the Desktop sink spaces browse calls according to its rate.
+     */
+    @Test
+    public void testDesktopSink_isRateLimited() throws Exception {
+        Desktop desktop = mock(Desktop.class);
+        when(desktop.isSupported(Desktop.Action.BROWSE)).thenReturn(true);
+        DesktopSink sink = new DesktopSink(() -> desktop, 50);
+
+        long start = System.nanoTime();
+        sink.send(List.of(MAGNET_A, MAGNET_A, MAGNET_A, MAGNET_A, MAGNET_A, MAGNET_A));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        verify(desktop, times(6)).browse(any(URI.class));
+        assertTrue(elapsedMillis >= 90, "6 links at 50/s should take at least 100 ms, took " + elapsedMillis);
+        assertThrows(IOException.class,
+                () -> new DesktopSink(() -> { throw new UnsupportedOperationException(); }, 1).send(List.of(MAGNET_A)),
+                "A missing desktop should fail the batch");
+    }
+
+    /**
+     * Tests that links the desktop fails to open, because browse rejects them or they are no valid URI, are counted
+     * as dispatch failures one by one while the rest of the batch is still opened, and that a desktop without BROWSE
+     * fails the whole batch.
+     */
+    @Test
+    public void testDesktopSink_reportsFailedLinks() throws Exception {
+        MagnetLink rejected = MagnetLink.parse("magnet:?xt=urn:btih:" + "e".repeat(40));
+        Desktop desktop = mock(Desktop.class);
+        when(desktop.isSupported(Desktop.Action.BROWSE)).thenReturn(true);
+        doThrow(new IOException("no handler")).when(desktop).browse(URI.create(rejected.uri()));
+        MagnetDispatcher dispatcher = new MagnetDispatcher(new DesktopSink(() -> desktop, 1000), 10, 4);
+        long failures = Metrics.DISPATCH_FAILURES.get();
+        long dispatched = Metrics.LINKS_DISPATCHED.get();
+
+        dispatcher.dispatch(MAGNET_A);
+        // Its quote is not allowed in a URI
+        dispatcher.dispatch(MAGNET_B);
+        dispatcher.dispatch(rejected);
+        dispatcher.dispatch(MAGNET_A);
+        dispatcher.close();
+
+        verify(desktop, times(3)).browse(any(URI.class));
+        assertEquals(failures + 2, Metrics.DISPATCH_FAILURES.get(), "Only the failed links should be counted");
+        assertEquals(dispatched + 2, Metrics.LINKS_DISPATCHED.get(), "The opened links should be counted");
+
+        Desktop unsupported = mock(Desktop.class);
+        assertThrows(IOException.class, () -> new DesktopSink(() -> unsupported, 1).send(List.of(MAGNET_A)),
+                "A desktop without BROWSE should fail the batch");
+        verify(unsupported, never()).browse(any(URI.class));
+    }
+
+    /**
+     * Tests that the watch-directory sink writes one file per torrent, named by info-hash, and no temporary files.
+     */
+    @Test
+    public void testWatchDirectorySink_writesMagnetFiles(@TempDir Path directory) throws IOException {
+        Path watch = directory.resolve("watch");
+        WatchDirectorySink sink = new WatchDirectorySink(watch);
+        sink.send(List.of(MAGNET_A, MAGNET_B));
+        sink.send(List.of(MAGNET_A));
+
+        try (var files = Files.list(watch)) {
+            assertEquals(2, files.count(), "A torrent handed over twice should give one file");
+        }
+        Path file = watch.resolve("c12fe1c06bba254a9dc9f519b335aa7c1367a88a" + WatchDirectorySink.EXTENSION);
+        assertEquals(LINK_A, Files.readString(file), "The file should contain the magnet link");
+    }
+
+    /**
+     * Tests that the aria2 sink sends a whole batch in one JSON-RPC request, with the secret token and escaped links,
+     * and that a failing endpoint is reported.
+     */
+    @Test
+    public void testAria2RpcSink_sendsOneBatchRequest() throws IOException {
+        List<String> requests = Collections.synchronizedList(new ArrayList<>());
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/jsonrpc", exchange -> {
+            requests.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            byte[] body = ("[{\"id\":\"0\",\"jsonrpc\":\"2.0\",\"result\":\"2089b05ecca3d829\"},"
+                    + "{\"id\":\"1\",\"jsonrpc\":\"2.0\",\"error\":{\"code\":1,\"message\":\"Duplicate\"}}]")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        new Aria2RpcSink(URI.create(base + "/jsonrpc"), "s3cret").send(List.of(MAGNET_A, MAGNET_B));
+
+        assertEquals(1, requests.size(), "The batch should be sent in one request");
+        assertEquals("[{\"jsonrpc\":\"2.0\",\"id\":\"0\",\"method\":\"aria2.addUri\",\"params\":[\"token:s3cret\",[\""
+                + LINK_A + "\"]]},{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"aria2.addUri\",\"params\":"
+                + "[\"token:s3cret\",[\"" + LINK_B.replace("\"", "\\\"") + "\"]]}]", requests.get(0),
+                "Each link should become one addUri call");
+        assertThrows(IOException.class,
+                () -> new Aria2RpcSink(URI.create(base + "/missing"), null).send(List.of(MAGNET_A)),
+                "A failing endpoint should fail the batch");
+    }
+}
@@ -0,0 +1,111 @@
+package org.image;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the MagnetLinkListModel class.
+ */
+public class MagnetLinkListModelTest {
+
+    private static final int THREADS = 8;
+    private static final int LINKS_PER_THREAD = 62_500;
+
+    /**
+     * Tests that 500k links queued concurrently from the pool threads all reach the model, in per-thread order, in
+     * far fewer batches than links, and that every batch is announced with a single event on the EDT.
+     */
+    @Test
+    public void testEnqueue_concurrentProducersAreBatched() throws Exception {
+        MagnetLinkListModel model = new MagnetLinkListModel();
+        AtomicInteger events = new AtomicInteger();
+        AtomicInteger offEdtEvents = new AtomicInteger();
+        model.addListDataListener(new CountingListener(events, offEdtEvents));
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < LINKS_PER_THREAD; i++) {
+                        model.enqueue(thread + ":" + i);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        int total = THREADS * LINKS_PER_THREAD;
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (sizeOnEdt(model) < total && System.currentTimeMillis() < deadline) {
+            Thread.sleep(MagnetLinkListModel.FRAME_MILLIS);
+        }
+
+        assertEquals(total, sizeOnEdt(model), "Every queued link should reach the model");
+        assertEquals(0, offEdtEvents.get(), "Listeners should only be notified on the EDT");
+        assertTrue(events.get() < total / 100, "Links should be added in batches, got " + events.get() + " events");
+        SwingUtilities.invokeAndWait(() -> {
+            int[] next = new int[THREADS];
+            for (int i = 0; i < model.getSize(); i++) {
+                String[] parts = model.getElementAt(i).split(":");
+                int thread = Integer.parseInt(parts[0]);
+                assertEquals(next[thread]++, Integer.parseInt(parts[1]), "Links of one thread should keep their order");
+            }
+        });
+    }
+
+    /**
+     * Tests that clearing drops the listed and the still queued links.
+     */
+    @Test
+    public void testClear_dropsQueuedLinks() throws Exception {
+        MagnetLinkListModel model = new MagnetLinkListModel();
+        SwingUtilities.invokeAndWait(() -> {
+            model.enqueueAll(List.of("a", "b"));
+            assertEquals(2, model.flush(), "Both queued links should be flushed");
+            model.enqueue("c");
+            model.clear();
+            assertEquals(0, model.getSize(), "Listed links should be removed");
+            assertEquals(0, model.flush(), "Queued links should be dropped");
+        });
+    }
+
+    private static int sizeOnEdt(MagnetLinkListModel model) throws Exception {
+        int[] size = new int[1];
+        SwingUtilities.invokeAndWait(() -> size[0] = model.getSize());
+        return size[0];
+    }
+
+    private record CountingListener(AtomicInteger events, AtomicInteger offEdtEvents) implements ListDataListener {
+        @Override
+        public void intervalAdded(ListDataEvent e) {
+            events.incrementAndGet();
+            if (!SwingUtilities.isEventDispatchThread()) {
+                offEdtEvents.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void intervalRemoved(ListDataEvent e) {
+        }
+
+        @Override
+        public void contentsChanged(ListDataEvent e) {
+        }
+    }
+}
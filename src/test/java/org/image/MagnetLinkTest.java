@@ -0,0 +1,78 @@
+package org.image;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the MagnetLink class.
+ */
+public class MagnetLinkTest {
+
+    private static final String HEX_HASH = "c12fe1c06bba254a9dc9f519b335aa7c1367a88a";
+    private static final String BASE32_HASH = "YEX6DQDLXISUVHOJ6UM3GNNKPQJWPKEK";
+
+    /**
+     * Tests that the parameters are read regardless of their order and case, decoded on access, and that the first
+     * valid occurrence of a repeated parameter counts.
+     */
+    @Test
+    public void testParse_readsParameters() {
+        String uri = "magnet:?tr=udp%3A%2F%2Ftracker.example%3A1337%2Fannounce&DN=Big+Buck%20Bunny&xl=276134947"
+                + "&xt=urn:btih:abcdef&XT=URN:BTIH:" + HEX_HASH.toUpperCase() + "&dn=Second&xl=1"
+                + "&tr=http://t2.example/announce";
+        MagnetLink link = MagnetLink.parse(uri);
+
+        assertEquals(uri, link.uri(), "The link should be kept as found");
+        assertTrue(link.hasBtih(), "The valid xt after the short one should be used");
+        assertEquals(HEX_HASH, link.infoHashHex(), "The hex BTIH should be decoded");
+        assertEquals("Big Buck Bunny", link.displayName(), "The first dn should be decoded");
+        assertEquals(276_134_947L, link.exactLength(), "The first xl should be parsed");
+        assertEquals(List.of("udp://tracker.example:1337/announce", "http://t2.example/announce"), link.trackers(),
+                "Every tr should be decoded, in order");
+        assertEquals(uri, link.toString(), "toString should give the link");
+    }
+
+    /**
+     * Tests that hex and base32 spellings of the same BTIH give the same key and equal links, and that the key matches
+     * the bytes of the hex digits.
+     */
+    @Test
+    public void testParse_hexAndBase32AreTheSameKey() {
+        MagnetLink hex = MagnetLink.parse("magnet:?xt=urn:btih:" + HEX_HASH + "&dn=Name");
+        MagnetLink base32 = MagnetLink.parse("magnet:?xt=urn:btih:" + BASE32_HASH.toLowerCase());
+
+        assertArrayEquals(hex.infoHash(), base32.infoHash(), "Base32 should decode to the same bytes as hex");
+        assertEquals(hex, base32, "Links with the same key should be equal");
+        assertEquals(hex.hashCode(), base32.hashCode(), "Equal links should have the same hash code");
+        assertEquals((byte) 0xc1, hex.infoHash()[0], "The first byte should come from the first two hex digits");
+        assertEquals((byte) 0x8a, hex.infoHash()[19], "The last byte should come from the last two hex digits");
+        hex.infoHash()[0] = 0;
+        assertEquals((byte) 0xc1, hex.infoHash()[0], "The key should not be changeable through its array");
+    }
+
+    /**
+     * Tests that links without a valid BTIH, malformed parameters and text that is no magnet link at all are parsed
+     * without errors, the key falling back to the digest of the trimmed link.
+     */
+    @Test
+    public void testParse_toleratesMalformedLinks() {
+        MagnetLink v2 = MagnetLink.parse(" magnet:?xt=urn:btmh:1220" + HEX_HASH + "&xl=12x&dn=50%&tr= ");
+        assertFalse(v2.hasBtih(), "A v2 hash is not a BTIH");
+        assertArrayEquals(MagnetLink.parse("magnet:?xt=urn:btmh:1220" + HEX_HASH + "&xl=12x&dn=50%&tr= ").infoHash(),
+                v2.infoHash(), "The fallback key should ignore surrounding blanks");
+        assertEquals(-1, v2.exactLength(), "An invalid xl should be absent");
+        assertEquals("50%", v2.displayName(), "A badly encoded dn should be returned as found");
+        assertEquals(List.of(" "), v2.trackers(), "A tr should be kept even if blank");
+
+        MagnetLink invalid = MagnetLink.parse("magnet:?xt=urn:btih:" + HEX_HASH.replace('a', 'g') + "&&=&xl=");
+        assertFalse(invalid.hasBtih(), "A BTIH with a non-hex digit is not valid");
+        assertEquals(-1, invalid.exactLength(), "An empty xl should be absent");
+        assertEquals("", invalid.displayName(), "A missing dn should be empty");
+        assertEquals(List.of(), invalid.trackers(), "A link without tr should have no trackers");
+        assertEquals(InfoHashSet.HASH_LENGTH, MagnetLink.parse("not a link").infoHash().length,
+                "Any text should get a key");
+    }
+}
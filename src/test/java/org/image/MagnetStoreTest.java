@@ -0,0 +1,177 @@
+package org.image;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the MagnetStore class.
+ */
+public class MagnetStoreTest {
+
+    private static final String HEX_HASH = "c12fe1c06bba254a9dc9f519b335aa7c1367a88a";
+    private static final String LINK = "magnet:?xt=urn:btih:" + HEX_HASH + "&dn=Some%20Name+1&tr=udp://t";
+    private static final String SOURCE = "https://example.com/page/2";
+
+    @TempDir
+    Path directory;
+
+    private static String link(int i) {
+        return String.format("magnet:?xt=urn:btih:%040x&dn=Link%d", i + 1, i);
+    }
+
+    /**
+     * Tests that an appended link is found by its info-hash together with its name, source URL and session.
+     */
+    @Test
+    public void testAppend_lookupByInfoHash() throws IOException {
+        try (MagnetStore store = MagnetStore.open(directory)) {
+            byte[] hash = InfoHashSet.infoHashOf(LINK);
+            assertFalse(store.contains(hash), "Empty store should not contain the hash");
+            assertNull(store.get(hash), "Empty store should have no entry");
+
+            store.append(LINK, SOURCE);
+            assertTrue(store.contains(hash), "Appended hash should be found");
+            MagnetStore.Entry entry = store.get(hash);
+            assertArrayEquals(hash, entry.infoHash(), "Entry should carry the info-hash");
+            assertEquals("Some Name 1", entry.name(), "Display name should be percent-decoded");
+            assertEquals(SOURCE, entry.sourceUrl(), "Entry should carry the source URL");
+            assertEquals(LINK, entry.magnetLink(), "Entry should carry the magnet link");
+            assertTrue(entry.timestamp() > 0, "Entry should carry the discovery time");
+
+            store.append("magnet:?xt=urn:btih:abcdef", null);
+            assertEquals("", store.get(InfoHashSet.infoHashOf("magnet:?xt=urn:btih:abcdef")).sourceUrl(),
+                    "A missing source URL should be stored as empty");
+            assertEquals(2, store.size(), "Store should contain two hashes");
+        }
+    }
+
+    /**
+     * Tests that a reopened store remembers every hash and restores exactly the previous session's links in order,
+     * also when the index has to grow far beyond its initial size. The index grows in place: a file that is still
+     * mapped must not be replaced.
+     */
+    @Test
+    public void testReopen_restoresLastSession() throws IOException {
+        try (MagnetStore store = MagnetStore.open(directory)) {
+            store.append(link(0), SOURCE);
+        }
+        Path index = directory.resolve(MagnetStore.INDEX_FILE);
+        Object indexFile = Files.readAttributes(index, BasicFileAttributes.class).fileKey();
+        long indexSize = Files.size(index);
+        try (MagnetStore store = MagnetStore.open(directory)) {
+            for (int i = 1; i <= 10_000; i++) {
+                store.append(link(i), SOURCE);
+            }
+            assertTrue(Files.size(index) > indexSize, "The index should have grown");
+            assertEquals(indexFile, Files.readAttributes(index, BasicFileAttributes.class).fileKey(),
+                    "The index should grow in the same file");
+            assertEquals(List.of(link(0)), store.lastSession().stream().map(MagnetStore.Entry::magnetLink).toList(),
+                    "Previous session should still be restorable while the current one is recorded");
+        }
+        // A session without links does not replace the last one
+        MagnetStore.open(directory).close();
+        try (MagnetStore store = MagnetStore.open(directory)) {
+            List<MagnetStore.Entry> last = store.lastSession();
+            assertEquals(10_000, last.size(), "The last session with links should be restored");
+            assertEquals(link(1), last.get(0).magnetLink(), "Links should be restored in discovery order");
+            assertEquals(link(10_000), last.get(last.size() - 1).magnetLink(), "Links should be restored in order");
+            assertEquals(10_001, store.size(), "All hashes should be remembered");
+            for (int i = 0; i <= 10_000; i++) {
+                assertTrue(store.contains(InfoHashSet.infoHashOf(link(i))), "Hash " + i + " should be found");
+            }
+            assertFalse(store.contains(InfoHashSet.infoHashOf(link(10_001))), "Unknown hash should not be found");
+        }
+    }
+
+    /**
+     * Tests that a store that was not closed, with a torn record at the end of the log, opens with every complete
+     * record and a rebuilt index.
+     */
+    @Test
+    public void testCrash_truncatesTornTailAndRebuildsIndex() throws IOException {
+        MagnetStore crashed = MagnetStore.open(directory);
+        for (int i = 0; i < 100; i++) {
+            crashed.append(link(i), SOURCE);
+        }
+        crashed.sync();
+        // No close(): the index stays marked dirty. Simulate a record cut off half-way.
+        Path log = directory.resolve(MagnetStore.LOG_FILE);
+        long completeLength = Files.size(log);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(java.nio.ByteBuffer.wrap(new byte[]{0, 0, 0, 120, 1, 2, 3, 4, 5, 6}));
+        }
+
+        try (MagnetStore store = MagnetStore.open(directory)) {
+            assertEquals(completeLength, Files.size(log), "Torn tail should be truncated");
+            assertEquals(100, store.size(), "Every complete record should be indexed");
+            assertEquals(100, store.lastSession().size(), "The crashed session should be restorable");
+            assertTrue(store.contains(InfoHashSet.infoHashOf(link(99))), "Last complete record should be found");
+            store.append(link(100), SOURCE);
+        }
+        try (MagnetStore store = MagnetStore.open(directory)) {
+            assertEquals(101, store.size(), "Records appended after recovery should be kept");
+        }
+    }
+
+    /**
+     * Tests that a corrupted record is detected by its checksum and the log is cut before it.
+     */
+    @Test
+    public void testCrash_corruptRecordIsDropped() throws IOException {
+        try (MagnetStore store = MagnetStore.open(directory)) {
+            store.append(link(0), SOURCE);
+            store.append(link(1), SOURCE);
+        }
+        Path log = directory.resolve(MagnetStore.LOG_FILE);
+        byte[] bytes = Files.readAllBytes(log);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(log, bytes);
+
+        try (MagnetStore store = MagnetStore.open(directory)) {
+            assertEquals(1, store.size(), "Only the intact record should remain");
+            assertFalse(store.contains(InfoHashSet.infoHashOf(link(1))), "Corrupt record should be dropped");
+        }
+    }
+
+    /**
+     * Tests that compaction keeps only the latest record per info-hash, shrinks the log and preserves lookups and the
+     * last session.
+     */
+    @Test
+    public void testCompact_keepsLatestRecordPerHash() throws IOException {
+        try (MagnetStore store = MagnetStore.open(directory)) {
+            for (int i = 0; i < 10; i++) {
+                store.append(link(i), "https://example.com/old");
+            }
+        }
+        try (MagnetStore store = MagnetStore.open(directory)) {
+            for (int i = 0; i < 10; i++) {
+                store.append(link(i), SOURCE);
+            }
+            long before = Files.size(directory.resolve(MagnetStore.LOG_FILE));
+            store.compact();
+
+            assertEquals(10, store.recordCount(), "Only one record per hash should remain");
+            assertTrue(Files.size(directory.resolve(MagnetStore.LOG_FILE)) < before, "Log should shrink");
+            assertEquals(SOURCE, store.get(InfoHashSet.infoHashOf(link(3))).sourceUrl(),
+                    "The latest record should be kept");
+            assertTrue(store.lastSession().isEmpty(),
+                    "The previous session's links were all found again and superseded");
+            store.append(link(10), SOURCE);
+        }
+        try (MagnetStore store = MagnetStore.open(directory)) {
+            assertEquals(11, store.size(), "Compacted store should reopen with every hash");
+            assertEquals(11, store.lastSession().size(), "The compacted session should be restorable");
+        }
+    }
+}
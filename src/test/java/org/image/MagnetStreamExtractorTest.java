@@ -0,0 +1,188 @@
+package org.image;
+
+import com.sun.net.httpserver.HttpServer;
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the MagnetStreamExtractor class and the streaming path of LinkParser.
+ */
+public class MagnetStreamExtractorTest {
+
+    /** Markup snippets that exercise the tokenizer rules the extractor has to share with Jsoup. */
+    private static final String[] FIXTURES = {
+            "<html><body><a href=\"magnet:?xt=urn:btih:abcdef\">Magnet Link</a></body></html>",
+            "<a href='magnet:?xt=urn:btih:1&amp;dn=One&tr=udp://t'>1</a><a href=\"http://x\">no</a>",
+            "<A HREF=MAGNET:?xt=2&copy=x>2</A><abbr href=magnet:?xt=no>no</abbr>",
+            "<a href=\"magnet:?xt=3&notit;&frac12x&lt&amp-x&#x41;&#65&#xZZ\">3</a>",
+            "<a href=magnet:?xt=4 href=magnet:?xt=ignored><a/href=magnet:?xt=5>",
+            "<!-- <a href=magnet:?xt=comment> --><!--><a href=magnet:?xt=6><!---><a href=magnet:?xt=7>",
+            "<script>var s = '<a href=magnet:?xt=script>';</script ><a href=magnet:?xt=8>",
+            "<style>a[href^=magnet]{}</style><textarea><a href=magnet:?xt=no></textarea><a href=magnet:?xt=9>",
+            "<div class='a>b'><![CDATA[<a href=magnet:?xt=cdata>]]><a\nhref\n=\n\"magnet:?xt=10\"\n>",
+            "<!DOCTYPE html><?xml version='1.0'?></><a href=\" magnet:?xt=no\"><a href=\"magnet:?xt=11\0\">",
+            "<title>Top <a href=magnet:?xt=no></title><a href=\"magnet:?xt=12&#128512;&#xD800;&#99999999999;\">",
+    };
+
+    private static List<String> selectWithJsoup(String html) {
+        return Jsoup.parse(html).select("a[href^=magnet]").eachAttr("href");
+    }
+
+    private static List<String> extract(String html) throws IOException {
+        List<String> links = new ArrayList<>();
+        int emitted = MagnetStreamExtractor.extract(new StringReader(html), links::add, "UTF-8");
+        assertEquals(links.size(), emitted, "Returned count should match the number of emitted links");
+        return links;
+    }
+
+    /**
+     * Tests that the streaming extractor yields the same links as the CSS selector on the DOM for each fixture.
+     */
+    @Test
+    public void testExtract_matchesCssSelector() throws IOException {
+        for (String html : FIXTURES) {
+            assertEquals(selectWithJsoup(html), extract(html), "Streaming result should match Jsoup for: " + html);
+        }
+    }
+
+    /**
+     * Tests that a large listing page, split across many reader buffers, yields the same links as the DOM path.
+     */
+    @Test
+    public void testExtract_largeListingPage() throws IOException {
+        String html = listingPage(5_000);
+        List<String> links = extract(html);
+        assertEquals(5_000, links.size(), "Every row should contribute one magnet link");
+        assertEquals(selectWithJsoup(html), links, "Streaming result should match Jsoup on a large page");
+    }
+
+    /**
+     * Tests that markup the tokenizer cannot reproduce raises UnsupportedMarkupException with the number of
+     * links emitted before it.
+     */
+    @Test
+    public void testExtract_unsupportedMarkupReportsEmittedLinks() {
+        String[] unsupported = {
+                "<a href=magnet:?xt=1><plaintext><a href=magnet:?xt=2>",
+                "<a href=magnet:?xt=1><title>unclosed <a href=magnet:?xt=2>",
+                "<a href=magnet:?xt=1><meta charset=\"windows-1251\"><a href=magnet:?xt=2>",
+                "<a href=magnet:?xt=1><a href=\"magnet:?xt=&#128;\">",
+        };
+        for (String html : unsupported) {
+            MagnetStreamExtractor.UnsupportedMarkupException e = assertThrows(
+                    MagnetStreamExtractor.UnsupportedMarkupException.class, () -> extract(html),
+                    "Expected a fallback for: " + html);
+            assertEquals(1, e.getEmitted(), "One link should have been emitted before the fallback for: " + html);
+        }
+    }
+
+    /**
+     * Tests that a meta charset matching the decoding charset does not trigger the fallback.
+     */
+    @Test
+    public void testExtract_matchingMetaCharset() throws IOException {
+        String html = "<head><meta charset=utf-8><meta http-equiv=Content-Type content='text/html; charset=UTF-8'>"
+                + "</head><a href=magnet:?xt=1>";
+        assertEquals(List.of("magnet:?xt=1"), extract(html), "A UTF-8 meta charset should be accepted");
+    }
+
+    /**
+     * Tests that LinkParser's streaming and DOM paths agree over HTTP, including the fallback that skips links
+     * already emitted before the unsupported markup.
+     */
+    @Test
+    public void testStreamMagnetLinks_matchesDomPath() throws IOException {
+        String fallbackPage = "<a href=magnet:?xt=1><a href=magnet:?xt=2><plaintext><a href=magnet:?xt=3>";
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serve(server, "/list", listingPage(200));
+        serve(server, "/fallback", fallbackPage);
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            for (String path : new String[]{"/list", "/fallback"}) {
+                List<String> streamed = new ArrayList<>();
+                List<String> selected = new ArrayList<>();
+                int streamedCount = LinkParser.streamMagnetLinks(base + path, streamed::add);
+                LinkParser.selectMagnetLinks(base + path, selected::add);
+                assertEquals(selected, streamed, "Streaming and DOM paths should agree for " + path);
+                assertEquals(streamed.size(), streamedCount, "Returned count should match for " + path);
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Tests that the DOM fallback parses the body already fetched, so that a page that changes between requests
+     * yields the links of one version exactly once, and that it skips the links already emitted by value: a link
+     * that occurs again after the unsupported markup is still passed on.
+     */
+    @Test
+    public void testStreamMagnetLinks_fallbackUsesFetchedBody() throws IOException {
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/changing", exchange -> {
+            byte[] body = ("<a href=magnet:?xt=a><meta charset=\"windows-1251\"><a href=magnet:?xt=a>"
+                    + "<a href=magnet:?xt=" + requests.incrementAndGet() + ">").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        try {
+            List<String> links = new ArrayList<>();
+            int count = LinkParser.streamMagnetLinks("http://127.0.0.1:" + server.getAddress().getPort()
+                    + "/changing", links::add);
+
+            assertEquals(List.of("magnet:?xt=a", "magnet:?xt=a", "magnet:?xt=1"), links,
+                    "Every link of the fetched version should be passed once");
+            assertEquals(3, count, "Returned count should match");
+            assertEquals(1, requests.get(), "The fallback should not fetch the page again");
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void serve(HttpServer server, String path, String html) {
+        byte[] body = html.getBytes(StandardCharsets.UTF_8);
+        server.createContext(path, exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+    }
+
+    /**
+     * Builds a synthetic listing page in the shape of the tracker's New/TOP tables.
+     *
+     * @param rows the number of torrent rows
+     * @return the HTML of the page
+     */
+    static String listingPage(int rows) {
+        StringBuilder html = new StringBuilder("<!DOCTYPE html><html><head><title>TOP</title>"
+                + "<script>var rows = '<a href=\"magnet:?xt=urn:btih:none\">';</script></head><body><table>");
+        for (int i = 0; i < rows; i++) {
+            html.append("<tr><td class=\"name\"><a href=\"/torrent/").append(i).append("\">Torrent ").append(i)
+                    .append("</a></td><td><!-- row ").append(i).append(" --><a class=\"magnet\" href=\"magnet:?xt=urn:btih:")
+                    .append(String.format("%040x", i)).append("&amp;dn=Torrent+").append(i)
+                    .append("&tr=udp%3A%2F%2Ftracker.example%3A80\" title='Magnet &gt; link'>M</a></td>")
+                    .append("<td>").append(i % 1000).append(" MB</td></tr>\n");
+        }
+        return html.append("</table></body></html>").toString();
+    }
+}
@@ -0,0 +1,112 @@
+package org.image;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the Metrics class.
+ */
+public class MetricsTest {
+
+    @AfterEach
+    public void tearDown() {
+        Metrics.stopEndpoint();
+    }
+
+    /**
+     * Tests the exposition of a counter and of a histogram: cumulative buckets, sum and count.
+     */
+    @Test
+    public void testScrape_prometheusTextFormat() {
+        Metrics.Counter counter = Metrics.counter("test_events_total", "Events seen by the test");
+        counter.add(3);
+        Metrics.Histogram histogram = Metrics.histogram("test_duration_seconds", "Test durations", "stage", "a\"b");
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(50));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.record(TimeUnit.SECONDS.toNanos(60));
+
+        String text = Metrics.scrape();
+        assertTrue(text.contains("# HELP test_events_total Events seen by the test\n"), "Help line expected");
+        assertTrue(text.contains("# TYPE test_events_total counter\ntest_events_total 3\n"), "Counter expected");
+        assertTrue(text.contains("# TYPE test_duration_seconds histogram\n"), "Histogram type expected");
+        assertTrue(text.contains("test_duration_seconds_bucket{stage=\"a\\\"b\",le=\"0.0001\"} 1\n"),
+                "50 µs should fall into the first bucket; label values should be escaped");
+        assertTrue(text.contains("test_duration_seconds_bucket{stage=\"a\\\"b\",le=\"0.001\"} 1\n"),
+                "Buckets should be cumulative");
+        assertTrue(text.contains("test_duration_seconds_bucket{stage=\"a\\\"b\",le=\"0.005\"} 2\n"),
+                "3 ms should fall into the 5 ms bucket");
+        assertTrue(text.contains("test_duration_seconds_bucket{stage=\"a\\\"b\",le=\"30\"} 2\n"),
+                "60 s should be above the largest bound");
+        assertTrue(text.contains("test_duration_seconds_bucket{stage=\"a\\\"b\",le=\"+Inf\"} 3\n"),
+                "+Inf bucket should hold every sample");
+        assertTrue(text.contains("test_duration_seconds_sum{stage=\"a\\\"b\"} 60.00305\n"), "Sum in seconds");
+        assertTrue(text.contains("test_duration_seconds_count{stage=\"a\\\"b\"} 3\n"), "Count expected");
+        assertTrue(text.contains("# TYPE " + Metrics.STAGE_SECONDS + " histogram"),
+                "Pipeline stage histograms should be registered");
+        assertSame(counter, Metrics.counter("test_events_total", "ignored"), "Same name should give same counter");
+        assertThrows(IllegalArgumentException.class, () -> Metrics.counter("test_duration_seconds", "clash"),
+                "A name cannot be registered with two types");
+    }
+
+    /**
+     * Tests that concurrent recording loses no increments.
+     */
+    @Test
+    public void testConcurrentRecording_isExact() throws Exception {
+        Metrics.Counter counter = Metrics.counter("test_concurrent_total", "Concurrent increments");
+        Metrics.Histogram histogram = Metrics.histogram("test_concurrent_seconds", "Concurrent samples", "stage", "x");
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 100_000; i++) {
+                        counter.increment();
+                        histogram.record(i);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(800_000, counter.get(), "Every increment should be counted");
+        assertEquals(800_000, histogram.count(), "Every sample should be counted");
+    }
+
+    /**
+     * Tests that the endpoint serves the exposition on the loopback interface, and that fetching it through the
+     * PageFetcher is itself recorded by the pipeline metrics.
+     */
+    @Test
+    public void testEndpoint_servesScrape() throws IOException {
+        int port = Metrics.startEndpoint(0);
+        assertEquals(port, Metrics.startEndpoint(0), "Starting again should keep the running endpoint");
+        long fetchesBefore = Metrics.FETCH.count();
+        long pagesBefore = Metrics.PAGES_FETCHED.get();
+
+        PageFetcher.Page page = PageFetcher.shared().fetch("http://127.0.0.1:" + port + "/metrics");
+        String body;
+        try (InputStream in = page.body()) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertEquals(200, page.status(), "Scrape should succeed");
+        assertTrue(body.contains("# TYPE magnetgrab_pages_fetched_total counter"), "Scrape should list counters");
+        assertEquals(fetchesBefore + 1, Metrics.FETCH.count(), "The fetch stage should be recorded");
+        assertEquals(pagesBefore + 1, Metrics.PAGES_FETCHED.get(), "The fetched page should be counted");
+    }
+}
@@ -0,0 +1,203 @@
+package org.image;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the PageCache class and its use by LinkParser.scanPage.
+ */
+public class PageCacheTest {
+
+    private static final String ETAG = "\"v1\"";
+
+    @TempDir
+    Path directory;
+
+    private HttpServer server;
+
+    @AfterEach
+    public void tearDown() {
+        LinkParser.setPageCache(null);
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private static PageCache.Entry entry(String url, int links) {
+        List<String> magnetLinks = new ArrayList<>();
+        for (int i = 0; i < links; i++) {
+            magnetLinks.add("magnet:?xt=urn:btih:" + i + "&dn=" + url);
+        }
+        return new PageCache.Entry(url, ETAG, "Sat, 17 Oct 2026 10:00:00 GMT", new byte[32], magnetLinks,
+                List.of(url + "page/2"));
+    }
+
+    /**
+     * Tests that an entry is read back exactly, also after reopening the cache.
+     */
+    @Test
+    public void testPutGet_roundTrip() throws IOException {
+        PageCache cache = PageCache.open(directory, PageCache.DEFAULT_MAX_BYTES);
+        assertNull(cache.get("https://example.com/"), "Empty cache should miss");
+        cache.put(entry("https://example.com/", 3));
+        cache.put(new PageCache.Entry("https://example.com/top/", null, null, null, List.of(), List.of()));
+
+        PageCache reopened = PageCache.open(directory, PageCache.DEFAULT_MAX_BYTES);
+        PageCache.Entry entry = reopened.get("https://example.com/");
+        assertEquals(ETAG, entry.etag(), "ETag should be kept");
+        assertEquals("Sat, 17 Oct 2026 10:00:00 GMT", entry.lastModified(), "Last-Modified should be kept");
+        assertArrayEquals(new byte[32], entry.bodyDigest(), "Digest should be kept");
+        assertEquals(entry("https://example.com/", 3).magnetLinks(), entry.magnetLinks(), "Links should be kept");
+        assertEquals(List.of("https://example.com/page/2"), entry.anchors(), "Anchors should be kept");
+        PageCache.Entry empty = reopened.get("https://example.com/top/");
+        assertNull(empty.etag(), "Missing validators should stay missing");
+        assertNull(empty.bodyDigest(), "Missing digest should stay missing");
+        assertEquals(2, reopened.size(), "Both entries should be found after reopening");
+    }
+
+    /**
+     * Tests that the least recently used entries are evicted once the size bound is exceeded, and that the access
+     * order survives a restart.
+     */
+    @Test
+    public void testEviction_leastRecentlyUsedFirst() throws Exception {
+        PageCache cache = PageCache.open(directory, Long.MAX_VALUE);
+        for (int i = 0; i < 4; i++) {
+            cache.put(entry("https://example.com/" + i, 20));
+            Thread.sleep(20);
+        }
+        long entrySize = cache.sizeInBytes() / 4;
+        assertNotNull(cache.get("https://example.com/0"), "Entry 0 should be cached");
+
+        PageCache bounded = PageCache.open(directory, entrySize * 3 + entrySize / 2);
+        assertEquals(3, bounded.size(), "Reopening with a smaller bound should evict one entry");
+        assertNull(bounded.get("https://example.com/1"), "The least recently used entry should be evicted");
+        assertNotNull(bounded.get("https://example.com/0"), "The recently read entry should be kept");
+
+        bounded.put(entry("https://example.com/4", 20));
+        assertNull(bounded.get("https://example.com/2"), "Putting a new entry should evict the next oldest");
+        assertTrue(bounded.sizeInBytes() <= entrySize * 3 + entrySize / 2, "Cache should stay within its bound");
+        try (var files = Files.list(directory)) {
+            assertEquals(3, files.count(), "Evicted entries should be deleted from disk");
+        }
+    }
+
+    /**
+     * Tests that a corrupt entry is treated as a miss and removed, also when its digest length is out of range.
+     */
+    @Test
+    public void testCorruptEntry_isDropped() throws IOException {
+        PageCache cache = PageCache.open(directory, PageCache.DEFAULT_MAX_BYTES);
+        cache.put(entry("https://example.com/", 3));
+        try (var files = Files.list(directory)) {
+            Path file = files.findFirst().orElseThrow();
+            Files.write(file, new byte[]{1, 2, 3});
+        }
+        assertNull(cache.get("https://example.com/"), "Corrupt entry should be a miss");
+        assertEquals(0, cache.size(), "Corrupt entry should be removed");
+
+        for (int digestLength : new int[]{-1, Integer.MAX_VALUE}) {
+            String url = "https://example.com/" + digestLength;
+            cache.put(entry(url, 3));
+            try (var files = Files.list(directory)) {
+                Path file = files.findFirst().orElseThrow();
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (DataOutputStream out = new DataOutputStream(bytes)) {
+                    out.writeInt(0x4D475043);
+                    byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(urlBytes.length);
+                    out.write(urlBytes);
+                    out.writeInt(-1);
+                    out.writeInt(-1);
+                    out.writeInt(digestLength);
+                }
+                Files.write(file, bytes.toByteArray());
+            }
+            assertNull(cache.get(url), "A digest length of " + digestLength + " should be a miss");
+            assertEquals(0, cache.size(), "A digest length of " + digestLength + " should remove the entry");
+        }
+    }
+
+    /**
+     * Tests that scanPage sends the cached validators, and on 304 replays the cached magnet links and anchors
+     * without a body being sent.
+     */
+    @Test
+    public void testScanPage_notModifiedReplaysCachedLinks() throws IOException {
+        AtomicInteger bodiesSent = new AtomicInteger();
+        String url = startServer(true, bodiesSent) + "/";
+        LinkParser.setPageCache(PageCache.open(directory, PageCache.DEFAULT_MAX_BYTES));
+
+        List<String> first = new ArrayList<>();
+        List<String> firstAnchors = new ArrayList<>();
+        assertEquals(2, LinkParser.scanPage(url, first::add, firstAnchors::add), "Page carries two links");
+        List<String> second = new ArrayList<>();
+        List<String> secondAnchors = new ArrayList<>();
+        assertEquals(2, LinkParser.scanPage(url, second::add, secondAnchors::add), "Cached page carries two links");
+
+        assertEquals(1, bodiesSent.get(), "The second fetch should be answered with 304");
+        assertEquals(first, second, "Cached magnet links should be replayed in order");
+        assertEquals(firstAnchors, secondAnchors, "Cached anchors should be replayed");
+        assertTrue(secondAnchors.contains(url + "page/2"), "Anchors should be absolute");
+    }
+
+    /**
+     * Tests that a page without validators whose body has not changed is served from the cache as well.
+     */
+    @Test
+    public void testScanPage_unchangedBodyReplaysCachedLinks() throws IOException {
+        AtomicInteger bodiesSent = new AtomicInteger();
+        String url = startServer(false, bodiesSent) + "/";
+        LinkParser.setPageCache(PageCache.open(directory, PageCache.DEFAULT_MAX_BYTES));
+
+        List<String> first = new ArrayList<>();
+        LinkParser.scanPage(url, first::add, null);
+        List<String> second = new ArrayList<>();
+        LinkParser.scanPage(url, second::add, null);
+
+        assertEquals(2, bodiesSent.get(), "Without validators the body is sent every time");
+        assertEquals(first, second, "Links of the unchanged body should be replayed");
+        assertNotNull(PageCache.open(directory, PageCache.DEFAULT_MAX_BYTES).get(url).bodyDigest(),
+                "The body digest should be cached");
+    }
+
+    private String startServer(boolean validators, AtomicInteger bodiesSent) throws IOException {
+        byte[] body = ("<html><body><a href=\"magnet:?xt=urn:btih:1\">1</a><a href=\"page/2\">next</a>"
+                + "<a href=\"magnet:?xt=urn:btih:2\">2</a></body></html>").getBytes(StandardCharsets.UTF_8);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            if (validators && ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            if (validators) {
+                exchange.getResponseHeaders().set("ETag", ETAG);
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            bodiesSent.incrementAndGet();
+        });
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+}
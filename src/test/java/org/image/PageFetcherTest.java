@@ -0,0 +1,153 @@
+package org.image;
+
+import com.sun.net.httpserver.HttpServer;
+import org.jsoup.HttpStatusException;
+import org.jsoup.UnsupportedMimeTypeException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the PageFetcher class against a local HTTP server.
+ */
+public class PageFetcherTest {
+
+    private static final String BODY = "<html><body><a href=\"magnet:?xt=urn:btih:abc\">Привет</a></body></html>";
+
+    private HttpServer server;
+    private String baseUrl;
+    private PageFetcher fetcher;
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    public void setUp() throws IOException, NoSuchAlgorithmException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            switch (path) {
+                case "/gzip" -> {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                        gzip.write(body);
+                    }
+                    body = out.toByteArray();
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+                case "/deflate", "/raw-deflate" -> {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, path.equals("/raw-deflate"));
+                    try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater)) {
+                        deflate.write(body);
+                    }
+                    body = out.toByteArray();
+                    exchange.getResponseHeaders().set("Content-Encoding", "deflate");
+                }
+                case "/redirect" -> {
+                    exchange.getResponseHeaders().set("Location", "/moved");
+                    exchange.sendResponseHeaders(302, -1);
+                    exchange.close();
+                    return;
+                }
+                case "/missing" -> {
+                    exchange.sendResponseHeaders(404, -1);
+                    exchange.close();
+                    return;
+                }
+                case "/image" -> exchange.getResponseHeaders().set("Content-Type", "image/png");
+                default -> {
+                }
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        fetcher = new PageFetcher(SSLContext.getDefault());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private String read(PageFetcher.Page page) throws IOException {
+        try (InputStream body = page.body()) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Tests that compressed bodies are decompressed while streaming, for gzip, zlib deflate and raw deflate.
+     */
+    @Test
+    public void testFetch_decompressesBody() throws IOException {
+        for (String path : new String[]{"/plain", "/gzip", "/deflate", "/raw-deflate"}) {
+            PageFetcher.Page page = fetcher.fetch(baseUrl + path);
+            assertEquals(200, page.status(), path + " should succeed");
+            assertEquals("UTF-8", page.charset(), "Charset should be taken from the Content-Type header");
+            assertEquals(BODY, read(page), path + " should be decoded to the original body");
+        }
+    }
+
+    /**
+     * Tests that consecutive fetches reuse one pooled connection instead of opening a new one each time.
+     */
+    @Test
+    public void testFetch_reusesConnection() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            read(fetcher.fetch(baseUrl + (i % 2 == 0 ? "/" : "/top/")));
+        }
+        assertEquals(1, clientPorts.size(), "All requests should go over the same connection");
+    }
+
+    /**
+     * Tests redirects, error statuses and unsupported content types.
+     */
+    @Test
+    public void testFetch_redirectsAndErrors() throws IOException {
+        PageFetcher.Page moved = fetcher.fetch(baseUrl + "/redirect");
+        assertEquals(baseUrl + "/moved", moved.uri().toString(), "Page URI should be the redirect target");
+        read(moved);
+
+        HttpStatusException missing = assertThrows(HttpStatusException.class,
+                () -> fetcher.fetch(baseUrl + "/missing"), "A 404 should fail");
+        assertEquals(404, missing.getStatusCode(), "Status code should be reported");
+        assertThrows(UnsupportedMimeTypeException.class, () -> fetcher.fetch(baseUrl + "/image"),
+                "An image is not a page");
+        assertThrows(IOException.class, () -> fetcher.fetch("file:///etc/hosts"), "Only http(s) is supported");
+    }
+
+    /**
+     * Tests extraction of the charset parameter from Content-Type headers.
+     */
+    @Test
+    public void testCharsetOf() {
+        assertEquals("windows-1251", PageFetcher.charsetOf("text/html; charset=windows-1251"));
+        assertEquals("UTF-8", PageFetcher.charsetOf("text/html;Charset=\"UTF-8\""));
+        assertNull(PageFetcher.charsetOf("text/html"), "No charset parameter");
+        assertNull(PageFetcher.charsetOf(null), "No Content-Type header");
+    }
+}
@@ -0,0 +1,139 @@
+package org.image;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the ParseSession class against a local server whose {@code /slow} page does not answer until released.
+ */
+public class ParseSessionTest {
+
+    private static final String PAGE = "<html><body>"
+            + "<a href=\"magnet:?xt=urn:btih:c12fe1c06bba254a9dc9f519b335aa7c1367a88a&dn=A\">A</a>"
+            + "<a href=\"magnet:?xt=urn:btih:YEX6DQDLXISUVHOJ6UM3GNNKPQJWPKEK&dn=A again\">A</a>"
+            + "<a href=\"magnet:?xt=urn:btih:0123456789abcdef0123456789abcdef01234567&dn=B\">B</a>"
+            + "</body></html>";
+
+    private HttpServer server;
+    private String baseUrl;
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<MagnetLink> opened = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            if (exchange.getRequestURI().getPath().equals("/slow")) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = PAGE.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        LinkParser.setMagnetLinkOpener(opened::add);
+        LinkParser.setFoundLinkListener(event -> { });
+        LinkParser.resetNumberOfFoundLinks();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        server.stop(0);
+        LinkParser.setMagnetLinkOpener(null);
+        LinkParser.setFoundLinkListener(null);
+        LinkParser.resetNumberOfFoundLinks();
+    }
+
+    /**
+     * Tests that a session processes the links of its page off the calling thread and reports its own counters,
+     * and that it lets go of its deadline.
+     */
+    @Test
+    public void testParse_completesWithCounters() throws Exception {
+        ParseSession session = LinkParser.parseUrl(baseUrl + "/");
+        ParseSession.Summary summary = session.result().get(10, TimeUnit.SECONDS);
+
+        assertEquals(ParseSession.State.COMPLETED, summary.state(), "The session should complete");
+        assertEquals(1, summary.pages(), "One page should be fetched");
+        assertEquals(0, summary.failedPages(), "No page should fail");
+        assertEquals(3, summary.magnetLinks(), "Every link on the page should be counted");
+        assertEquals(2, summary.newLinks(), "The base32 spelling of A should be a duplicate");
+        assertEquals(2, opened.size(), "The new links should be handed to the torrent client");
+        assertFalse(session.isRunning(), "The session should have ended");
+
+        ParseSession second = LinkParser.parseUrl(baseUrl + "/");
+        assertEquals(0, second.result().get(10, TimeUnit.SECONDS).newLinks(),
+                "A second session should count its own links, all duplicates by now");
+        assertNotEquals(session.id(), second.id(), "Sessions should have their own ids");
+        assertEquals(0, ParseSession.pendingDeadlines(), "Completed sessions should not keep their deadlines");
+    }
+
+    /**
+     * Tests that cancelling a session interrupts its fetch within milliseconds, completes its result and keeps the
+     * links that arrive afterwards from being processed.
+     */
+    @Test
+    public void testCancel_interruptsFetch() throws Exception {
+        ParseSession session = LinkParser.parseUrl(baseUrl + "/slow");
+        Thread.sleep(200);
+        assertTrue(session.isRunning(), "The session should wait for the page");
+
+        long start = System.nanoTime();
+        assertTrue(session.cancel(), "A running session should be cancelled");
+        ParseSession.Summary summary = session.result().get(1, TimeUnit.SECONDS);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(ParseSession.State.CANCELLED, summary.state(), "The session should be cancelled");
+        assertTrue(millis < 100, "Cancelling took " + millis + " ms");
+        assertFalse(session.cancel(), "An ended session cannot be cancelled again");
+        assertEquals(0, ParseSession.pendingDeadlines(), "A cancelled session should not keep its deadline");
+        release.countDown();
+        Thread.sleep(200);
+        assertTrue(opened.isEmpty(), "No link should be processed after the cancel");
+        assertEquals(0, LinkParser.getNumberOfFoundLinks().intValue(), "No link should be counted after the cancel");
+    }
+
+    /**
+     * Tests that a session is stopped once its deadline has passed, and that stopSearching stops all running sessions.
+     */
+    @Test
+    public void testDeadlineAndStopSearching() throws Exception {
+        ParseSession expiring = ParseSession.parse(baseUrl + "/slow", Duration.ofMillis(300));
+        assertEquals(ParseSession.State.EXPIRED, expiring.result().get(5, TimeUnit.SECONDS).state(),
+                "The session should expire at its deadline");
+
+        ParseSession first = LinkParser.parseUrl(baseUrl + "/slow");
+        ParseSession second = LinkParser.crawlUrl(baseUrl + "/slow", 1, 10);
+        Thread.sleep(200);
+        assertEquals(2, LinkParser.stopSearching(), "Both running sessions should be stopped");
+        assertEquals(ParseSession.State.CANCELLED, first.result().get(1, TimeUnit.SECONDS).state(),
+                "The parse should be cancelled");
+        assertEquals(ParseSession.State.CANCELLED, second.result().get(1, TimeUnit.SECONDS).state(),
+                "The crawl should be cancelled");
+    }
+}
@@ -0,0 +1,123 @@
+package org.image;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the ThumbnailCache class and its use by ImgProvider.readResourcePreview.
+ */
+public class ThumbnailCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    public void tearDown() {
+        ImgProvider.setThumbnailCache(null);
+    }
+
+    private static byte[] digest(String content) {
+        return PageCache.newDigest().digest(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static BufferedImage image(int type, int seed) {
+        BufferedImage image = new BufferedImage(64, 48, type);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, (seed * 31 + x * 7 + y * 13) * 0x010203 | 0xFF000000);
+            }
+        }
+        return image;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    /**
+     * Tests that a preview is read back with its type and pixels, also after reopening the cache, and that another
+     * resource content or preview size misses.
+     */
+    @Test
+    public void testPutGet_roundTrip() throws IOException {
+        ThumbnailCache cache = ThumbnailCache.open(directory, ThumbnailCache.DEFAULT_MAX_BYTES);
+        assertNull(cache.get(digest("a"), 512), "Empty cache should miss");
+        BufferedImage rgb = image(BufferedImage.TYPE_INT_RGB, 1);
+        BufferedImage argb = image(BufferedImage.TYPE_INT_ARGB_PRE, 2);
+        cache.put(digest("a"), 512, rgb);
+        cache.put(digest("b"), 512, argb);
+
+        ThumbnailCache reopened = ThumbnailCache.open(directory, ThumbnailCache.DEFAULT_MAX_BYTES);
+        BufferedImage cached = reopened.get(digest("a"), 512);
+        assertEquals(BufferedImage.TYPE_INT_RGB, cached.getType(), "Type should be kept");
+        assertEquals(64, cached.getWidth(), "Width should be kept");
+        assertArrayEquals(pixels(rgb), pixels(cached), "Pixels should be kept");
+        assertEquals(BufferedImage.TYPE_INT_ARGB_PRE, reopened.get(digest("b"), 512).getType(),
+                "Premultiplied type should be kept");
+        assertNull(reopened.get(digest("a2"), 512), "Changed content should miss");
+        assertNull(reopened.get(digest("a"), 256), "Other preview size should miss");
+        assertEquals(2, reopened.size(), "Both entries should be found after reopening");
+    }
+
+    /**
+     * Tests that the least recently used entries are evicted once the size bound is exceeded.
+     */
+    @Test
+    public void testEviction_leastRecentlyUsedFirst() throws Exception {
+        ThumbnailCache cache = ThumbnailCache.open(directory, Long.MAX_VALUE);
+        for (int i = 0; i < 4; i++) {
+            cache.put(digest(String.valueOf(i)), 512, image(BufferedImage.TYPE_INT_RGB, i));
+            Thread.sleep(20);
+        }
+        long entrySize = cache.sizeInBytes() / 4;
+        assertNotNull(cache.get(digest("0"), 512), "Entry 0 should be cached");
+
+        ThumbnailCache bounded = ThumbnailCache.open(directory, entrySize * 3 + entrySize / 2);
+        assertEquals(3, bounded.size(), "Reopening with a smaller bound should evict one entry");
+        assertNull(bounded.get(digest("1"), 512), "The least recently used entry should be evicted");
+        assertNotNull(bounded.get(digest("0"), 512), "The recently read entry should be kept");
+        try (var files = Files.list(directory)) {
+            assertEquals(3, files.count(), "Evicted entries should be deleted from disk");
+        }
+    }
+
+    /**
+     * Tests that a corrupt entry is treated as a miss and removed.
+     */
+    @Test
+    public void testCorruptEntry_isDropped() throws IOException {
+        ThumbnailCache cache = ThumbnailCache.open(directory, ThumbnailCache.DEFAULT_MAX_BYTES);
+        cache.put(digest("a"), 512, image(BufferedImage.TYPE_INT_RGB, 1));
+        try (var files = Files.list(directory)) {
+            Path file = files.findFirst().orElseThrow();
+            Files.write(file, new byte[]{1, 2, 3});
+        }
+        assertNull(cache.get(digest("a"), 512), "Corrupt entry should be a miss");
+        assertEquals(0, cache.size(), "Corrupt entry should be removed");
+    }
+
+    /**
+     * Tests that readResourcePreview stores the decoded preview and serves the same pixels from the cache next time.
+     */
+    @Test
+    public void testReadResourcePreview_usesCache() throws IOException {
+        ThumbnailCache cache = ThumbnailCache.open(directory, ThumbnailCache.DEFAULT_MAX_BYTES);
+        ImgProvider.setThumbnailCache(cache);
+        BufferedImage decoded = ImgProvider.readResourcePreview("/img/1.img");
+        assertEquals(1, cache.size(), "The decoded preview should be cached");
+
+        BufferedImage cached = ImgProvider.readResourcePreview("/img/1.img");
+        assertNotSame(decoded, cached, "The second read should come from the cache");
+        assertArrayEquals(pixels(decoded), pixels(cached), "Cached preview should match the decoded one");
+        assertEquals(1, cache.size(), "No second entry should be written");
+    }
+}